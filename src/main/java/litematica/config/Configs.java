@@ -27,6 +27,7 @@ import litematica.selection.AreaSelectionType;
 import litematica.selection.ToolSelectionMode;
 import litematica.util.LitematicaDirectories;
 import litematica.util.value.BlockInfoAlignment;
+import litematica.util.value.BlockStorageType;
 import litematica.util.value.ReplaceBehavior;
 
 public class Configs
@@ -45,20 +46,29 @@ public class Configs
         public static final BooleanAndFileConfig CUSTOM_SCHEMATIC_DIRECTORY         = new BooleanAndFileConfig("customSchematicDirectory", false, LitematicaDirectories.getDefaultSchematicDirectory());
 
         public static final BooleanConfig AREAS_PER_WORLD                           = new BooleanConfig("areaSelectionsPerWorld", true);
+        public static final IntegerConfig BATCH_CONVERT_MAX_VOLUME                  = new IntegerConfig("batchConvertMaxVolume", 256, 1, 100000);
+        public static final IntegerConfig BATCH_CONVERT_THREADS                     = new IntegerConfig("batchConvertThreads", 4, 1, 64);
         public static final BooleanConfig BETTER_RENDER_ORDER                       = new BooleanConfig("betterRenderOrder", true);
         public static final BooleanConfig CHANGE_SELECTED_CORNER                    = new BooleanConfig("changeSelectedCornerOnMove", true);
         public static final BooleanConfig CLONE_AT_ORIGINAL_POS                     = new BooleanConfig("cloneAtOriginalPosition", true);
         public static final StringConfig  COMMAND_NAME_SETBLOCK                     = new StringConfig( "commandNameSetblock", "setblock");
         public static final StringConfig  DATE_FORMAT                               = new StringConfig( "dateFormat", "yyyy-MM-dd HH:mm:ss");
         public static final BooleanConfig DEBUG_MESSAGES                            = new BooleanConfig("debugMessages", false);
+        public static final BooleanConfig DECODED_SCHEMATIC_CACHE                   = new BooleanConfig("decodedSchematicCache", true);
+        public static final IntegerConfig DECODED_SCHEMATIC_CACHE_SIZE              = new IntegerConfig("decodedSchematicCacheSize", 2048, 16, 1048576);
         public static final BooleanConfig EASY_PLACE_CLICK_ADJACENT                 = new BooleanConfig("easyPlaceClickAdjacent", false);
         public static final BooleanConfig EASY_PLACE_HOLD_ENABLED                   = new BooleanConfig("easyPlaceHold", false);
         public static final BooleanConfig EXECUTE_REQUIRE_TOOL                      = new BooleanConfig("executeRequireHoldingTool", true);
         public static final BooleanConfig FIX_RAIL_ROTATION                         = new BooleanConfig("fixRailRotation", true);
         public static final BooleanConfig GENERATE_LOWERCASE_NAMES                  = new BooleanConfig("generateLowerCaseNames", false);
+        public static final IntegerConfig HUGE_SCHEMATIC_THRESHOLD                  = new IntegerConfig("hugeSchematicThreshold", 256, 1, 100000);
+        public static final BooleanConfig LAZY_REGION_LOADING                       = new BooleanConfig("lazyRegionLoading", true);
         public static final BooleanConfig LOAD_ENTIRE_SCHEMATICS                    = new BooleanConfig("loadEntireSchematics", false);
         public static final BooleanConfig MATERIAL_LIST_IGNORE_BLOCK_STATE          = new BooleanConfig("materialListIgnoreBlockState", false);
         public static final BooleanConfig MATERIALS_FROM_CONTAINER                  = new BooleanConfig("materialListFromContainer", true);
+        public static final BooleanConfig PARALLEL_BLOCK_COUNTING                   = new BooleanConfig("parallelBlockCounting", true);
+        public static final BooleanConfig PARALLEL_SCHEMATIC_SAVE                   = new BooleanConfig("parallelSchematicSave", false);
+        public static final BooleanConfig PASTE_COMMAND_ADAPTIVE_RATE               = new BooleanConfig("pasteCommandAdaptiveRate", false);
         public static final IntegerConfig PASTE_COMMAND_INTERVAL                    = new IntegerConfig("pasteCommandInterval", 1, 1, 1000);
         public static final IntegerConfig PASTE_COMMAND_LIMIT                       = new IntegerConfig("pasteCommandLimit", 64, 1, 1000);
         public static final BooleanConfig PICK_BLOCK_AVOID_DAMAGEABLE               = new BooleanConfig("pickBlockAvoidDamageable", true);
@@ -70,15 +80,20 @@ public class Configs
         public static final BooleanConfig RENDER_MATERIALS_IN_GUI                   = new BooleanConfig("renderMaterialListInGuis", true);
         public static final BooleanConfig RENDER_THREAD_NO_TIMEOUT                  = new BooleanConfig("renderThreadNoTimeout", true);
         public static final BooleanConfig REQUIRE_ADJACENT_CHUNKS                   = new BooleanConfig("requireAdjacentChunks", true);
+        public static final BooleanConfig SCHEMATIC_DIRECTORY_INDEX                 = new BooleanConfig("schematicDirectoryIndex", true);
+        public static final BooleanConfig SERVER_SIDE_SAVE_PER_CHUNK                = new BooleanConfig("serverSideSavePerChunk", false);
         public static final StringConfig  TOOL_ITEM                                 = new StringConfig( "toolItem", "minecraft:stick");
 
         public static final OptionListConfig<AreaSelectionType>     DEFAULT_AREA_SELECTION_MODE = new OptionListConfig<>("defaultAreaSelectionMode", AreaSelectionType.SIMPLE, AreaSelectionType.VALUES);
+        public static final OptionListConfig<BlockStorageType>      HUGE_SCHEMATIC_STORAGE      = new OptionListConfig<>("hugeSchematicStorage", BlockStorageType.HEAP, BlockStorageType.VALUES);
         public static final OptionListConfig<ReplaceBehavior>       PASTE_REPLACE_BEHAVIOR      = new OptionListConfig<>("pasteReplaceBehavior", ReplaceBehavior.NONE, ReplaceBehavior.VALUES);
         public static final OptionListConfig<FileBrowserColumns>    SCHEMATIC_BROWSER_COLUMNS   = new OptionListConfig<>("schematicBrowserColumns", FileBrowserColumns.MTIME, FileBrowserColumns.VALUES);
         public static final OptionListConfig<ToolSelectionMode>     TOOL_SELECTION_MODE         = new OptionListConfig<>("toolSelectionMode", ToolSelectionMode.CORNERS, ToolSelectionMode.VALUES);
 
         public static final ImmutableList<ConfigOption<?>> OPTIONS = ImmutableList.of(
                 AREAS_PER_WORLD,
+                BATCH_CONVERT_MAX_VOLUME,
+                BATCH_CONVERT_THREADS,
                 BETTER_RENDER_ORDER,
                 CHANGE_SELECTED_CORNER,
                 CLONE_AT_ORIGINAL_POS,
@@ -86,6 +101,8 @@ public class Configs
                 CUSTOM_SCHEMATIC_DIRECTORY,
                 DATE_FORMAT,
                 DEBUG_MESSAGES,
+                DECODED_SCHEMATIC_CACHE,
+                DECODED_SCHEMATIC_CACHE_SIZE,
                 DEFAULT_AREA_SELECTION_MODE,
                 EASY_PLACE_CLICK_ADJACENT,
                 EASY_PLACE_HOLD_ENABLED,
@@ -93,10 +110,16 @@ public class Configs
                 EXECUTE_REQUIRE_TOOL,
                 FIX_RAIL_ROTATION,
                 GENERATE_LOWERCASE_NAMES,
+                HUGE_SCHEMATIC_STORAGE,
+                HUGE_SCHEMATIC_THRESHOLD,
+                LAZY_REGION_LOADING,
                 LOAD_ENTIRE_SCHEMATICS,
                 MATERIAL_LIST_IGNORE_BLOCK_STATE,
                 MATERIALS_FROM_CONTAINER,
+                PARALLEL_BLOCK_COUNTING,
+                PARALLEL_SCHEMATIC_SAVE,
                 PASTE_REPLACE_BEHAVIOR,
+                PASTE_COMMAND_ADAPTIVE_RATE,
                 PASTE_COMMAND_INTERVAL,
                 PASTE_COMMAND_LIMIT,
                 PICK_BLOCK_AUTO,
@@ -112,6 +135,8 @@ public class Configs
                 RENDER_THREAD_NO_TIMEOUT,
                 REQUIRE_ADJACENT_CHUNKS,
                 SCHEMATIC_BROWSER_COLUMNS,
+                SCHEMATIC_DIRECTORY_INDEX,
+                SERVER_SIDE_SAVE_PER_CHUNK,
                 SIGN_TEXT_PASTE,
                 TOOL_ITEM_ENABLED,
                 TOOL_ITEM,
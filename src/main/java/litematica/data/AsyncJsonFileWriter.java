@@ -0,0 +1,196 @@
+package litematica.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonObject;
+
+import malilib.util.data.json.JsonUtils;
+import litematica.Litematica;
+import litematica.util.TempFileUtils;
+
+/**
+ * Writes the JSON data files on a background thread, so that saving the data
+ * of hundreds of placements and selections doesn't stall the game.
+ * <p>
+ * A file is only written if its data has changed since it was last written by this class,
+ * which is checked by comparing the JSON object against the last written one for equality. Multiple queued writes to the same file
+ * are coalesced into writing only the latest data. The files are first written to a temporary
+ * file which then replaces the actual file, so a crash during a write can't leave a truncated file.
+ * <p>
+ * The JSON objects passed in must not be modified afterwards, as they are kept for the comparisons.
+ */
+public class AsyncJsonFileWriter
+{
+    private static final AsyncJsonFileWriter INSTANCE = new AsyncJsonFileWriter();
+
+    protected final ExecutorService executor;
+    protected final ConcurrentHashMap<Path, PendingOperation> pendingOperations = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<Path, JsonObject> writtenData = new ConcurrentHashMap<>();
+
+    public static AsyncJsonFileWriter getInstance()
+    {
+        return INSTANCE;
+    }
+
+    protected AsyncJsonFileWriter()
+    {
+        this.executor = Executors.newSingleThreadExecutor((new ThreadFactoryBuilder()).setNameFormat("Litematica Data Writer").setDaemon(true).build());
+
+        // The writer thread is a daemon thread, so make sure the queued writes get done before the game exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> this.waitForPendingWrites(10000L), "Litematica Data Writer Shutdown"));
+    }
+
+    /**
+     * Queues the given data to be written to the given file, if it differs from the data
+     * that was last written to or read from the file via this class, or if the file doesn't exist.
+     * @return true if the write was queued, false if the data had not changed
+     */
+    public boolean writeIfChanged(Path file, JsonObject obj)
+    {
+        file = file.toAbsolutePath();
+
+        if (obj.equals(this.writtenData.get(file)) && Files.exists(file))
+        {
+            return false;
+        }
+
+        this.writtenData.put(file, obj);
+        this.queueOperation(file, new PendingOperation(obj));
+
+        return true;
+    }
+
+    /**
+     * Marks the given data as the current contents of the given file,
+     * for example after reading the data from the file, so that it doesn't get written again unchanged.
+     */
+    public void markAsWritten(Path file, JsonObject obj)
+    {
+        this.writtenData.put(file.toAbsolutePath(), obj);
+    }
+
+    /**
+     * Queues the given file to be deleted, after any writes to it that were queued before.
+     */
+    public void deleteFile(Path file)
+    {
+        file = file.toAbsolutePath();
+        this.writtenData.remove(file);
+        this.queueOperation(file, new PendingOperation(null));
+    }
+
+    /**
+     * Waits until all the operations queued before this call have been done.
+     * This should be called before reading any files that may have pending writes.
+     */
+    public void waitForPendingWrites(long timeoutMs)
+    {
+        try
+        {
+            this.executor.submit(() -> {}).get(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Timed out or failed while waiting for the data files to be written", e);
+        }
+    }
+
+    protected void queueOperation(Path file, PendingOperation operation)
+    {
+        // If there was already an operation queued for the file, then the queued task will use this latest one
+        if (this.pendingOperations.put(file, operation) == null)
+        {
+            this.executor.execute(() -> this.runPendingOperation(file));
+        }
+    }
+
+    protected void runPendingOperation(Path file)
+    {
+        PendingOperation operation = this.pendingOperations.remove(file);
+
+        if (operation == null)
+        {
+            return;
+        }
+
+        if (operation.data == null)
+        {
+            try
+            {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException e)
+            {
+                Litematica.logger.warn("Failed to delete the data file '{}'", file, e);
+            }
+        }
+        else if (this.writeAtomically(file, operation.data) == false)
+        {
+            // Make sure the next save tries again, unless newer data has been queued already
+            this.writtenData.remove(file, operation.data);
+        }
+    }
+
+    protected boolean writeAtomically(Path file, JsonObject obj)
+    {
+        Path tempFile = null;
+
+        try
+        {
+            Files.createDirectories(file.getParent());
+
+            // Use a unique temporary file, so that a stale or concurrently used one can't get in the way
+            tempFile = TempFileUtils.createTempFileFor(file);
+
+            if (JsonUtils.writeJsonToFile(obj, tempFile) == false)
+            {
+                Files.deleteIfExists(tempFile);
+                return false;
+            }
+
+            TempFileUtils.moveOver(tempFile, file);
+
+            return true;
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to write the data file '{}'", file, e);
+            deleteTempFile(tempFile);
+        }
+
+        return false;
+    }
+
+    protected static void deleteTempFile(@Nullable Path tempFile)
+    {
+        if (tempFile != null)
+        {
+            try
+            {
+                Files.deleteIfExists(tempFile);
+            }
+            catch (IOException e)
+            {
+                Litematica.logger.warn("Failed to delete the temporary file '{}'", tempFile, e);
+            }
+        }
+    }
+
+    protected static class PendingOperation
+    {
+        // The data to write, or null to delete the file
+        @Nullable protected final JsonObject data;
+
+        protected PendingOperation(@Nullable JsonObject data)
+        {
+            this.data = data;
+        }
+    }
+}
@@ -199,6 +199,9 @@ public class DataManager implements DirectoryCache
 
     public static void load(boolean isDimensionChange)
     {
+        // Make sure any data files from the previous save have been written before reading them
+        AsyncJsonFileWriter.getInstance().waitForPendingWrites(10000L);
+
         if (isDimensionChange == false)
         {
             loadPerWorldData();
@@ -219,6 +222,7 @@ public class DataManager implements DirectoryCache
         if (element != null && element.isJsonObject())
         {
             JsonObject root = element.getAsJsonObject();
+            AsyncJsonFileWriter.getInstance().markAsWritten(file, root);
 
             if (JsonUtils.hasString(root, "config_gui_tab"))
             {
@@ -268,14 +272,15 @@ public class DataManager implements DirectoryCache
         if (element != null && element.isJsonObject())
         {
             JsonObject root = element.getAsJsonObject();
-            this.fromJson(root);
+            AsyncJsonFileWriter.getInstance().markAsWritten(file, root);
+            this.fromJson(root, getPlacementStorageDirectory(file));
         }
     }
 
-    private void fromJson(JsonObject obj)
+    private void fromJson(JsonObject obj, Path placementDir)
     {
         JsonUtils.getObjectIfExists(obj, "selections", this.areaSelectionManager::loadFromJson);
-        JsonUtils.getObjectIfExists(obj, "placements", this.schematicPlacementManager::loadFromJson);
+        JsonUtils.getObjectIfExists(obj, "placements", o -> this.schematicPlacementManager.loadFromJson(o, placementDir));
         JsonUtils.getObjectIfExists(obj, "schematic_projects_manager", this.schematicProjectsManager::loadFromJson);
 
         if (JsonUtils.hasObject(obj, "render_range"))
@@ -322,7 +327,7 @@ public class DataManager implements DirectoryCache
         root.add("last_directories", objDirs);
 
         Path file = getCurrentStorageFile(true);
-        JsonUtils.writeJsonToFile(root, file);
+        AsyncJsonFileWriter.getInstance().writeIfChanged(file, root);
     }
 
     private void savePerDimensionData()
@@ -330,15 +335,15 @@ public class DataManager implements DirectoryCache
         this.schematicProjectsManager.saveCurrentProject();
 
         Path file = getCurrentStorageFile(false);
-        JsonUtils.writeJsonToFile(this.toJson(), file);
+        AsyncJsonFileWriter.getInstance().writeIfChanged(file, this.toJson(getPlacementStorageDirectory(file)));
     }
 
-    private JsonObject toJson()
+    private JsonObject toJson(Path placementDir)
     {
         JsonObject obj = new JsonObject();
 
         obj.add("selections", this.areaSelectionManager.toJson());
-        obj.add("placements", this.schematicPlacementManager.toJson());
+        obj.add("placements", this.schematicPlacementManager.savePlacementsToDirectory(placementDir));
         obj.add("schematic_projects_manager", this.schematicProjectsManager.toJson());
         obj.add("render_range", this.renderRange.toJson());
         obj.add("area_simple", this.areaSimple.toJson());
@@ -382,6 +387,15 @@ public class DataManager implements DirectoryCache
         return dir.resolve(getStorageFileName(globalData));
     }
 
+    /**
+     * @return the directory where the placements of the given per-dimension data file are saved, each in their own file
+     */
+    private static Path getPlacementStorageDirectory(Path dataFile)
+    {
+        String name = dataFile.getFileName().toString();
+        return dataFile.resolveSibling(name.substring(0, name.length() - 5) + "_placements");
+    }
+
     private static String getStorageFileName(boolean globalData)
     {
         return globalData ? "data_common.json" : "data_dim_" +
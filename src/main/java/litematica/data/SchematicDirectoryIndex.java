@@ -0,0 +1,735 @@
+package litematica.data;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import javax.annotation.Nullable;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.Vec3i;
+
+import malilib.gui.widget.list.BaseFileBrowserWidget.DirectoryEntry;
+import malilib.gui.widget.list.BaseFileBrowserWidget.DirectoryEntryType;
+import malilib.util.FileNameUtils;
+import malilib.util.data.Constants;
+import malilib.util.game.wrap.NbtWrap;
+import malilib.util.nbt.NbtUtils;
+import litematica.Litematica;
+import litematica.schematic.SchematicBase;
+import litematica.schematic.SchematicMetadata;
+import litematica.schematic.SchematicType;
+import litematica.util.NbtStreamReader;
+import litematica.util.PositionUtils;
+
+/**
+ * A persistent index of the schematic files in the schematic directory tree.
+ * The tree is scanned once on a background thread, and then kept up to date
+ * via WatchService events, so the schematic browsers don't need to check every
+ * file on the disk each time a directory is opened.
+ * The metadata of the schematics is read in the background after the scan,
+ * which allows filtering and searching the schematics by their metadata without any file reads.
+ * The preview images are kept in a separate LRU cache, as they are by far the largest part of the metadata.
+ * <p>
+ * All the data of the watched directory tree is kept in one {@link IndexState} object per
+ * {@link #startWatching(Path)} call. The background thread only ever publishes to the state it
+ * was started with, so a thread that is still finishing after {@link #stopWatching()}
+ * can't leak its results into the index of a later watched directory.
+ */
+public class SchematicDirectoryIndex
+{
+    private static final SchematicDirectoryIndex INSTANCE = new SchematicDirectoryIndex();
+    private static final int MAX_CACHED_THUMBNAILS = 256;
+
+    protected volatile IndexState state = new IndexState(null);
+    @Nullable protected WatchService watchService;
+
+    public static SchematicDirectoryIndex getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts indexing and watching the given directory tree, unless it's already being watched.
+     * If a different directory was being watched, then that index is discarded.
+     */
+    public synchronized void startWatching(Path rootDirectory)
+    {
+        rootDirectory = normalize(rootDirectory);
+
+        if (rootDirectory.equals(this.state.rootDirectory) && this.watchService != null)
+        {
+            return;
+        }
+
+        this.stopWatching();
+
+        try
+        {
+            WatchService watchService = FileSystems.getDefault().newWatchService();
+            IndexState state = new IndexState(rootDirectory);
+            Thread thread = new Thread(() -> state.run(watchService), "Litematica Schematic Index");
+
+            this.state = state;
+            this.watchService = watchService;
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+        catch (IOException e)
+        {
+            Litematica.logger.warn("Failed to start watching the schematic directory '{}'", rootDirectory, e);
+        }
+    }
+
+    public synchronized void stopWatching()
+    {
+        if (this.watchService != null)
+        {
+            try
+            {
+                // This ends the background thread
+                this.watchService.close();
+            }
+            catch (IOException ignore) {}
+        }
+
+        // The old thread may still finish its current scan or metadata read, but that only goes to the old state
+        this.watchService = null;
+        this.state = new IndexState(null);
+    }
+
+    /**
+     * @return true if the given file is in the indexed directory tree, and the initial scan has finished
+     */
+    public boolean isIndexed(Path file)
+    {
+        return this.state.isIndexed(file);
+    }
+
+    /**
+     * A replacement for {@link SchematicType#SCHEMATIC_FILE_FILTER} for the schematic browsers,
+     * which answers from the index for the files in the indexed directory tree.
+     */
+    public boolean isSchematicFile(Path file)
+    {
+        IndexState state = this.state;
+
+        if (state.isIndexed(file) == false)
+        {
+            return SchematicType.SCHEMATIC_FILE_FILTER.test(file);
+        }
+
+        if (state.entries.containsKey(normalize(file)))
+        {
+            return true;
+        }
+
+        // A file that was just created may not have been indexed via the watch events yet.
+        // Only check the file on the disk if it has a schematic file extension.
+        if (SchematicType.getPossibleTypesFromFileName(file).isEmpty() == false &&
+            SchematicType.SCHEMATIC_FILE_FILTER.test(file))
+        {
+            state.addOrUpdateFile(normalize(file));
+            return true;
+        }
+
+        return false;
+    }
+
+    @Nullable
+    public Entry getEntry(Path file)
+    {
+        return this.state.entries.get(normalize(file));
+    }
+
+    /**
+     * @return the metadata of the given schematic, without the preview image, or null if it hasn't been read yet
+     */
+    @Nullable
+    public SchematicMetadata getMetadata(Path file)
+    {
+        Entry entry = this.getEntry(file);
+        return entry != null ? entry.metadata : null;
+    }
+
+    /**
+     * @return the preview image of the given schematic, reading it from the file if it's not in the cache
+     */
+    @Nullable
+    public int[] getThumbnail(Path file)
+    {
+        IndexState state = this.state;
+        file = normalize(file);
+        Entry entry = state.entries.get(file);
+
+        if (entry == null || entry.hasThumbnail == false)
+        {
+            return null;
+        }
+
+        synchronized (state.thumbnails)
+        {
+            int[] pixelData = state.thumbnails.get(file);
+
+            if (pixelData != null)
+            {
+                return pixelData;
+            }
+        }
+
+        SchematicMetadata metadata = readMetadata(file);
+        int[] pixelData = metadata != null ? metadata.getPreviewImagePixelData() : null;
+
+        if (pixelData != null)
+        {
+            synchronized (state.thumbnails)
+            {
+                state.thumbnails.put(file, pixelData);
+            }
+        }
+
+        return pixelData;
+    }
+
+    /**
+     * Search filter for the schematic browsers, which matches the files by their indexed metadata.
+     * See {@link #createSearchFilter(List)} for the supported search terms.
+     */
+    public boolean directoryEntrySearchFilter(DirectoryEntry entry, List<String> searchTerms)
+    {
+        if (entry.getType() == DirectoryEntryType.DIRECTORY)
+        {
+            String name = entry.getName().toLowerCase(Locale.ROOT);
+            return searchTerms.stream().anyMatch(name::contains);
+        }
+
+        Entry indexEntry = this.getEntry(entry.getFullPath());
+
+        if (indexEntry == null)
+        {
+            String name = entry.getName().toLowerCase(Locale.ROOT);
+            return searchTerms.stream().anyMatch(name::contains);
+        }
+
+        return createSearchFilter(searchTerms).test(indexEntry);
+    }
+
+    /**
+     * Creates a filter from the given lower case search terms.
+     * The plain terms are matched against the schematic name, the author and the file name,
+     * and at least one of them must match. Terms in the form {@code author:<text>} and {@code name:<text>}
+     * only match the author or the name. Terms in the form {@code blocks<N}, {@code blocks>N},
+     * {@code volume<N}, {@code volume>N}, {@code size<N} and {@code size>N} compare the block count,
+     * the volume or the largest dimension of the enclosing box, and all of them must match.
+     */
+    public static Predicate<Entry> createSearchFilter(List<String> searchTerms)
+    {
+        List<String> plainTerms = new ArrayList<>();
+        List<Predicate<Entry>> requiredFilters = new ArrayList<>();
+
+        for (String term : searchTerms)
+        {
+            Predicate<Entry> filter = createTermFilter(term);
+
+            if (filter != null)
+            {
+                requiredFilters.add(filter);
+            }
+            else
+            {
+                plainTerms.add(term);
+            }
+        }
+
+        return (entry) -> {
+            for (Predicate<Entry> filter : requiredFilters)
+            {
+                if (filter.test(entry) == false)
+                {
+                    return false;
+                }
+            }
+
+            if (plainTerms.isEmpty())
+            {
+                return true;
+            }
+
+            SchematicMetadata meta = entry.metadata;
+
+            for (String term : plainTerms)
+            {
+                if (entry.lowerCaseFileName.contains(term) ||
+                    (meta != null && (meta.getName().toLowerCase(Locale.ROOT).contains(term) ||
+                                      meta.getAuthor().toLowerCase(Locale.ROOT).contains(term))))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        };
+    }
+
+    @Nullable
+    protected static Predicate<Entry> createTermFilter(String term)
+    {
+        if (term.startsWith("author:") && term.length() > 7)
+        {
+            String value = term.substring(7);
+            return (e) -> e.metadata != null && e.metadata.getAuthor().toLowerCase(Locale.ROOT).contains(value);
+        }
+
+        if (term.startsWith("name:") && term.length() > 5)
+        {
+            String value = term.substring(5);
+            return (e) -> e.metadata != null && e.metadata.getName().toLowerCase(Locale.ROOT).contains(value);
+        }
+
+        int index = Math.max(term.indexOf('<'), term.indexOf('>'));
+
+        if (index <= 0 || index == term.length() - 1)
+        {
+            return null;
+        }
+
+        final long value;
+
+        try
+        {
+            value = Long.parseLong(term.substring(index + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+
+        final boolean lessThan = term.charAt(index) == '<';
+        final String key = term.substring(0, index);
+        final ToLongFunction<SchematicMetadata> getter;
+
+        switch (key)
+        {
+            case "blocks":  getter = SchematicMetadata::getTotalBlocks; break;
+            case "volume":  getter = SchematicMetadata::getTotalVolume; break;
+            case "size":    getter = SchematicDirectoryIndex::getLargestDimension; break;
+            default:        return null;
+        }
+
+        return (e) -> {
+            if (e.metadata == null)
+            {
+                return false;
+            }
+
+            long v = getter.applyAsLong(e.metadata);
+            return v >= 0 && (lessThan ? v < value : v > value);
+        };
+    }
+
+    protected static long getLargestDimension(SchematicMetadata meta)
+    {
+        Vec3i size = meta.getEnclosingSize();
+        return Math.max(Math.abs(size.getX()), Math.max(Math.abs(size.getY()), Math.abs(size.getZ())));
+    }
+
+    /**
+     * Reads the metadata of the given schematic file. Only the metadata tag, and for the single region
+     * schematic formats also the size tags, are read from the file, without building the block data into tags.
+     * For the other formats than Litematica schematics the block count is thus only available
+     * if the file has it stored in its metadata tag.
+     */
+    @Nullable
+    public static SchematicMetadata readMetadata(Path file)
+    {
+        List<SchematicType<?>> possibleTypes = SchematicType.getPossibleTypesFromFileName(file);
+
+        if (possibleTypes.size() == 1 && possibleTypes.get(0) == SchematicType.LITEMATICA)
+        {
+            NBTBase tag = NbtStreamReader.readRootEntryFromFile(file, "Metadata");
+
+            if (tag instanceof NBTTagCompound)
+            {
+                SchematicMetadata metadata = new SchematicMetadata();
+                metadata.fromTag((NBTTagCompound) tag);
+                return metadata;
+            }
+
+            return null;
+        }
+
+        NBTTagCompound tag = NbtStreamReader.readRootEntriesFromFile(file, "Metadata", "Width", "Height", "Length", "size", "author");
+        Vec3i size = tag != null ? readSingleRegionSize(tag) : null;
+
+        if (SchematicBase.isSizeValid(size) == false)
+        {
+            return null;
+        }
+
+        SchematicMetadata metadata = new SchematicMetadata();
+        metadata.setRegionCount(1);
+        metadata.setEnclosingSize(size);
+        metadata.setTotalVolume(PositionUtils.getAreaVolume(size));
+
+        // Vanilla structures
+        if (NbtWrap.containsString(tag, "author"))
+        {
+            metadata.setAuthor(NbtWrap.getString(tag, "author"));
+        }
+
+        if (NbtWrap.containsCompound(tag, "Metadata"))
+        {
+            NBTTagCompound metaTag = NbtWrap.getCompound(tag, "Metadata");
+            metadata.fromTag(metaTag);
+
+            // Sponge schematics
+            if (NbtWrap.containsLong(metaTag, "Date") && metadata.getTimeCreated() <= 0)
+            {
+                long time = NbtWrap.getLong(metaTag, "Date");
+                metadata.setTimeCreated(time);
+                metadata.setTimeModified(time);
+            }
+        }
+
+        return metadata;
+    }
+
+    /**
+     * @return the size of a Vanilla structure, or a Schematica or Sponge schematic,
+     *         from the given tag with the size entries of the file's root tag
+     */
+    @Nullable
+    protected static Vec3i readSingleRegionSize(NBTTagCompound tag)
+    {
+        if (NbtWrap.containsList(tag, "size"))
+        {
+            return NbtUtils.readBlockPosFromListTag(tag, "size");
+        }
+
+        if (NbtWrap.contains(tag, "Width", Constants.NBT.TAG_ANY_NUMERIC) &&
+            NbtWrap.contains(tag, "Height", Constants.NBT.TAG_ANY_NUMERIC) &&
+            NbtWrap.contains(tag, "Length", Constants.NBT.TAG_ANY_NUMERIC))
+        {
+            return new Vec3i(NbtWrap.getInt(tag, "Width"), NbtWrap.getInt(tag, "Height"), NbtWrap.getInt(tag, "Length"));
+        }
+
+        return null;
+    }
+
+    protected static Path normalize(Path path)
+    {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * The index data of one watched directory tree, see the class comment
+     */
+    protected static class IndexState
+    {
+        @Nullable protected final Path rootDirectory;
+        protected final ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+        protected final ConcurrentLinkedQueue<Path> metadataQueue = new ConcurrentLinkedQueue<>();
+        protected final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+        protected final LinkedHashMap<Path, int[]> thumbnails = new LinkedHashMap<Path, int[]>(64, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, int[]> eldest)
+            {
+                return this.size() > MAX_CACHED_THUMBNAILS;
+            }
+        };
+        protected volatile boolean initialScanDone;
+
+        protected IndexState(@Nullable Path rootDirectory)
+        {
+            this.rootDirectory = rootDirectory;
+        }
+
+        protected boolean isIndexed(Path file)
+        {
+            return this.initialScanDone && this.rootDirectory != null && normalize(file).startsWith(this.rootDirectory);
+        }
+
+        protected void run(WatchService watchService)
+        {
+            try
+            {
+                this.scanDirectory(watchService, this.rootDirectory);
+                this.initialScanDone = true;
+                Litematica.printDebug("Schematic index: indexed %d schematics in '%s'", this.entries.size(), this.rootDirectory);
+
+                while (true)
+                {
+                    // Read the metadata one file at a time in the background, while still reacting to changes quickly
+                    WatchKey key = this.metadataQueue.isEmpty() ? watchService.poll(1, TimeUnit.SECONDS) : watchService.poll();
+
+                    if (key != null)
+                    {
+                        this.processEvents(watchService, key);
+                    }
+                    else
+                    {
+                        this.readQueuedMetadata();
+                    }
+                }
+            }
+            catch (ClosedWatchServiceException | InterruptedException ignore)
+            {
+            }
+            catch (Exception e)
+            {
+                Litematica.logger.warn("Schematic index: stopped watching the directory '{}'", this.rootDirectory, e);
+            }
+        }
+
+        protected void scanDirectory(WatchService watchService, Path dir) throws IOException
+        {
+            this.scanDirectory(watchService, dir, (file) -> {});
+        }
+
+        /**
+         * @param fileVisitor called for each schematic file found during the scan
+         */
+        protected void scanDirectory(WatchService watchService, Path dir, Consumer<Path> fileVisitor) throws IOException
+        {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+                {
+                    WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+                    synchronized (IndexState.this.watchedDirectories)
+                    {
+                        IndexState.this.watchedDirectories.put(key, normalize(dir));
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                {
+                    // The extension check is just a string comparison, so it's done first
+                    if (attrs.isRegularFile() && SchematicType.getPossibleTypesFromFileName(file).isEmpty() == false)
+                    {
+                        Path normalizedFile = normalize(file);
+                        IndexState.this.addFile(normalizedFile, attrs.size(), attrs.lastModifiedTime().toMillis());
+                        fileVisitor.accept(normalizedFile);
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e)
+                {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        protected void processEvents(WatchService watchService, WatchKey key) throws IOException
+        {
+            Path dir;
+
+            synchronized (this.watchedDirectories)
+            {
+                dir = this.watchedDirectories.get(key);
+            }
+
+            for (WatchEvent<?> event : key.pollEvents())
+            {
+                WatchEvent.Kind<?> kind = event.kind();
+
+                if (kind == StandardWatchEventKinds.OVERFLOW)
+                {
+                    // Some events were lost, so the only option is to re-scan everything
+                    this.rescan(watchService);
+                    continue;
+                }
+
+                if (dir == null)
+                {
+                    continue;
+                }
+
+                Path path = dir.resolve((Path) event.context());
+
+                if (kind == StandardWatchEventKinds.ENTRY_DELETE)
+                {
+                    this.removePath(path);
+                }
+                else if (Files.isDirectory(path))
+                {
+                    if (kind == StandardWatchEventKinds.ENTRY_CREATE)
+                    {
+                        this.scanDirectory(watchService, path);
+                    }
+                }
+                else if (SchematicType.getPossibleTypesFromFileName(path).isEmpty() == false)
+                {
+                    this.addOrUpdateFile(path);
+                }
+            }
+
+            if (key.reset() == false)
+            {
+                synchronized (this.watchedDirectories)
+                {
+                    this.watchedDirectories.remove(key);
+                }
+            }
+        }
+
+        /**
+         * Scans the whole directory tree again. The existing entries stay in the index during the scan,
+         * so the browsers keep getting answers from the index. The scan adds or updates the existing files,
+         * and the entries of the files that weren't found anymore are removed afterwards.
+         */
+        protected void rescan(WatchService watchService) throws IOException
+        {
+            Set<Path> oldFiles = new HashSet<>(this.entries.keySet());
+
+            this.scanDirectory(watchService, this.rootDirectory, oldFiles::remove);
+            oldFiles.forEach(this::removePath);
+        }
+
+        protected void addOrUpdateFile(Path file)
+        {
+            try
+            {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+
+                if (attrs.isRegularFile())
+                {
+                    this.addFile(file, attrs.size(), attrs.lastModifiedTime().toMillis());
+                }
+            }
+            catch (IOException e)
+            {
+                this.removePath(file);
+            }
+        }
+
+        protected void addFile(Path file, long size, long lastModified)
+        {
+            Entry old = this.entries.get(file);
+
+            if (old != null && old.fileSize == size && old.lastModified == lastModified)
+            {
+                return;
+            }
+
+            this.entries.put(file, new Entry(file, size, lastModified));
+            this.metadataQueue.add(file);
+
+            synchronized (this.thumbnails)
+            {
+                this.thumbnails.remove(file);
+            }
+        }
+
+        /**
+         * Removes the given file, or all the files under the given path if it was a directory
+         */
+        protected void removePath(Path path)
+        {
+            Collection<Path> files = this.entries.keySet();
+
+            if (this.entries.remove(path) == null)
+            {
+                files.removeIf(p -> p.startsWith(path));
+            }
+
+            synchronized (this.thumbnails)
+            {
+                this.thumbnails.keySet().removeIf(p -> p.startsWith(path));
+            }
+        }
+
+        protected void readQueuedMetadata()
+        {
+            Path file = this.metadataQueue.poll();
+            Entry entry = file != null ? this.entries.get(file) : null;
+
+            if (entry == null || entry.metadata != null)
+            {
+                return;
+            }
+
+            SchematicMetadata metadata = readMetadata(file);
+
+            if (metadata != null)
+            {
+                int[] pixelData = metadata.getPreviewImagePixelData();
+
+                if (pixelData != null)
+                {
+                    synchronized (this.thumbnails)
+                    {
+                        this.thumbnails.put(file, pixelData);
+                    }
+
+                    metadata.setPreviewImagePixelData(null);
+                    entry.hasThumbnail = true;
+                }
+
+                entry.metadata = metadata;
+            }
+        }
+    }
+
+    public static class Entry
+    {
+        public final Path file;
+        public final long fileSize;
+        public final long lastModified;
+        protected final String lowerCaseFileName;
+        @Nullable protected volatile SchematicMetadata metadata;
+        protected volatile boolean hasThumbnail;
+
+        protected Entry(Path file, long fileSize, long lastModified)
+        {
+            this.file = file;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.lowerCaseFileName = FileNameUtils.getFileNameWithoutExtension(file.getFileName().toString()).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @return the metadata of the schematic, without the preview image, or null if it hasn't been read yet
+         */
+        @Nullable
+        public SchematicMetadata getMetadata()
+        {
+            return this.metadata;
+        }
+    }
+}
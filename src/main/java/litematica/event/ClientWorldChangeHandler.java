@@ -5,6 +5,8 @@ import javax.annotation.Nullable;
 import net.minecraft.client.multiplayer.WorldClient;
 
 import litematica.data.DataManager;
+import litematica.materials.MaterialCache;
+import litematica.util.EasyPlaceUtils;
 import litematica.world.SchematicWorldHandler;
 
 public class ClientWorldChangeHandler implements malilib.event.ClientWorldChangeHandler
@@ -17,6 +19,11 @@ public class ClientWorldChangeHandler implements malilib.event.ClientWorldChange
         {
             boolean isDimensionChange = worldAfter != null;
             DataManager.save(isDimensionChange);
+
+            if (worldAfter == null)
+            {
+                MaterialCache.getInstance().writeToFile();
+            }
         }
     }
 
@@ -24,11 +31,13 @@ public class ClientWorldChangeHandler implements malilib.event.ClientWorldChange
     public void onPostClientWorldChange(@Nullable WorldClient worldBefore, @Nullable WorldClient worldAfter)
     {
         SchematicWorldHandler.recreateSchematicWorld(worldAfter == null);
+        EasyPlaceUtils.clearPlacementPlan();
 
         if (worldAfter != null)
         {
             boolean isDimensionChange = worldBefore != null;
             DataManager.load(isDimensionChange);
+            MaterialCache.getInstance().startWarmUp();
         }
         else
         {
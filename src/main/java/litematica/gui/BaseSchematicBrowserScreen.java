@@ -11,6 +11,7 @@ import malilib.gui.widget.list.BaseFileBrowserWidget.DirectoryEntry;
 import malilib.util.StringUtils;
 import litematica.config.Configs;
 import litematica.data.DataManager;
+import litematica.data.SchematicDirectoryIndex;
 import litematica.gui.util.SchematicBrowserIconProvider;
 import litematica.gui.widget.SchematicInfoWidgetByPath;
 import litematica.schematic.ISchematic;
@@ -78,7 +79,19 @@ public class BaseSchematicBrowserScreen extends BaseListScreen<BaseFileBrowserWi
 
     public static void setCommonSchematicBrowserSettings(BaseFileBrowserWidget listWidget)
     {
-        listWidget.setFileFilter(SchematicType.SCHEMATIC_FILE_FILTER);
+        if (Configs.Generic.SCHEMATIC_DIRECTORY_INDEX.getBooleanValue())
+        {
+            SchematicDirectoryIndex index = SchematicDirectoryIndex.getInstance();
+            index.startWatching(LitematicaDirectories.getSchematicsBaseDirectory());
+            listWidget.setFileFilter(index::isSchematicFile);
+            listWidget.setEntryFilter(index::directoryEntrySearchFilter);
+        }
+        else
+        {
+            SchematicDirectoryIndex.getInstance().stopWatching();
+            listWidget.setFileFilter(SchematicType.SCHEMATIC_FILE_FILTER);
+        }
+
         listWidget.setRootDirectoryDisplayName(StringUtils.translate("litematica.label.schematic_browser.schematics"));
 
         FileBrowserColumns mode = Configs.Generic.SCHEMATIC_BROWSER_COLUMNS.getValue();
@@ -2,7 +2,9 @@ package litematica.gui;
 
 import java.nio.file.Path;
 import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.function.Supplier;
 
@@ -19,6 +21,8 @@ import malilib.gui.widget.list.DataListWidget;
 import malilib.gui.widget.list.header.ColumnizedDataListHeaderWidget;
 import malilib.gui.widget.list.header.DataListHeaderWidget;
 import malilib.overlay.message.MessageDispatcher;
+import malilib.util.FileNameUtils;
+import malilib.util.FileUtils;
 import malilib.util.StringUtils;
 import malilib.util.datadump.DataDump;
 import malilib.util.datadump.DataDump.Format;
@@ -30,7 +34,11 @@ import litematica.materials.MaterialListBase;
 import litematica.materials.MaterialListEntry;
 import litematica.materials.MaterialListHudRenderer;
 import litematica.materials.MaterialListUtils;
+import litematica.materials.MaterialReportWriter;
 import litematica.render.infohud.InfoHud;
+import litematica.scheduler.TaskScheduler;
+import litematica.scheduler.tasks.TaskExportMaterialReport;
+import litematica.schematic.ISchematic;
 import litematica.util.LitematicaDirectories;
 import litematica.util.value.BlockInfoListType;
 
@@ -45,6 +53,7 @@ public class MaterialListScreen extends BaseListScreen<DataListWidget<MaterialLi
     protected final GenericButton clearCacheButton;
     protected final GenericButton clearIgnoredButton;
     protected final GenericButton exportButton;
+    protected final GenericButton exportReportButton;
     protected final GenericButton hiveAvailableButton;
     protected final GenericButton hudButton;
     protected final GenericButton mainMenuButton;
@@ -65,6 +74,7 @@ public class MaterialListScreen extends BaseListScreen<DataListWidget<MaterialLi
         this.clearCacheButton   = GenericButton.create(18, "litematica.button.material_list.clear_cache", this::clearCache);
         this.clearIgnoredButton = GenericButton.create(18, "litematica.button.material_list.clear_ignored", this::clearIgnored);
         this.exportButton       = GenericButton.create(18, "litematica.button.material_list.export_to_file", this::exportToFile);
+        this.exportReportButton = GenericButton.create(18, "litematica.button.material_list.export_report", this::exportReportToFile);
         this.mainMenuButton     = GenericButton.create(18, "litematica.button.change_menu.main_menu", MainMenuScreen::openMainMenuScreen);
         this.refreshButton      = GenericButton.create(18, "litematica.button.material_list.refresh", this::refreshList);
         this.scopeButton        = GenericButton.create(18, this::getScopeButtonDisplayName, this::toggleScope);
@@ -78,6 +88,7 @@ public class MaterialListScreen extends BaseListScreen<DataListWidget<MaterialLi
 
         this.clearCacheButton.translateAndAddHoverString("litematica.hover.button.material_list.clear_cache");
         this.exportButton.translateAndAddHoverString("litematica.hover.button.material_list.export_shift_for_csv");
+        this.exportReportButton.translateAndAddHoverString("litematica.hover.button.material_list.export_report");
         this.multiplierEditor.getTextField().translateAndAddHoverString("litematica.hover.material_list.multiplier");
 
         MaterialListUtils.updateAvailableCounts(this.materialList.getAllMaterials());
@@ -103,6 +114,12 @@ public class MaterialListScreen extends BaseListScreen<DataListWidget<MaterialLi
         this.addWidget(this.clearCacheButton);
         this.addWidget(this.clearIgnoredButton);
         this.addWidget(this.exportButton);
+
+        if (this.materialList.getSchematic() != null)
+        {
+            this.addWidget(this.exportReportButton);
+        }
+
         this.addWidget(this.hiveAvailableButton);
         this.addWidget(this.hudButton);
         this.addWidget(this.mainMenuButton);
@@ -128,6 +145,7 @@ public class MaterialListScreen extends BaseListScreen<DataListWidget<MaterialLi
         this.clearIgnoredButton.setPosition(this.refreshButton.getRight() + 2, y);
         this.clearCacheButton.setPosition(this.clearIgnoredButton.getRight() + 2, y);
         this.exportButton.setPosition(this.clearCacheButton.getRight() + 2, y);
+        this.exportReportButton.setPosition(this.exportButton.getRight() + 2, y);
 
         this.multiplierEditor.setRight(this.getListWidget().getRight() - 2);
         this.multiplierEditor.setBottom(this.getListY() - 2);
@@ -226,6 +244,33 @@ public class MaterialListScreen extends BaseListScreen<DataListWidget<MaterialLi
         }
     }
 
+    protected void exportReportToFile()
+    {
+        ISchematic schematic = this.materialList.getSchematic();
+
+        if (schematic == null)
+        {
+            return;
+        }
+
+        MaterialReportWriter.Format format = BaseScreen.isShiftDown() ? MaterialReportWriter.Format.JSON : MaterialReportWriter.Format.CSV;
+        Path dir = LitematicaDirectories.getMaterialListDirectory();
+
+        if (FileUtils.createDirectoriesIfMissing(dir) == false)
+        {
+            MessageDispatcher.error().translate("litematica.message.error.material_report.write_failed", dir.toAbsolutePath().toString());
+            return;
+        }
+
+        String date = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date());
+        String name = FileNameUtils.generateSimpleSafeFileName(this.materialList.getName());
+        Path file = dir.resolve("material_report_" + name + "_" + date + format.getExtension());
+
+        TaskExportMaterialReport task = new TaskExportMaterialReport(schematic, this.materialList.getSchematicRegionNames(), file, format);
+        TaskScheduler.getInstanceClient().scheduleTask(task, 1);
+        MessageDispatcher.generic("litematica.message.info.material_report.started");
+    }
+
     protected void refreshList()
     {
         this.materialList.reCreateMaterialList();
@@ -178,8 +178,17 @@ public class SaveSchematicFromAreaScreen extends BaseSaveSchematicScreen
 
     protected void saveSchematicOnServer(SchematicSaveSettings settings, Path file, boolean overwrite)
     {
-        SchematicSavePacketHandler.INSTANCE.requestSchematicSaveAllAtOnce(this.selection, settings,
-                                                                          sch -> this.writeSchematicToFile(sch, file, overwrite));
+        // The per-chunk streaming needs a server side that implements it, so it's opt-in for now
+        if (Configs.Generic.SERVER_SIDE_SAVE_PER_CHUNK.getBooleanValue())
+        {
+            SchematicSavePacketHandler.INSTANCE.requestSchematicSavePerChunk(this.selection, settings,
+                                                                             sch -> this.writeSchematicToFile(sch, file, overwrite));
+        }
+        else
+        {
+            SchematicSavePacketHandler.INSTANCE.requestSchematicSaveAllAtOnce(this.selection, settings,
+                                                                              sch -> this.writeSchematicToFile(sch, file, overwrite));
+        }
     }
 
     protected void writeSchematicToFile(ISchematic schematic, Path file, boolean overwrite)
@@ -188,15 +197,19 @@ public class SaveSchematicFromAreaScreen extends BaseSaveSchematicScreen
 
         SchematicCreationUtils.setSchematicMetadataOnCreation(schematic, this.selection.getName());
 
-        if (schematic.writeToFile(file, overwrite))
-        {
-            this.onSchematicSaved(fileName);
-        }
-        else
-        {
-            SchematicHolder.getInstance().addSchematic(schematic, false);
-            MessageDispatcher.error("litematica.message.error.save_schematic.failed_to_save_from_area", fileName);
-        }
+        // The data is snapshotted right away, and the serialization and compression
+        // happen on the worker pool, so that big schematics don't freeze the game while saving
+        schematic.writeToFileAsync(file, overwrite).thenAccept(success -> GameUtils.getClient().addScheduledTask(() -> {
+            if (success)
+            {
+                this.onSchematicSaved(fileName);
+            }
+            else
+            {
+                SchematicHolder.getInstance().addSchematic(schematic, false);
+                MessageDispatcher.error("litematica.message.error.save_schematic.failed_to_save_from_area", fileName);
+            }
+        }));
     }
 
     protected void onSchematicSaved(String fileName)
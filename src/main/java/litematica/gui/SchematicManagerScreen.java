@@ -7,6 +7,8 @@ import javax.annotation.Nullable;
 
 import malilib.gui.ConfirmActionScreen;
 import malilib.gui.TextInputScreen;
+import malilib.gui.widget.DropDownListWidget;
+import malilib.gui.widget.IconWidget;
 import malilib.gui.widget.button.GenericButton;
 import malilib.gui.widget.list.BaseFileBrowserWidget;
 import malilib.gui.widget.list.BaseFileBrowserWidget.DirectoryEntry;
@@ -19,6 +21,7 @@ import litematica.data.DataManager;
 import litematica.data.SchematicHolder;
 import litematica.scheduler.TaskScheduler;
 import litematica.scheduler.tasks.SetSchematicPreviewTask;
+import litematica.scheduler.tasks.TaskBatchConvertSchematics;
 import litematica.schematic.ISchematic;
 import litematica.schematic.SchematicMetadata;
 import litematica.schematic.SchematicType;
@@ -27,6 +30,8 @@ import litematica.schematic.placement.SchematicPlacementManager;
 
 public class SchematicManagerScreen extends BaseSchematicBrowserScreen
 {
+    protected final DropDownListWidget<SchematicType<?>> batchConvertTypeDropdown;
+    protected final GenericButton batchConvertButton;
     protected final GenericButton convertSchematicButton;
     protected final GenericButton deleteFileButton;
     protected final GenericButton editDescriptionButton;
@@ -39,6 +44,7 @@ public class SchematicManagerScreen extends BaseSchematicBrowserScreen
     {
         super(10, 24, 20 + 170 + 2, 70, "schematic_manager");
 
+        this.batchConvertButton     = GenericButton.create("litematica.button.schematic_manager.batch_convert", this::batchConvertDirectory);
         this.convertSchematicButton = GenericButton.create("litematica.button.schematic_manager.convert_format", this::convertSchematic);
         this.deleteFileButton       = GenericButton.create("litematica.button.schematic_manager.delete", this::deleteFile);
         this.editDescriptionButton  = GenericButton.create("litematica.button.schematic_manager.edit_description", this::editDescription);
@@ -47,11 +53,15 @@ public class SchematicManagerScreen extends BaseSchematicBrowserScreen
         this.renameSchematicButton  = GenericButton.create("litematica.button.schematic_manager.rename_schematic", this::renameSchematic);
         this.setPreviewButton       = GenericButton.create("litematica.button.schematic_manager.set_preview", this::setPreview);
 
+        this.batchConvertButton.translateAndAddHoverString("litematica.hover.button.schematic_manager.batch_convert");
         this.convertSchematicButton.translateAndAddHoverString("litematica.hover.button.schematic_manager.convert_format");
         this.editDescriptionButton.translateAndAddHoverString("litematica.hover.button.schematic_manager.set_description");
         this.renameSchematicButton.translateAndAddHoverString("litematica.hover.button.schematic_manager.rename_schematic");
         this.setPreviewButton.translateAndAddHoverString("litematica.hover.button.schematic_manager.set_preview");
 
+        this.batchConvertTypeDropdown = new DropDownListWidget<>(18, 6, SchematicType.KNOWN_TYPES, SchematicType::getDisplayName, (e) -> new IconWidget(e.getIcon()));
+        this.batchConvertTypeDropdown.setSelectedEntry(SchematicType.LITEMATICA);
+
         this.setTitle("litematica.title.screen.schematic_manager", Reference.MOD_VERSION);
     }
 
@@ -60,6 +70,9 @@ public class SchematicManagerScreen extends BaseSchematicBrowserScreen
     {
         super.reAddActiveWidgets();
 
+        this.addWidget(this.batchConvertTypeDropdown);
+        this.addWidget(this.batchConvertButton);
+
         DirectoryEntry entry = this.getListWidget().getLastSelectedEntry();
 
         if (entry != null)
@@ -89,6 +102,8 @@ public class SchematicManagerScreen extends BaseSchematicBrowserScreen
         this.renameSchematicButton.setPosition(this.x + 10, y);
         this.setPreviewButton.setPosition(this.renameSchematicButton.getRight() + 2, y);
         this.editDescriptionButton.setPosition(this.setPreviewButton.getRight() + 2, y);
+        this.batchConvertTypeDropdown.setPosition(this.editDescriptionButton.getRight() + 12, y + 1);
+        this.batchConvertButton.setPosition(this.batchConvertTypeDropdown.getRight() + 2, y);
 
         y += 21;
         this.renameFileButton.setPosition(this.x + 10, y);
@@ -124,6 +139,26 @@ public class SchematicManagerScreen extends BaseSchematicBrowserScreen
         }
     }
 
+    /**
+     * Converts all the schematics in the current directory and its sub-directories
+     * into the selected format, into a new sub-directory
+     */
+    protected void batchConvertDirectory()
+    {
+        SchematicType<?> outputType = this.batchConvertTypeDropdown.getSelectedEntry();
+
+        if (outputType != null)
+        {
+            Path dir = this.getListWidget().getCurrentDirectory();
+            Path outputDir = dir.resolve("converted_" + outputType.getFileNameExtension().substring(1));
+
+            TaskBatchConvertSchematics task = new TaskBatchConvertSchematics(dir, outputDir, outputType, false);
+            TaskScheduler.getInstanceClient().scheduleTask(task, 10);
+
+            MessageDispatcher.generic("litematica.message.info.batch_convert.started", outputDir.toAbsolutePath().toString());
+        }
+    }
+
     protected void deleteFile()
     {
         DirectoryEntry entry = this.getListWidget().getLastSelectedEntry();
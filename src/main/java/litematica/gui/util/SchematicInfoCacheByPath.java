@@ -5,15 +5,12 @@ import java.util.Locale;
 import javax.annotation.Nullable;
 
 import net.minecraft.client.renderer.texture.DynamicTexture;
-import net.minecraft.nbt.NBTTagCompound;
 
 import malilib.util.FileNameUtils;
 import malilib.util.data.Identifier;
-import malilib.util.nbt.NbtUtils;
 import litematica.Reference;
-import litematica.schematic.ISchematic;
+import litematica.data.SchematicDirectoryIndex;
 import litematica.schematic.SchematicMetadata;
-import litematica.schematic.SchematicType;
 
 public class SchematicInfoCacheByPath extends AbstractSchematicInfoCache<Path>
 {
@@ -21,24 +18,45 @@ public class SchematicInfoCacheByPath extends AbstractSchematicInfoCache<Path>
     @Nullable
     protected SchematicInfo createSchematicInfo(Path file)
     {
-        // TODO Use a partial NBT read method to only read the metadata tag
-        // TODO (that's only beneficial if it's stored before the bulk schematic data in the stream)
-        NBTTagCompound tag = NbtUtils.readNbtFromFile(file);
+        SchematicMetadata metadata = getIndexedMetadata(file);
 
-        if (tag != null)
+        if (metadata == null)
         {
-            ISchematic schematic = SchematicType.tryCreateSchematicFrom(file, tag);
-
-            if (schematic != null)
-            {
-                SchematicMetadata metadata = schematic.getMetadata();
-                String filePath = FileNameUtils.generateSimpleSafeFileName(file.toAbsolutePath().toString().toLowerCase(Locale.ROOT));
-                Identifier iconName = new Identifier(Reference.MOD_ID, filePath);
-                DynamicTexture texture = this.createPreviewImage(iconName, metadata);
-                return new SchematicInfo(metadata, iconName, texture);
-            }
+            metadata = SchematicDirectoryIndex.readMetadata(file);
+        }
+
+        if (metadata != null)
+        {
+            String filePath = FileNameUtils.generateSimpleSafeFileName(file.toAbsolutePath().toString().toLowerCase(Locale.ROOT));
+            Identifier iconName = new Identifier(Reference.MOD_ID, filePath);
+            DynamicTexture texture = this.createPreviewImage(iconName, metadata);
+            return new SchematicInfo(metadata, iconName, texture);
         }
 
         return null;
     }
+
+    /**
+     * @return a copy of the metadata of the given file from the schematic directory index,
+     * with the preview image from the index's thumbnail cache, or null if the file's metadata
+     * has not been indexed (yet)
+     */
+    @Nullable
+    protected static SchematicMetadata getIndexedMetadata(Path file)
+    {
+        SchematicDirectoryIndex index = SchematicDirectoryIndex.getInstance();
+        SchematicMetadata indexedMetadata = index.isIndexed(file) ? index.getMetadata(file) : null;
+
+        if (indexedMetadata == null)
+        {
+            return null;
+        }
+
+        // The indexed metadata object is shared and has no preview image, so don't modify it
+        SchematicMetadata metadata = new SchematicMetadata();
+        metadata.copyFrom(indexedMetadata);
+        metadata.setPreviewImagePixelData(index.getThumbnail(file));
+
+        return metadata;
+    }
 }
@@ -0,0 +1,86 @@
+package litematica.materials;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import net.minecraft.entity.player.EntityPlayer;
+
+import malilib.util.data.ItemType;
+import malilib.util.game.wrap.GameUtils;
+import malilib.util.inventory.InventoryUtils;
+
+/**
+ * An index of the item counts in the client player's inventory, for the material list.
+ * The index is only rebuilt after a slot change event has been seen since the previous update
+ * (or as a fallback every couple of seconds, for any changes that don't go through the slots),
+ * and the version number tells the users of the index whether anything may have changed.
+ */
+public class InventoryIndex
+{
+    public static final InventoryIndex INSTANCE = new InventoryIndex();
+    private static final long MAX_INDEX_AGE_NANOS = 2000L * 1000000L;
+
+    protected final Object2IntOpenHashMap<ItemType> playerItemCounts = new Object2IntOpenHashMap<>();
+    protected final AtomicInteger slotChangeCount = new AtomicInteger();
+    @Nullable protected EntityPlayer indexedPlayer;
+    protected int indexedSlotChangeCount = -1;
+    protected long indexTime;
+    protected int version;
+
+    /**
+     * Called when the contents of any inventory slot change
+     */
+    public static void onSlotChanged()
+    {
+        INSTANCE.slotChangeCount.incrementAndGet();
+    }
+
+    /**
+     * @return a counter that is incremented on every slot change event in any inventory
+     */
+    public int getSlotChangeCount()
+    {
+        return this.slotChangeCount.get();
+    }
+
+    /**
+     * Re-indexes the player's inventory, if there have been any slot changes since the previous update
+     * @return the current version of the index
+     */
+    public int update()
+    {
+        EntityPlayer player = GameUtils.getClientPlayer();
+        int slotChangeCount = this.slotChangeCount.get();
+        long currentTime = System.nanoTime();
+
+        if (player != null &&
+            (player != this.indexedPlayer ||
+             slotChangeCount != this.indexedSlotChangeCount ||
+             currentTime - this.indexTime > MAX_INDEX_AGE_NANOS))
+        {
+            this.indexedPlayer = player;
+            this.indexedSlotChangeCount = slotChangeCount;
+            this.indexTime = currentTime;
+            this.playerItemCounts.clear();
+            this.playerItemCounts.putAll(InventoryUtils.getInventoryItemCounts(player.inventory));
+            ++this.version;
+        }
+
+        return this.version;
+    }
+
+    public int getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * @return the number of items of the given type in the player's inventory,
+     *         as of the last {@link #update()} call
+     */
+    public int getCount(ItemType type)
+    {
+        return this.playerItemCounts.getInt(type);
+    }
+}
@@ -1,13 +1,23 @@
 package litematica.materials;
 
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.IdentityHashMap;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.Nullable;
 import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockBed;
@@ -22,11 +32,13 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.Minecraft;
 import net.minecraft.init.Blocks;
 import net.minecraft.init.Items;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTSizeTracker;
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.nbt.NBTTagList;
-import net.minecraft.nbt.NBTUtil;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.EnumDifficulty;
@@ -37,55 +49,202 @@ import net.minecraft.world.WorldType;
 
 import malilib.config.util.ConfigUtils;
 import malilib.util.FileUtils;
-import malilib.util.data.Constants;
 import malilib.util.game.wrap.ItemWrap;
-import malilib.util.game.wrap.NbtWrap;
 import litematica.Litematica;
 import litematica.Reference;
+import litematica.scheduler.WorkerPool;
 import litematica.util.WorldUtils;
 import litematica.world.WorldSchematic;
 
+/**
+ * Caches the build and display items of block states.
+ * The cache is warmed in the background for every registered block state,
+ * and it's persisted in a compact binary file that is keyed by a fingerprint
+ * of the block and item registries, so that it gets invalidated when the mod set changes.
+ * The lookups don't take any locks, only the cache misses get resolved synchronously
+ * via the shared temporary world.
+ */
 public class MaterialCache
 {
     private static final MaterialCache INSTANCE = new MaterialCache();
+    private static final int FILE_MAGIC = 0x4C4D4331; // "LMC1"
+    private static final int FILE_FORMAT_VERSION = 1;
 
-    protected final IdentityHashMap<IBlockState, ItemStack> buildItemsForStates = new IdentityHashMap<>();
-    protected final IdentityHashMap<IBlockState, ItemStack> displayItemsForStates = new IdentityHashMap<>();
+    protected final ConcurrentHashMap<IBlockState, ItemStack> buildItemsForStates = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<IBlockState, ItemStack> displayItemsForStates = new ConcurrentHashMap<>();
+    protected final AtomicInteger version = new AtomicInteger();
     protected final WorldSchematic tempWorld;
     protected final BlockPos checkPos;
-    protected boolean hasReadFromFile;
-    protected boolean dirty;
+    @Nullable protected WorldSchematic warmUpWorld;
+    protected volatile boolean warmUpStarted;
+    protected volatile boolean warmUpDone;
+    protected volatile boolean dirty;
 
     private MaterialCache()
     {
-        WorldSettings settings = new WorldSettings(0L, GameType.CREATIVE, false, false, WorldType.FLAT);
-
-        this.tempWorld = new WorldSchematic(null, settings, -1, EnumDifficulty.PEACEFUL, Minecraft.getMinecraft().profiler);
+        this.tempWorld = createTempWorld(Minecraft.getMinecraft().profiler);
         this.checkPos = new BlockPos(8, 0, 8);
 
         WorldUtils.loadChunksClientWorld(this.tempWorld, this.checkPos, new Vec3i(1, 1, 1));
     }
 
-    public static MaterialCache getInstance()
+    protected static WorldSchematic createTempWorld(Profiler profiler)
     {
-        /*
-        if (INSTANCE.hasReadFromFile == false)
-        {
-            INSTANCE.readFromFile();
-        }
-        */
+        WorldSettings settings = new WorldSettings(0L, GameType.CREATIVE, false, false, WorldType.FLAT);
+        return new WorldSchematic(null, settings, -1, EnumDifficulty.PEACEFUL, profiler);
+    }
 
+    public static MaterialCache getInstance()
+    {
         return INSTANCE;
     }
 
+    /**
+     * @return the cache version, which gets incremented every time the cache is cleared
+     */
+    public int getVersion()
+    {
+        return this.version.get();
+    }
+
+    public boolean isWarmedUp()
+    {
+        return this.warmUpDone;
+    }
+
     public void clearCache()
     {
+        this.version.incrementAndGet();
         this.buildItemsForStates.clear();
+        this.displayItemsForStates.clear();
+        this.dirty = true;
+        this.warmUpDone = false;
+        this.warmUpStarted = false;
+        this.startWarmUp();
+    }
+
+    /**
+     * Starts reading the cache file and resolving the items for all
+     * the registered block states that were not in the file, on a worker thread.
+     * This must be called on the main thread, but only the first call does anything
+     * (until the cache is cleared).
+     */
+    public void startWarmUp()
+    {
+        if (this.warmUpStarted)
+        {
+            return;
+        }
+
+        this.warmUpStarted = true;
+
+        // The world is created on the main thread, but after this it's only used by the worker thread
+        if (this.warmUpWorld == null)
+        {
+            // The game's profiler is not thread safe, so this world gets its own (disabled) profiler
+            this.warmUpWorld = createTempWorld(new Profiler());
+            WorldUtils.loadChunksClientWorld(this.warmUpWorld, this.checkPos, new Vec3i(1, 1, 1));
+        }
+
+        final WorldSchematic world = this.warmUpWorld;
+        final int version = this.version.get();
+
+        WorkerPool.getPool().execute(() -> this.warmUp(world, version));
+    }
+
+    protected void warmUp(WorldSchematic world, int version)
+    {
+        // A previous warm-up that was aborted by clearing the cache may still be finishing its current state
+        synchronized (world)
+        {
+            try
+            {
+                long fingerprint = getRegistryFingerprint();
+                long startTime = System.nanoTime();
+                int resolved = 0;
+
+                // After the cache has been cleared, the old file contents should not be used either
+                if (version == 0)
+                {
+                    this.readFromFile(fingerprint);
+                }
+
+                for (Block block : Block.REGISTRY)
+                {
+                    for (IBlockState state : block.getBlockState().getValidStates())
+                    {
+                        // The cache was cleared, a new warm-up has been started
+                        if (this.version.get() != version)
+                        {
+                            return;
+                        }
+
+                        if (this.warmUpState(state, world))
+                        {
+                            ++resolved;
+                        }
+                    }
+                }
+
+                this.warmUpDone = true;
+
+                Litematica.printDebug("Material cache warm-up resolved %d block states in %d ms",
+                                      resolved, (System.nanoTime() - startTime) / 1000000L);
+
+                if (this.version.get() == version)
+                {
+                    this.writeToFile(fingerprint);
+                }
+            }
+            catch (Exception e)
+            {
+                Litematica.logger.warn("Exception while warming up the material cache", e);
+            }
+        }
+    }
+
+    protected boolean warmUpState(IBlockState state, WorldSchematic world)
+    {
+        boolean resolved = false;
+
+        try
+        {
+            if (this.buildItemsForStates.containsKey(state) == false)
+            {
+                this.buildItemsForStates.putIfAbsent(state, this.resolveItemForState(state, world, this.checkPos, true));
+                resolved = true;
+            }
+
+            if (this.displayItemsForStates.containsKey(state) == false)
+            {
+                this.displayItemsForStates.putIfAbsent(state, this.resolveItemForState(state, world, this.checkPos, false));
+                resolved = true;
+            }
+        }
+        catch (Exception ignore)
+        {
+            // Some modded blocks may not like being placed in the fake world off-thread,
+            // those will get resolved lazily on the main thread instead
+        }
+
+        if (resolved)
+        {
+            this.dirty = true;
+        }
+
+        return resolved;
     }
 
     public ItemStack getRequiredBuildItemForState(IBlockState state)
     {
-        return this.getRequiredBuildItemForState(state, this.tempWorld, this.checkPos);
+        ItemStack stack = this.buildItemsForStates.get(state);
+
+        if (stack == null)
+        {
+            stack = this.getItemForStateFromTempWorld(state, true);
+        }
+
+        return stack;
     }
 
     public ItemStack getRequiredBuildItemForState(IBlockState state, World world, BlockPos pos)
@@ -106,13 +265,40 @@ public class MaterialCache
 
         if (stack == null)
         {
-            stack = this.getItemForStateFromWorld(state, this.tempWorld, this.checkPos, false);
+            stack = this.getItemForStateFromTempWorld(state, false);
         }
 
         return stack;
     }
 
+    protected ItemStack getItemForStateFromTempWorld(IBlockState state, boolean isBuildItem)
+    {
+        // The shared temp world may get used from the counting worker threads on a cache miss
+        synchronized (this.tempWorld)
+        {
+            return this.getItemForStateFromWorld(state, this.tempWorld, this.checkPos, isBuildItem);
+        }
+    }
+
     protected ItemStack getItemForStateFromWorld(IBlockState state, World world, BlockPos pos, boolean isBuildItem)
+    {
+        ItemStack stack = this.resolveItemForState(state, world, pos, isBuildItem);
+
+        if (isBuildItem)
+        {
+            this.buildItemsForStates.put(state, stack);
+        }
+        else
+        {
+            this.displayItemsForStates.put(state, stack);
+        }
+
+        this.dirty = true;
+
+        return stack;
+    }
+
+    protected ItemStack resolveItemForState(IBlockState state, World world, BlockPos pos, boolean isBuildItem)
     {
         ItemStack stack = isBuildItem ? this.getStateToItemOverride(state) : null;
 
@@ -131,17 +317,6 @@ public class MaterialCache
             this.overrideStackSize(state, stack);
         }
 
-        if (isBuildItem)
-        {
-            this.buildItemsForStates.put(state, stack);
-        }
-        else
-        {
-            this.displayItemsForStates.put(state, stack);
-        }
-
-        this.dirty = true;
-
         return stack;
     }
 
@@ -286,68 +461,35 @@ public class MaterialCache
         }
     }
 
-    protected NBTTagCompound writeToNBT()
+    /**
+     * @return a hash of the names and IDs of all the registered blocks and items,
+     *         and of the number of valid states of each block
+     */
+    public static long getRegistryFingerprint()
     {
-        NBTTagCompound nbt = new NBTTagCompound();
-
-        NbtWrap.putTag(nbt, "MaterialCache", this.writeMapToNBT(this.buildItemsForStates));
-        NbtWrap.putTag(nbt, "DisplayMaterialCache", this.writeMapToNBT(this.displayItemsForStates));
+        long hash = 0xCBF29CE484222325L;
 
-        return nbt;
-    }
-
-    protected NBTTagList writeMapToNBT(IdentityHashMap<IBlockState, ItemStack> map)
-    {
-        NBTTagList list = new NBTTagList();
-
-        for (Map.Entry<IBlockState, ItemStack> entry : map.entrySet())
+        for (Block block : Block.REGISTRY)
         {
-            NBTTagCompound tag = new NBTTagCompound();
-            NBTTagCompound stateTag = new NBTTagCompound();
-            NBTUtil.writeBlockState(stateTag, entry.getKey());
-
-            NbtWrap.putTag(tag, "Block", stateTag);
-            NbtWrap.putTag(tag, "Item", entry.getValue().writeToNBT(new NBTTagCompound()));
+            ResourceLocation id = Block.REGISTRY.getNameForObject(block);
+            hash = mixHash(hash, id != null ? id.toString().hashCode() : 0);
+            hash = mixHash(hash, Block.getIdFromBlock(block));
+            hash = mixHash(hash, block.getBlockState().getValidStates().size());
+        }
 
-            NbtWrap.addTag(list, tag);
+        for (Item item : Item.REGISTRY)
+        {
+            ResourceLocation id = Item.REGISTRY.getNameForObject(item);
+            hash = mixHash(hash, id != null ? id.toString().hashCode() : 0);
+            hash = mixHash(hash, Item.getIdFromItem(item));
         }
 
-        return list;
+        return hash;
     }
 
-    protected void readFromNBT(NBTTagCompound nbt)
+    private static long mixHash(long hash, int value)
     {
-        this.buildItemsForStates.clear();
-        this.displayItemsForStates.clear();
-
-        this.readMapFromNBT(nbt, "MaterialCache", this.buildItemsForStates);
-        this.readMapFromNBT(nbt, "DisplayMaterialCache", this.displayItemsForStates);
-    }
-
-    protected void readMapFromNBT(NBTTagCompound nbt, String tagName, IdentityHashMap<IBlockState, ItemStack> map)
-    {
-        if (NbtWrap.containsList(nbt, tagName))
-        {
-            NBTTagList list = NbtWrap.getList(nbt, tagName, Constants.NBT.TAG_COMPOUND);
-            final int count = NbtWrap.getListSize(list);
-
-            for (int i = 0; i < count; ++i)
-            {
-                NBTTagCompound tag = NbtWrap.getCompoundAt(list, i);
-
-                if (NbtWrap.containsCompound(tag, "Block") &&
-                    NbtWrap.containsCompound(tag, "Item"))
-                {
-                    IBlockState state = NBTUtil.readBlockState(NbtWrap.getCompound(tag, "Block"));
-
-                    if (state != null)
-                    {
-                        ItemStack stack = ItemWrap.fromTag(NbtWrap.getCompound(tag, "Item"));
-                        map.put(state, stack);
-                    }
-                }
-            }
-        }
+        return (hash ^ value) * 0x100000001B3L;
     }
 
     protected Path getCacheDir()
@@ -357,10 +499,20 @@ public class MaterialCache
 
     protected Path getCacheFile()
     {
-        return this.getCacheDir().resolve("material_cache.nbt");
+        return this.getCacheDir().resolve("material_cache.bin");
     }
 
     public boolean writeToFile()
+    {
+        return this.writeToFile(getRegistryFingerprint());
+    }
+
+    /**
+     * Writes the cache to a temporary file, which is then moved over the old cache file.
+     * The states are identified by the block ID and the index within the block's valid states,
+     * which are stable for as long as the registry fingerprint stays the same.
+     */
+    protected synchronized boolean writeToFile(long fingerprint)
     {
         if (this.dirty == false)
         {
@@ -369,6 +521,7 @@ public class MaterialCache
 
         Path dir = this.getCacheDir();
         Path file = this.getCacheFile();
+        Path tmpFile = dir.resolve("material_cache.bin.tmp");
 
         try
         {
@@ -379,15 +532,25 @@ public class MaterialCache
                 return false;
             }
 
-            OutputStream os = Files.newOutputStream(file);
-            CompressedStreamTools.writeCompressed(this.writeToNBT(), os);
-            os.close();
+            // Cleared before writing, so that any concurrent changes will cause another write later
             this.dirty = false;
 
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmpFile)))))
+            {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeLong(fingerprint);
+                this.writeMap(this.buildItemsForStates, out);
+                this.writeMap(this.displayItemsForStates, out);
+            }
+
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+
             return true;
         }
         catch (Exception e)
         {
+            this.dirty = true;
             Litematica.logger.warn("Failed to write the material list cache to file '{}'",
                                    file.toAbsolutePath().toString(), e);
         }
@@ -395,7 +558,65 @@ public class MaterialCache
         return false;
     }
 
-    public void readFromFile()
+    protected void writeMap(Map<IBlockState, ItemStack> map, DataOutputStream out) throws IOException
+    {
+        // Collected first, so that the entry count stays consistent even if the map gets modified meanwhile
+        IntArrayList keys = new IntArrayList();
+        List<ItemStack> stacks = new ArrayList<>();
+
+        for (Block block : Block.REGISTRY)
+        {
+            List<IBlockState> states = block.getBlockState().getValidStates();
+            int blockId = Block.getIdFromBlock(block);
+
+            for (int i = 0; i < states.size(); ++i)
+            {
+                ItemStack stack = map.get(states.get(i));
+
+                if (stack != null)
+                {
+                    keys.add(blockId);
+                    keys.add(i);
+                    stacks.add(stack);
+                }
+            }
+        }
+
+        out.writeInt(stacks.size());
+
+        for (int i = 0; i < stacks.size(); ++i)
+        {
+            out.writeInt(keys.getInt(i * 2));
+            out.writeShort(keys.getInt(i * 2 + 1));
+            this.writeStack(stacks.get(i), out);
+        }
+    }
+
+    protected void writeStack(ItemStack stack, DataOutputStream out) throws IOException
+    {
+        if (ItemWrap.isEmpty(stack))
+        {
+            out.writeShort(-1);
+            return;
+        }
+
+        NBTTagCompound tag = stack.getTagCompound();
+
+        out.writeShort(Item.getIdFromItem(stack.getItem()));
+        out.writeShort(stack.getMetadata());
+        out.writeByte(stack.getCount());
+        out.writeBoolean(tag != null);
+
+        if (tag != null)
+        {
+            CompressedStreamTools.write(tag, out);
+        }
+    }
+
+    /**
+     * Reads the cache file, if it exists and was written with the same registry fingerprint
+     */
+    protected void readFromFile(long fingerprint)
     {
         Path file = this.getCacheFile();
 
@@ -404,18 +625,18 @@ public class MaterialCache
             return;
         }
 
-        try
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file)))))
         {
-            InputStream is = Files.newInputStream(file);
-            NBTTagCompound nbt = CompressedStreamTools.readCompressed(is);
-            is.close();
-
-            if (nbt != null)
+            if (in.readInt() != FILE_MAGIC ||
+                in.readInt() != FILE_FORMAT_VERSION ||
+                in.readLong() != fingerprint)
             {
-                this.readFromNBT(nbt);
-                this.hasReadFromFile = true;
-                this.dirty = false;
+                Litematica.printDebug("Material cache file is outdated, ignoring it");
+                return;
             }
+
+            this.readMap(this.buildItemsForStates, in);
+            this.readMap(this.displayItemsForStates, in);
         }
         catch (Exception e)
         {
@@ -423,4 +644,47 @@ public class MaterialCache
                                    file.toAbsolutePath().toString(), e);
         }
     }
+
+    protected void readMap(Map<IBlockState, ItemStack> map, DataInputStream in) throws IOException
+    {
+        final int count = in.readInt();
+
+        for (int i = 0; i < count; ++i)
+        {
+            Block block = Block.getBlockById(in.readInt());
+            int stateIndex = in.readShort();
+            ItemStack stack = this.readStack(in);
+            List<IBlockState> states = block.getBlockState().getValidStates();
+
+            if (stateIndex >= 0 && stateIndex < states.size())
+            {
+                map.putIfAbsent(states.get(stateIndex), stack);
+            }
+        }
+    }
+
+    protected ItemStack readStack(DataInputStream in) throws IOException
+    {
+        int itemId = in.readShort();
+
+        if (itemId < 0)
+        {
+            return ItemStack.EMPTY;
+        }
+
+        int meta = in.readShort();
+        int count = in.readByte();
+        NBTTagCompound tag = in.readBoolean() ? CompressedStreamTools.read(in, NBTSizeTracker.INFINITE) : null;
+        Item item = Item.getItemById(itemId);
+
+        if (item == null)
+        {
+            return ItemStack.EMPTY;
+        }
+
+        ItemStack stack = new ItemStack(item, count, meta);
+        stack.setTagCompound(tag);
+
+        return stack;
+    }
 }
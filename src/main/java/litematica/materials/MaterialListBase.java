@@ -1,6 +1,8 @@
 package litematica.materials;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -15,6 +17,7 @@ import malilib.config.value.BaseOptionListConfigValue;
 import malilib.listener.TaskCompletionListener;
 import malilib.util.data.json.JsonUtils;
 import malilib.util.datadump.DataDump;
+import litematica.schematic.ISchematic;
 import litematica.util.value.BlockInfoListType;
 
 public abstract class MaterialListBase implements IMaterialList
@@ -53,6 +56,24 @@ public abstract class MaterialListBase implements IMaterialList
         return false;
     }
 
+    /**
+     * @return the schematic this material list is for, used for the per-layer material reports,
+     *         or null if this list is not based on a schematic
+     */
+    @Nullable
+    public ISchematic getSchematic()
+    {
+        return null;
+    }
+
+    /**
+     * @return the names of the schematic sub-regions this material list includes
+     */
+    public Collection<String> getSchematicRegionNames()
+    {
+        return Collections.emptyList();
+    }
+
     public MaterialListHudRenderer getHudRenderer()
     {
         return this.hudRenderer;
@@ -130,6 +151,7 @@ public abstract class MaterialListBase implements IMaterialList
         this.ignored.add(entry);
         this.materialListPreFiltered.remove(entry);
         this.reCreateFilteredList();
+        this.hudRenderer.requestRefresh();
     }
 
     public void clearIgnored()
@@ -137,6 +159,7 @@ public abstract class MaterialListBase implements IMaterialList
         this.ignored.clear();
         this.refreshPreFilteredList();
         this.reCreateFilteredList();
+        this.hudRenderer.requestRefresh();
     }
 
     /**
@@ -145,12 +168,27 @@ public abstract class MaterialListBase implements IMaterialList
      */
     public abstract void reCreateMaterialList();
 
+    /**
+     * Called when a chunk has been (re-)loaded or when a block has changed in it in the client world
+     */
+    public void onChunkChanged(int chunkX, int chunkZ)
+    {
+    }
+
+    /**
+     * Updates the counts from the chunks that have changed since the last call, if applicable.
+     */
+    public void updateChangedChunks()
+    {
+    }
+
     @Override
     public void setMaterialListEntries(List<MaterialListEntry> list)
     {
         this.materialListAll = ImmutableList.copyOf(list);
         this.refreshPreFilteredList();
         this.updateCounts();
+        this.hudRenderer.requestRefresh();
 
         if (this.completionListener != null)
         {
@@ -205,16 +243,20 @@ public abstract class MaterialListBase implements IMaterialList
             this.sortCriteria = criteria;
             this.reverse = criteria == SortCriteria.NAME;
         }
+
+        this.hudRenderer.requestRefresh();
     }
 
     public void setHideAvailable(boolean hideAvailable)
     {
         this.hideAvailable = hideAvailable;
+        this.hudRenderer.requestRefresh();
     }
 
     public void setMultiplier(int multiplier)
     {
         this.multiplier = MathHelper.clamp(multiplier, 1, Integer.MAX_VALUE);
+        this.hudRenderer.requestRefresh();
     }
 
     public void updateCounts()
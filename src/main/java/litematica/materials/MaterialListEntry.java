@@ -7,6 +7,7 @@ import malilib.util.data.ItemType;
 public class MaterialListEntry
 {
     private final ItemType item;
+    private final ItemType inventoryKey;
     private final long countTotal;
     private final long countMissing;
     private final long countMismatched;
@@ -15,6 +16,7 @@ public class MaterialListEntry
     public MaterialListEntry(ItemStack stack, long countTotal, long countMissing, long countMismatched, long countAvailable)
     {
         this.item = new ItemType(stack, false, false);
+        this.inventoryKey = new ItemType(stack, false, true);
         this.countTotal = countTotal;
         this.countMissing = countMissing;
         this.countMismatched = countMismatched;
@@ -26,6 +28,14 @@ public class MaterialListEntry
         return this.item;
     }
 
+    /**
+     * @return the key for looking up the available count of this item from the inventory item counts
+     */
+    public ItemType getInventoryKey()
+    {
+        return this.inventoryKey;
+    }
+
     public ItemStack getStack()
     {
         return this.item.getStack();
@@ -60,9 +70,14 @@ public class MaterialListEntry
         return this.countAvailable;
     }
 
-    public void setCountAvailable(long countAvailable)
+    /**
+     * @return true if the count changed
+     */
+    public boolean setCountAvailable(long countAvailable)
     {
+        boolean changed = countAvailable != this.countAvailable;
         this.countAvailable = countAvailable;
+        return changed;
     }
 
     @Override
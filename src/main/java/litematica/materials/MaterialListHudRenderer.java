@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.apache.commons.lang3.tuple.Pair;
 
 import net.minecraft.client.gui.FontRenderer;
@@ -28,10 +29,14 @@ import litematica.render.infohud.RenderPhase;
 
 public class MaterialListHudRenderer implements IInfoHudRenderer
 {
+    private static final SlotHighlightCache SLOT_HIGHLIGHT_CACHE = new SlotHighlightCache();
+
     protected final MaterialListBase materialList;
     protected final MaterialListSorter sorter;
     protected boolean shouldRender;
-    protected long lastUpdateTime;
+    protected int lastInventoryVersion = -1;
+    protected int listVersion;
+    protected boolean refreshRequested = true;
 
     public MaterialListHudRenderer(MaterialListBase materialList)
     {
@@ -68,23 +73,47 @@ public class MaterialListHudRenderer implements IInfoHudRenderer
         return Collections.emptyList();
     }
 
-    protected void refreshList(long refreshInterval)
+    /**
+     * Makes the list get re-filtered and re-sorted on the next render, even if no available counts changed
+     */
+    public void requestRefresh()
     {
-        long currentTime = System.nanoTime();
+        this.refreshRequested = true;
+    }
+
+    /**
+     * Refreshes the available counts, if the inventory has changed, and re-filters and re-sorts
+     * the missing materials list if any of the counts actually changed or if a refresh was requested.
+     */
+    protected void refreshList()
+    {
+        if (GameUtils.getClientPlayer() == null)
+        {
+            return;
+        }
+
+        boolean changed = this.refreshRequested;
+        int inventoryVersion = InventoryIndex.INSTANCE.update();
+
+        if (inventoryVersion != this.lastInventoryVersion)
+        {
+            changed |= MaterialListUtils.updateAvailableCounts(this.materialList.getAllMaterials());
+            this.lastInventoryVersion = inventoryVersion;
+        }
 
-        if (currentTime - this.lastUpdateTime > refreshInterval * 1000000L && GameUtils.getClientPlayer() != null)
+        if (changed)
         {
-            MaterialListUtils.updateAvailableCounts(this.materialList.getAllMaterials());
             List<MaterialListEntry> list = this.materialList.getMissingMaterials(true);
             list.sort(this.sorter);
-            this.lastUpdateTime = currentTime;
+            this.refreshRequested = false;
+            ++this.listVersion;
         }
     }
 
     @Override
     public int render(int xOffset, int yOffset, HudAlignment alignment)
     {
-        this.refreshList(2000L);
+        this.refreshList();
 
         List<MaterialListEntry> list = this.materialList.getMissingMaterials(false);
 
@@ -257,31 +286,87 @@ public class MaterialListHudRenderer implements IInfoHudRenderer
 
         if (materialList != null)
         {
-            materialList.getHudRenderer().refreshList(2000L);
-            List<MaterialListEntry> list = materialList.getMissingMaterials(false);
+            MaterialListHudRenderer hudRenderer = materialList.getHudRenderer();
+            hudRenderer.refreshList();
+            List<Pair<Slot, Color4f>> highlightedSlots = SLOT_HIGHLIGHT_CACHE.getHighlightedSlots(gui, materialList);
 
-            if (list.isEmpty() == false)
+            if (highlightedSlots.isEmpty() == false)
             {
-                HashMap<ItemType, MaterialListEntry> map = new HashMap<>();
-                list.forEach((entry) -> map.put(entry.getItemType(), entry));
-                List<Pair<Slot, Color4f>> highlightedSlots = getHighlightedSlots(gui, map);
+                GlStateManager.disableTexture2D();
+                RenderUtils.setupBlend();
+                int guiX = InventoryScreenUtils.getGuiPosX(gui);
+                int guiY = InventoryScreenUtils.getGuiPosY(gui);
 
-                if (highlightedSlots.isEmpty() == false)
+                for (Pair<Slot, Color4f> pair : highlightedSlots)
                 {
-                    GlStateManager.disableTexture2D();
-                    RenderUtils.setupBlend();
-                    int guiX = InventoryScreenUtils.getGuiPosX(gui);
-                    int guiY = InventoryScreenUtils.getGuiPosY(gui);
+                    Slot slot = pair.getLeft();
+                    Color4f color = pair.getRight();
+                    ShapeRenderUtils.renderOutlinedRectangle(guiX + slot.xPos, guiY + slot.yPos, 1f, 16, 16, color.intValue, color.intValue | 0xFF000000);
+                }
 
-                    for (Pair<Slot, Color4f> pair : highlightedSlots)
-                    {
-                        Slot slot = pair.getLeft();
-                        Color4f color = pair.getRight();
-                        ShapeRenderUtils.renderOutlinedRectangle(guiX + slot.xPos, guiY + slot.yPos, 1f, 16, 16, color.intValue, color.intValue | 0xFF000000);
-                    }
+                GlStateManager.enableTexture2D();
+            }
+        }
+    }
+
+    /**
+     * Drops the cached slot highlights of the given screen, so that the closed screen
+     * and its slots don't stay referenced until the next container screen is opened
+     */
+    public static void onContainerScreenClosed(GuiContainer gui)
+    {
+        SLOT_HIGHLIGHT_CACHE.clear(gui);
+    }
+
+    /**
+     * Caches the highlighted slots of the open container screen, so that the slots
+     * only need to be re-checked when any slot contents or the missing materials list change.
+     */
+    private static class SlotHighlightCache
+    {
+        private List<Pair<Slot, Color4f>> highlightedSlots = Collections.emptyList();
+        @Nullable private GuiContainer gui;
+        @Nullable private MaterialListBase materialList;
+        private int slotChangeCount = -1;
+        private int listVersion = -1;
+
+        private List<Pair<Slot, Color4f>> getHighlightedSlots(GuiContainer gui, MaterialListBase materialList)
+        {
+            int slotChangeCount = InventoryIndex.INSTANCE.getSlotChangeCount();
+            int listVersion = materialList.getHudRenderer().listVersion;
 
-                    GlStateManager.enableTexture2D();
+            if (gui != this.gui || materialList != this.materialList ||
+                slotChangeCount != this.slotChangeCount || listVersion != this.listVersion)
+            {
+                List<MaterialListEntry> list = materialList.getMissingMaterials(false);
+
+                if (list.isEmpty() == false)
+                {
+                    HashMap<ItemType, MaterialListEntry> map = new HashMap<>();
+                    list.forEach((entry) -> map.put(entry.getItemType(), entry));
+                    this.highlightedSlots = MaterialListHudRenderer.getHighlightedSlots(gui, map);
+                }
+                else
+                {
+                    this.highlightedSlots = Collections.emptyList();
                 }
+
+                this.gui = gui;
+                this.materialList = materialList;
+                this.slotChangeCount = slotChangeCount;
+                this.listVersion = listVersion;
+            }
+
+            return this.highlightedSlots;
+        }
+
+        private void clear(GuiContainer gui)
+        {
+            if (gui == this.gui)
+            {
+                this.highlightedSlots = Collections.emptyList();
+                this.gui = null;
+                this.materialList = null;
             }
         }
     }
@@ -1,16 +1,54 @@
 package litematica.materials;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.Nullable;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.gson.JsonObject;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.multiplayer.WorldClient;
+import net.minecraft.util.math.ChunkPos;
 
 import malilib.overlay.message.MessageDispatcher;
 import malilib.util.StringUtils;
+import malilib.util.game.wrap.GameUtils;
+import malilib.util.position.IntBoundingBox;
+import malilib.util.position.LayerRange;
+import litematica.data.DataManager;
 import litematica.scheduler.TaskScheduler;
 import litematica.scheduler.tasks.TaskCountBlocksPlacement;
+import litematica.schematic.ISchematic;
 import litematica.schematic.placement.SchematicPlacement;
+import litematica.schematic.placement.SchematicPlacementManager;
+import litematica.schematic.placement.SubRegionPlacement;
+import litematica.util.value.BlockInfoListType;
+import litematica.world.SchematicWorldHandler;
+import litematica.world.WorldSchematic;
 
 public class MaterialListPlacement extends MaterialListBase
 {
+    private static final int MAX_CHUNK_UPDATES_PER_TICK = 8;
+    // In calls to updateChangedChunks(), which happen every 5 ticks
+    private static final int RECOUNT_DELAY = 4;
+
     private final SchematicPlacement placement;
+    private final Long2ObjectOpenHashMap<PlacementChunkCounts> chunkCounts = new Long2ObjectOpenHashMap<>();
+    private final ArrayListMultimap<ChunkPos, IntBoundingBox> boxesInChunks = ArrayListMultimap.create();
+    private final LongOpenHashSet changedChunks = new LongOpenHashSet();
+    private final Object2LongOpenHashMap<IBlockState> countsTotalByState = new Object2LongOpenHashMap<>();
+    private final Object2LongOpenHashMap<IBlockState> countsMissingByState = new Object2LongOpenHashMap<>();
+    private final Object2LongOpenHashMap<IBlockState> countsMismatchByState = new Object2LongOpenHashMap<>();
+    @Nullable private LayerRange layerRange;
+    private boolean countInProgress;
+    private boolean ignoreState;
+    private int countGeneration;
+    private int recountDelay = -1;
 
     public MaterialListPlacement(SchematicPlacement placement, boolean reCreate)
     {
@@ -36,6 +74,25 @@ public class MaterialListPlacement extends MaterialListBase
         return true;
     }
 
+    @Override
+    public ISchematic getSchematic()
+    {
+        return this.placement.getSchematic();
+    }
+
+    @Override
+    public Collection<String> getSchematicRegionNames()
+    {
+        List<String> names = new ArrayList<>();
+
+        for (SubRegionPlacement part : this.placement.getEnabledSubRegions())
+        {
+            names.add(part.getName());
+        }
+
+        return names;
+    }
+
     @Override
     public String getName()
     {
@@ -51,9 +108,217 @@ public class MaterialListPlacement extends MaterialListBase
     @Override
     public void reCreateMaterialList()
     {
+        this.startCount();
+        MessageDispatcher.generic(1000).translate("litematica.message.scheduled_task_added");
+    }
+
+    protected void startCount()
+    {
+        this.invalidateChunkCounts();
+        this.recountDelay = -1;
+        this.countInProgress = true;
+
         TaskCountBlocksPlacement task = new TaskCountBlocksPlacement(this.placement, this);
         TaskScheduler.getInstanceClient().scheduleTask(task, 20);
-        MessageDispatcher.generic(1000).translate("litematica.message.scheduled_task_added");
+    }
+
+    /**
+     * @return the generation of the current count, which the count task must pass back in
+     *         {@link #setChunkCounts(Long2ObjectOpenHashMap, ArrayListMultimap, LayerRange, boolean, int)}
+     */
+    public int getCountGeneration()
+    {
+        return this.countGeneration;
+    }
+
+    /**
+     * Discards the per-chunk counts, because they were counted against a different
+     * placement geometry or layer range. The list gets re-counted after a short delay,
+     * so that for example moving a placement in steps only triggers one count.
+     */
+    public void onPlacementChanged()
+    {
+        this.invalidateChunkCounts();
+        this.recountDelay = RECOUNT_DELAY;
+    }
+
+    protected void invalidateChunkCounts()
+    {
+        // Any count task still running for the old geometry will have its results ignored
+        ++this.countGeneration;
+        this.countInProgress = false;
+        this.chunkCounts.clear();
+        this.boxesInChunks.clear();
+        this.changedChunks.clear();
+        this.layerRange = null;
+    }
+
+    /**
+     * Called by the count task if it stops before finishing
+     */
+    public void onCountAborted(int generation)
+    {
+        if (generation == this.countGeneration)
+        {
+            this.countInProgress = false;
+            this.changedChunks.clear();
+        }
+    }
+
+    /**
+     * Sets the per-chunk block counts from a full count task. After this the list
+     * is kept up to date by only re-counting the chunks that change in the client world.
+     * @param generation the value of {@link #getCountGeneration()} when the count task was created.
+     *                   The counts are ignored if the list has been invalidated since then.
+     */
+    public void setChunkCounts(Long2ObjectOpenHashMap<PlacementChunkCounts> counts,
+                               ArrayListMultimap<ChunkPos, IntBoundingBox> boxesInChunks,
+                               LayerRange layerRange, boolean ignoreState, int generation)
+    {
+        if (generation != this.countGeneration)
+        {
+            return;
+        }
+
+        this.countInProgress = false;
+        this.chunkCounts.clear();
+        this.chunkCounts.putAll(counts);
+        this.boxesInChunks.clear();
+        this.boxesInChunks.putAll(boxesInChunks);
+        this.layerRange = layerRange;
+        this.ignoreState = ignoreState;
+
+        // Chunks that changed while the count task was running still need to be re-counted,
+        // as their counts may have been taken before the change
+        LongIterator iter = this.changedChunks.iterator();
+
+        while (iter.hasNext())
+        {
+            if (this.chunkCounts.containsKey(iter.nextLong()) == false)
+            {
+                iter.remove();
+            }
+        }
+
+        this.countsTotalByState.clear();
+        this.countsMissingByState.clear();
+        this.countsMismatchByState.clear();
+
+        for (PlacementChunkCounts chunk : this.chunkCounts.values())
+        {
+            chunk.addTo(this.countsTotalByState, this.countsMissingByState, this.countsMismatchByState, 1L);
+        }
+    }
+
+    @Override
+    public void onChunkChanged(int chunkX, int chunkZ)
+    {
+        long posLong = ChunkPos.asLong(chunkX, chunkZ);
+
+        // During a count the chunks that will be counted are not known here yet,
+        // so all changed chunks are recorded, and the irrelevant ones get dropped in setChunkCounts()
+        if (this.countInProgress || this.chunkCounts.containsKey(posLong))
+        {
+            this.changedChunks.add(posLong);
+        }
+    }
+
+    @Override
+    public void updateChangedChunks()
+    {
+        if (this.recountDelay >= 0 && --this.recountDelay < 0)
+        {
+            this.startCount();
+            return;
+        }
+
+        WorldSchematic worldSchematic = SchematicWorldHandler.getSchematicWorld();
+        WorldClient worldClient = GameUtils.getClientWorld();
+
+        if (this.layerRange == null || worldSchematic == null || worldClient == null)
+        {
+            return;
+        }
+
+        if (this.hasLayerRangeChanged())
+        {
+            this.onPlacementChanged();
+            return;
+        }
+
+        if (this.changedChunks.isEmpty())
+        {
+            return;
+        }
+
+        SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
+
+        LongIterator iter = this.changedChunks.iterator();
+        int updated = 0;
+
+        while (iter.hasNext() && updated < MAX_CHUNK_UPDATES_PER_TICK)
+        {
+            long posLong = iter.nextLong();
+            int chunkX = (int) posLong;
+            int chunkZ = (int) (posLong >>> 32);
+
+            // Wait until the chunk and its neighbors are loaded, like the full count task does,
+            // and until the schematic world chunk has been re-built after any placement changes
+            if (areSurroundingChunksLoaded(chunkX, chunkZ, worldClient) == false ||
+                worldSchematic.getChunkProvider().isChunkGeneratedAt(chunkX, chunkZ) == false ||
+                manager.hasPendingRebuildForChunk(chunkX, chunkZ))
+            {
+                continue;
+            }
+
+            PlacementChunkCounts newCounts = new PlacementChunkCounts();
+            List<IntBoundingBox> boxes = this.boxesInChunks.get(new ChunkPos(chunkX, chunkZ));
+            newCounts.countBoxes(boxes, this.layerRange, worldSchematic, worldClient, this.ignoreState);
+
+            PlacementChunkCounts oldCounts = this.chunkCounts.put(posLong, newCounts);
+
+            if (oldCounts != null)
+            {
+                oldCounts.addTo(this.countsTotalByState, this.countsMissingByState, this.countsMismatchByState, -1L);
+            }
+
+            newCounts.addTo(this.countsTotalByState, this.countsMissingByState, this.countsMismatchByState, 1L);
+            iter.remove();
+            ++updated;
+        }
+
+        if (updated > 0)
+        {
+            this.setMaterialListEntries(MaterialListUtils.getMaterialList(this.countsTotalByState,
+                                                                          this.countsMissingByState,
+                                                                          this.countsMismatchByState));
+        }
+    }
+
+    /**
+     * @return true if the render layer range has changed since the counts were taken,
+     *         when the list is for the render layers
+     */
+    private boolean hasLayerRangeChanged()
+    {
+        return this.getMaterialListType() == BlockInfoListType.RENDER_LAYERS &&
+               this.layerRange.toJson().equals(DataManager.getRenderLayerRange().toJson()) == false;
+    }
+
+    private static boolean areSurroundingChunksLoaded(int chunkX, int chunkZ, WorldClient world)
+    {
+        for (int cx = chunkX - 1; cx <= chunkX + 1; ++cx)
+        {
+            for (int cz = chunkZ - 1; cz <= chunkZ + 1; ++cz)
+            {
+                if (world.getChunkProvider().isChunkGeneratedAt(cx, cz) == false)
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
     }
 
     public static MaterialListPlacement createFromJson(JsonObject obj, SchematicPlacement schematicPlacement)
@@ -29,6 +29,18 @@ public class MaterialListSchematic extends MaterialListBase
         }
     }
 
+    @Override
+    public ISchematic getSchematic()
+    {
+        return this.schematic;
+    }
+
+    @Override
+    public Collection<String> getSchematicRegionNames()
+    {
+        return this.regions;
+    }
+
     @Override
     public void reCreateMaterialList()
     {
@@ -3,27 +3,23 @@ package litematica.materials;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 
 import net.minecraft.block.state.IBlockState;
-import net.minecraft.inventory.IInventory;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.math.Vec3i;
 
 import malilib.gui.BaseScreen;
 import malilib.gui.StringListSelectionScreen;
 import malilib.util.data.ItemType;
-import malilib.util.game.wrap.GameUtils;
 import malilib.util.game.wrap.ItemWrap;
-import malilib.util.inventory.InventoryUtils;
 import litematica.config.Configs;
 import litematica.data.DataManager;
 import litematica.gui.MaterialListScreen;
 import litematica.schematic.ISchematic;
 import litematica.schematic.ISchematicRegion;
 import litematica.schematic.container.ILitematicaBlockStateContainer;
+import litematica.schematic.container.ILitematicaBlockStatePalette;
 
 public class MaterialListUtils
 {
@@ -45,14 +41,21 @@ public class MaterialListUtils
             {
                 if (Configs.Generic.MATERIALS_FROM_CONTAINER.getBooleanValue())
                 {
-                    for (Map.Entry<IBlockState, Long> entry : container.getBlockCountsMap().entrySet())
+                    // The containers keep their counts per palette ID up to date,
+                    // so this only needs to go through the palette
+                    ILitematicaBlockStatePalette palette = container.getPalette();
+                    long[] counts = container.getBlockCounts();
+                    final int length = Math.min(palette.getPaletteSize(), counts.length);
+
+                    for (int id = 0; id < length; ++id)
                     {
-                        long total = entry.getValue().longValue();
+                        IBlockState state = palette.getBlockState(id);
+                        long total = counts[id];
 
                         // Don't include stale entries from the palette due to Rebuild operations etc.
-                        if (total > 0)
+                        if (state != null && total > 0)
                         {
-                            countsTotal.addTo(entry.getKey(), (int) total);
+                            countsTotal.addTo(state, total);
                         }
                     }
                 }
@@ -81,6 +84,19 @@ public class MaterialListUtils
         return getMaterialList(countsTotal, countsTotal, new Object2LongOpenHashMap<>());
     }
 
+    /**
+     * Notifies the currently active material list about a changed chunk in the client world
+     */
+    public static void onClientChunkChanged(int chunkX, int chunkZ)
+    {
+        MaterialListBase materialList = DataManager.getMaterialList();
+
+        if (materialList != null)
+        {
+            materialList.onChunkChanged(chunkX, chunkZ);
+        }
+    }
+
     public static List<MaterialListEntry> getMaterialList(
             Object2LongOpenHashMap<IBlockState> countsTotal,
             Object2LongOpenHashMap<IBlockState> countsMissing,
@@ -99,8 +115,8 @@ public class MaterialListUtils
             convertStatesToStacks(countsMissing, itemTypesMissing, cache);
             convertStatesToStacks(countsMismatch, itemTypesMismatch, cache);
 
-            IInventory playerInv = GameUtils.getPlayerInventory();
-            Object2IntOpenHashMap<ItemType> playerInvItems = playerInv != null ? InventoryUtils.getInventoryItemCounts(playerInv) : new Object2IntOpenHashMap<>();
+            InventoryIndex playerInvItems = InventoryIndex.INSTANCE;
+            playerInvItems.update();
 
             for (ItemType type : itemTypesTotal.keySet())
             {
@@ -108,14 +124,14 @@ public class MaterialListUtils
                         itemTypesTotal.getLong(type),
                         itemTypesMissing.getLong(type),
                         itemTypesMismatch.getLong(type),
-                        playerInvItems.getInt(type)));
+                        playerInvItems.getCount(type)));
             }
         }
 
         return list;
     }
 
-    private static void convertStatesToStacks(
+    public static void convertStatesToStacks(
             Object2LongOpenHashMap<IBlockState> blockStatesIn,
             Object2LongOpenHashMap<ItemType> itemTypesOut,
             MaterialCache cache)
@@ -144,16 +160,23 @@ public class MaterialListUtils
         }
     }
 
-    public static void updateAvailableCounts(List<MaterialListEntry> list)
+    /**
+     * Updates the available counts of the given entries from the player's inventory
+     * @return true if any of the counts changed
+     */
+    public static boolean updateAvailableCounts(List<MaterialListEntry> list)
     {
-        Object2IntOpenHashMap<ItemType> playerInvItems = InventoryUtils.getInventoryItemCounts(GameUtils.getClientPlayer().inventory);
+        InventoryIndex index = InventoryIndex.INSTANCE;
+        boolean changed = false;
+
+        index.update();
 
         for (MaterialListEntry entry : list)
         {
-            ItemType type = new ItemType(entry.getStack(), false, true);
-            int countAvailable = playerInvItems.getInt(type);
-            entry.setCountAvailable(countAvailable);
+            changed |= entry.setCountAvailable(index.getCount(entry.getInventoryKey()));
         }
+
+        return changed;
     }
 
     public static void openMaterialListScreenFor(ISchematic schematic)
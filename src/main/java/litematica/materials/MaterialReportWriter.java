@@ -0,0 +1,241 @@
+package litematica.materials;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import com.google.gson.stream.JsonWriter;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.ResourceLocation;
+
+/**
+ * Writes a material report as a stream of rows, one row per item per layer of each sub-region,
+ * so that the full report never needs to be held in memory.
+ */
+public abstract class MaterialReportWriter implements Closeable
+{
+    protected final Writer writer;
+
+    protected MaterialReportWriter(Path file) throws IOException
+    {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    public static MaterialReportWriter create(Path file, Format format) throws IOException
+    {
+        return format == Format.JSON ? new Json(file) : new Csv(file);
+    }
+
+    public abstract void beginReport(String name) throws IOException;
+
+    public abstract void beginRegion(String regionName) throws IOException;
+
+    public abstract void beginLayer(int y) throws IOException;
+
+    public abstract void writeItem(ItemStack stack, long count) throws IOException;
+
+    public abstract void endLayer() throws IOException;
+
+    /**
+     * Begins the per-region totals, written after all the layers of the region
+     */
+    public abstract void beginRegionTotal() throws IOException;
+
+    public abstract void endRegion() throws IOException;
+
+    public abstract void endReport() throws IOException;
+
+    @Override
+    public void close() throws IOException
+    {
+        this.writer.close();
+    }
+
+    protected static String getItemId(ItemStack stack)
+    {
+        ResourceLocation id = Item.REGISTRY.getNameForObject(stack.getItem());
+        return id != null ? id.toString() : "?";
+    }
+
+    public enum Format
+    {
+        CSV     (".csv"),
+        JSON    (".json");
+
+        private final String extension;
+
+        Format(String extension)
+        {
+            this.extension = extension;
+        }
+
+        public String getExtension()
+        {
+            return this.extension;
+        }
+    }
+
+    public static class Csv extends MaterialReportWriter
+    {
+        protected String regionName = "";
+        protected String layer = "";
+
+        public Csv(Path file) throws IOException
+        {
+            super(file);
+        }
+
+        @Override
+        public void beginReport(String name) throws IOException
+        {
+            this.writer.write("Region,Y,Item,Item ID,Meta,Count\n");
+        }
+
+        @Override
+        public void beginRegion(String regionName)
+        {
+            this.regionName = escape(regionName);
+        }
+
+        @Override
+        public void beginLayer(int y)
+        {
+            this.layer = String.valueOf(y);
+        }
+
+        @Override
+        public void writeItem(ItemStack stack, long count) throws IOException
+        {
+            this.writer.write(this.regionName);
+            this.writer.write(',');
+            this.writer.write(this.layer);
+            this.writer.write(',');
+            this.writer.write(escape(stack.getDisplayName()));
+            this.writer.write(',');
+            this.writer.write(getItemId(stack));
+            this.writer.write(',');
+            this.writer.write(String.valueOf(stack.getMetadata()));
+            this.writer.write(',');
+            this.writer.write(String.valueOf(count));
+            this.writer.write('\n');
+        }
+
+        @Override
+        public void endLayer()
+        {
+        }
+
+        @Override
+        public void beginRegionTotal()
+        {
+            this.layer = "total";
+        }
+
+        @Override
+        public void endRegion()
+        {
+        }
+
+        @Override
+        public void endReport()
+        {
+        }
+
+        protected static String escape(String value)
+        {
+            if (value.indexOf(',') != -1 || value.indexOf('"') != -1 || value.indexOf('\n') != -1)
+            {
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+
+            return value;
+        }
+    }
+
+    public static class Json extends MaterialReportWriter
+    {
+        protected final JsonWriter json;
+
+        public Json(Path file) throws IOException
+        {
+            super(file);
+
+            this.json = new JsonWriter(this.writer);
+            this.json.setIndent("  ");
+        }
+
+        @Override
+        public void beginReport(String name) throws IOException
+        {
+            this.json.beginObject();
+            this.json.name("name").value(name);
+            this.json.name("regions").beginArray();
+        }
+
+        @Override
+        public void beginRegion(String regionName) throws IOException
+        {
+            this.json.beginObject();
+            this.json.name("name").value(regionName);
+            this.json.name("layers").beginArray();
+        }
+
+        @Override
+        public void beginLayer(int y) throws IOException
+        {
+            this.json.beginObject();
+            this.json.name("y").value(y);
+            this.json.name("items").beginArray();
+        }
+
+        @Override
+        public void writeItem(ItemStack stack, long count) throws IOException
+        {
+            this.json.beginObject();
+            this.json.name("name").value(stack.getDisplayName());
+            this.json.name("id").value(getItemId(stack));
+            this.json.name("meta").value(stack.getMetadata());
+            this.json.name("count").value(count);
+            this.json.endObject();
+        }
+
+        @Override
+        public void endLayer() throws IOException
+        {
+            this.json.endArray();
+            this.json.endObject();
+        }
+
+        @Override
+        public void beginRegionTotal() throws IOException
+        {
+            this.json.endArray();
+            this.json.name("total").beginArray();
+        }
+
+        @Override
+        public void endRegion() throws IOException
+        {
+            this.json.endArray();
+            this.json.endObject();
+        }
+
+        @Override
+        public void endReport() throws IOException
+        {
+            this.json.endArray();
+            this.json.endObject();
+            this.json.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.json.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package litematica.materials;
+
+import java.util.List;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import malilib.util.position.IntBoundingBox;
+import malilib.util.position.LayerRange;
+import litematica.schematic.util.BlockStateSnapshot;
+
+/**
+ * The block counts of a schematic placement within one chunk,
+ * compared against the client world.
+ */
+public class PlacementChunkCounts
+{
+    protected final Object2LongOpenHashMap<IBlockState> countsTotal = new Object2LongOpenHashMap<>();
+    protected final Object2LongOpenHashMap<IBlockState> countsMissing = new Object2LongOpenHashMap<>();
+    protected final Object2LongOpenHashMap<IBlockState> countsMismatch = new Object2LongOpenHashMap<>();
+
+    public void countAtPosition(World worldSchematic, World worldClient, BlockPos pos, boolean ignoreState)
+    {
+        IBlockState stateSchematic = worldSchematic.getBlockState(pos).getActualState(worldSchematic, pos);
+
+        if (stateSchematic.getBlock() != Blocks.AIR)
+        {
+            IBlockState stateClient = worldClient.getBlockState(pos).getActualState(worldClient, pos);
+            this.countStates(stateSchematic, stateClient, ignoreState);
+        }
+    }
+
+    /**
+     * Counts the blocks within the box of the given snapshots, which must have been taken of the same box.
+     * This is safe to call from any thread.
+     */
+    public void countSnapshots(BlockStateSnapshot snapshotSchematic, BlockStateSnapshot snapshotClient, boolean ignoreState)
+    {
+        IntBoundingBox bb = snapshotSchematic.getBox();
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+        for (int y = bb.minY; y <= bb.maxY; ++y)
+        {
+            for (int z = bb.minZ; z <= bb.maxZ; ++z)
+            {
+                for (int x = bb.minX; x <= bb.maxX; ++x)
+                {
+                    posMutable.setPos(x, y, z);
+
+                    // Check the raw state first, to skip resolving the actual states for air
+                    if (snapshotSchematic.getBlockState(posMutable).getBlock() != Blocks.AIR)
+                    {
+                        this.countStates(snapshotSchematic.getActualState(posMutable),
+                                         snapshotClient.getActualState(posMutable), ignoreState);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void countStates(IBlockState stateSchematic, IBlockState stateClient, boolean ignoreState)
+    {
+        if (stateSchematic.getBlock() != Blocks.AIR)
+        {
+            this.countsTotal.addTo(stateSchematic, 1);
+
+            if (stateClient.getBlock() == Blocks.AIR)
+            {
+                this.countsMissing.addTo(stateSchematic, 1);
+            }
+            else if (ignoreState ? stateClient.getBlock() != stateSchematic.getBlock() : stateClient != stateSchematic)
+            {
+                this.countsMissing.addTo(stateSchematic, 1);
+                this.countsMismatch.addTo(stateSchematic, 1);
+            }
+        }
+    }
+
+    public void countBoxes(List<IntBoundingBox> boxes, LayerRange range,
+                           World worldSchematic, World worldClient, boolean ignoreState)
+    {
+        EnumFacing.Axis axis = range.getAxis();
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+        for (IntBoundingBox bb : boxes)
+        {
+            final int startX = axis == EnumFacing.Axis.X ? Math.max(bb.minX, range.getMinLayerBoundary()) : bb.minX;
+            final int startY = axis == EnumFacing.Axis.Y ? Math.max(bb.minY, range.getMinLayerBoundary()) : bb.minY;
+            final int startZ = axis == EnumFacing.Axis.Z ? Math.max(bb.minZ, range.getMinLayerBoundary()) : bb.minZ;
+            final int endX = axis == EnumFacing.Axis.X ? Math.min(bb.maxX, range.getMaxLayerBoundary()) : bb.maxX;
+            final int endY = axis == EnumFacing.Axis.Y ? Math.min(bb.maxY, range.getMaxLayerBoundary()) : bb.maxY;
+            final int endZ = axis == EnumFacing.Axis.Z ? Math.min(bb.maxZ, range.getMaxLayerBoundary()) : bb.maxZ;
+
+            for (int y = startY; y <= endY; ++y)
+            {
+                for (int z = startZ; z <= endZ; ++z)
+                {
+                    for (int x = startX; x <= endX; ++x)
+                    {
+                        posMutable.setPos(x, y, z);
+                        this.countAtPosition(worldSchematic, worldClient, posMutable, ignoreState);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds (or with a negative sign, subtracts) the counts of this chunk to the given totals
+     */
+    public void addTo(Object2LongOpenHashMap<IBlockState> countsTotal,
+                      Object2LongOpenHashMap<IBlockState> countsMissing,
+                      Object2LongOpenHashMap<IBlockState> countsMismatch,
+                      long sign)
+    {
+        addCounts(this.countsTotal, countsTotal, sign);
+        addCounts(this.countsMissing, countsMissing, sign);
+        addCounts(this.countsMismatch, countsMismatch, sign);
+    }
+
+    private static void addCounts(Object2LongOpenHashMap<IBlockState> source,
+                                  Object2LongOpenHashMap<IBlockState> target, long sign)
+    {
+        for (Object2LongMap.Entry<IBlockState> entry : source.object2LongEntrySet())
+        {
+            IBlockState state = entry.getKey();
+            long count = target.addTo(state, sign * entry.getLongValue()) + sign * entry.getLongValue();
+
+            // Don't leave behind zero entries for states that are not in the area anymore
+            if (count <= 0L)
+            {
+                target.removeLong(state);
+            }
+        }
+    }
+}
@@ -20,4 +20,10 @@ public abstract class MixinGuiContainer extends net.minecraft.client.gui.GuiScre
             MaterialListHudRenderer.renderSlotHighlights((net.minecraft.client.gui.inventory.GuiContainer) (Object) this);
         }
     }
+
+    @Inject(method = "onGuiClosed", at = @At("HEAD"))
+    private void clearSlotHighlights(CallbackInfo ci)
+    {
+        MaterialListHudRenderer.onContainerScreenClosed((net.minecraft.client.gui.inventory.GuiContainer) (Object) this);
+    }
 }
@@ -1,20 +1,32 @@
 package litematica.mixin;
 
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
+import net.minecraft.client.multiplayer.WorldClient;
 import net.minecraft.client.network.NetHandlerPlayClient;
+import net.minecraft.network.play.server.SPacketBlockChange;
+import net.minecraft.network.play.server.SPacketChat;
 import net.minecraft.network.play.server.SPacketChunkData;
+import net.minecraft.network.play.server.SPacketMultiBlockChange;
+import net.minecraft.network.play.server.SPacketSetSlot;
+import net.minecraft.network.play.server.SPacketWindowItems;
 
 import litematica.config.Configs;
+import litematica.materials.InventoryIndex;
+import litematica.materials.MaterialListUtils;
+import litematica.scheduler.tasks.CommandRateController;
 import litematica.schematic.verifier.SchematicVerifierManager;
 import litematica.world.SchematicWorldRenderingNotifier;
 
 @Mixin(NetHandlerPlayClient.class)
 public abstract class MixinNetHandlerPlayClient
 {
+    @Shadow private WorldClient world;
+
     @Inject(method = "handleChunkData", at = @At("RETURN"))
     private void onChunkData(SPacketChunkData packetIn, CallbackInfo ci)
     {
@@ -25,5 +37,41 @@ public abstract class MixinNetHandlerPlayClient
         }
 
         SchematicVerifierManager.INSTANCE.onChunkChanged(packetIn.getChunkX(), packetIn.getChunkZ());
+        MaterialListUtils.onClientChunkChanged(packetIn.getChunkX(), packetIn.getChunkZ());
+        CommandRateController.onChunkDataReceived(packetIn.getChunkX(), packetIn.getChunkZ(), this.world);
+    }
+
+    @Inject(method = "handleBlockChange", at = @At("RETURN"))
+    private void onBlockChange(SPacketBlockChange packetIn, CallbackInfo ci)
+    {
+        CommandRateController.onBlockChangeReceived(packetIn.getBlockPosition());
+    }
+
+    @Inject(method = "handleMultiBlockChange", at = @At("RETURN"))
+    private void onMultiBlockChange(SPacketMultiBlockChange packetIn, CallbackInfo ci)
+    {
+        for (SPacketMultiBlockChange.BlockUpdateData data : packetIn.getChangedBlocks())
+        {
+            CommandRateController.onBlockChangeReceived(data.getPos());
+        }
+    }
+
+    @Inject(method = "handleChat", at = @At("RETURN"))
+    private void onChat(SPacketChat packetIn, CallbackInfo ci)
+    {
+        CommandRateController.onChatMessageReceived(packetIn.getChatComponent());
+    }
+
+    @Inject(method = "handleSetSlot", at = @At("RETURN"))
+    private void onSetSlot(SPacketSetSlot packetIn, CallbackInfo ci)
+    {
+        // Some of these bypass the Slot and set the inventory contents directly
+        InventoryIndex.onSlotChanged();
+    }
+
+    @Inject(method = "handleWindowItems", at = @At("RETURN"))
+    private void onWindowItems(SPacketWindowItems packetIn, CallbackInfo ci)
+    {
+        InventoryIndex.onSlotChanged();
     }
 }
@@ -7,8 +7,10 @@ import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 import litematica.config.Configs;
+import litematica.materials.MaterialListUtils;
 import litematica.render.LitematicaRenderer;
 import litematica.schematic.verifier.SchematicVerifierManager;
+import litematica.util.EasyPlaceUtils;
 import litematica.world.SchematicWorldRenderingNotifier;
 
 @Mixin(net.minecraft.client.renderer.RenderGlobal.class)
@@ -36,6 +38,8 @@ public abstract class MixinRenderGlobal
         if (oldState != newState)
         {
             SchematicVerifierManager.INSTANCE.onBlockChanged(pos);
+            EasyPlaceUtils.onClientBlockChanged(pos);
+            MaterialListUtils.onClientChunkChanged(pos.getX() >> 4, pos.getZ() >> 4);
 
             if (Configs.Visuals.MAIN_RENDERING_TOGGLE.getBooleanValue() &&
                 Configs.Visuals.SCHEMATIC_RENDERING.getBooleanValue())
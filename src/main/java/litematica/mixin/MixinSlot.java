@@ -0,0 +1,20 @@
+package litematica.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.minecraft.inventory.Slot;
+
+import litematica.materials.InventoryIndex;
+
+@Mixin(Slot.class)
+public abstract class MixinSlot
+{
+    @Inject(method = "onSlotChanged", at = @At("HEAD"))
+    private void onSlotChanged(CallbackInfo ci)
+    {
+        InventoryIndex.onSlotChanged();
+    }
+}
@@ -6,6 +6,7 @@ import java.util.UUID;
 import java.util.function.Consumer;
 import com.google.common.collect.ImmutableList;
 import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.IntList;
 
 import net.minecraft.client.network.NetHandlerPlayClient;
 import net.minecraft.nbt.NBTTagCompound;
@@ -24,8 +25,43 @@ import litematica.schematic.util.SchematicSaveSettings;
 import litematica.selection.AreaSelection;
 import litematica.task.MultiplayerCreateSchematicTask;
 
+/**
+ * Handles the server-side schematic save requests.
+ * <p>
+ * The {@code AllAtOnce} save method sends back the entire schematic in one compound tag.
+ * The {@code PerChunk} save method instead streams the schematic as numbered pieces,
+ * each carrying the block data of one chunk-sized slice of a region as a palette + packed
+ * palette ID array, plus the BlockEntities, entities and scheduled ticks within it.
+ * The pieces are decoded straight into the region containers as they arrive.
+ * The client acknowledges the received pieces and grants the server a window of pieces
+ * that may be in flight, and asks for any missing pieces to be re-sent if the stream stalls.
+ * <p>
+ * The {@code PerChunk} method is only used if the {@code serverSideSavePerChunk} option
+ * is enabled, as it needs a server side that implements the following messages.
+ * All the messages are compound tags on the {@code litematica:save} channel,
+ * sent via the packet splitter, and they all carry the task UUID written by {@link NbtUtils#writeUUID}.
+ * <ul>
+ * <li>Request, client to server: {@code SaveMethod = "PerChunk"}, {@code RequestedData} with the
+ *     boolean data type flags, {@code Regions} with the selection boxes, and {@code Window},
+ *     the number of pieces that may be sent before the first acknowledgement.</li>
+ * <li>Piece, server to client: {@code SaveMethod = "PerChunk"}, {@code Piece} the piece number starting from 0,
+ *     {@code TotalPieces} at least in the last piece, and {@code Regions}, a compound by region name.
+ *     Each region tag may have {@code Blocks} with the {@code x}, {@code y}, {@code z} position
+ *     of the slice within the region, its {@code sizeX}, {@code sizeY}, {@code sizeZ},
+ *     the {@code BlockStatePalette} list and the {@code BlockStates} long array,
+ *     with the IDs packed in the same way as in the schematic files, using at least 2 bits per entry.
+ *     The region tags may also have {@code BlockEntities}, {@code Entities} and {@code BlockTicks} lists,
+ *     in the same format as in the {@code AllAtOnce} method. Re-sent pieces are ignored.</li>
+ * <li>Acknowledgement, client to server: {@code SaveMethod = "PerChunk"}, {@code Type = "Ack"},
+ *     {@code ReceivedPieces} the number of pieces received without gaps, {@code Window} the number of
+ *     pieces the server may send past those, and optionally {@code MissingPieces}, an int array
+ *     of the pieces that the server should send again.</li>
+ * </ul>
+ */
 public class SchematicSavePacketHandler extends BasePacketHandler
 {
+    public static final int PER_CHUNK_WINDOW = 32;
+
     public static final SchematicSavePacketHandler INSTANCE = new SchematicSavePacketHandler();
 
     protected final ResourceLocation channelId = new ResourceLocation("litematica:save");
@@ -58,7 +94,12 @@ public class SchematicSavePacketHandler extends BasePacketHandler
                 if (task != null)
                 {
                     task.onReceiveData(tag);
-                    this.removeSaveTask(taskId);
+
+                    // The per-chunk saves keep receiving more pieces until the whole schematic is complete
+                    if (task.isFinished())
+                    {
+                        this.removeSaveTask(taskId);
+                    }
                 }
             }
         }
@@ -98,7 +139,8 @@ public class SchematicSavePacketHandler extends BasePacketHandler
 
         if (handler != null && this.sendSaveRequestPacket(selection, settings, taskId, saveMethod, handler))
         {
-            MultiplayerCreateSchematicTask task = new MultiplayerCreateSchematicTask(selection, taskId, listener);
+            boolean perChunk = saveMethod.equals("PerChunk");
+            MultiplayerCreateSchematicTask task = new MultiplayerCreateSchematicTask(selection, taskId, perChunk, listener);
             this.pendingSaveTasks.put(taskId, task);
             TaskScheduler.getInstanceClient().scheduleTask(task, 10);
         }
@@ -123,10 +165,47 @@ public class SchematicSavePacketHandler extends BasePacketHandler
         NbtWrap.putTag(tag, "RequestedData", dataTypesTag);
         NbtWrap.putTag(tag, "Regions", selection.getAllSelectionBoxesAsNbtCompound());
 
+        if (saveMethod.equals("PerChunk"))
+        {
+            NbtWrap.putInt(tag, "Window", PER_CHUNK_WINDOW);
+        }
+
         PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
         buf.writeCompoundTag(tag);
         PacketSplitter.send(this.channelId, buf, handler);
 
         return true;
     }
+
+    /**
+     * Acknowledges the received pieces of a per-chunk save, and requests any missing pieces to be re-sent.
+     * @param receivedPieces the number of pieces received so far without any gaps
+     * @param window the number of pieces the server is allowed to send past the received pieces
+     * @param missingPieces the pieces that should be re-sent
+     */
+    public void sendPerChunkAcknowledgement(UUID taskId, int receivedPieces, int window, IntList missingPieces)
+    {
+        NetHandlerPlayClient handler = GameUtils.getClient().getConnection();
+
+        if (handler == null)
+        {
+            return;
+        }
+
+        NBTTagCompound tag = new NBTTagCompound();
+        NbtUtils.writeUUID(tag, taskId);
+        NbtWrap.putString(tag, "SaveMethod", "PerChunk");
+        NbtWrap.putString(tag, "Type", "Ack");
+        NbtWrap.putInt(tag, "ReceivedPieces", receivedPieces);
+        NbtWrap.putInt(tag, "Window", window);
+
+        if (missingPieces.isEmpty() == false)
+        {
+            NbtWrap.putIntArray(tag, "MissingPieces", missingPieces.toIntArray());
+        }
+
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        buf.writeCompoundTag(tag);
+        PacketSplitter.send(this.channelId, buf, handler);
+    }
 }
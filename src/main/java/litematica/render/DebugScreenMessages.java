@@ -4,6 +4,11 @@ import java.util.List;
 
 import net.minecraft.client.renderer.RenderGlobal;
 
+import litematica.data.SchematicHolder;
+import litematica.schematic.ISchematic;
+import litematica.schematic.ISchematicRegion;
+import litematica.schematic.container.ILitematicaBlockStateContainer;
+import litematica.schematic.container.LitematicaBlockStateContainerFull;
 import litematica.world.SchematicWorldHandler;
 import litematica.world.WorldSchematic;
 
@@ -29,5 +34,38 @@ public class DebugScreenMessages
                                    world.getDebugLoadedEntities(),
                                    world.loadedTileEntityList.size()));
         }
+
+        addSchematicMemoryMessage(list);
+    }
+
+    private static void addSchematicMemoryMessage(List<String> list)
+    {
+        List<ISchematic> schematics = SchematicHolder.getInstance().getAllSchematics();
+
+        if (schematics.isEmpty())
+        {
+            return;
+        }
+
+        long totalBytes = 0;
+        long sharedBytes = 0;
+
+        for (ISchematic schematic : schematics)
+        {
+            for (ISchematicRegion region : schematic.getRegions().values())
+            {
+                // Don't load unloaded or evicted regions just for the statistics
+                ILitematicaBlockStateContainer container = region.getLoadedBlockStateContainer();
+
+                if (container instanceof LitematicaBlockStateContainerFull)
+                {
+                    totalBytes += ((LitematicaBlockStateContainerFull) container).getStorageSizeBytes();
+                    sharedBytes += ((LitematicaBlockStateContainerFull) container).getSharedStorageSizeBytes();
+                }
+            }
+        }
+
+        list.add(String.format("§6[Litematica]§r Schematics: %d, block storage: %.1f MiB, pending copy-on-write: %.1f MiB",
+                               schematics.size(), totalBytes / 1048576.0, sharedBytes / 1048576.0));
     }
 }
@@ -3,6 +3,7 @@ package litematica.scheduler;
 import malilib.gui.util.GuiUtils;
 import malilib.util.game.wrap.GameUtils;
 import litematica.data.DataManager;
+import litematica.materials.MaterialListBase;
 import litematica.schematic.verifier.SchematicVerifierManager;
 import litematica.util.EasyPlaceUtils;
 
@@ -27,6 +28,16 @@ public class ClientTickHandler implements malilib.event.ClientTickHandler
             SchematicVerifierManager.INSTANCE.scheduleReChecks();
         }
 
+        if ((this.tickCounter) % 5 == 0)
+        {
+            MaterialListBase materialList = DataManager.getMaterialList();
+
+            if (materialList != null)
+            {
+                materialList.updateChangedChunks();
+            }
+        }
+
         if (GuiUtils.getCurrentScreen() == null)
         {
             EasyPlaceUtils.easyPlaceOnUseTick();
@@ -0,0 +1,24 @@
+package litematica.scheduler;
+
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.Nullable;
+
+/**
+ * The shared pool of worker threads for the off-thread parts of
+ * the schematic creation and block counting tasks.
+ */
+public class WorkerPool
+{
+    @Nullable private static ForkJoinPool pool;
+
+    public static synchronized ForkJoinPool getPool()
+    {
+        if (pool == null)
+        {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+
+        return pool;
+    }
+}
@@ -0,0 +1,317 @@
+package litematica.scheduler.tasks;
+
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.world.World;
+
+import litematica.util.PositionUtils;
+
+/**
+ * A feedback driven (AIMD) rate controller for the command-based paste.
+ * The positions of the sent setblock commands are tracked until a block change
+ * for them arrives from the server. The commands-per-tick window is then grown
+ * additively while the server keeps up, and halved when the acknowledgement latency
+ * inflates or when commands time out without any acknowledgement.
+ * An error message from the server for a rejected command also counts as an acknowledgement,
+ * as the server did process the command, it just won't send a block change for it.
+ */
+public class CommandRateController
+{
+    private static final long MIN_TIMEOUT_MS = 1000L;
+    private static final long MAX_TIMEOUT_MS = 10000L;
+    private static final int MAX_IN_FLIGHT_TICKS = 20;
+    private static final double LATENCY_INFLATION_FACTOR = 2.0;
+    private static final long LATENCY_INFLATION_SLACK_MS = 100L;
+
+    @Nullable private static CommandRateController activeController;
+
+    // The sent times of the pending commands, in the order the commands were sent
+    private final Long2LongLinkedOpenHashMap pendingPositions = new Long2LongLinkedOpenHashMap();
+    private final Long2IntOpenHashMap expectedStateIds = new Long2IntOpenHashMap();
+    private final int minWindow;
+    private final int maxWindow;
+    private double window;
+    private double smoothedRtt = -1.0;
+    private long minRtt = Long.MAX_VALUE;
+    private long lastDecreaseTime;
+    private long throughputSampleStart;
+    private int acknowledgedSinceSample;
+    private int acknowledgedTotal;
+    private int timedOutTotal;
+    private double throughput;
+    private boolean congestionSeen;
+
+    public CommandRateController(int initialWindow, int maxWindow)
+    {
+        this.minWindow = 1;
+        this.maxWindow = Math.max(this.minWindow, maxWindow);
+        this.window = Math.max(this.minWindow, Math.min(initialWindow, this.maxWindow));
+        this.throughputSampleStart = System.currentTimeMillis();
+    }
+
+    public static void setActiveController(@Nullable CommandRateController controller)
+    {
+        activeController = controller;
+    }
+
+    public static void onBlockChangeReceived(BlockPos pos)
+    {
+        CommandRateController controller = activeController;
+
+        if (controller != null)
+        {
+            controller.acknowledge(pos.toLong(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Called after the given chunk has been (re-)loaded into the client world from a chunk data packet.
+     * The server sends those instead of block changes when lots of blocks change in a chunk section.
+     */
+    public static void onChunkDataReceived(int chunkX, int chunkZ, World world)
+    {
+        CommandRateController controller = activeController;
+
+        if (controller != null)
+        {
+            controller.acknowledgeAppliedInChunk(chunkX, chunkZ, world, System.currentTimeMillis());
+        }
+    }
+
+    public static void onChatMessageReceived(ITextComponent message)
+    {
+        CommandRateController controller = activeController;
+
+        if (controller != null && isCommandErrorMessage(message))
+        {
+            controller.acknowledgeOldest(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return true if the message is the error feedback the server sends for a failed or rejected command.
+     *         The server sends these even with the sendCommandFeedback game rule disabled.
+     */
+    protected static boolean isCommandErrorMessage(ITextComponent message)
+    {
+        if (message instanceof TextComponentTranslation)
+        {
+            String key = ((TextComponentTranslation) message).getKey();
+
+            return key.startsWith("commands.generic.") ||
+                   (key.startsWith("commands.setblock.") && key.equals("commands.setblock.success") == false);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of commands that are allowed to be sent during the current tick
+     */
+    public int getAllowedCommandsThisTick()
+    {
+        int window = (int) this.window;
+        int maxInFlight = window * MAX_IN_FLIGHT_TICKS;
+        int pending = this.pendingPositions.size();
+
+        if (pending >= maxInFlight)
+        {
+            return 0;
+        }
+
+        return Math.min(window, maxInFlight - pending);
+    }
+
+    public int getWindow()
+    {
+        return (int) this.window;
+    }
+
+    public int getPendingCount()
+    {
+        return this.pendingPositions.size();
+    }
+
+    public int getAcknowledgedTotal()
+    {
+        return this.acknowledgedTotal;
+    }
+
+    public int getTimedOutTotal()
+    {
+        return this.timedOutTotal;
+    }
+
+    /**
+     * @return the number of acknowledged commands per second
+     */
+    public double getThroughput()
+    {
+        return this.throughput;
+    }
+
+    /**
+     * @return the smoothed acknowledgement round-trip time in milliseconds, or -1 if not yet known
+     */
+    public long getSmoothedRtt()
+    {
+        return (long) this.smoothedRtt;
+    }
+
+    /**
+     * Marks a command for the given position as sent, and starts waiting for a block change for it
+     * @param expectedState the state the command is going to set
+     */
+    public void onCommandSent(int x, int y, int z, IBlockState expectedState)
+    {
+        long posLong = PositionUtils.packPos(x, y, z);
+        this.pendingPositions.put(posLong, System.currentTimeMillis());
+        this.expectedStateIds.put(posLong, Block.getStateId(expectedState));
+    }
+
+    /**
+     * Updates the window based on the feedback received since the previous tick.
+     * Should be called once per task execution, before sending any commands.
+     * @param usedFullWindow true if the previous execution was limited by the window,
+     *                       ie. the window is the actual bottleneck and can be grown
+     */
+    public void onTick(boolean usedFullWindow)
+    {
+        long currentTime = System.currentTimeMillis();
+
+        this.expireTimedOutCommands(currentTime);
+        this.updateThroughput(currentTime);
+
+        if (this.congestionSeen || this.isLatencyInflated())
+        {
+            long minInterval = this.smoothedRtt > 0 ? (long) this.smoothedRtt : MIN_TIMEOUT_MS;
+
+            // Only back off once per round trip, the rest of the in-flight
+            // commands were sent before the previous decrease took effect
+            if (currentTime - this.lastDecreaseTime >= minInterval)
+            {
+                this.window = Math.max(this.minWindow, this.window / 2.0);
+                this.lastDecreaseTime = currentTime;
+            }
+
+            this.congestionSeen = false;
+        }
+        else if (usedFullWindow)
+        {
+            this.window = Math.min(this.maxWindow, this.window + 1.0);
+        }
+    }
+
+    protected void acknowledge(long posLong, long currentTime)
+    {
+        if (this.pendingPositions.containsKey(posLong))
+        {
+            long sentTime = this.pendingPositions.remove(posLong);
+            this.expectedStateIds.remove(posLong);
+            this.onAcknowledged(currentTime - sentTime);
+        }
+    }
+
+    /**
+     * Acknowledges the pending commands in the given chunk whose block has already changed
+     * to the expected state. The other commands in the chunk are still waiting to be processed.
+     */
+    protected void acknowledgeAppliedInChunk(int chunkX, int chunkZ, World world, long currentTime)
+    {
+        ObjectIterator<Long2LongMap.Entry> iter = this.pendingPositions.long2LongEntrySet().fastIterator();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        while (iter.hasNext())
+        {
+            Long2LongMap.Entry entry = iter.next();
+            long posLong = entry.getLongKey();
+            PositionUtils.unpackPos(posLong, pos);
+
+            if ((pos.getX() >> 4) == chunkX && (pos.getZ() >> 4) == chunkZ &&
+                Block.getStateId(world.getBlockState(pos)) == this.expectedStateIds.get(posLong))
+            {
+                this.onAcknowledged(currentTime - entry.getLongValue());
+                this.expectedStateIds.remove(posLong);
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Acknowledges the oldest pending command. The server processes the commands in order,
+     * but the error messages don't include the position, so the rejected command
+     * is assumed to be the oldest one that hasn't been acknowledged yet.
+     */
+    protected void acknowledgeOldest(long currentTime)
+    {
+        if (this.pendingPositions.isEmpty() == false)
+        {
+            long posLong = this.pendingPositions.firstLongKey();
+            this.acknowledge(posLong, currentTime);
+        }
+    }
+
+    protected void onAcknowledged(long rtt)
+    {
+        this.minRtt = Math.min(this.minRtt, rtt);
+        this.smoothedRtt = this.smoothedRtt < 0 ? rtt : this.smoothedRtt * 0.875 + rtt * 0.125;
+        ++this.acknowledgedSinceSample;
+        ++this.acknowledgedTotal;
+    }
+
+    protected boolean isLatencyInflated()
+    {
+        return this.smoothedRtt > 0 && this.minRtt != Long.MAX_VALUE &&
+               this.smoothedRtt > this.minRtt * LATENCY_INFLATION_FACTOR + LATENCY_INFLATION_SLACK_MS;
+    }
+
+    protected long getTimeout()
+    {
+        if (this.smoothedRtt < 0)
+        {
+            return MAX_TIMEOUT_MS;
+        }
+
+        return Math.max(MIN_TIMEOUT_MS, Math.min(MAX_TIMEOUT_MS, (long) (this.smoothedRtt * 4)));
+    }
+
+    protected void expireTimedOutCommands(long currentTime)
+    {
+        long timeout = this.getTimeout();
+        ObjectIterator<Long2LongMap.Entry> iter = this.pendingPositions.long2LongEntrySet().fastIterator();
+
+        while (iter.hasNext())
+        {
+            Long2LongMap.Entry entry = iter.next();
+
+            if (currentTime - entry.getLongValue() > timeout)
+            {
+                this.expectedStateIds.remove(entry.getLongKey());
+                iter.remove();
+                ++this.timedOutTotal;
+                this.congestionSeen = true;
+            }
+        }
+    }
+
+    protected void updateThroughput(long currentTime)
+    {
+        long elapsed = currentTime - this.throughputSampleStart;
+
+        if (elapsed >= 1000L)
+        {
+            this.throughput = this.acknowledgedSinceSample * 1000.0 / (double) elapsed;
+            this.acknowledgedSinceSample = 0;
+            this.throughputSampleStart = currentTime;
+        }
+    }
+}
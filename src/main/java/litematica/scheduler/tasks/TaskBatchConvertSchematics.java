@@ -0,0 +1,136 @@
+package litematica.scheduler.tasks;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
+
+import malilib.overlay.message.MessageDispatcher;
+import malilib.util.StringUtils;
+import litematica.config.Configs;
+import litematica.render.infohud.InfoHud;
+import litematica.schematic.SchematicType;
+import litematica.schematic.util.BatchSchematicConverter;
+
+/**
+ * Converts all the schematics in a directory tree to another format in the background,
+ * and shows the progress, throughput and failures on the info HUD.
+ * The actual work is done by {@link BatchSchematicConverter}.
+ */
+public class TaskBatchConvertSchematics extends TaskBase
+{
+    protected final BatchSchematicConverter converter;
+    protected final Path sourceDirectory;
+    protected final Path outputDirectory;
+    protected final SchematicType<?> outputType;
+    @Nullable protected CompletableFuture<Void> future;
+
+    public TaskBatchConvertSchematics(Path sourceDirectory, Path outputDirectory, SchematicType<?> outputType, boolean overwrite)
+    {
+        this.sourceDirectory = sourceDirectory;
+        this.outputDirectory = outputDirectory;
+        this.outputType = outputType;
+        this.name = StringUtils.translate("litematica.gui.label.task_name.batch_convert");
+
+        int threads = Configs.Generic.BATCH_CONVERT_THREADS.getIntegerValue();
+        long maxVolume = Configs.Generic.BATCH_CONVERT_MAX_VOLUME.getIntegerValue() * 1000000L;
+        this.converter = new BatchSchematicConverter(sourceDirectory, outputDirectory, outputType, threads, maxVolume, overwrite);
+    }
+
+    @Override
+    public void init()
+    {
+        this.updateInfoHudLines();
+        InfoHud.getInstance().addInfoHudRenderer(this, true);
+
+        this.future = this.converter.start();
+    }
+
+    @Override
+    public boolean canExecute()
+    {
+        // This does not need the world, the conversions only deal with files
+        return true;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        this.updateInfoHudLines();
+
+        if (this.future == null || this.future.isDone() == false)
+        {
+            return false;
+        }
+
+        this.finished = true;
+
+        int converted = this.converter.getConvertedFiles();
+        int skipped = this.converter.getSkippedFiles();
+        int failed = this.converter.getFailedFiles();
+        String dir = this.outputDirectory.toAbsolutePath().toString();
+
+        if (failed > 0)
+        {
+            String key = "litematica.message.warn.batch_convert.completed_with_failures";
+            MessageDispatcher.warning(8000).translate(key, converted, skipped, failed, dir);
+        }
+        else if (this.printCompletionMessage)
+        {
+            String key = "litematica.message.success.batch_convert.completed";
+            MessageDispatcher.success(key, converted, skipped, dir);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void stop()
+    {
+        // Removed via the Task Manager before finishing, don't start any new conversions
+        this.converter.cancel();
+
+        super.stop();
+    }
+
+    protected void updateInfoHudLines()
+    {
+        List<String> hudLines = new ArrayList<>();
+        BatchSchematicConverter converter = this.converter;
+        int total = converter.getTotalFiles();
+        int processed = converter.getProcessedFiles();
+        long percentage = total > 0 ? processed * 100L / total : 0L;
+        double seconds = Math.max(0.001, converter.getElapsedTimeMillis() / 1000.0);
+
+        hudLines.add(StringUtils.translate("litematica.hud.task_name.batch_convert",
+                                           this.sourceDirectory.getFileName(), this.outputType.getDisplayName()));
+
+        if (total < 0)
+        {
+            hudLines.add(StringUtils.translate("litematica.hud.batch_convert.scanning"));
+        }
+        else
+        {
+            hudLines.add(StringUtils.translate("litematica.hud.batch_convert.progress", processed, total, percentage,
+                                               converter.getSkippedFiles(), converter.getFailedFiles()));
+            hudLines.add(StringUtils.translate("litematica.hud.batch_convert.throughput",
+                                               String.format("%.1f", converter.getConvertedFiles() / seconds),
+                                               String.format("%.2f", converter.getConvertedVolume() / seconds / 1000000.0),
+                                               String.format("%.1f", converter.getInFlightVolume() / 1000000.0)));
+        }
+
+        List<BatchSchematicConverter.Failure> failures = converter.getFailures();
+        int maxLines = Math.min(failures.size(), Configs.InfoOverlays.INFO_HUD_MAX_LINES.getIntegerValue());
+
+        // Show the latest failures
+        for (int i = failures.size() - maxLines; i < failures.size(); ++i)
+        {
+            BatchSchematicConverter.Failure failure = failures.get(i);
+            hudLines.add(StringUtils.translate("litematica.hud.batch_convert.failure",
+                                               failure.file.getFileName(), failure.reason));
+        }
+
+        this.infoHudLines = hudLines;
+    }
+}
@@ -1,9 +1,17 @@
 package litematica.scheduler.tasks;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 
+import malilib.util.position.IntBoundingBox;
 import litematica.materials.IMaterialList;
+import litematica.schematic.util.BlockStateSnapshot;
 import litematica.selection.AreaSelection;
 
 public class TaskCountBlocksArea extends TaskCountBlocksMaterialList
@@ -25,4 +33,39 @@ public class TaskCountBlocksArea extends TaskCountBlocksMaterialList
         IBlockState stateClient = this.worldClient.getBlockState(pos).getActualState(this.worldClient, pos);
         this.countsTotal.addTo(stateClient, 1);
     }
+
+    @Override
+    protected Supplier<Runnable> createCountJob(ChunkPos pos, List<IntBoundingBox> boxes)
+    {
+        List<BlockStateSnapshot> snapshots = new ArrayList<>();
+
+        for (IntBoundingBox box : boxes)
+        {
+            snapshots.add(BlockStateSnapshot.createWithBlockEntityStates(this.worldClient, box));
+        }
+
+        return () -> {
+            Object2LongOpenHashMap<IBlockState> counts = new Object2LongOpenHashMap<>();
+            BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+            for (BlockStateSnapshot snapshot : snapshots)
+            {
+                IntBoundingBox bb = snapshot.getBox();
+
+                for (int y = bb.minY; y <= bb.maxY; ++y)
+                {
+                    for (int z = bb.minZ; z <= bb.maxZ; ++z)
+                    {
+                        for (int x = bb.minX; x <= bb.maxX; ++x)
+                        {
+                            posMutable.setPos(x, y, z);
+                            counts.addTo(snapshot.getActualState(posMutable), 1);
+                        }
+                    }
+                }
+            }
+
+            return () -> addCounts(counts, this.countsTotal);
+        };
+    }
 }
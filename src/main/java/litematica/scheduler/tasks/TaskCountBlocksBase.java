@@ -1,5 +1,7 @@
 package litematica.scheduler.tasks;
 
+import java.util.ArrayList;
+import java.util.List;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 
 import net.minecraft.block.state.IBlockState;
@@ -81,5 +83,31 @@ public abstract class TaskCountBlocksBase extends TaskProcessChunkBase
         }
     }
 
+    /**
+     * @return the given boxes clamped to the given layer range, with the boxes outside the range dropped
+     */
+    protected static List<IntBoundingBox> getLayerRangeClampedBoxes(List<IntBoundingBox> boxes, LayerRange range)
+    {
+        EnumFacing.Axis axis = range.getAxis();
+        List<IntBoundingBox> list = new ArrayList<>();
+
+        for (IntBoundingBox bb : boxes)
+        {
+            final int startX = axis == EnumFacing.Axis.X ? Math.max(bb.minX, range.getMinLayerBoundary()) : bb.minX;
+            final int startY = axis == EnumFacing.Axis.Y ? Math.max(bb.minY, range.getMinLayerBoundary()) : bb.minY;
+            final int startZ = axis == EnumFacing.Axis.Z ? Math.max(bb.minZ, range.getMinLayerBoundary()) : bb.minZ;
+            final int endX = axis == EnumFacing.Axis.X ? Math.min(bb.maxX, range.getMaxLayerBoundary()) : bb.maxX;
+            final int endY = axis == EnumFacing.Axis.Y ? Math.min(bb.maxY, range.getMaxLayerBoundary()) : bb.maxY;
+            final int endZ = axis == EnumFacing.Axis.Z ? Math.min(bb.maxZ, range.getMaxLayerBoundary()) : bb.maxZ;
+
+            if (startX <= endX && startY <= endY && startZ <= endZ)
+            {
+                list.add(new IntBoundingBox(startX, startY, startZ, endX, endY, endZ));
+            }
+        }
+
+        return list;
+    }
+
     protected abstract void countAtPosition(BlockPos pos);
 }
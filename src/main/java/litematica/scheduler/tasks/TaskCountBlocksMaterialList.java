@@ -1,33 +1,60 @@
 package litematica.scheduler.tasks;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.ChunkPos;
 
+import malilib.overlay.message.MessageDispatcher;
 import malilib.util.game.wrap.GameUtils;
+import malilib.util.position.IntBoundingBox;
 import malilib.util.position.LayerRange;
+import litematica.Litematica;
+import litematica.config.Configs;
 import litematica.data.DataManager;
 import litematica.materials.IMaterialList;
 import litematica.materials.MaterialListEntry;
 import litematica.materials.MaterialListUtils;
 import litematica.render.infohud.InfoHud;
+import litematica.scheduler.WorkerPool;
 import litematica.util.value.BlockInfoListType;
 import litematica.world.SchematicWorldRenderingNotifier;
 
+/**
+ * The base class for the material list block counting tasks.
+ * In the parallel mode the blocks of each ready chunk are snapshotted on the main thread,
+ * and counted into job-local maps on the worker pool. The results are merged into
+ * the task's counts on the main thread. The main thread work is limited by a per-tick time budget.
+ */
 public abstract class TaskCountBlocksMaterialList extends TaskCountBlocksBase
 {
+    protected static final long TICK_TIME_BUDGET_NANOS = 5000000L;
+
+    protected final Queue<Runnable> completedJobs = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger pendingJobs = new AtomicInteger();
+    protected final AtomicInteger failedJobs = new AtomicInteger();
     protected final Object2LongOpenHashMap<IBlockState> countsMissing = new Object2LongOpenHashMap<>();
     protected final Object2LongOpenHashMap<IBlockState> countsMismatch = new Object2LongOpenHashMap<>();
     protected final IMaterialList materialList;
     protected final LayerRange layerRange;
+    protected final boolean parallel;
+    protected final int maxPendingJobs;
 
     protected TaskCountBlocksMaterialList(IMaterialList materialList, String nameOnHud)
     {
         super(nameOnHud);
 
         this.materialList = materialList;
+        this.parallel = Configs.Generic.PARALLEL_BLOCK_COUNTING.getBooleanValue();
+        this.maxPendingJobs = WorkerPool.getPool().getParallelism() * 4;
 
         if (materialList.getMaterialListType() == BlockInfoListType.ALL)
         {
@@ -39,16 +66,130 @@ public abstract class TaskCountBlocksMaterialList extends TaskCountBlocksBase
         }
     }
 
+    @Override
+    public boolean execute()
+    {
+        final long deadline = System.nanoTime() + TICK_TIME_BUDGET_NANOS;
+
+        this.mergeCompletedJobs();
+
+        if (this.worldClient != null)
+        {
+            Iterator<ChunkPos> iter = this.requiredChunks.iterator();
+            int processed = 0;
+
+            while (iter.hasNext() && System.nanoTime() < deadline)
+            {
+                // Don't let the snapshots pile up if the workers can't keep up
+                if (this.parallel && this.pendingJobs.get() >= this.maxPendingJobs)
+                {
+                    break;
+                }
+
+                ChunkPos pos = iter.next();
+
+                if (this.canProcessChunk(pos) && this.processChunk(pos))
+                {
+                    iter.remove();
+                    ++processed;
+                }
+            }
+
+            if (processed > 0)
+            {
+                this.updateInfoHudLinesMissingChunks(this.requiredChunks);
+            }
+        }
+
+        if (this.requiredChunks.isEmpty() && this.pendingJobs.get() == 0)
+        {
+            // All the jobs have completed, merge the last results
+            this.mergeCompletedJobs();
+            this.finished = true;
+        }
+
+        return this.finished;
+    }
+
     @Override
     protected boolean processChunk(ChunkPos pos)
     {
-        this.countBlocksInChunkRespectingLayerRange(pos, this.layerRange);
+        if (this.parallel)
+        {
+            List<IntBoundingBox> boxes = getLayerRangeClampedBoxes(this.getBoxesInChunk(pos), this.layerRange);
+            this.submitCountJob(this.createCountJob(pos, boxes));
+        }
+        else
+        {
+            this.countChunk(pos);
+        }
+
         return true;
     }
 
+    /**
+     * Counts the blocks in the given chunk directly on the current thread
+     */
+    protected void countChunk(ChunkPos pos)
+    {
+        this.countBlocksInChunkRespectingLayerRange(pos, this.layerRange);
+    }
+
+    /**
+     * Takes the snapshots needed for counting the given boxes within one chunk.
+     * Called on the main thread.
+     * @return the counting job to run on a worker thread. The job returns the action
+     *         that merges its results into this task, which is then run on the main thread.
+     */
+    protected abstract Supplier<Runnable> createCountJob(ChunkPos pos, List<IntBoundingBox> boxes);
+
+    protected void submitCountJob(Supplier<Runnable> job)
+    {
+        this.pendingJobs.incrementAndGet();
+
+        CompletableFuture.supplyAsync(job, WorkerPool.getPool())
+            .whenComplete((mergeAction, e) -> {
+                if (e != null)
+                {
+                    this.failedJobs.incrementAndGet();
+                    Litematica.logger.error("Failed to count the blocks of a chunk", e);
+                }
+                else
+                {
+                    this.completedJobs.add(mergeAction);
+                }
+
+                this.pendingJobs.decrementAndGet();
+            });
+    }
+
+    protected void mergeCompletedJobs()
+    {
+        Runnable mergeAction;
+
+        while ((mergeAction = this.completedJobs.poll()) != null)
+        {
+            mergeAction.run();
+        }
+    }
+
+    protected static void addCounts(Object2LongOpenHashMap<IBlockState> source, Object2LongOpenHashMap<IBlockState> target)
+    {
+        for (Object2LongMap.Entry<IBlockState> entry : source.object2LongEntrySet())
+        {
+            target.addTo(entry.getKey(), entry.getLongValue());
+        }
+    }
+
     @Override
     protected void onStop()
     {
+        if (this.failedJobs.get() > 0)
+        {
+            MessageDispatcher.warning().translate("litematica.message.warn.count_blocks.parallel_failed_chunks",
+                                                  this.failedJobs.get());
+        }
+
         if (this.finished && GameUtils.getClientPlayer() != null)
         {
             List<MaterialListEntry> list = MaterialListUtils.getMaterialList(
@@ -1,16 +1,23 @@
 package litematica.scheduler.tasks;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
-import net.minecraft.block.state.IBlockState;
-import net.minecraft.init.Blocks;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 
 import malilib.util.data.EnabledCondition;
+import malilib.util.position.IntBoundingBox;
 import litematica.config.Configs;
 import litematica.data.DataManager;
 import litematica.materials.IMaterialList;
+import litematica.materials.MaterialListPlacement;
+import litematica.materials.PlacementChunkCounts;
 import litematica.schematic.placement.SchematicPlacement;
+import litematica.schematic.util.BlockStateSnapshot;
 import litematica.selection.SelectionBox;
 import litematica.util.value.BlockInfoListType;
 import litematica.world.SchematicWorldHandler;
@@ -20,7 +27,10 @@ public class TaskCountBlocksPlacement extends TaskCountBlocksMaterialList
 {
     protected final SchematicPlacement schematicPlacement;
     protected final WorldSchematic worldSchematic;
+    protected final Long2ObjectOpenHashMap<PlacementChunkCounts> perChunkCounts = new Long2ObjectOpenHashMap<>();
     protected final boolean ignoreState;
+    protected final int countGeneration;
+    protected PlacementChunkCounts currentChunkCounts = new PlacementChunkCounts();
 
     public TaskCountBlocksPlacement(SchematicPlacement schematicPlacement, IMaterialList materialList)
     {
@@ -29,6 +39,7 @@ public class TaskCountBlocksPlacement extends TaskCountBlocksMaterialList
         this.ignoreState = Configs.Generic.MATERIAL_LIST_IGNORE_BLOCK_STATE.getBooleanValue();
         this.worldSchematic = SchematicWorldHandler.getSchematicWorld();
         this.schematicPlacement = schematicPlacement;
+        this.countGeneration = materialList instanceof MaterialListPlacement ? ((MaterialListPlacement) materialList).getCountGeneration() : 0;
 
         Collection<SelectionBox> boxes = schematicPlacement.getSubRegionBoxes(EnabledCondition.ENABLED).values();
 
@@ -52,25 +63,69 @@ public class TaskCountBlocksPlacement extends TaskCountBlocksMaterialList
     }
 
     @Override
-    protected void countAtPosition(BlockPos pos)
+    protected void countChunk(ChunkPos pos)
+    {
+        this.currentChunkCounts = new PlacementChunkCounts();
+        super.countChunk(pos);
+        this.onChunkCounted(pos, this.currentChunkCounts);
+    }
+
+    @Override
+    protected Supplier<Runnable> createCountJob(ChunkPos pos, List<IntBoundingBox> boxes)
     {
-        IBlockState stateSchematic = this.worldSchematic.getBlockState(pos).getActualState(this.worldSchematic, pos);
+        List<BlockStateSnapshot> snapshotsSchematic = new ArrayList<>();
+        List<BlockStateSnapshot> snapshotsClient = new ArrayList<>();
+        final boolean ignoreState = this.ignoreState;
 
-        if (stateSchematic.getBlock() != Blocks.AIR)
+        for (IntBoundingBox box : boxes)
         {
-            IBlockState stateClient = this.worldClient.getBlockState(pos).getActualState(this.worldClient, pos);
+            snapshotsSchematic.add(BlockStateSnapshot.createWithBlockEntityStates(this.worldSchematic, box));
+            snapshotsClient.add(BlockStateSnapshot.createWithBlockEntityStates(this.worldClient, box));
+        }
+
+        return () -> {
+            PlacementChunkCounts counts = new PlacementChunkCounts();
+
+            for (int i = 0; i < snapshotsSchematic.size(); ++i)
+            {
+                counts.countSnapshots(snapshotsSchematic.get(i), snapshotsClient.get(i), ignoreState);
+            }
+
+            return () -> this.onChunkCounted(pos, counts);
+        };
+    }
 
-            this.countsTotal.addTo(stateSchematic, 1);
+    protected void onChunkCounted(ChunkPos pos, PlacementChunkCounts counts)
+    {
+        counts.addTo(this.countsTotal, this.countsMissing, this.countsMismatch, 1L);
+        this.perChunkCounts.put(ChunkPos.asLong(pos.x, pos.z), counts);
+    }
+
+    @Override
+    protected void countAtPosition(BlockPos pos)
+    {
+        this.currentChunkCounts.countAtPosition(this.worldSchematic, this.worldClient, pos, this.ignoreState);
+    }
+
+    @Override
+    protected void onStop()
+    {
+        // Hand over the per-chunk counts, so that the material list can keep itself up to date
+        if (this.materialList instanceof MaterialListPlacement)
+        {
+            MaterialListPlacement list = (MaterialListPlacement) this.materialList;
 
-            if (stateClient.getBlock() == Blocks.AIR)
+            if (this.finished)
             {
-                this.countsMissing.addTo(stateSchematic, 1);
+                list.setChunkCounts(this.perChunkCounts, this.boxesInChunks, this.layerRange.copy(),
+                                    this.ignoreState, this.countGeneration);
             }
-            else if (this.ignoreState ? stateClient.getBlock() != stateSchematic.getBlock() : stateClient != stateSchematic)
+            else
             {
-                this.countsMissing.addTo(stateSchematic, 1);
-                this.countsMismatch.addTo(stateSchematic, 1);
+                list.onCountAborted(this.countGeneration);
             }
         }
+
+        super.onStop();
     }
 }
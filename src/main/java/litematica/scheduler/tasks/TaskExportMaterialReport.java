@@ -0,0 +1,279 @@
+package litematica.scheduler.tasks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3i;
+
+import malilib.overlay.message.MessageDispatcher;
+import malilib.util.StringUtils;
+import malilib.util.data.ItemType;
+import litematica.materials.MaterialCache;
+import litematica.materials.MaterialListUtils;
+import litematica.materials.MaterialReportWriter;
+import litematica.render.infohud.InfoHud;
+import litematica.scheduler.WorkerPool;
+import litematica.schematic.ISchematic;
+import litematica.schematic.ISchematicRegion;
+import litematica.schematic.container.ILitematicaBlockStateContainer;
+import litematica.util.TempFileUtils;
+
+/**
+ * Writes a per-sub-region and per-layer material report of a schematic to a file.
+ * The block state containers are snapshotted (copy-on-write) on the main thread,
+ * and then counted in one pass, one Y layer at a time, on a worker thread,
+ * streaming out the rows of each layer as soon as the layer is done.
+ */
+public class TaskExportMaterialReport extends TaskBase
+{
+    protected final String reportName;
+    protected final Path file;
+    protected final MaterialReportWriter.Format format;
+    protected final List<RegionSnapshot> regions = new ArrayList<>();
+    protected final AtomicLong processedLayers = new AtomicLong();
+    protected final long totalLayers;
+    @Nullable protected CompletableFuture<Void> future;
+    protected volatile boolean aborted;
+
+    public TaskExportMaterialReport(ISchematic schematic, Collection<String> regionNames,
+                                    Path file, MaterialReportWriter.Format format)
+    {
+        this.reportName = schematic.getMetadata().getName();
+        this.file = file;
+        this.format = format;
+        this.name = StringUtils.translate("litematica.gui.label.task_name.material_report");
+
+        long totalLayers = 0;
+
+        for (String regionName : regionNames)
+        {
+            ISchematicRegion region = schematic.getSchematicRegion(regionName);
+            ILitematicaBlockStateContainer regionContainer = region != null ? region.getBlockStateContainer() : null;
+
+            if (regionContainer != null)
+            {
+                ILitematicaBlockStateContainer container = regionContainer.copy();
+                BlockPos pos = region.getPosition();
+                int minY = pos.getY() + Math.min(0, region.getSize().getY() + 1);
+
+                this.regions.add(new RegionSnapshot(regionName, container, minY));
+                totalLayers += container.getSize().getY();
+            }
+        }
+
+        this.totalLayers = totalLayers;
+    }
+
+    @Override
+    public void init()
+    {
+        this.updateInfoHudLines();
+        InfoHud.getInstance().addInfoHudRenderer(this, true);
+
+        this.future = CompletableFuture.runAsync(this::writeReport, WorkerPool.getPool());
+    }
+
+    @Override
+    public boolean canExecute()
+    {
+        // This does not need the world, the counting happens on the container snapshots
+        return true;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        this.updateInfoHudLines();
+
+        if (this.future == null || this.future.isDone() == false)
+        {
+            return false;
+        }
+
+        try
+        {
+            this.future.join();
+            this.finished = true;
+
+            String key = "litematica.message.info.material_report.written_to_file";
+            MessageDispatcher.generic(key, this.file.getFileName().toString());
+            StringUtils.sendOpenFileChatMessage(key, this.file);
+        }
+        catch (Exception e)
+        {
+            MessageDispatcher.error().console(e).translate("litematica.message.error.material_report.write_failed",
+                                                           this.file.toAbsolutePath().toString());
+        }
+
+        return true;
+    }
+
+    @Override
+    public void stop()
+    {
+        // Removed via the Task Manager before finishing, stop the worker at the next layer
+        this.aborted = true;
+
+        super.stop();
+    }
+
+    protected void updateInfoHudLines()
+    {
+        List<String> hudLines = new ArrayList<>();
+        long processed = this.processedLayers.get();
+        long percentage = this.totalLayers > 0 ? processed * 100L / this.totalLayers : 100L;
+
+        hudLines.add(StringUtils.translate("litematica.hud.task_name.material_report", this.reportName));
+        hudLines.add(StringUtils.translate("litematica.hud.material_report.progress",
+                                           processed, this.totalLayers, percentage));
+
+        this.infoHudLines = hudLines;
+    }
+
+    /**
+     * Writes the report into a temporary file next to the target file, which is then moved over the target file.
+     * This way an aborted or failed export never leaves behind a partial report,
+     * or replaces an existing report with a partial one.
+     */
+    protected void writeReport()
+    {
+        Path tmpFile = null;
+
+        try
+        {
+            tmpFile = TempFileUtils.createTempFileFor(this.file);
+
+            try (MaterialReportWriter writer = MaterialReportWriter.create(tmpFile, this.format))
+            {
+                this.writeReport(writer);
+            }
+
+            TempFileUtils.moveOver(tmpFile, this.file);
+        }
+        catch (Exception e)
+        {
+            if (tmpFile != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(tmpFile);
+                }
+                catch (IOException ignore) {}
+            }
+
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            // Let the schematic write to the block data directly again
+            this.regions.forEach(region -> region.container.release());
+        }
+    }
+
+    protected void writeReport(MaterialReportWriter writer) throws Exception
+    {
+        MaterialCache cache = MaterialCache.getInstance();
+        Object2LongOpenHashMap<IBlockState> layerStateCounts = new Object2LongOpenHashMap<>();
+        Object2LongOpenHashMap<ItemType> layerItemCounts = new Object2LongOpenHashMap<>();
+        Object2LongOpenHashMap<ItemType> regionItemCounts = new Object2LongOpenHashMap<>();
+
+        writer.beginReport(this.reportName);
+
+        for (RegionSnapshot region : this.regions)
+        {
+            ILitematicaBlockStateContainer container = region.container;
+            Vec3i size = container.getSize();
+            final int sizeX = size.getX();
+            final int sizeY = size.getY();
+            final int sizeZ = size.getZ();
+
+            writer.beginRegion(region.name);
+            regionItemCounts.clear();
+
+            for (int y = 0; y < sizeY; ++y)
+            {
+                if (this.aborted)
+                {
+                    throw new IllegalStateException("Material report export was aborted");
+                }
+
+                layerStateCounts.clear();
+                layerItemCounts.clear();
+
+                for (int z = 0; z < sizeZ; ++z)
+                {
+                    for (int x = 0; x < sizeX; ++x)
+                    {
+                        IBlockState state = container.getBlockState(x, y, z);
+
+                        if (state.getBlock() != Blocks.AIR)
+                        {
+                            layerStateCounts.addTo(state, 1);
+                        }
+                    }
+                }
+
+                MaterialListUtils.convertStatesToStacks(layerStateCounts, layerItemCounts, cache);
+
+                if (layerItemCounts.isEmpty() == false)
+                {
+                    writer.beginLayer(region.minY + y);
+                    writeItems(layerItemCounts, writer);
+                    writer.endLayer();
+
+                    for (Object2LongMap.Entry<ItemType> entry : layerItemCounts.object2LongEntrySet())
+                    {
+                        regionItemCounts.addTo(entry.getKey(), entry.getLongValue());
+                    }
+                }
+
+                this.processedLayers.incrementAndGet();
+            }
+
+            writer.beginRegionTotal();
+            writeItems(regionItemCounts, writer);
+            writer.endRegion();
+        }
+
+        writer.endReport();
+    }
+
+    protected static void writeItems(Object2LongOpenHashMap<ItemType> counts, MaterialReportWriter writer) throws Exception
+    {
+        List<Object2LongMap.Entry<ItemType>> list = new ArrayList<>(counts.object2LongEntrySet());
+
+        // Largest counts first
+        list.sort((e1, e2) -> Long.compare(e2.getLongValue(), e1.getLongValue()));
+
+        for (Object2LongMap.Entry<ItemType> entry : list)
+        {
+            writer.writeItem(entry.getKey().getStack(), entry.getLongValue());
+        }
+    }
+
+    protected static class RegionSnapshot
+    {
+        protected final String name;
+        protected final ILitematicaBlockStateContainer container;
+        protected final int minY;
+
+        protected RegionSnapshot(String name, ILitematicaBlockStateContainer container, int minY)
+        {
+            this.name = name;
+            this.container = container;
+            this.minY = minY;
+        }
+    }
+}
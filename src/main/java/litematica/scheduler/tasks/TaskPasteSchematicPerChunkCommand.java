@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import javax.annotation.Nullable;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.material.Material;
@@ -20,6 +21,7 @@ import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.chunk.Chunk;
 
 import malilib.overlay.message.MessageDispatcher;
+import malilib.util.StringUtils;
 import malilib.util.game.wrap.EntityWrap;
 import malilib.util.game.wrap.GameUtils;
 import malilib.util.game.wrap.RegistryUtils;
@@ -34,7 +36,9 @@ import litematica.world.WorldSchematic;
 public class TaskPasteSchematicPerChunkCommand extends TaskPasteSchematicPerChunkBase
 {
     protected final List<IntBoundingBox> boxesInCurrentChunk = new ArrayList<>();
+    @Nullable private final CommandRateController rateController;
     private final int maxCommandsPerTick;
+    private int commandLimitThisTick;
     private int sentCommandsThisTick;
     private int sentCommandsTotal;
     private int currentX;
@@ -49,6 +53,27 @@ public class TaskPasteSchematicPerChunkCommand extends TaskPasteSchematicPerChun
         super(placements, range, changedBlocksOnly);
 
         this.maxCommandsPerTick = Configs.Generic.PASTE_COMMAND_LIMIT.getIntegerValue();
+        this.commandLimitThisTick = this.maxCommandsPerTick;
+
+        if (Configs.Generic.PASTE_COMMAND_ADAPTIVE_RATE.getBooleanValue())
+        {
+            this.rateController = new CommandRateController(Math.min(8, this.maxCommandsPerTick), this.maxCommandsPerTick);
+        }
+        else
+        {
+            this.rateController = null;
+        }
+    }
+
+    @Override
+    public void init()
+    {
+        super.init();
+
+        if (this.rateController != null)
+        {
+            CommandRateController.setActiveController(this.rateController);
+        }
     }
 
     @Override
@@ -56,7 +81,6 @@ public class TaskPasteSchematicPerChunkCommand extends TaskPasteSchematicPerChun
     {
         WorldSchematic worldSchematic = SchematicWorldHandler.getSchematicWorld();
         WorldClient worldClient = this.mc.world;
-        this.sentCommandsThisTick = 0;
         int processed = 0;
         int chunkAttempts = 0;
 
@@ -65,6 +89,22 @@ public class TaskPasteSchematicPerChunkCommand extends TaskPasteSchematicPerChun
             GameUtils.getClientPlayer().sendChatMessage("/gamerule sendCommandFeedback false");
         }
 
+        if (this.rateController != null)
+        {
+            this.rateController.onTick(this.sentCommandsThisTick >= this.commandLimitThisTick);
+            this.commandLimitThisTick = this.rateController.getAllowedCommandsThisTick();
+            this.sentCommandsThisTick = 0;
+            this.updateInfoHudLines();
+
+            // Too many commands still waiting for an acknowledgement from the server
+            if (this.commandLimitThisTick <= 0)
+            {
+                return false;
+            }
+        }
+
+        this.sentCommandsThisTick = 0;
+
         while (this.chunks.isEmpty() == false)
         {
             ChunkPos pos = this.chunks.get(0);
@@ -141,6 +181,21 @@ public class TaskPasteSchematicPerChunkCommand extends TaskPasteSchematicPerChun
         this.boxesInCurrentChunk.addAll(this.boxesInChunks.get(this.chunks.get(0)));
     }
 
+    @Override
+    protected void updateInfoHudLines()
+    {
+        super.updateInfoHudLines();
+
+        if (this.rateController != null)
+        {
+            CommandRateController rc = this.rateController;
+            String rtt = rc.getSmoothedRtt() >= 0 ? String.valueOf(rc.getSmoothedRtt()) : "-";
+            this.infoHudLines.add(1, StringUtils.translate("litematica.hud.schematic_paste.command_rate",
+                                                           rc.getWindow(), String.format(Locale.ROOT, "%.1f", rc.getThroughput()),
+                                                           rc.getPendingCount(), rtt, rc.getTimedOutTotal()));
+        }
+    }
+
     protected boolean processBox(ChunkPos pos, IntBoundingBox box,
             WorldSchematic worldSchematic, WorldClient worldClient, EntityPlayerSP player)
     {
@@ -195,7 +250,13 @@ public class TaskPasteSchematicPerChunkCommand extends TaskPasteSchematicPerChun
 
                     this.sendSetBlockCommand(posMutable.getX(), posMutable.getY(), posMutable.getZ(), stateSchematicOrig, player);
 
-                    if (++this.sentCommandsThisTick >= this.maxCommandsPerTick)
+                    // Only wait for an acknowledgement if the server is actually going to send a block change
+                    if (this.rateController != null && stateClient != stateSchematic)
+                    {
+                        this.rateController.onCommandSent(posMutable.getX(), posMutable.getY(), posMutable.getZ(), stateSchematic);
+                    }
+
+                    if (++this.sentCommandsThisTick >= this.commandLimitThisTick)
                     {
                         break;
                     }
@@ -280,6 +341,11 @@ public class TaskPasteSchematicPerChunkCommand extends TaskPasteSchematicPerChun
 
         GameUtils.sendCommand("/gamerule sendCommandFeedback true");
 
+        if (this.rateController != null)
+        {
+            CommandRateController.setActiveController(null);
+        }
+
         super.stop();
     }
 }
@@ -1,9 +1,10 @@
 package litematica.schematic;
 
-import java.io.FileOutputStream;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 import javax.annotation.Nullable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -16,6 +17,7 @@ import malilib.overlay.message.MessageDispatcher;
 import malilib.util.FileUtils;
 import malilib.util.nbt.NbtUtils;
 import litematica.Litematica;
+import litematica.scheduler.WorkerPool;
 
 public interface ISchematic
 {
@@ -114,19 +116,17 @@ public interface ISchematic
      */
     default boolean writeToFile(Path file, boolean override)
     {
-        try
+        if (override == false && Files.exists(file))
         {
-            if (override == false && Files.exists(file))
-            {
-                MessageDispatcher.error("litematica.error.schematic_write_to_file_failed.exists",
-                                        file.toAbsolutePath().toString());
-                return false;
-            }
-
-            FileOutputStream os = new FileOutputStream(file.toFile());
-            this.writeToStream(this.toTag(), os);
-            os.close();
+            MessageDispatcher.error("litematica.error.schematic_write_to_file_failed.exists",
+                                    file.toAbsolutePath().toString());
+            return false;
+        }
 
+        try
+        {
+            this.createWriter().writeToFile(file);
+            this.onWrittenToFile(file);
             return true;
         }
         catch (Exception e)
@@ -139,9 +139,75 @@ public interface ISchematic
         return false;
     }
 
-    default void writeToStream(NBTTagCompound tag, FileOutputStream outputStream) throws IOException
+    /**
+     * Called on the thread that owns this schematic, after it has been written to the given file
+     * via {@link #writeToFile(Path, boolean)}. Not called for the asynchronous writes,
+     * as the schematic may have been modified before the write finishes.
+     */
+    default void onWrittenToFile(Path file)
+    {
+    }
+
+    /**
+     * Writes this schematic to the given file on a worker thread.
+     * The data is snapshotted on the calling thread, so the schematic can be
+     * modified or discarded as soon as this method returns.
+     * Write failures are logged, but not shown as messages, that is left to the caller
+     * once the returned future completes with false.
+     */
+    default CompletableFuture<Boolean> writeToFileAsync(Path file, boolean override)
+    {
+        if (override == false && Files.exists(file))
+        {
+            MessageDispatcher.error("litematica.error.schematic_write_to_file_failed.exists",
+                                    file.toAbsolutePath().toString());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        ISchematicWriter writer;
+
+        try
+        {
+            writer = this.createWriter();
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to write schematic to file '{}'", file.toAbsolutePath().toString(), e);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try
+            {
+                writer.writeToFile(file);
+                return true;
+            }
+            catch (Exception e)
+            {
+                Litematica.logger.warn("Failed to write schematic to file '{}'", file.toAbsolutePath().toString(), e);
+                return false;
+            }
+        }, WorkerPool.getPool());
+    }
+
+    /**
+     * Creates a writer for the current data of this schematic.
+     * Must be called on the thread that owns this schematic,
+     * but the returned writer can then be used on any thread.
+     * The writer may release its data snapshot after writing, so it should only be used once.
+     */
+    default ISchematicWriter createWriter()
+    {
+        NBTTagCompound tag = this.toTag();
+        return output -> this.writeToStream(tag, output);
+    }
+
+    /**
+     * Writes the given tag created by {@link #toTag()} uncompressed to the given output
+     */
+    default void writeToStream(NBTTagCompound tag, DataOutput output) throws IOException
     {
-        CompressedStreamTools.writeCompressed(tag, outputStream);
+        CompressedStreamTools.write(tag, output);
     }
 
     /**
@@ -2,6 +2,7 @@ package litematica.schematic;
 
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.math.BlockPos;
@@ -27,11 +28,25 @@ public interface ISchematicRegion
     Vec3i getSize();
 
     /**
-     * Returns the block state container used for storing the block states in this region
-     * @return
+     * Returns the block state container used for storing the block states in this region.
+     * This loads the block data, if it has not been loaded yet.
+     * @return the container, or null if the block data is not available
      */
+    @Nullable
     ILitematicaBlockStateContainer getBlockStateContainer();
 
+    /**
+     * Returns the block state container of this region, but only if its block data is already
+     * in memory. Unlike {@link #getBlockStateContainer()} this never loads the data,
+     * so it can be used for things like statistics without undoing the memory savings of unloaded regions.
+     * @return the container, or null if the block data is not currently loaded
+     */
+    @Nullable
+    default ILitematicaBlockStateContainer getLoadedBlockStateContainer()
+    {
+        return this.getBlockStateContainer();
+    }
+
     /**
      * Returns the BlockEntity map used for this region
      * @return
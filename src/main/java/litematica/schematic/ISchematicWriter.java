@@ -0,0 +1,54 @@
+package litematica.schematic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import litematica.scheduler.WorkerPool;
+import litematica.util.ParallelGzipOutputStream;
+import litematica.util.TempFileUtils;
+
+/**
+ * Writes a snapshot of the data of a schematic.
+ * The writers are created on the thread that owns the schematic via {@link ISchematic#createWriter()},
+ * and they don't access the schematic itself afterwards, so they can be used on any thread.
+ */
+@FunctionalInterface
+public interface ISchematicWriter
+{
+    /**
+     * Writes the uncompressed NBT data to the given output
+     */
+    void write(DataOutput output) throws IOException;
+
+    /**
+     * Writes the data GZIP compressed into a temporary file next to the given file,
+     * which is then moved over the given file. This way a failed or interrupted write
+     * never leaves behind a partially written schematic file.
+     * The compression is done in parallel on the worker pool.
+     */
+    default void writeToFile(Path file) throws IOException
+    {
+        // A unique temporary file, so that concurrent writes to the same file can't mix their data
+        Path tmpFile = TempFileUtils.createTempFileFor(file);
+
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new ParallelGzipOutputStream(Files.newOutputStream(tmpFile), WorkerPool.getPool()))))
+            {
+                this.write(out);
+            }
+
+            TempFileUtils.moveOver(tmpFile, file);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package litematica.schematic;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ForwardingList;
+import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 
 import net.minecraft.block.Block;
 import net.minecraft.init.Blocks;
@@ -21,16 +35,20 @@ import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.NextTickListEntry;
 
 import malilib.mixin.access.NBTTagLongArrayMixin;
-import malilib.overlay.message.MessageDispatcher;
 import malilib.util.data.Constants;
 import malilib.util.game.wrap.NbtWrap;
 import malilib.util.game.wrap.RegistryUtils;
 import malilib.util.nbt.NbtUtils;
 import litematica.Litematica;
+import litematica.config.Configs;
 import litematica.schematic.container.ILitematicaBlockStateContainer;
 import litematica.schematic.container.LitematicaBlockStateContainerFull;
+import litematica.schematic.util.DecodedSchematicCache;
 import litematica.selection.SelectionBox;
+import litematica.util.NbtStreamReader;
+import litematica.util.NbtStreamWriter;
 import litematica.util.PositionUtils;
+import litematica.util.ThreadMessages;
 
 public class LitematicaSchematic extends SchematicBase
 {
@@ -43,6 +61,25 @@ public class LitematicaSchematic extends SchematicBase
     private final Map<String, Map<BlockPos, NextTickListEntry>> pendingBlockTicks = new HashMap<>();
     private final Map<String, List<EntityInfo>> entities = new HashMap<>();
     private final Map<String, SubRegion> subRegions = new HashMap<>();
+    // The regions whose data is not in memory, either because it was not decoded when reading the file (lazy loading),
+    // or because it has been evicted since. These are read from the source file when needed, see loadRegionIfNeeded()
+    private final Set<String> unloadedRegions = new HashSet<>();
+    // The region tags of the unloaded regions without any of the block state data, so that
+    // the rest of the region data can be written out without reading the file, see toTagWithoutBlockData()
+    private final Map<String, NBTTagCompound> unloadedRegionHeaders = new HashMap<>();
+    // The regions whose data could not be decoded or read again from the file. These have no data,
+    // and the schematic can't be saved, as that would replace the data in the file with nothing.
+    private final Set<String> failedRegions = new HashSet<>();
+    // The block container modification counts at the time the data was last read from or written to the source file
+    private final Object2LongOpenHashMap<String> syncedContainerModificationCounts = new Object2LongOpenHashMap<>();
+    private int regionDataVersion = SCHEMATIC_VERSION;
+    @Nullable private Path sourceFile;
+    private long sourceFileSize = -1L;
+    private long sourceFileLastModified = -1L;
+    // True if the region data in memory is the same as in the source file, see isRegionDataInSyncWithSourceFile()
+    private boolean regionDataInSyncWithSourceFile;
+    // True while reading the data from the source file, in which case the regions can be loaded lazily
+    private boolean readingSourceFile;
 
     LitematicaSchematic(@Nullable Path file)
     {
@@ -69,6 +106,15 @@ public class LitematicaSchematic extends SchematicBase
         this.blockEntities.clear();
         this.entities.clear();
         this.pendingBlockTicks.clear();
+        this.unloadedRegions.clear();
+        this.unloadedRegionHeaders.clear();
+        this.failedRegions.clear();
+        this.syncedContainerModificationCounts.clear();
+        this.regionDataVersion = SCHEMATIC_VERSION;
+        this.sourceFile = null;
+        this.sourceFileSize = -1L;
+        this.sourceFileLastModified = -1L;
+        this.regionDataInSyncWithSourceFile = false;
         this.getMetadata().clearModifiedSinceSaved();
     }
 
@@ -157,7 +203,7 @@ public class LitematicaSchematic extends SchematicBase
             }
             catch (Exception e)
             {
-                MessageDispatcher.error().translate("TODO - Failed to create the block state container for sub-region: " + regionName);
+                ThreadMessages.error("TODO - Failed to create the block state container for sub-region: " + regionName);
                 Litematica.logger.warn("Failed to create the block state container for sub-region '{}'", regionName, e.getMessage());
             }
 
@@ -182,6 +228,11 @@ public class LitematicaSchematic extends SchematicBase
                 ISchematicRegion region = regionEntry.getValue();
                 ILitematicaBlockStateContainer containerOther = region.getBlockStateContainer();
 
+                if (containerOther == null)
+                {
+                    throw new IllegalStateException("The block data of the region '" + regionName + "' is not available");
+                }
+
                 this.subRegions.put(regionName, new SubRegion(region.getPosition(), region.getSize()));
 
                 if (containerOther instanceof LitematicaBlockStateContainerFull)
@@ -225,6 +276,115 @@ public class LitematicaSchematic extends SchematicBase
         return nbt;
     }
 
+    @Override
+    public boolean readFromFile()
+    {
+        Path file = this.getFile();
+        long size = -1L;
+        long lastModified = -1L;
+
+        // Get the file state before reading it, so that a change during the read can't go unnoticed
+        if (file != null)
+        {
+            try
+            {
+                size = Files.size(file);
+                lastModified = Files.getLastModifiedTime(file).toMillis();
+            }
+            catch (IOException ignore) {}
+        }
+
+        // The lazily loaded regions are read from the file again later, so the file state must be known
+        this.readingSourceFile = size >= 0;
+
+        try
+        {
+            if (super.readFromFile())
+            {
+                this.setInSyncWithSourceFile(file, size, lastModified);
+                return true;
+            }
+        }
+        finally
+        {
+            this.readingSourceFile = false;
+        }
+
+        return false;
+    }
+
+    @Override
+    public synchronized void onWrittenToFile(Path file)
+    {
+        if (file.equals(this.getFile()) == false)
+        {
+            return;
+        }
+
+        try
+        {
+            // Writing the file loaded all the regions, so any regions evicted later are read back in the current format
+            this.regionDataVersion = SCHEMATIC_VERSION;
+            this.setInSyncWithSourceFile(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        }
+        catch (IOException e)
+        {
+            this.regionDataInSyncWithSourceFile = false;
+        }
+    }
+
+    private void setInSyncWithSourceFile(Path file, long size, long lastModified)
+    {
+        this.sourceFile = file;
+        this.sourceFileSize = size;
+        this.sourceFileLastModified = lastModified;
+        this.syncedContainerModificationCounts.clear();
+        this.blockContainers.forEach((name, container) -> this.syncedContainerModificationCounts.put(name, container.getModificationCount()));
+        this.regionDataInSyncWithSourceFile = true;
+    }
+
+    /**
+     * @return true if the region data in memory is still the same as in the source file
+     * when it was last read from or written to it. Unlike the metadata's modified flag,
+     * this is cleared by all changes to the region data, including block changes via the block containers.
+     */
+    public synchronized boolean isRegionDataInSyncWithSourceFile()
+    {
+        if (this.regionDataInSyncWithSourceFile == false)
+        {
+            return false;
+        }
+
+        for (Map.Entry<String, LitematicaBlockStateContainerFull> entry : this.blockContainers.entrySet())
+        {
+            if (entry.getValue().getModificationCount() != this.syncedContainerModificationCounts.getLong(entry.getKey()))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the data of some of the regions could not be read from the file.
+     * Such a schematic can't be saved, as that would replace the lost regions with empty data.
+     */
+    public synchronized boolean hasFailedRegions()
+    {
+        return this.failedRegions.isEmpty() == false;
+    }
+
+    private void checkCanBeSaved()
+    {
+        if (this.failedRegions.isEmpty() == false)
+        {
+            String regions = String.join(", ", this.failedRegions);
+            ThreadMessages.error("litematica.error.schematic_write_to_file_failed.missing_region_data", regions);
+            throw new IllegalStateException("The data of the regions '" + regions + "' could not be read from the schematic file");
+        }
+    }
+
     @Override
     public boolean fromTag(NBTTagCompound tag)
     {
@@ -237,68 +397,277 @@ public class LitematicaSchematic extends SchematicBase
             if (version >= 1 && version <= SCHEMATIC_VERSION)
             {
                 this.readMetadataFromTag(tag);
-                this.readSubRegionsFromTag(tag, version);
+                this.readSubRegionsFromTag(tag, version, null);
 
                 return true;
             }
             else
             {
-                MessageDispatcher.error().translate("litematica.error.schematic_load.unsupported_schematic_version", version);
+                ThreadMessages.error("litematica.error.schematic_load.unsupported_schematic_version", version);
             }
         }
         else
         {
-            MessageDispatcher.error().translate("litematica.error.schematic_load.no_schematic_version_information");
+            ThreadMessages.error("litematica.error.schematic_load.no_schematic_version_information");
         }
 
         return false;
     }
 
-    private NBTTagCompound writeSubRegionsToNBT()
+    /**
+     * Reads everything else from the given tag as {@link #fromTag(NBTTagCompound)} does,
+     * but uses the given already decoded block containers instead of the block data in the tag.
+     * This is used by the decoded region cache.
+     */
+    public boolean fromTagAndDecodedContainers(NBTTagCompound tag, Map<String, LitematicaBlockStateContainerFull> containers)
     {
-        NBTTagCompound wrapper = new NBTTagCompound();
+        this.clear();
 
-        if (this.blockContainers.isEmpty() == false)
+        if (NbtWrap.getInt(tag, "Version") == SCHEMATIC_VERSION)
         {
-            for (String regionName : this.blockContainers.keySet())
+            this.readMetadataFromTag(tag);
+            return this.readSubRegionsFromTag(tag, SCHEMATIC_VERSION, containers);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the same data as {@link #toTag()}, but without the block state palettes, arrays and counts.
+     * This is used by the decoded region cache, which stores the block data separately.
+     */
+    public synchronized NBTTagCompound toTagWithoutBlockData()
+    {
+        this.checkCanBeSaved();
+
+        NBTTagCompound nbt = new NBTTagCompound();
+        NBTTagCompound regionsTag = new NBTTagCompound();
+
+        for (String regionName : this.subRegions.keySet())
+        {
+            NBTTagCompound headerTag = this.unloadedRegionHeaders.get(regionName);
+            NBTTagCompound tag;
+
+            // Regions that haven't been loaded yet are copied from the header tag without reading
+            // and decoding their block data, if the file is already in the current format
+            if (headerTag != null && this.regionDataVersion == SCHEMATIC_VERSION)
             {
-                LitematicaBlockStateContainerFull blockContainer = this.blockContainers.get(regionName);
-                Map<BlockPos, NBTTagCompound> tileMap = this.blockEntities.get(regionName);
-                List<EntityInfo> entityList = this.entities.get(regionName);
-                Map<BlockPos, NextTickListEntry> pendingTicks = this.pendingBlockTicks.get(regionName);
+                tag = headerTag.copy();
+            }
+            else
+            {
+                LitematicaBlockStateContainerFull container = this.getLoadedBlockContainer(regionName);
+
+                // The region failed to load just now
+                if (container == null)
+                {
+                    this.checkCanBeSaved();
+                }
+
+                tag = this.writeSubRegionToNBT(regionName, container, false);
+            }
 
-                NBTTagCompound tag = new NBTTagCompound();
+            tag.removeTag("BlockStatePalette");
+            tag.removeTag("BlockCounts");
+            NbtWrap.putTag(regionsTag, regionName, tag);
+        }
 
-                NbtWrap.putTag(tag, "BlockStatePalette", this.writePaletteToLitematicaFormatTag(blockContainer.getPalette()));
-                NbtWrap.putTag(tag, "BlockStates", new NBTTagLongArray(blockContainer.getBackingLongArray()));
+        NbtWrap.putInt(nbt, "Version", SCHEMATIC_VERSION);
+        NbtWrap.putInt(nbt, "MinecraftDataVersion", MINECRAFT_DATA_VERSION);
+        NbtWrap.putTag(nbt, "Metadata", this.getMetadata().toTag());
+        NbtWrap.putTag(nbt, "Regions", regionsTag);
 
-                if (tileMap != null)
+        return nbt;
+    }
+
+    /**
+     * @return copy-on-write copies of all the block containers, by region name
+     */
+    public Map<String, LitematicaBlockStateContainerFull> copyBlockContainers()
+    {
+        this.loadAllRegions();
+        this.checkCanBeSaved();
+
+        Map<String, LitematicaBlockStateContainerFull> map = new HashMap<>();
+        this.blockContainers.forEach((name, container) -> map.put(name, container.copy()));
+        return map;
+    }
+
+    /**
+     * Like {@link #copyBlockContainers()}, but the regions that haven't been loaded yet
+     * are not decoded here. Instead their suppliers decode the block data from the file's tag,
+     * without loading the region into this schematic, so the suppliers can be called on another thread.
+     * The suppliers return null if the block data can't be decoded.
+     */
+    public synchronized Map<String, Supplier<LitematicaBlockStateContainerFull>> getBlockContainerSuppliers()
+    {
+        this.checkCanBeSaved();
+
+        Map<String, Supplier<LitematicaBlockStateContainerFull>> map = new HashMap<>();
+        Supplier<NBTTagCompound> unloadedRegionsTagSupplier = null;
+
+        for (String regionName : this.subRegions.keySet())
+        {
+            if (this.unloadedRegions.contains(regionName) && this.regionDataVersion == SCHEMATIC_VERSION)
+            {
+                // The unloaded regions are all read from the file in one pass, by the first supplier that gets called
+                if (unloadedRegionsTagSupplier == null)
                 {
-                    NbtWrap.putTag(tag, "TileEntities", this.writeBlockEntitiesToListTag(tileMap));
+                    Path file = this.getFile();
+                    boolean isSourceFile = file != null && file.equals(this.sourceFile);
+                    long fileSize = this.sourceFileSize;
+                    long lastModified = this.sourceFileLastModified;
+                    unloadedRegionsTagSupplier = Suppliers.memoize(() -> isSourceFile ? readRegionsTagFromFile(file, fileSize, lastModified) : null);
                 }
 
-                if (pendingTicks != null)
+                Supplier<NBTTagCompound> regionsTagSupplier = unloadedRegionsTagSupplier;
+                Vec3i size = this.subRegions.get(regionName).size;
+
+                map.put(regionName, () -> {
+                    NBTTagCompound regionTag = getRegionTag(regionsTagSupplier.get(), regionName, size);
+                    return regionTag != null ? readBlockContainerFromTag(regionTag, size) : null;
+                });
+            }
+            else
+            {
+                LitematicaBlockStateContainerFull container = this.getLoadedBlockContainer(regionName);
+
+                // The region failed to load just now
+                if (container == null)
                 {
-                    NbtWrap.putTag(tag, "PendingBlockTicks", this.writeBlockTicksToNBT(pendingTicks));
+                    this.checkCanBeSaved();
                 }
 
-                // The entity list will not exist, if takeEntities is false when creating the schematic
-                if (entityList != null)
+                LitematicaBlockStateContainerFull copy = container.copy();
+                map.put(regionName, () -> copy);
+            }
+        }
+
+        return map;
+    }
+
+    private long[] getBlockCountsForPalette(LitematicaBlockStateContainerFull container)
+    {
+        long[] counts = container.getBlockCounts();
+        int paletteSize = container.getPalette().getPaletteSize();
+        long[] arr = new long[paletteSize];
+        System.arraycopy(counts, 0, arr, 0, Math.min(paletteSize, counts.length));
+        return arr;
+    }
+
+    /**
+     * Creates a writer that streams the block state arrays directly from
+     * copy-on-write snapshots of the block containers, instead of building
+     * the combined backing arrays into a tag tree first. Everything else is small,
+     * so it's built into tags here on the calling thread.
+     */
+    @Override
+    public ISchematicWriter createWriter()
+    {
+        NBTTagCompound metadataTag = this.getMetadata().toTag();
+        List<RegionWriteSnapshot> regions = new ArrayList<>();
+
+        this.loadAllRegions();
+        this.checkCanBeSaved();
+
+        for (String regionName : this.blockContainers.keySet())
+        {
+            LitematicaBlockStateContainerFull blockContainer = this.blockContainers.get(regionName);
+            NBTTagCompound tag = this.writeSubRegionToNBT(regionName, blockContainer, false);
+            regions.add(new RegionWriteSnapshot(regionName, tag, blockContainer.copy()));
+        }
+
+        // The snapshots are released after writing, so the writer can only be used once
+        return output -> {
+            try
+            {
+                NbtStreamWriter writer = new NbtStreamWriter(output);
+
+                writer.beginCompound("");
+                writer.writeInt("Version", SCHEMATIC_VERSION);
+                writer.writeInt("MinecraftDataVersion", MINECRAFT_DATA_VERSION);
+                writer.writeTag("Metadata", metadataTag);
+                writer.beginCompound("Regions");
+
+                for (RegionWriteSnapshot region : regions)
                 {
-                    NbtWrap.putTag(tag, "Entities", this.writeEntitiesToListTag(entityList));
+                    writer.beginCompound(region.name);
+                    writer.writeCompoundEntries(region.tag);
+                    writer.beginLongArray("BlockStates", region.container.getBackingLongArrayLength());
+                    region.container.writeBackingLongArray(writer.getOutput());
+                    writer.endCompound();
                 }
 
-                SubRegion region = this.subRegions.get(regionName);
-                NbtWrap.putTag(tag, "Position", NbtUtils.createBlockPosTag(region.pos));
-                NbtWrap.putTag(tag, "Size", NbtUtils.createBlockPosTag(region.size));
+                writer.endCompound();
+                writer.endCompound();
+            }
+            finally
+            {
+                regions.forEach(region -> region.container.release());
+            }
+        };
+    }
+
+    private NBTTagCompound writeSubRegionsToNBT()
+    {
+        NBTTagCompound wrapper = new NBTTagCompound();
+
+        this.loadAllRegions();
+        this.checkCanBeSaved();
 
-                NbtWrap.putTag(wrapper, regionName, tag);
+        if (this.blockContainers.isEmpty() == false)
+        {
+            for (String regionName : this.blockContainers.keySet())
+            {
+                LitematicaBlockStateContainerFull blockContainer = this.blockContainers.get(regionName);
+                NbtWrap.putTag(wrapper, regionName, this.writeSubRegionToNBT(regionName, blockContainer, true));
             }
         }
 
         return wrapper;
     }
 
+    private NBTTagCompound writeSubRegionToNBT(String regionName, LitematicaBlockStateContainerFull blockContainer,
+                                              boolean includeBlockStates)
+    {
+        Map<BlockPos, NBTTagCompound> tileMap = this.blockEntities.get(regionName);
+        List<EntityInfo> entityList = this.entities.get(regionName);
+        Map<BlockPos, NextTickListEntry> pendingTicks = this.pendingBlockTicks.get(regionName);
+
+        NBTTagCompound tag = new NBTTagCompound();
+
+        NbtWrap.putTag(tag, "BlockStatePalette", this.writePaletteToLitematicaFormatTag(blockContainer.getPalette()));
+
+        if (includeBlockStates)
+        {
+            NbtWrap.putTag(tag, "BlockStates", new NBTTagLongArray(blockContainer.getBackingLongArray()));
+        }
+
+        NbtWrap.putTag(tag, "BlockCounts", new NBTTagLongArray(this.getBlockCountsForPalette(blockContainer)));
+
+        if (tileMap != null)
+        {
+            NbtWrap.putTag(tag, "TileEntities", this.writeBlockEntitiesToListTag(tileMap));
+        }
+
+        if (pendingTicks != null)
+        {
+            NbtWrap.putTag(tag, "PendingBlockTicks", this.writeBlockTicksToNBT(pendingTicks));
+        }
+
+        // The entity list will not exist, if takeEntities is false when creating the schematic
+        if (entityList != null)
+        {
+            NbtWrap.putTag(tag, "Entities", this.writeEntitiesToListTag(entityList));
+        }
+
+        SubRegion region = this.subRegions.get(regionName);
+        NbtWrap.putTag(tag, "Position", NbtUtils.createBlockPosTag(region.pos));
+        NbtWrap.putTag(tag, "Size", NbtUtils.createBlockPosTag(region.size));
+
+        return tag;
+    }
+
     private NBTTagList writeBlockTicksToNBT(Map<BlockPos, NextTickListEntry> tickMap)
     {
         NBTTagList tagList = new NBTTagList();
@@ -326,10 +695,16 @@ public class LitematicaSchematic extends SchematicBase
         return tagList;
     }
 
-    private boolean readSubRegionsFromTag(NBTTagCompound tag, int version)
+    private boolean readSubRegionsFromTag(NBTTagCompound tag, int version,
+                                          @Nullable Map<String, LitematicaBlockStateContainerFull> decodedContainers)
     {
         tag = NbtWrap.getCompound(tag, "Regions");
 
+        // Only the region headers are read here, the region data gets read again from the file
+        // and decoded when it's first accessed. Only the position and size of the region are kept until then.
+        boolean lazyLoad = decodedContainers == null && this.readingSourceFile && Configs.Generic.LAZY_REGION_LOADING.getBooleanValue();
+        this.regionDataVersion = version;
+
         for (String regionName : NbtWrap.getKeys(tag))
         {
             if (NbtWrap.getTypeId(NbtWrap.getTag(tag, regionName)) == Constants.NBT.TAG_COMPOUND)
@@ -342,59 +717,300 @@ public class LitematicaSchematic extends SchematicBase
                 {
                     this.subRegions.put(regionName, new SubRegion(regionPos, regionSize));
 
-                    NBTTagList beList = NbtWrap.getListOfCompounds(regionTag, "TileEntities");
-                    NBTTagList entityList = NbtWrap.getListOfCompounds(regionTag, "Entities");
-
-                    if (version >= 2)
+                    if (lazyLoad && NbtWrap.containsLongArray(regionTag, "BlockStates"))
                     {
-                        this.blockEntities.put(regionName, this.readBlockEntitiesFromListTag(beList));
-                        this.entities.put(regionName, this.readEntitiesFromListTag(entityList));
+                        this.unloadedRegions.add(regionName);
+                        this.unloadedRegionHeaders.put(regionName, createRegionHeaderTag(regionTag));
                     }
-                    else if (version == 1)
+                    else if (this.readSubRegionDataFromTag(regionName, regionTag, version, decodedContainers) == false)
                     {
-                        this.blockEntities.put(regionName, this.readTileEntitiesFromNBT_v1(beList));
-                        this.entities.put(regionName, this.readEntitiesFromNBT_v1(entityList));
+                        return false;
                     }
+                }
+            }
+        }
 
-                    if (version >= 3)
-                    {
-                        this.pendingBlockTicks.put(regionName, this.readBlockTicksFromNBT(NbtWrap.getListOfCompounds(regionTag, "PendingBlockTicks")));
-                    }
+        return true;
+    }
 
-                    NBTBase nbtBase = NbtWrap.getTag(regionTag, "BlockStates");
+    private boolean readSubRegionDataFromTag(String regionName, NBTTagCompound regionTag, int version,
+                                             @Nullable Map<String, LitematicaBlockStateContainerFull> decodedContainers)
+    {
+        NBTTagList beList = NbtWrap.getListOfCompounds(regionTag, "TileEntities");
+        NBTTagList entityList = NbtWrap.getListOfCompounds(regionTag, "Entities");
 
-                    // There are no convenience methods in NBTTagCompound yet in 1.12, so we'll have to do it the ugly way...
-                    if (nbtBase != null && NbtWrap.getTypeId(nbtBase) == Constants.NBT.TAG_LONG_ARRAY)
-                    {
-                        Vec3i size = new Vec3i(Math.abs(regionSize.getX()), Math.abs(regionSize.getY()), Math.abs(regionSize.getZ()));
-                        NBTTagList paletteTag = NbtWrap.getListOfCompounds(regionTag, "BlockStatePalette");
-                        long[] blockStateArr = ((NBTTagLongArrayMixin) nbtBase).getArray();
-                        int paletteSize = NbtWrap.getListSize(paletteTag);
-
-                        LitematicaBlockStateContainerFull container = LitematicaBlockStateContainerFull.createContainer(paletteSize, blockStateArr, size);
-
-                        if (container == null)
-                        {
-                            String fileName = this.getFile() != null ? this.getFile().getFileName().toString() : "<null>";
-                            MessageDispatcher.error().translate("litematica.error.schematic_read_from_file_failed.region_container",
-                                                                regionName, fileName);
-                            return false;
-                        }
-
-                        readPaletteFromLitematicaFormatTag(paletteTag, container.getPalette());
-                        this.blockContainers.put(regionName, container);
-                    }
-                    else
-                    {
-                        return false;
-                    }
-                }
+        if (version >= 2)
+        {
+            this.blockEntities.put(regionName, this.readBlockEntitiesFromListTag(beList));
+            this.entities.put(regionName, this.readEntitiesFromListTag(entityList));
+        }
+        else if (version == 1)
+        {
+            this.blockEntities.put(regionName, this.readTileEntitiesFromNBT_v1(beList));
+            this.entities.put(regionName, this.readEntitiesFromNBT_v1(entityList));
+        }
+
+        if (version >= 3)
+        {
+            this.pendingBlockTicks.put(regionName, this.readBlockTicksFromNBT(NbtWrap.getListOfCompounds(regionTag, "PendingBlockTicks")));
+        }
+
+        LitematicaBlockStateContainerFull container;
+
+        if (decodedContainers != null)
+        {
+            container = decodedContainers.get(regionName);
+
+            if (container == null)
+            {
+                return false;
+            }
+        }
+        else
+        {
+            container = readBlockContainerFromTag(regionTag, this.subRegions.get(regionName).size);
+
+            if (container == null)
+            {
+                String fileName = this.getFile() != null ? this.getFile().getFileName().toString() : "<null>";
+                ThreadMessages.error("litematica.error.schematic_read_from_file_failed.region_container",
+                                                    regionName, fileName);
+                return false;
             }
         }
 
+        this.blockContainers.put(regionName, container);
+
         return true;
     }
 
+    /**
+     * Decodes the block state container from the given region tag. This only reads from the tag,
+     * so it can be called on another thread while the tag is being read elsewhere.
+     * @return the container, or null if the block data is missing or invalid
+     */
+    @Nullable
+    private static LitematicaBlockStateContainerFull readBlockContainerFromTag(NBTTagCompound regionTag, Vec3i regionSize)
+    {
+        NBTBase nbtBase = NbtWrap.getTag(regionTag, "BlockStates");
+
+        // There are no convenience methods in NBTTagCompound yet in 1.12, so we'll have to do it the ugly way...
+        if (nbtBase == null || NbtWrap.getTypeId(nbtBase) != Constants.NBT.TAG_LONG_ARRAY)
+        {
+            return null;
+        }
+
+        Vec3i size = new Vec3i(Math.abs(regionSize.getX()), Math.abs(regionSize.getY()), Math.abs(regionSize.getZ()));
+        NBTTagList paletteTag = NbtWrap.getListOfCompounds(regionTag, "BlockStatePalette");
+        long[] blockStateArr = ((NBTTagLongArrayMixin) nbtBase).getArray();
+        int paletteSize = NbtWrap.getListSize(paletteTag);
+        long[] blockCounts = null;
+
+        // The per-palette-ID block counts are optional, they are not in older files.
+        // When present they save a full scan of the block states for the material list etc.
+        if (NbtWrap.containsLongArray(regionTag, "BlockCounts"))
+        {
+            blockCounts = ((NBTTagLongArrayMixin) NbtWrap.getTag(regionTag, "BlockCounts")).getArray();
+        }
+
+        LitematicaBlockStateContainerFull container = LitematicaBlockStateContainerFull.createContainer(paletteSize, blockStateArr, blockCounts, size);
+
+        if (container != null)
+        {
+            readPaletteFromLitematicaFormatTag(paletteTag, container.getPalette());
+        }
+
+        return container;
+    }
+
+    /**
+     * Reads and decodes the data of the given region from the source file, if it was not decoded
+     * when reading the schematic, or if it has been evicted from memory since.
+     */
+    private synchronized void loadRegionIfNeeded(String regionName)
+    {
+        if (this.unloadedRegions.isEmpty() || this.unloadedRegions.remove(regionName) == false)
+        {
+            return;
+        }
+
+        this.unloadedRegionHeaders.remove(regionName);
+
+        NBTTagCompound regionTag = this.readUnloadedRegionTag(regionName);
+
+        if (regionTag == null || this.readSubRegionDataFromTag(regionName, regionTag, this.regionDataVersion, null) == false)
+        {
+            // Don't substitute empty data for the region, that could then get saved over the actual data in the file.
+            // The region is left without data, and saving the schematic is refused.
+            this.blockContainers.remove(regionName);
+            this.failedRegions.add(regionName);
+        }
+        else
+        {
+            // The region was read from the source file, so it's in sync with it
+            this.syncedContainerModificationCounts.put(regionName, this.blockContainers.get(regionName).getModificationCount());
+        }
+    }
+
+    private synchronized void loadAllRegions()
+    {
+        for (String regionName : this.subRegions.keySet())
+        {
+            this.loadRegionIfNeeded(regionName);
+        }
+    }
+
+    @Nullable
+    private synchronized LitematicaBlockStateContainerFull getLoadedBlockContainer(String regionName)
+    {
+        this.loadRegionIfNeeded(regionName);
+        return this.blockContainers.get(regionName);
+    }
+
+    @Nullable
+    private NBTTagCompound readUnloadedRegionTag(String regionName)
+    {
+        Path file = this.getFile();
+        NBTTagCompound tag = null;
+
+        // Only the data up to the end of this region is read from the file
+        if (file != null && this.isSourceFileUnchanged(file))
+        {
+            NBTBase regionTag = NbtStreamReader.readEntryFromFile(file, "Regions", regionName);
+            tag = getValidRegionTag(regionTag, this.subRegions.get(regionName).size);
+        }
+
+        if (tag == null)
+        {
+            String fileName = file != null ? file.getFileName().toString() : "<null>";
+            ThreadMessages.error("litematica.error.schematic_read_from_file_failed.region_reload", regionName, fileName);
+        }
+
+        return tag;
+    }
+
+    /**
+     * @return a tag with everything from the given region tag, except the block state data
+     */
+    private static NBTTagCompound createRegionHeaderTag(NBTTagCompound regionTag)
+    {
+        NBTTagCompound tag = new NBTTagCompound();
+
+        for (String key : NbtWrap.getKeys(regionTag))
+        {
+            if (key.equals("BlockStates") == false &&
+                key.equals("BlockStatePalette") == false &&
+                key.equals("BlockCounts") == false)
+            {
+                NbtWrap.putTag(tag, key, NbtWrap.getTag(regionTag, key));
+            }
+        }
+
+        return tag;
+    }
+
+    /**
+     * Reads the tag of all the regions from the given file, if the file has not changed.
+     * This only reads from the file, so it can be called on another thread.
+     */
+    @Nullable
+    private static NBTTagCompound readRegionsTagFromFile(Path file, long fileSize, long lastModified)
+    {
+        if (isFileUnchanged(file, fileSize, lastModified))
+        {
+            NBTBase tag = NbtStreamReader.readEntryFromFile(file, "Regions");
+            return tag instanceof NBTTagCompound ? (NBTTagCompound) tag : null;
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static NBTTagCompound getRegionTag(@Nullable NBTTagCompound regionsTag, String regionName, Vec3i expectedSize)
+    {
+        return regionsTag != null ? getValidRegionTag(NbtWrap.getTag(regionsTag, regionName), expectedSize) : null;
+    }
+
+    /**
+     * @return the given tag as a region tag, if it has block data and the expected size
+     */
+    @Nullable
+    private static NBTTagCompound getValidRegionTag(@Nullable NBTBase tag, Vec3i expectedSize)
+    {
+        if (tag instanceof NBTTagCompound &&
+            NbtWrap.containsLongArray((NBTTagCompound) tag, "BlockStates") &&
+            expectedSize.equals(NbtUtils.readBlockPos(NbtWrap.getCompound((NBTTagCompound) tag, "Size"))))
+        {
+            return (NBTTagCompound) tag;
+        }
+
+        return null;
+    }
+
+    private boolean isSourceFileUnchanged(Path file)
+    {
+        return file.equals(this.sourceFile) && isFileUnchanged(file, this.sourceFileSize, this.sourceFileLastModified);
+    }
+
+    private static boolean isFileUnchanged(Path file, long fileSize, long lastModified)
+    {
+        try
+        {
+            return fileSize == Files.size(file) && lastModified == Files.getLastModifiedTime(file).toMillis();
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if some of the regions have not been decoded yet, or have been evicted from memory
+     */
+    public synchronized boolean hasUnloadedRegions()
+    {
+        return this.unloadedRegions.isEmpty() == false;
+    }
+
+    /**
+     * Drops the data of the regions accepted by the given filter from memory.
+     * The regions are read again from the schematic file when they are next accessed.
+     * This is only done if the region data is in sync with the schematic file,
+     * see {@link #isRegionDataInSyncWithSourceFile()}, and the file has not changed since.
+     * @return the number of evicted regions
+     */
+    public synchronized int evictRegions(Predicate<String> regionFilter)
+    {
+        Path file = this.getFile();
+
+        if (file == null || this.isRegionDataInSyncWithSourceFile() == false || this.isSourceFileUnchanged(file) == false)
+        {
+            return 0;
+        }
+
+        int count = 0;
+
+        for (String regionName : this.subRegions.keySet())
+        {
+            if (this.unloadedRegions.contains(regionName) == false &&
+                this.failedRegions.contains(regionName) == false &&
+                regionFilter.test(regionName))
+            {
+                LitematicaBlockStateContainerFull container = this.blockContainers.get(regionName);
+                this.unloadedRegionHeaders.put(regionName, createRegionHeaderTag(this.writeSubRegionToNBT(regionName, container, false)));
+                this.blockContainers.remove(regionName);
+                this.syncedContainerModificationCounts.removeLong(regionName);
+                this.blockEntities.remove(regionName);
+                this.entities.remove(regionName);
+                this.pendingBlockTicks.remove(regionName);
+                this.unloadedRegions.add(regionName);
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
     private Map<BlockPos, NextTickListEntry> readBlockTicksFromNBT(NBTTagList tagList)
     {
         Map<BlockPos, NextTickListEntry> tickMap = new HashMap<>();
@@ -486,9 +1102,22 @@ public class LitematicaSchematic extends SchematicBase
         }
 
         Path file = dir.resolve(fileName);
-        LitematicaSchematic schematic = new LitematicaSchematic(file);
+        LitematicaSchematic schematic = DecodedSchematicCache.getInstance().tryLoad(file);
+
+        if (schematic != null)
+        {
+            return schematic;
+        }
+
+        schematic = new LitematicaSchematic(file);
+
+        if (schematic.readFromFile())
+        {
+            DecodedSchematicCache.getInstance().storeAsync(schematic, file);
+            return schematic;
+        }
 
-        return schematic.readFromFile() ? schematic : null;
+        return null;
     }
 
     public static class LitematicaSubRegion implements ISchematicRegion
@@ -515,27 +1144,50 @@ public class LitematicaSchematic extends SchematicBase
         }
 
         @Override
+        @Nullable
         public ILitematicaBlockStateContainer getBlockStateContainer()
         {
-            return this.schematic.blockContainers.get(this.regionName);
+            return this.schematic.getLoadedBlockContainer(this.regionName);
+        }
+
+        @Override
+        @Nullable
+        public ILitematicaBlockStateContainer getLoadedBlockStateContainer()
+        {
+            synchronized (this.schematic)
+            {
+                return this.schematic.blockContainers.get(this.regionName);
+            }
         }
 
         @Override
         public Map<BlockPos, NBTTagCompound> getBlockEntityMap()
         {
-            return this.schematic.blockEntities.computeIfAbsent(this.regionName, name -> new HashMap<>());
+            synchronized (this.schematic)
+            {
+                this.schematic.loadRegionIfNeeded(this.regionName);
+                return new ModificationTrackingMap<>(this.schematic, this.schematic.blockEntities.computeIfAbsent(this.regionName, name -> new HashMap<>()));
+            }
         }
 
         @Override
         public List<EntityInfo> getEntityList()
         {
-            return this.schematic.entities.computeIfAbsent(this.regionName, name -> new ArrayList<>());
+            synchronized (this.schematic)
+            {
+                this.schematic.loadRegionIfNeeded(this.regionName);
+                return new ModificationTrackingList<>(this.schematic, this.schematic.entities.computeIfAbsent(this.regionName, name -> new ArrayList<>()));
+            }
         }
 
         @Override
         public Map<BlockPos, NextTickListEntry> getBlockTickMap()
         {
-            return this.schematic.pendingBlockTicks.computeIfAbsent(this.regionName, name -> new HashMap<>());
+            synchronized (this.schematic)
+            {
+                this.schematic.loadRegionIfNeeded(this.regionName);
+                return new ModificationTrackingMap<>(this.schematic, this.schematic.pendingBlockTicks.computeIfAbsent(this.regionName, name -> new HashMap<>()));
+            }
         }
 
         // TODO FIXME clean this up by moving these to a MutableSchematicRegion interface and class
@@ -549,28 +1201,300 @@ public class LitematicaSchematic extends SchematicBase
                 Math.abs(containerSize.getY()) == Math.abs(regionSize.getY()) &&
                 Math.abs(containerSize.getZ()) == Math.abs(regionSize.getZ()))
             {
-                this.schematic.blockContainers.put(this.regionName, container);
+                synchronized (this.schematic)
+                {
+                    // Load the rest of the region data first, so that the new container doesn't get replaced later
+                    this.schematic.loadRegionIfNeeded(this.regionName);
+                    this.schematic.blockContainers.put(this.regionName, container);
+                    this.schematic.regionDataInSyncWithSourceFile = false;
+                }
             }
             else
             {
                 // FIXME/TODO
-                MessageDispatcher.error("Invalid container size %s, expected %s", containerSize, regionSize);
+                ThreadMessages.error("Invalid container size %s, expected %s", containerSize, regionSize);
             }
         }
 
         public void setBlockEntityMap(Map<BlockPos, NBTTagCompound> map)
         {
-            this.schematic.blockEntities.put(this.regionName, map);
+            synchronized (this.schematic)
+            {
+                this.schematic.loadRegionIfNeeded(this.regionName);
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                this.schematic.blockEntities.put(this.regionName, map);
+            }
         }
 
         public void setEntityList(List<EntityInfo> list)
         {
-            this.schematic.entities.put(this.regionName, list);
+            synchronized (this.schematic)
+            {
+                this.schematic.loadRegionIfNeeded(this.regionName);
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                this.schematic.entities.put(this.regionName, list);
+            }
         }
 
         public void setBlockTickMap(Map<BlockPos, NextTickListEntry> map)
         {
-            this.schematic.pendingBlockTicks.put(this.regionName, map);
+            synchronized (this.schematic)
+            {
+                this.schematic.loadRegionIfNeeded(this.regionName);
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                this.schematic.pendingBlockTicks.put(this.regionName, map);
+            }
+        }
+    }
+
+    /**
+     * A view of a region data map, which marks the region data as modified on any changes,
+     * so that the changes can't get lost by evicting the region. The changes are made while holding
+     * the schematic's lock. The collection views are unmodifiable, as their changes can't be tracked.
+     */
+    private static class ModificationTrackingMap<K, V> extends ForwardingMap<K, V>
+    {
+        private final LitematicaSchematic schematic;
+        private final Map<K, V> map;
+
+        private ModificationTrackingMap(LitematicaSchematic schematic, Map<K, V> map)
+        {
+            this.schematic = schematic;
+            this.map = map;
+        }
+
+        @Override
+        protected Map<K, V> delegate()
+        {
+            return this.map;
+        }
+
+        @Override
+        public V put(K key, V value)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.map.put(key, value);
+            }
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> map)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                this.map.putAll(map);
+            }
+        }
+
+        @Override
+        public V remove(Object key)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.map.remove(key);
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                this.map.clear();
+            }
+        }
+
+        @Override
+        public Set<K> keySet()
+        {
+            return Collections.unmodifiableSet(this.map.keySet());
+        }
+
+        @Override
+        public Collection<V> values()
+        {
+            return Collections.unmodifiableCollection(this.map.values());
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet()
+        {
+            return Collections.unmodifiableMap(this.map).entrySet();
+        }
+    }
+
+    /**
+     * A view of a region entity list, which marks the region data as modified on any changes,
+     * like {@link ModificationTrackingMap}. The iterators and sub-lists are unmodifiable.
+     */
+    private static class ModificationTrackingList<E> extends ForwardingList<E>
+    {
+        private final LitematicaSchematic schematic;
+        private final List<E> list;
+
+        private ModificationTrackingList(LitematicaSchematic schematic, List<E> list)
+        {
+            this.schematic = schematic;
+            this.list = list;
+        }
+
+        @Override
+        protected List<E> delegate()
+        {
+            return this.list;
+        }
+
+        @Override
+        public boolean add(E element)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.add(element);
+            }
+        }
+
+        @Override
+        public void add(int index, E element)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                this.list.add(index, element);
+            }
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends E> collection)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.addAll(collection);
+            }
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends E> collection)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.addAll(index, collection);
+            }
+        }
+
+        @Override
+        public E set(int index, E element)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.set(index, element);
+            }
+        }
+
+        @Override
+        public E remove(int index)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.remove(index);
+            }
+        }
+
+        @Override
+        public boolean remove(Object element)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.remove(element);
+            }
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> collection)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.removeAll(collection);
+            }
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> collection)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.retainAll(collection);
+            }
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super E> filter)
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                return this.list.removeIf(filter);
+            }
+        }
+
+        @Override
+        public void clear()
+        {
+            synchronized (this.schematic)
+            {
+                this.schematic.regionDataInSyncWithSourceFile = false;
+                this.list.clear();
+            }
+        }
+
+        @Override
+        public Iterator<E> iterator()
+        {
+            return Collections.unmodifiableList(this.list).iterator();
+        }
+
+        @Override
+        public ListIterator<E> listIterator()
+        {
+            return Collections.unmodifiableList(this.list).listIterator();
+        }
+
+        @Override
+        public ListIterator<E> listIterator(int index)
+        {
+            return Collections.unmodifiableList(this.list).listIterator(index);
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex)
+        {
+            return Collections.unmodifiableList(this.list).subList(fromIndex, toIndex);
+        }
+    }
+
+    private static class RegionWriteSnapshot
+    {
+        private final String name;
+        private final NBTTagCompound tag;
+        private final LitematicaBlockStateContainerFull container;
+
+        private RegionWriteSnapshot(String name, NBTTagCompound tag, LitematicaBlockStateContainerFull container)
+        {
+            this.name = name;
+            this.tag = tag;
+            this.container = container;
         }
     }
 }
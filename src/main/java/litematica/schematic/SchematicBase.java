@@ -25,7 +25,9 @@ import litematica.schematic.container.LitematicaBlockStateContainerFull;
 
 public abstract class SchematicBase implements ISchematic
 {
-    public static final int MINECRAFT_DATA_VERSION = ((IMixinDataFixer) Minecraft.getMinecraft().getDataFixer()).getVersion();
+    /** The data version of Minecraft 1.12.2, used when there is no client to get it from */
+    public static final int DEFAULT_DATA_VERSION = 1343;
+    public static final int MINECRAFT_DATA_VERSION = getGameDataVersion();
 
     @Nullable protected final Path schematicFile;
     protected final SchematicMetadata metadata = new SchematicMetadata();
@@ -36,6 +38,16 @@ public abstract class SchematicBase implements ISchematic
         this.schematicFile = file;
     }
 
+    /**
+     * @return the data version of the running game, or the default version when running headlessly,
+     *         for example when converting schematics with the batch converter without a client
+     */
+    private static int getGameDataVersion()
+    {
+        Minecraft mc = Minecraft.getMinecraft();
+        return mc != null ? ((IMixinDataFixer) mc.getDataFixer()).getVersion() : DEFAULT_DATA_VERSION;
+    }
+
     @Override
     @Nullable
     public Path getFile()
@@ -16,6 +16,7 @@ import malilib.gui.icon.Icon;
 import malilib.util.FileNameUtils;
 import malilib.util.nbt.NbtUtils;
 import litematica.gui.util.LitematicaIcons;
+import litematica.schematic.util.DecodedSchematicCache;
 
 public class SchematicType<S extends ISchematic>
 {
@@ -194,6 +195,16 @@ public class SchematicType<S extends ISchematic>
 
         if (possibleTypes.isEmpty() == false)
         {
+            if (possibleTypes.contains(LITEMATICA))
+            {
+                LitematicaSchematic schematic = DecodedSchematicCache.getInstance().tryLoad(file);
+
+                if (schematic != null)
+                {
+                    return schematic;
+                }
+            }
+
             NBTTagCompound tag = NbtUtils.readNbtFromFile(file);
 
             if (tag != null)
@@ -202,7 +213,14 @@ public class SchematicType<S extends ISchematic>
 
                 if (type != null)
                 {
-                    return type.createSchematicAndReadFromTag(file, tag);
+                    ISchematic schematic = type.createSchematicAndReadFromTag(file, tag);
+
+                    if (schematic instanceof LitematicaSchematic)
+                    {
+                        DecodedSchematicCache.getInstance().storeAsync((LitematicaSchematic) schematic, file);
+                    }
+
+                    return schematic;
                 }
             }
         }
@@ -1,12 +1,14 @@
 package litematica.schematic;
 
-import java.io.FileOutputStream;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
@@ -16,12 +18,15 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3i;
 
-import malilib.overlay.message.MessageDispatcher;
 import malilib.util.game.wrap.NbtWrap;
 import malilib.util.game.wrap.RegistryUtils;
-import malilib.util.nbt.NbtUtils;
 import litematica.schematic.container.ILitematicaBlockStateContainer;
 import litematica.schematic.container.ILitematicaBlockStatePalette;
+import litematica.schematic.container.LitematicaBitArray;
+import litematica.schematic.container.LitematicaBlockStateContainerFull;
+import litematica.util.NbtStreamWriter;
+import litematica.util.ThreadMessages;
+import litematica.util.value.BlockStorageType;
 
 public class SchematicaSchematic extends SingleRegionSchematic
 {
@@ -134,7 +139,7 @@ public class SchematicaSchematic extends SingleRegionSchematic
 
             if (id >= this.palette.length)
             {
-                MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.palette.invalid_id",
+                ThreadMessages.error("litematica.message.error.schematic_read.schematica.palette.invalid_id",
                                                     id, key, this.palette.length - 1);
                 continue;
             }
@@ -143,7 +148,7 @@ public class SchematicaSchematic extends SingleRegionSchematic
 
             if (block == null)
             {
-                MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.palette.invalid_block", key);
+                ThreadMessages.error("litematica.message.error.schematic_read.schematica.palette.invalid_block", key);
                 continue;
             }
 
@@ -166,13 +171,13 @@ public class SchematicaSchematic extends SingleRegionSchematic
             }
             catch (NumberFormatException e)
             {
-                MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.palette.id_not_number", idStr, key);
+                ThreadMessages.error("litematica.message.error.schematic_read.schematica.palette.id_not_number", idStr, key);
                 continue;
             }
 
             if (id >= this.palette.length)
             {
-                MessageDispatcher.error().translate("litematica.message.error.schematic_read.mcedit2.palette.invalid_id", id, key, this.palette.length - 1);
+                ThreadMessages.error("litematica.message.error.schematic_read.mcedit2.palette.invalid_id", id, key, this.palette.length - 1);
                 continue;
             }
 
@@ -180,7 +185,7 @@ public class SchematicaSchematic extends SingleRegionSchematic
 
             if (block == null)
             {
-                MessageDispatcher.error().translate("litematica.message.error.schematic_read.mcedit2.missing_block_data", key);
+                ThreadMessages.error("litematica.message.error.schematic_read.mcedit2.missing_block_data", key);
                 continue;
             }
 
@@ -206,14 +211,13 @@ public class SchematicaSchematic extends SingleRegionSchematic
                 }
                 else
                 {
-                    MessageDispatcher.error().translate("litematica.message.error.schematic_read.registry_palette.missing_block_data", id, key);
+                    ThreadMessages.error("litematica.message.error.schematic_read.registry_palette.missing_block_data", id, key);
                 }
             }
         }
     }
 
     @Override
-    @SuppressWarnings("deprecation")
     protected boolean readBlocksFromTag(NBTTagCompound tag)
     {
         // This method was implemented based on
@@ -227,120 +231,146 @@ public class SchematicaSchematic extends SingleRegionSchematic
         final byte[] blockIdsByte = NbtWrap.getByteArray(tag, "Blocks");
         final byte[] metaArr = NbtWrap.getByteArray(tag, "Data");
         final int numBlocks = blockIdsByte.length;
-        final int layerSize = sizeX * sizeZ;
 
         if (numBlocks != (sizeX * sizeY * sizeZ))
         {
-            MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.schematic.invalid_block_array_size", numBlocks, sizeX, sizeY, sizeZ);
+            ThreadMessages.error("litematica.message.error.schematic_read.schematica.schematic.invalid_block_array_size", numBlocks, sizeX, sizeY, sizeZ);
             return false;
         }
 
         if (numBlocks != metaArr.length)
         {
-            MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.schematic.invalid_metadata_array_size", numBlocks, metaArr.length);
+            ThreadMessages.error("litematica.message.error.schematic_read.schematica.schematic.invalid_metadata_array_size", numBlocks, metaArr.length);
             return false;
         }
 
         if (this.readPaletteFromTag(tag) == false)
         {
-            MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.palette.failed_to_read");
+            ThreadMessages.error("litematica.message.error.schematic_read.schematica.palette.failed_to_read");
             return false;
         }
 
         if (NbtWrap.containsByteArray(tag, "AddBlocks"))
         {
-            return this.readBlocks12Bit(tag, blockIdsByte, metaArr, sizeX, layerSize);
+            byte[] add = NbtWrap.getByteArray(tag, "AddBlocks");
+            final int expectedAddLength = (int) Math.ceil((double) numBlocks / 2D);
+
+            if (add.length != expectedAddLength)
+            {
+                ThreadMessages.error("litematica.message.error.schematic_read.schematica.schematic.invalid_block_add_array_size", numBlocks, add.length, expectedAddLength);
+                return false;
+            }
+
+            return this.readBlocksWithLookupTable(blockIdsByte, add, metaArr);
         }
         // Old Schematica format
         else if (NbtWrap.containsByteArray(tag, "Add"))
         {
             // FIXME is this array 4 or 8 bits per block?
-            MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.old_schematica_format_not_supported");
+            ThreadMessages.error("litematica.message.error.schematic_read.schematica.old_schematica_format_not_supported");
             return false;
         }
         // No palette, use the registry IDs directly
         else
         {
-            ILitematicaBlockStateContainer container = this.blockContainer;
-            Block[] palette = this.palette;
-
-            for (int i = 0; i < numBlocks; i++)
-            {
-                Block block = palette[blockIdsByte[i] & 0xFF];
-                int x = i % sizeX;
-                int y = i / layerSize;
-                int z = (i % layerSize) / sizeX;
-                container.setBlockState(x, y, z, block.getStateFromMeta(metaArr[i]));
-            }
+            return this.readBlocksWithLookupTable(blockIdsByte, null, metaArr);
         }
-
-        return true;
     }
 
+    /**
+     * Reads the blocks using a lookup table from the (block ID, meta) pairs to palette IDs,
+     * so that each pair only gets converted to a block state once.
+     * The legacy block array is in the same y/z/x order as the container,
+     * so the palette IDs are written linearly into a storage array, which is sized
+     * for the final palette up front, so that there are no palette resizes while reading.
+     * @param add the upper 4 bits of the block IDs, two entries per byte, or null if the IDs are 8-bit
+     */
     @SuppressWarnings("deprecation")
-    protected boolean readBlocks12Bit(NBTTagCompound nbt, final byte[] blockIdsByte, final byte[] metaArr, final int sizeX, final int layerSize)
+    protected boolean readBlocksWithLookupTable(final byte[] blockIdsByte, @Nullable final byte[] add, final byte[] metaArr)
     {
-        ILitematicaBlockStateContainer container = this.blockContainer;
-        Block[] palette = this.palette;
-        byte[] add = NbtWrap.getByteArray(nbt, "AddBlocks");
+        final Block[] palette = this.palette;
         final int numBlocks = blockIdsByte.length;
-        final int expectedAddLength = (int) Math.ceil((double) blockIdsByte.length / 2D);
-
-        if (add.length != expectedAddLength)
+        final int[] lookup = new int[4096 * 16];
+        final IBlockState air = Blocks.AIR.getDefaultState();
+        List<IBlockState> states = new ArrayList<>();
+        Object2IntOpenHashMap<IBlockState> stateIds = new Object2IntOpenHashMap<>();
+        long[] blockCounts = new long[16];
+
+        // Keep air as ID 0, like in all the other containers
+        states.add(air);
+        stateIds.put(air, 0);
+        Arrays.fill(lookup, -1);
+
+        // First pass: build the lookup table and the palette, and count the blocks
+        for (int i = 0; i < numBlocks; ++i)
         {
-            MessageDispatcher.error().translate("litematica.message.error.schematic_read.schematica.schematic.invalid_block_add_array_size", numBlocks, add.length, expectedAddLength);
-            return false;
-        }
+            final int key = getLookupKey(blockIdsByte, add, metaArr, i);
+            int id = lookup[key];
+
+            if (id == -1)
+            {
+                IBlockState state = palette[key >> 4].getStateFromMeta(key & 0xF);
 
-        final int loopMax;
+                // Different meta values may produce the same state
+                id = stateIds.getOrDefault(state, -1);
 
-        // Even number of blocks, we can handle two position (meaning one full add byte) at a time
-        if ((numBlocks % 2) == 0)
-        {
-            loopMax = numBlocks - 1;
+                if (id == -1)
+                {
+                    id = states.size();
+                    states.add(state);
+                    stateIds.put(state, id);
+                }
+
+                lookup[key] = id;
+
+                if (id >= blockCounts.length)
+                {
+                    blockCounts = Arrays.copyOf(blockCounts, blockCounts.length * 2);
+                }
+            }
+
+            ++blockCounts[id];
         }
-        else
+
+        final int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(states.size() - 1));
+        LitematicaBitArray storage = new LitematicaBitArray(bits, numBlocks, null, BlockStorageType.getForVolume(numBlocks));
+
+        // Second pass: write the palette IDs in storage order
+        for (int i = 0; i < numBlocks; ++i)
         {
-            loopMax = numBlocks - 2;
+            storage.setAt(i, lookup[getLookupKey(blockIdsByte, add, metaArr, i)]);
         }
 
-        Block block;
-        int byteId;
-        int bi, ai;
+        blockCounts = Arrays.copyOf(blockCounts, states.size());
+        LitematicaBlockStateContainerFull container = LitematicaBlockStateContainerFull.createContainer(states, storage, blockCounts, true, this.getSize());
 
-        // Handle two positions per iteration, ie. one full byte of the add array
-        for (bi = 0, ai = 0; bi < loopMax; bi += 2, ai++)
+        if (container == null)
         {
-            final int addValue = add[ai];
+            ThreadMessages.error("litematica.message.error.schematic_read.schematica.palette.failed_to_read");
+            return false;
+        }
 
-            byteId = blockIdsByte[bi    ] & 0xFF;
-            block = palette[(addValue & 0xF0) << 4 | byteId];
-            int x = bi % sizeX;
-            int y = bi / layerSize;
-            int z = (bi % layerSize) / sizeX;
-            container.setBlockState(x, y, z, block.getStateFromMeta(metaArr[bi    ]));
+        this.blockContainer = container;
 
-            x = (bi + 1) % sizeX;
-            y = (bi + 1) / layerSize;
-            z = ((bi + 1) % layerSize) / sizeX;
-            byteId = blockIdsByte[bi + 1] & 0xFF;
-            block = palette[(addValue & 0x0F) << 8 | byteId];
-            container.setBlockState(x, y, z, block.getStateFromMeta(metaArr[bi + 1]));
-        }
+        return true;
+    }
 
-        // Odd number of blocks, handle the last position
-        if ((numBlocks % 2) != 0)
+    /**
+     * @return the lookup table key for the block at the given index, which is the 12-bit block ID
+     *         in the upper bits, and the 4-bit meta value in the lowest 4 bits
+     */
+    private static int getLookupKey(byte[] blockIdsByte, @Nullable byte[] add, byte[] metaArr, int index)
+    {
+        int blockId = blockIdsByte[index] & 0xFF;
+
+        if (add != null)
         {
-            final int addValue = add[ai];
-            byteId = blockIdsByte[bi    ] & 0xFF;
-            block = palette[(addValue & 0xF0) << 4 | byteId];
-            int x = bi % sizeX;
-            int y = bi / layerSize;
-            int z = (bi % layerSize) / sizeX;
-            container.setBlockState(x, y, z, block.getStateFromMeta(metaArr[bi    ]));
+            // Even indices use the high nibble, odd indices the low nibble
+            final int addValue = add[index >> 1];
+            blockId |= (index & 1) == 0 ? (addValue & 0xF0) << 4 : (addValue & 0x0F) << 8;
         }
 
-        return true;
+        return (blockId << 4) | (metaArr[index] & 0xF);
     }
 
     protected void createPalette()
@@ -359,7 +389,7 @@ public class SchematicaSchematic extends SingleRegionSchematic
 
                 if (id >= this.palette.length)
                 {
-                    MessageDispatcher.error().translate("litematica.message.error.schematic_write.schematica.palette.invalid_id", id, state, this.palette.length - 1);
+                    ThreadMessages.error("litematica.message.error.schematic_write.schematica.palette.invalid_id", id, state, this.palette.length - 1);
                     continue;
                 }
 
@@ -471,10 +501,10 @@ public class SchematicaSchematic extends SingleRegionSchematic
     }
 
     @Override
-    public void writeToStream(NBTTagCompound tag, FileOutputStream outputStream) throws IOException
+    public void writeToStream(NBTTagCompound tag, DataOutput output) throws IOException
     {
         // MCEdit and World Edit require the root compound tag to be named "Schematic".
         // The vanilla util methods don't support doing that, so we have to use a custom method for it.
-        NbtUtils.writeCompressed(tag, "Schematic", outputStream);
+        new NbtStreamWriter(output).writeTag("Schematic", tag);
     }
 }
@@ -16,12 +16,12 @@ import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.NextTickListEntry;
 
-import malilib.overlay.message.MessageDispatcher;
 import malilib.util.nbt.NbtUtils;
 import litematica.Litematica;
 import litematica.schematic.container.ILitematicaBlockStateContainer;
 import litematica.schematic.container.LitematicaBlockStateContainerFull;
 import litematica.util.PositionUtils;
+import litematica.util.ThreadMessages;
 
 public abstract class SingleRegionSchematic extends SchematicBase implements ISchematicRegion
 {
@@ -86,7 +86,7 @@ public abstract class SingleRegionSchematic extends SchematicBase implements ISc
         {
             if (isSizeValid(size) == false)
             {
-                MessageDispatcher.error().translate("litematica.message.error.schematic_read.invalid_or_missing_size_value", size.getX(), size.getY(), size.getZ());
+                ThreadMessages.error("litematica.message.error.schematic_read.invalid_or_missing_size_value", size.getX(), size.getY(), size.getZ());
                 return;
             }
 
@@ -140,6 +140,15 @@ public abstract class SingleRegionSchematic extends SchematicBase implements ISc
     {
         ImmutableMap<String, ISchematicRegion> regions = other.getRegions();
 
+        // Check this before clearing anything, the exceptions below are only logged
+        for (Map.Entry<String, ISchematicRegion> entry : regions.entrySet())
+        {
+            if (entry.getValue().getBlockStateContainer() == null)
+            {
+                throw new IllegalStateException("The block data of the region '" + entry.getKey() + "' is not available");
+            }
+        }
+
         if (regions.isEmpty() == false)
         {
             this.clear();
@@ -286,7 +295,7 @@ public abstract class SingleRegionSchematic extends SchematicBase implements ISc
         if (isSizeValid(this.regionSize) == false)
         {
             String key = "litematica.message.error.schematic_read.invalid_or_missing_size";
-            MessageDispatcher.error().translate(key, this.getFile().toAbsolutePath().toString());
+            ThreadMessages.error(key, this.getFile().toAbsolutePath().toString());
             return false;
         }
 
@@ -301,7 +310,7 @@ public abstract class SingleRegionSchematic extends SchematicBase implements ISc
         else
         {
             String key = "litematica.message.error.schematic_read.missing_or_invalid_data";
-            MessageDispatcher.error().translate(key, this.getFile().toAbsolutePath().toString());
+            ThreadMessages.error(key, this.getFile().toAbsolutePath().toString());
             return false;
         }
     }
@@ -16,7 +16,6 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
 
-import malilib.overlay.message.MessageDispatcher;
 import malilib.util.game.wrap.NbtWrap;
 import malilib.util.nbt.NbtUtils;
 import litematica.schematic.container.ILitematicaBlockStateContainer;
@@ -24,6 +23,7 @@ import litematica.schematic.container.ILitematicaBlockStatePalette;
 import litematica.schematic.container.LitematicaBlockStateContainerSparse;
 import litematica.schematic.container.VanillaStructurePalette;
 import litematica.util.PositionUtils;
+import litematica.util.ThreadMessages;
 
 public class VanillaStructure extends SingleRegionSchematic
 {
@@ -91,7 +91,7 @@ public class VanillaStructure extends SingleRegionSchematic
 
             if (readPaletteFromLitematicaFormatTag(paletteTag, palette) == false)
             {
-                MessageDispatcher.error().translate("litematica.message.error.schematic_read.vanilla.failed_to_read_palette");
+                ThreadMessages.error("litematica.message.error.schematic_read.vanilla.failed_to_read_palette");
                 return false;
             }
 
@@ -110,7 +110,7 @@ public class VanillaStructure extends SingleRegionSchematic
 
                 if (pos == null)
                 {
-                    MessageDispatcher.error().translate("litematica.message.error.schematic_read.vanilla.failed_to_read_block_pos");
+                    ThreadMessages.error("litematica.message.error.schematic_read.vanilla.failed_to_read_block_pos");
                     return false;
                 }
 
@@ -0,0 +1,79 @@
+package litematica.schematic.container;
+
+import java.util.ArrayList;
+import java.util.List;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+
+/**
+ * A slice of block states with its own local palette, meant to be filled
+ * independently (for example on a worker thread) and then stitched into
+ * a full container with {@link LitematicaBlockStateContainerFull#setBlockStates(ContainerSlice)}.
+ */
+public class ContainerSlice
+{
+    protected final List<IBlockState> palette = new ArrayList<>();
+    protected final Object2IntOpenHashMap<IBlockState> paletteIds = new Object2IntOpenHashMap<>();
+    protected final int[] data;
+    protected final int offsetX;
+    protected final int offsetY;
+    protected final int offsetZ;
+    protected final int sizeX;
+    protected final int sizeY;
+    protected final int sizeZ;
+    protected long nonAirCount;
+
+    /**
+     * @param offsetX the position of this slice within the target container
+     * @param offsetY the position of this slice within the target container
+     * @param offsetZ the position of this slice within the target container
+     */
+    public ContainerSlice(int offsetX, int offsetY, int offsetZ, int sizeX, int sizeY, int sizeZ)
+    {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.data = new int[sizeX * sizeY * sizeZ];
+        this.paletteIds.defaultReturnValue(-1);
+
+        // Reserve ID 0 for air, the same as the full container does
+        this.idFor(Blocks.AIR.getDefaultState());
+    }
+
+    /**
+     * Sets the block state at the given position, relative to the start of this slice
+     */
+    public void setBlockState(int x, int y, int z, IBlockState state)
+    {
+        this.data[(y * this.sizeZ + z) * this.sizeX + x] = this.idFor(state);
+
+        if (state.getBlock() != Blocks.AIR)
+        {
+            ++this.nonAirCount;
+        }
+    }
+
+    public long getNonAirCount()
+    {
+        return this.nonAirCount;
+    }
+
+    protected int idFor(IBlockState state)
+    {
+        int id = this.paletteIds.getInt(state);
+
+        if (id == -1)
+        {
+            id = this.palette.size();
+            this.palette.add(state);
+            this.paletteIds.put(state, id);
+        }
+
+        return id;
+    }
+}
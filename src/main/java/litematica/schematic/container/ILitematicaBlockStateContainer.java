@@ -13,6 +13,12 @@ public interface ILitematicaBlockStateContainer
 
     Map<IBlockState, Long> getBlockCountsMap();
 
+    /**
+     * Returns the block counts indexed by the palette IDs.
+     * The array may be longer than the palette. <b>Note:</b> Don't modify the returned array.
+     */
+    long[] getBlockCounts();
+
     ILitematicaBlockStatePalette getPalette();
 
     IBlockState getBlockState(int x, int y, int z);
@@ -20,4 +26,13 @@ public interface ILitematicaBlockStateContainer
     void setBlockState(int x, int y, int z, IBlockState state);
 
     ILitematicaBlockStateContainer copy();
+
+    /**
+     * Releases the data that this container may share with the container it was copied from,
+     * so that the other container doesn't need to copy that data before modifying it.
+     * This container must not be used after this.
+     */
+    default void release()
+    {
+    }
 }
@@ -1,14 +1,42 @@
 package litematica.schematic.container;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.Validate;
 
 import malilib.util.MathUtils;
+import litematica.util.value.BlockStorageType;
 
+/**
+ * A packed array of fixed bit width entries.
+ * <p>
+ * The data is stored in pages of {@link #PAGE_ENTRIES} entries. Since the page size
+ * is a multiple of 64 bits for any entry width, the entries never straddle a page boundary,
+ * and the concatenated pages have the exact same bit layout as a single packed long array.
+ * <p>
+ * The pages are copy-on-write: {@link #copy()} only shares the pages with the new array,
+ * and a page is cloned the first time either array writes to it after the copy.
+ * Each page has an owner array, which is the only one allowed to write to it directly,
+ * and a count of the copies still sharing it. A copy keeps the owner of the pages and increments
+ * their counts, and the owner only clones a page before writing while some copy still shares it.
+ * Short-lived copies, such as the snapshots for saving, should be {@link #release() released}
+ * once they are no longer needed, so that the owner can keep writing to its pages directly.
+ * <p>
+ * The pages can be kept on the heap, or in off-heap or memory-mapped buffers for huge volumes,
+ * see {@link BlockStorageType}. The number of entries is not limited to the int range.
+ */
 public class LitematicaBitArray
 {
-    /** The long array that is used to store the data for this BitArray. */
-    private final long[] longArray;
+    public static final int PAGE_SHIFT = 12;
+    public static final int PAGE_ENTRIES = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_ENTRIES - 1;
+
+    /** The pages that store the data for this BitArray. */
+    private final Page[] pages;
     /** Number of bits a single entry takes up */
     private final int bitsPerEntry;
     /**
@@ -18,6 +46,8 @@ public class LitematicaBitArray
     private final long maxEntryValue;
     /** Number of entries in this array (<b>not</b> the length of the long array that internally backs this array) */
     private final long arraySize;
+    private final BlockStorageType storageType;
+    private boolean released;
 
     public LitematicaBitArray(int bitsPerEntryIn, long arraySizeIn)
     {
@@ -25,79 +55,552 @@ public class LitematicaBitArray
     }
 
     public LitematicaBitArray(int bitsPerEntryIn, long arraySizeIn, @Nullable long[] longArrayIn)
+    {
+        this(bitsPerEntryIn, arraySizeIn, longArrayIn, BlockStorageType.HEAP);
+    }
+
+    public LitematicaBitArray(int bitsPerEntryIn, long arraySizeIn, @Nullable long[] longArrayIn, BlockStorageType storageType)
     {
         Validate.inclusiveBetween(1L, 32L, (long) bitsPerEntryIn);
         this.arraySize = arraySizeIn;
         this.bitsPerEntry = bitsPerEntryIn;
         this.maxEntryValue = (1L << bitsPerEntryIn) - 1L;
+        this.storageType = storageType;
+        this.pages = new Page[(int) ((arraySizeIn + PAGE_ENTRIES - 1) >> PAGE_SHIFT)];
 
-        if (longArrayIn != null)
+        int srcPos = 0;
+
+        for (int i = 0; i < this.pages.length; ++i)
         {
-            this.longArray = longArrayIn;
+            int length = this.getPageLength(i);
+            Page page = createPage(length, storageType);
+
+            if (longArrayIn != null && srcPos < longArrayIn.length)
+            {
+                page.copyFrom(longArrayIn, srcPos, Math.min(length, longArrayIn.length - srcPos));
+            }
+
+            srcPos += length;
+            page.owner = this;
+            this.pages[i] = page;
         }
-        else
+    }
+
+    private LitematicaBitArray(int bitsPerEntryIn, long arraySizeIn, List<LongBuffer> buffers)
+    {
+        Validate.inclusiveBetween(1L, 32L, (long) bitsPerEntryIn);
+        this.arraySize = arraySizeIn;
+        this.bitsPerEntry = bitsPerEntryIn;
+        this.maxEntryValue = (1L << bitsPerEntryIn) - 1L;
+        this.storageType = BlockStorageType.getForVolume(arraySizeIn);
+        this.pages = new Page[(int) ((arraySizeIn + PAGE_ENTRIES - 1) >> PAGE_SHIFT)];
+
+        // The pages that get copied on write go to the storage that would normally be used for this volume
+        OffHeapPageAllocator copyAllocator = getAllocator(this.storageType);
+        int bufferIndex = 0;
+        int bufferPos = 0;
+
+        for (int i = 0; i < this.pages.length; ++i)
+        {
+            int length = this.getPageLength(i);
+
+            if (bufferIndex < buffers.size() && bufferPos == buffers.get(bufferIndex).capacity())
+            {
+                ++bufferIndex;
+                bufferPos = 0;
+            }
+
+            if (bufferIndex >= buffers.size() || bufferPos + length > buffers.get(bufferIndex).capacity())
+            {
+                throw new IllegalArgumentException("The buffers don't hold whole pages of data for page " + i);
+            }
+
+            LongBuffer buf = buffers.get(bufferIndex).duplicate();
+            buf.position(bufferPos);
+            buf.limit(bufferPos + length);
+            this.pages[i] = new BufferPage(buf.slice(), copyAllocator);
+            this.pages[i].owner = this;
+            bufferPos += length;
+        }
+    }
+
+    /**
+     * Creates an array that uses the given buffers directly as the page storage, without copying the data.
+     * Each buffer must hold a whole number of pages, in the same layout as {@link #getBackingLongArray()}.
+     * Writes go directly to the buffers, so for example file mappings should be private (copy-on-write)
+     * if the file must not be modified.
+     */
+    public static LitematicaBitArray wrapBuffers(int bitsPerEntry, long arraySize, List<LongBuffer> buffers)
+    {
+        return new LitematicaBitArray(bitsPerEntry, arraySize, buffers);
+    }
+
+    private LitematicaBitArray(LitematicaBitArray other)
+    {
+        this.arraySize = other.arraySize;
+        this.storageType = other.storageType;
+        this.bitsPerEntry = other.bitsPerEntry;
+        this.maxEntryValue = other.maxEntryValue;
+        this.pages = other.pages.clone();
+
+        // The pages stay owned by the other array, which will clone them before writing until this copy is released
+        for (Page page : this.pages)
         {
-            this.longArray = new long[(int) (MathUtils.roundUp((long) arraySizeIn * (long) bitsPerEntryIn, 64L) / 64L)];
+            page.sharingCopies.incrementAndGet();
         }
     }
 
+    /**
+     * @return the number of longs needed for the given page
+     */
+    private int getPageLength(int pageIndex)
+    {
+        long entries = Math.min(PAGE_ENTRIES, this.arraySize - ((long) pageIndex << PAGE_SHIFT));
+        return (int) (MathUtils.roundUp(entries * (long) this.bitsPerEntry, 64L) / 64L);
+    }
+
     public void setAt(long index, int value)
     {
         Validate.inclusiveBetween(0L, this.arraySize - 1L, (long) index);
         Validate.inclusiveBetween(0L, this.maxEntryValue, (long) value);
-        long startOffset = index * (long) this.bitsPerEntry;
-        int startArrIndex = (int) (startOffset >> 6); // startOffset / 64
-        int endArrIndex = (int) (((index + 1L) * (long) this.bitsPerEntry - 1L) >> 6);
-        int startBitOffset = (int) (startOffset & 0x3F); // startOffset % 64
-        this.longArray[startArrIndex] = this.longArray[startArrIndex] & ~(this.maxEntryValue << startBitOffset) | ((long) value & this.maxEntryValue) << startBitOffset;
+        Page page = this.getWritablePage((int) (index >> PAGE_SHIFT));
+        int pageIndex = (int) (index & PAGE_MASK);
+        int startOffset = pageIndex * this.bitsPerEntry;
+        int startArrIndex = startOffset >> 6; // startOffset / 64
+        int endArrIndex = ((pageIndex + 1) * this.bitsPerEntry - 1) >> 6;
+        int startBitOffset = startOffset & 0x3F; // startOffset % 64
+        page.set(startArrIndex, page.get(startArrIndex) & ~(this.maxEntryValue << startBitOffset) | ((long) value & this.maxEntryValue) << startBitOffset);
 
         if (startArrIndex != endArrIndex)
         {
             int endOffset = 64 - startBitOffset;
             int j1 = this.bitsPerEntry - endOffset;
-            this.longArray[endArrIndex] = this.longArray[endArrIndex] >>> j1 << j1 | ((long) value & this.maxEntryValue) >> endOffset;
+            page.set(endArrIndex, page.get(endArrIndex) >>> j1 << j1 | ((long) value & this.maxEntryValue) >> endOffset);
         }
     }
 
     public int getAt(long index)
     {
         Validate.inclusiveBetween(0L, this.arraySize - 1L, (long) index);
-        long startOffset = index * (long) this.bitsPerEntry;
-        int startArrIndex = (int) (startOffset >> 6); // startOffset / 64
-        int endArrIndex = (int) (((index + 1L) * (long) this.bitsPerEntry - 1L) >> 6);
-        int startBitOffset = (int) (startOffset & 0x3F); // startOffset % 64
+        Page page = this.pages[(int) (index >> PAGE_SHIFT)];
+        int pageIndex = (int) (index & PAGE_MASK);
+        int startOffset = pageIndex * this.bitsPerEntry;
+        int startArrIndex = startOffset >> 6; // startOffset / 64
+        int endArrIndex = ((pageIndex + 1) * this.bitsPerEntry - 1) >> 6;
+        int startBitOffset = startOffset & 0x3F; // startOffset % 64
+
+        if (startArrIndex == endArrIndex)
+        {
+            return (int) (page.get(startArrIndex) >>> startBitOffset & this.maxEntryValue);
+        }
+        else
+        {
+            int endOffset = 64 - startBitOffset;
+            return (int) ((page.get(startArrIndex) >>> startBitOffset | page.get(endArrIndex) << endOffset) & this.maxEntryValue);
+        }
+    }
+
+    private Page getWritablePage(int pageIndex)
+    {
+        Page page = this.pages[pageIndex];
+
+        // The page may still be shared with a copy of this array, take a private copy before writing to it
+        if (this.isShared(page))
+        {
+            Page newPage = page.copy();
+            newPage.owner = this;
+            this.pages[pageIndex] = newPage;
+            return newPage;
+        }
+
+        return page;
+    }
+
+    /**
+     * Sets the value at the given index, and returns the previous value
+     */
+    public int getAndSetAt(long index, int value)
+    {
+        Validate.inclusiveBetween(0L, this.arraySize - 1L, (long) index);
+        Validate.inclusiveBetween(0L, this.maxEntryValue, (long) value);
+        Page page = this.getWritablePage((int) (index >> PAGE_SHIFT));
+        int pageIndex = (int) (index & PAGE_MASK);
+        int startOffset = pageIndex * this.bitsPerEntry;
+        int startArrIndex = startOffset >> 6; // startOffset / 64
+        int endArrIndex = ((pageIndex + 1) * this.bitsPerEntry - 1) >> 6;
+        int startBitOffset = startOffset & 0x3F; // startOffset % 64
+        long startValue = page.get(startArrIndex);
+        int oldValue;
+
+        page.set(startArrIndex, startValue & ~(this.maxEntryValue << startBitOffset) | ((long) value & this.maxEntryValue) << startBitOffset);
 
         if (startArrIndex == endArrIndex)
         {
-            return (int) (this.longArray[startArrIndex] >>> startBitOffset & this.maxEntryValue);
+            oldValue = (int) (startValue >>> startBitOffset & this.maxEntryValue);
         }
         else
         {
+            long endValue = page.get(endArrIndex);
             int endOffset = 64 - startBitOffset;
-            return (int) ((this.longArray[startArrIndex] >>> startBitOffset | this.longArray[endArrIndex] << endOffset) & this.maxEntryValue);
+            int j1 = this.bitsPerEntry - endOffset;
+            oldValue = (int) ((startValue >>> startBitOffset | endValue << endOffset) & this.maxEntryValue);
+            page.set(endArrIndex, endValue >>> j1 << j1 | ((long) value & this.maxEntryValue) >> endOffset);
         }
+
+        return oldValue;
     }
 
+    /**
+     * Counts the number of occurrences of each value.
+     * The pages are decoded sequentially, without any per-entry index calculations.
+     */
     public long[] getValueCounts()
     {
         long[] counts = new long[(int) this.maxEntryValue + 1];
-        final long size = this.arraySize;
+        final int bits = this.bitsPerEntry;
+        final long mask = this.maxEntryValue;
+        long remaining = this.arraySize;
 
-        for (long i = 0; i < size; ++i)
+        for (Page page : this.pages)
         {
-            ++counts[this.getAt(i)];
+            final int entries = (int) Math.min(PAGE_ENTRIES, remaining);
+            long current = page.get(0);
+            int longIndex = 0;
+            int bitOffset = 0;
+
+            for (int i = 0; i < entries; ++i)
+            {
+                if (bitOffset == 64)
+                {
+                    current = page.get(++longIndex);
+                    bitOffset = 0;
+                }
+
+                int endOffset = bitOffset + bits;
+
+                if (endOffset <= 64)
+                {
+                    ++counts[(int) (current >>> bitOffset & mask)];
+                    bitOffset = endOffset;
+                }
+                // The entry continues in the next long
+                else
+                {
+                    long next = page.get(++longIndex);
+                    ++counts[(int) ((current >>> bitOffset | next << (64 - bitOffset)) & mask)];
+                    current = next;
+                    bitOffset = endOffset - 64;
+                }
+            }
+
+            remaining -= entries;
         }
 
         return counts;
     }
 
+    private boolean isShared(Page page)
+    {
+        return page.owner != this || page.sharingCopies.get() > 0;
+    }
+
+    /**
+     * Creates a copy of this array that shares all the pages with this array,
+     * until they are written to in either array, or until the copy is released.
+     */
+    public LitematicaBitArray copy()
+    {
+        return new LitematicaBitArray(this);
+    }
+
+    /**
+     * Stops sharing the pages that this array got from the array it was copied from,
+     * so that the owner of the pages can write to them directly again.
+     * This array must not be used after this. Calling this more than once has no effect.
+     */
+    public void release()
+    {
+        if (this.released == false)
+        {
+            this.released = true;
+
+            // The pages owned by this array are the ones it has cloned itself since the copy
+            for (Page page : this.pages)
+            {
+                if (page.owner != this)
+                {
+                    page.sharingCopies.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the data in one packed long array, in the same layout as the pages.
+     * <b>Note:</b> This always creates a new array.
+     */
     public long[] getBackingLongArray()
     {
-        return this.longArray;
+        long[] arr = new long[this.getBackingLongArrayLength()];
+        int destPos = 0;
+
+        for (Page page : this.pages)
+        {
+            page.copyTo(arr, destPos);
+            destPos += page.length();
+        }
+
+        return arr;
+    }
+
+    /**
+     * @return the length of the packed long array returned by {@link #getBackingLongArray()}
+     */
+    public int getBackingLongArrayLength()
+    {
+        long length = MathUtils.roundUp(this.arraySize * (long) this.bitsPerEntry, 64L) / 64L;
+
+        if (length > Integer.MAX_VALUE)
+        {
+            throw new IndexOutOfBoundsException("Block data backing long array length " + length + " exceeds the maximum value of " + Integer.MAX_VALUE);
+        }
+
+        return (int) length;
+    }
+
+    /**
+     * @return the long at the given index in the same layout as {@link #getBackingLongArray()},
+     *         read directly from the pages without creating the combined array
+     */
+    public long getBackingLong(long longIndex)
+    {
+        // Each full page holds exactly bitsPerEntry * 64 longs
+        final int longsPerPage = this.bitsPerEntry << 6;
+        return this.pages[(int) (longIndex / longsPerPage)].get((int) (longIndex % longsPerPage));
+    }
+
+    /**
+     * Writes the same data as {@link #getBackingLongArray()} returns to the given output,
+     * directly from the pages without creating the combined array.
+     */
+    public void writeBackingLongArray(DataOutput output) throws IOException
+    {
+        for (Page page : this.pages)
+        {
+            final int length = page.length();
+
+            for (int i = 0; i < length; ++i)
+            {
+                output.writeLong(page.get(i));
+            }
+        }
     }
 
     public long size()
     {
         return this.arraySize;
     }
+
+    public int getBitsPerEntry()
+    {
+        return this.bitsPerEntry;
+    }
+
+    public BlockStorageType getStorageType()
+    {
+        return this.storageType;
+    }
+
+    public int getPageCount()
+    {
+        return this.pages.length;
+    }
+
+    /**
+     * @return the number of pages that are still shared with a copy or with the array this was copied from,
+     *         and will be cloned on the next write
+     */
+    public int getSharedPageCount()
+    {
+        int count = 0;
+
+        for (Page page : this.pages)
+        {
+            if (this.isShared(page))
+            {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the size of the data in bytes
+     */
+    public long getSizeBytes()
+    {
+        long size = 0;
+
+        for (Page page : this.pages)
+        {
+            size += (long) page.length() * 8L;
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the size in bytes of the pages that have not been written to since the last copy,
+     *         see {@link #getSharedPageCount()}
+     */
+    public long getSharedSizeBytes()
+    {
+        long size = 0;
+
+        for (Page page : this.pages)
+        {
+            if (this.isShared(page))
+            {
+                size += (long) page.length() * 8L;
+            }
+        }
+
+        return size;
+    }
+
+    @Nullable
+    private static OffHeapPageAllocator getAllocator(BlockStorageType storageType)
+    {
+        if (storageType == BlockStorageType.OFF_HEAP)
+        {
+            return OffHeapPageAllocator.OFF_HEAP;
+        }
+        else if (storageType == BlockStorageType.MEMORY_MAPPED)
+        {
+            return OffHeapPageAllocator.MEMORY_MAPPED;
+        }
+
+        return null;
+    }
+
+    private static Page createPage(int length, BlockStorageType storageType)
+    {
+        return createPage(length, getAllocator(storageType));
+    }
+
+    private static Page createPage(int length, @Nullable OffHeapPageAllocator allocator)
+    {
+        LongBuffer buf = allocator != null ? allocator.allocate(length) : null;
+
+        // The off-heap memory limit has been reached, or the page goes to the heap anyway
+        if (buf == null)
+        {
+            return new HeapPage(new long[length]);
+        }
+
+        return new BufferPage(buf, allocator);
+    }
+
+    private abstract static class Page
+    {
+        /** The array that can write to this page directly, when no copies are sharing it */
+        @Nullable protected volatile LitematicaBitArray owner;
+        /** The number of unreleased copies of the owner array that are still sharing this page */
+        protected final AtomicInteger sharingCopies = new AtomicInteger();
+
+        protected abstract long get(int index);
+
+        protected abstract void set(int index, long value);
+
+        protected abstract int length();
+
+        protected abstract void copyFrom(long[] src, int srcPos, int length);
+
+        protected abstract void copyTo(long[] dest, int destPos);
+
+        protected abstract Page copy();
+    }
+
+    private static class HeapPage extends Page
+    {
+        private final long[] data;
+
+        private HeapPage(long[] data)
+        {
+            this.data = data;
+        }
+
+        @Override protected long get(int index) { return this.data[index]; }
+        @Override protected void set(int index, long value) { this.data[index] = value; }
+        @Override protected int length() { return this.data.length; }
+
+        @Override
+        protected void copyFrom(long[] src, int srcPos, int length)
+        {
+            System.arraycopy(src, srcPos, this.data, 0, length);
+        }
+
+        @Override
+        protected void copyTo(long[] dest, int destPos)
+        {
+            System.arraycopy(this.data, 0, dest, destPos, this.data.length);
+        }
+
+        @Override
+        protected Page copy()
+        {
+            return new HeapPage(this.data.clone());
+        }
+    }
+
+    private static class BufferPage extends Page
+    {
+        private final LongBuffer data;
+        @Nullable private final OffHeapPageAllocator allocator;
+
+        /**
+         * @param allocator the allocator for the copies of this page, or null to copy it to the heap
+         */
+        private BufferPage(LongBuffer data, @Nullable OffHeapPageAllocator allocator)
+        {
+            this.data = data;
+            this.allocator = allocator;
+        }
+
+        @Override protected long get(int index) { return this.data.get(index); }
+        @Override protected void set(int index, long value) { this.data.put(index, value); }
+        @Override protected int length() { return this.data.capacity(); }
+
+        @Override
+        protected void copyFrom(long[] src, int srcPos, int length)
+        {
+            LongBuffer buf = this.data.duplicate();
+            buf.put(src, srcPos, length);
+        }
+
+        @Override
+        protected void copyTo(long[] dest, int destPos)
+        {
+            LongBuffer buf = this.data.duplicate();
+            buf.get(dest, destPos, buf.capacity());
+        }
+
+        @Override
+        protected Page copy()
+        {
+            Page page = createPage(this.data.capacity(), this.allocator);
+
+            if (page instanceof BufferPage)
+            {
+                ((BufferPage) page).data.put(this.data.duplicate());
+            }
+            else
+            {
+                this.copyTo(((HeapPage) page).data, 0);
+            }
+
+            return page;
+        }
+    }
 }
@@ -97,6 +97,23 @@ public abstract class LitematicaBlockStateContainerBase implements ILitematicaBl
         return map;
     }
 
+    @Override
+    public long[] getBlockCounts()
+    {
+        this.calculateBlockCountsIfNeeded();
+        return this.blockCounts;
+    }
+
+    protected void ensureBlockCountsCapacity(int id)
+    {
+        if (id >= this.blockCounts.length)
+        {
+            long[] oldArr = this.blockCounts;
+            this.blockCounts = new long[Math.max(id + 1, oldArr.length * 2)];
+            System.arraycopy(oldArr, 0, this.blockCounts, 0, oldArr.length);
+        }
+    }
+
     protected void setBlockCounts(long[] blockCounts)
     {
         final int length = blockCounts.length;
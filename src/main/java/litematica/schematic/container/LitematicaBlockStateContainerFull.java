@@ -1,17 +1,28 @@
 package litematica.schematic.container;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import javax.annotation.Nullable;
-import io.netty.buffer.Unpooled;
 
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
-import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.math.Vec3i;
 
+import litematica.util.value.BlockStorageType;
+
 public class LitematicaBlockStateContainerFull extends LitematicaBlockStateContainerBase implements IPaletteResizeHandler
 {
     protected LitematicaBitArray storage;
     protected boolean checkForFreedIds = true;
+    /**
+     * False if the block counts were read from a file or cache instead of being counted from the storage.
+     * Such counts are fine for displaying, but they must be verified before they are used to re-use palette IDs.
+     */
+    protected boolean blockCountsVerified;
+    /** Incremented on every block state change, so that owners can tell if the data has changed since some point */
+    protected long modificationCount;
 
     public LitematicaBlockStateContainerFull(Vec3i size)
     {
@@ -30,6 +41,23 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
         super(size, bits);
 
         this.setBackingArray(backingLongArray);
+
+        // A new empty container is all air, which is always ID 0.
+        // Otherwise the counts get calculated once when first needed, and are then kept up to date.
+        if (backingLongArray == null)
+        {
+            this.blockCounts = new long[1 << this.bits];
+            this.blockCounts[0] = this.totalVolume;
+            this.hasSetBlockCounts = true;
+            this.blockCountsVerified = true;
+        }
+    }
+
+    protected LitematicaBlockStateContainerFull(Vec3i size, int bits, LitematicaBitArray storage)
+    {
+        super(size, bits);
+
+        this.storage = storage;
     }
 
     @Override
@@ -56,14 +84,8 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
 
     protected void setBackingArray(@Nullable long[] backingLongArray)
     {
-        if (backingLongArray != null)
-        {
-            this.storage = new LitematicaBitArray(this.bits, this.totalVolume, backingLongArray);
-        }
-        else
-        {
-            this.storage = new LitematicaBitArray(this.bits, this.totalVolume);
-        }
+        BlockStorageType storageType = BlockStorageType.getForVolume(this.totalVolume);
+        this.storage = new LitematicaBitArray(this.bits, this.totalVolume, backingLongArray, storageType);
     }
 
     @Override
@@ -76,9 +98,112 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
     @Override
     public void setBlockState(int x, int y, int z, IBlockState state)
     {
+        this.calculateBlockCountsIfNeeded();
+
         int id = this.palette.idFor(state);
-        this.storage.setAt(this.getIndex(x, y, z), id);
-        this.hasSetBlockCounts = false; // Force a re-count when next queried
+        int oldId = this.storage.getAndSetAt(this.getIndex(x, y, z), id);
+        this.updateBlockCounts(oldId, id);
+        ++this.modificationCount;
+    }
+
+    protected void updateBlockCounts(int oldId, int newId)
+    {
+        if (oldId != newId)
+        {
+            this.ensureBlockCountsCapacity(newId);
+            --this.blockCounts[oldId];
+            ++this.blockCounts[newId];
+        }
+    }
+
+    /**
+     * Writes all the block states from the given slice into this container,
+     * merging the slice's local palette into the palette of this container first.
+     */
+    public void setBlockStates(ContainerSlice slice)
+    {
+        this.calculateBlockCountsIfNeeded();
+        ++this.modificationCount;
+
+        final int[] idMap = this.mergePalette(slice.palette);
+        final int[] data = slice.data;
+        int sliceIndex = 0;
+
+        for (int y = 0; y < slice.sizeY; ++y)
+        {
+            for (int z = 0; z < slice.sizeZ; ++z)
+            {
+                long index = this.getIndex(slice.offsetX, slice.offsetY + y, slice.offsetZ + z);
+
+                for (int x = 0; x < slice.sizeX; ++x)
+                {
+                    int id = idMap[data[sliceIndex++]];
+                    this.updateBlockCounts(this.storage.getAndSetAt(index++, id), id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the block states of a packed sub-volume into this container,
+     * merging the given palette into the palette of this container first.
+     * The data is expected to be in the same y/z/x order as the container itself uses.
+     * @param offsetX the start position of the sub-volume within this container
+     * @param offsetY the start position of the sub-volume within this container
+     * @param offsetZ the start position of the sub-volume within this container
+     * @param size the size of the sub-volume
+     * @param palette the palette that the values in the data array refer to
+     * @param data the packed palette IDs
+     */
+    public void setBlockStates(int offsetX, int offsetY, int offsetZ, Vec3i size,
+                               List<IBlockState> palette, LitematicaBitArray data)
+    {
+        this.calculateBlockCountsIfNeeded();
+        ++this.modificationCount;
+
+        final int[] idMap = this.mergePalette(palette);
+        final int sizeX = size.getX();
+        final int sizeY = size.getY();
+        final int sizeZ = size.getZ();
+        long dataIndex = 0;
+
+        for (int y = 0; y < sizeY; ++y)
+        {
+            for (int z = 0; z < sizeZ; ++z)
+            {
+                long index = this.getIndex(offsetX, offsetY + y, offsetZ + z);
+
+                for (int x = 0; x < sizeX; ++x)
+                {
+                    int id = idMap[data.getAt(dataIndex++)];
+                    this.updateBlockCounts(this.storage.getAndSetAt(index++, id), id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds all the states from the given palette to the palette of this container
+     * @return the mapping from the given palette's IDs to the IDs in this container
+     */
+    protected int[] mergePalette(List<IBlockState> otherPalette)
+    {
+        final int otherPaletteSize = otherPalette.size();
+        final int[] idMap = new int[otherPaletteSize];
+        final boolean checkForFreedIds = this.checkForFreedIds;
+
+        // The mapped IDs are not in the storage yet, so they must not be considered free during the merge
+        this.checkForFreedIds = false;
+
+        for (int i = 0; i < otherPaletteSize; ++i)
+        {
+            IBlockState state = otherPalette.get(i);
+            idMap[i] = this.palette.idFor(state != null ? state : AIR_BLOCK_STATE);
+        }
+
+        this.checkForFreedIds = checkForFreedIds;
+
+        return idMap;
     }
 
     @Override
@@ -86,14 +211,17 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
     {
         if (this.checkForFreedIds)
         {
-            long[] counts = this.storage.getValueCounts();
-            final int countsSize = counts.length;
+            // The counts are kept up to date, so there is no need to scan the storage here,
+            // unless they came from the file, as a wrong count would re-use an ID that is still in use
+            this.verifyBlockCounts();
+            long[] counts = this.blockCounts;
+            final int paletteSize = oldPalette.getPaletteSize();
 
             // Check if there are any IDs that are not in use anymore
-            for (int id = 0; id < countsSize; ++id)
+            for (int id = 0; id < paletteSize; ++id)
             {
                 // Found an ID that is not in use anymore, use that instead of increasing the palette size
-                if (counts[id] == 0)
+                if (id >= counts.length || counts[id] == 0)
                 {
                     if (this.palette.overrideMapping(id, state))
                     {
@@ -104,7 +232,7 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
         }
 
         LitematicaBitArray oldArray = this.storage;
-        LitematicaBitArray newArray = new LitematicaBitArray(bits, this.totalVolume);
+        LitematicaBitArray newArray = new LitematicaBitArray(bits, this.totalVolume, null, oldArray.getStorageType());
 
         // This creates the new palette with the increased size
         this.setBits(bits);
@@ -119,6 +247,8 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
         }
 
         this.storage = newArray;
+        // Let the array this container was copied from write to the shared pages directly again
+        oldArray.release();
 
         return this.palette.idFor(state);
     }
@@ -128,32 +258,70 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
         return ((long) y * this.sizeLayer) + (long) z * (long) this.sizeX + (long) x;
     }
 
+    /**
+     * <b>Note:</b> This creates a new array from the paged storage
+     */
     public long[] getBackingLongArray()
     {
         return this.storage.getBackingLongArray();
     }
 
+    public int getBitsPerEntry()
+    {
+        return this.storage.getBitsPerEntry();
+    }
+
+    public int getBackingLongArrayLength()
+    {
+        return this.storage.getBackingLongArrayLength();
+    }
+
+    /**
+     * Writes the packed block data directly from the paged storage to the given output.
+     * This writes the same data that {@link #getBackingLongArray()} returns.
+     */
+    public void writeBackingLongArray(DataOutput output) throws IOException
+    {
+        this.storage.writeBackingLongArray(output);
+    }
+
+    /**
+     * @return the block data as the VarInt encoded byte array used by the Sponge schematic format
+     */
     public byte[] getBackingArrayAsByteArray()
     {
-        final int entrySize = PacketBuffer.getVarIntSize(this.palette.getPaletteSize() - 1);
-        final long volume = this.storage.size();
-        final long length = (long) entrySize * volume;
+        // The exact encoded length follows from the block counts, as the VarInt size only depends on the value
+        this.verifyBlockCounts();
+        byte[] arr = this.encodeToByteArray(this.blockCounts);
 
-        if (length > Integer.MAX_VALUE)
+        // The counts don't match the data after all, so count the values from the storage directly
+        if (arr == null)
         {
-            throw new IndexOutOfBoundsException("Block data backing byte array length " + length + " exceeds the maximum value of " + Integer.MAX_VALUE);
+            this.recountBlocks();
+            arr = this.encodeToByteArray(this.blockCounts);
+
+            if (arr == null)
+            {
+                throw new IllegalStateException("Block data VarInt length mismatch after recounting the blocks");
+            }
         }
 
-        byte[] arr = new byte[(int) length];
-        PacketBuffer buf = new PacketBuffer(Unpooled.wrappedBuffer(arr));
-        buf.writerIndex(0);
+        return arr;
+    }
 
-        for (int i = 0; i < volume; ++i)
+    @Nullable
+    protected byte[] encodeToByteArray(long[] counts)
+    {
+        final long length = VarIntCodec.getEncodedLength(counts);
+
+        if (length > Integer.MAX_VALUE)
         {
-            buf.writeVarInt(this.storage.getAt(i));
+            throw new IndexOutOfBoundsException("Block data backing byte array length " + length + " exceeds the maximum value of " + Integer.MAX_VALUE);
         }
 
-        return arr;
+        byte[] arr = new byte[(int) length];
+
+        return VarIntCodec.encodeFromBitArray(this.storage, arr) == arr.length ? arr : null;
     }
 
     @Override
@@ -161,54 +329,193 @@ public class LitematicaBlockStateContainerFull extends LitematicaBlockStateConta
     {
         if (this.hasSetBlockCounts == false)
         {
-            long[] counts = this.storage.getValueCounts();
-            this.setBlockCounts(counts);
+            this.recountBlocks();
+        }
+    }
+
+    /**
+     * Makes sure the block counts have been counted from the storage, and not just read from a file
+     */
+    protected void verifyBlockCounts()
+    {
+        if (this.hasSetBlockCounts == false || this.blockCountsVerified == false)
+        {
+            this.recountBlocks();
         }
     }
 
+    protected void recountBlocks()
+    {
+        long[] counts = this.storage.getValueCounts();
+        Arrays.fill(this.blockCounts, 0L);
+        this.setBlockCounts(counts);
+        this.blockCountsVerified = true;
+    }
+
+    /**
+     * @return a counter that changes whenever any block state in this container is changed
+     */
+    public long getModificationCount()
+    {
+        return this.modificationCount;
+    }
+
     @Override
     public LitematicaBlockStateContainerFull copy()
     {
-        LitematicaBlockStateContainerFull newContainer = new LitematicaBlockStateContainerFull(this.size, this.bits, this.storage.getBackingLongArray().clone());
+        LitematicaBlockStateContainerFull newContainer = new LitematicaBlockStateContainerFull(this.size, this.bits, this.storage.copy());
         newContainer.palette = this.palette.copy(newContainer);
+        newContainer.checkForFreedIds = this.checkForFreedIds;
+
+        if (this.hasSetBlockCounts)
+        {
+            newContainer.setBlockCounts(this.blockCounts);
+            newContainer.blockCountsVerified = this.blockCountsVerified;
+        }
 
         return newContainer;
     }
 
+    @Override
+    public void release()
+    {
+        this.storage.release();
+    }
+
+    public BlockStorageType getStorageType()
+    {
+        return this.storage.getStorageType();
+    }
+
+    /**
+     * @return the size of the block state storage in bytes
+     */
+    public long getStorageSizeBytes()
+    {
+        return this.storage.getSizeBytes();
+    }
+
+    /**
+     * @return the size in bytes of the block state storage pages
+     * that have not been written to since the last copy of this container
+     */
+    public long getSharedStorageSizeBytes()
+    {
+        return this.storage.getSharedSizeBytes();
+    }
+
+    /**
+     * @return the packed block states and the block counts, or null if the block data is invalid
+     */
+    @Nullable
     public static SpongeBlockstateConverterResults convertVarintByteArrayToPackedLongArray(Vec3i size, int bits, byte[] blockStates)
     {
         int volume = size.getX() * size.getY() * size.getZ();
-        LitematicaBitArray bitArray = new LitematicaBitArray(bits, volume);
-        PacketBuffer buf = new PacketBuffer(Unpooled.wrappedBuffer(blockStates));
         long[] blockCounts = new long[1 << bits];
+        long[] backingArray = VarIntCodec.decodeToPackedLongArray(blockStates, bits, volume, blockCounts);
 
-        for (int i = 0; i < volume; ++i)
-        {
-            int id = buf.readVarInt();
-            bitArray.setAt(i, id);
-            ++blockCounts[id];
-        }
-
-        return new SpongeBlockstateConverterResults(bitArray.getBackingLongArray(), blockCounts);
+        return backingArray != null ? new SpongeBlockstateConverterResults(backingArray, blockCounts) : null;
     }
 
     @Nullable
     public static LitematicaBlockStateContainerFull createContainer(int paletteSize, long[] blockStates, Vec3i size)
+    {
+        return createContainer(paletteSize, blockStates, null, size);
+    }
+
+    /**
+     * Creates a container from the packed block state array.
+     * @param blockCounts the stored per-palette-ID block counts, if available.
+     *                    If they are missing or don't add up to the volume,
+     *                    then the counts are calculated from the block states when first needed.
+     *                    Otherwise they are only re-counted when they are needed to be exact.
+     */
+    @Nullable
+    public static LitematicaBlockStateContainerFull createContainer(int paletteSize, long[] blockStates,
+                                                                   @Nullable long[] blockCounts, Vec3i size)
     {
         int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
         LitematicaBlockStateContainerFull container = new LitematicaBlockStateContainerFull(size, bits, blockStates);
         container.palette = createPalette(bits, container);
+
+        if (blockCounts != null && blockCounts.length <= (1 << bits) &&
+            areBlockCountsValid(blockCounts, container.totalVolume))
+        {
+            container.setBlockCounts(blockCounts);
+        }
+
+        return container;
+    }
+
+    /**
+     * Creates a container directly from already packed palette IDs, without any palette resizes.
+     * @param palette the block state for each palette ID used in the storage
+     * @param storage the palette IDs, in the same y/z/x order as the container uses,
+     *                and with a bit width that fits the palette size
+     * @param blockCounts the block counts per palette ID
+     * @param countedFromStorage true if the block counts were counted from the storage data,
+     *                           false if they were read from some stored data and could be stale
+     */
+    @Nullable
+    public static LitematicaBlockStateContainerFull createContainer(List<IBlockState> palette, LitematicaBitArray storage,
+                                                                   long[] blockCounts, boolean countedFromStorage, Vec3i size)
+    {
+        int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(palette.size() - 1));
+
+        if (storage.getBitsPerEntry() != bits)
+        {
+            return null;
+        }
+
+        LitematicaBlockStateContainerFull container = new LitematicaBlockStateContainerFull(size, bits, storage);
+
+        if (container.palette.setMapping(palette) == false)
+        {
+            return null;
+        }
+
+        if (blockCounts.length <= (1 << bits) && areBlockCountsValid(blockCounts, container.totalVolume))
+        {
+            container.setBlockCounts(blockCounts);
+            container.blockCountsVerified = countedFromStorage;
+        }
+
         return container;
     }
 
+    private static boolean areBlockCountsValid(long[] blockCounts, long volume)
+    {
+        long total = 0;
+
+        for (long count : blockCounts)
+        {
+            if (count < 0)
+            {
+                return false;
+            }
+
+            total += count;
+        }
+
+        return total == volume;
+    }
+
     @Nullable
     public static LitematicaBlockStateContainerFull createContainer(int paletteSize, byte[] blockData, Vec3i size)
     {
         int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
         SpongeBlockstateConverterResults results = convertVarintByteArrayToPackedLongArray(size, bits, blockData);
+
+        if (results == null)
+        {
+            return null;
+        }
+
         LitematicaBlockStateContainerFull container = new LitematicaBlockStateContainerFull(size, bits, results.backingArray);
         container.palette = createPalette(bits, container);
+        // These were counted while decoding the data
         container.setBlockCounts(results.blockCounts);
+        container.blockCountsVerified = true;
         return container;
     }
 
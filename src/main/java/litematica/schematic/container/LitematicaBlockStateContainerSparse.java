@@ -15,6 +15,7 @@ public class LitematicaBlockStateContainerSparse extends LitematicaBlockStateCon
 
         this.palette = new VanillaStructurePalette();
         this.blockCounts = new long[256];
+        this.hasSetBlockCounts = true; // The counts are maintained in setBlockState()
     }
 
     @Override
@@ -33,12 +34,7 @@ public class LitematicaBlockStateContainerSparse extends LitematicaBlockStateCon
         IBlockState oldState = this.blocks.put(pos, state);
         int id = this.palette.idFor(state);
 
-        if (id >= this.blockCounts.length)
-        {
-            long[] oldArr = this.blockCounts;
-            this.blockCounts = new long[oldArr.length * 2];
-            System.arraycopy(oldArr, 0, this.blockCounts, 0, oldArr.length);
-        }
+        this.ensureBlockCountsCapacity(id);
 
         if (oldState != state)
         {
@@ -0,0 +1,201 @@
+package litematica.schematic.container;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+
+import litematica.Litematica;
+import litematica.util.LitematicaDirectories;
+
+/**
+ * Allocates the pages of the off-heap and memory-mapped bit arrays.
+ * The pages are sliced out of larger slabs, so that there aren't millions of
+ * tiny direct buffers. A slab is released once none of its pages are referenced anymore.
+ * <p>
+ * The off-heap slabs are limited by the JVM's direct memory limit (-XX:MaxDirectMemorySize).
+ * Only up to {@link #DIRECT_MEMORY_USAGE_LIMIT} of that limit is used, so that the game's own
+ * direct buffers have room left. When that runs out, {@link #allocate(int)} returns null,
+ * and the pages are stored on the heap instead.
+ * <p>
+ * The files of the memory-mapped slabs are deleted when they are closed, but on Windows
+ * a file can't be deleted while it's mapped, and a mapping only goes away once the buffer
+ * gets garbage collected. Any such leftover files from previous runs are deleted
+ * when the first memory-mapped slab is created.
+ */
+public class OffHeapPageAllocator
+{
+    public static final OffHeapPageAllocator OFF_HEAP = new OffHeapPageAllocator(false);
+    public static final OffHeapPageAllocator MEMORY_MAPPED = new OffHeapPageAllocator(true);
+
+    private static final int SLAB_SIZE_BYTES = 64 * 1024 * 1024;
+    private static final double DIRECT_MEMORY_USAGE_LIMIT = 0.75;
+    private static final String FILE_PREFIX = "blocks_";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private static final long MAX_DIRECT_MEMORY = getMaxDirectMemory();
+    @Nullable private static final BufferPoolMXBean DIRECT_BUFFER_POOL = getDirectBufferPool();
+    private static boolean staleFilesDeleted;
+
+    private final boolean memoryMapped;
+    @Nullable private ByteBuffer currentSlab;
+    private boolean warnedAboutMemoryLimit;
+
+    protected OffHeapPageAllocator(boolean memoryMapped)
+    {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * @return a new zero-filled buffer of the given number of longs,
+     *         or null if the off-heap memory limit has been reached
+     */
+    @Nullable
+    public synchronized LongBuffer allocate(int longCount)
+    {
+        int bytes = longCount * 8;
+
+        if (this.currentSlab == null || this.currentSlab.remaining() < bytes)
+        {
+            this.currentSlab = this.createSlab(Math.max(bytes, SLAB_SIZE_BYTES));
+
+            if (this.currentSlab == null)
+            {
+                return null;
+            }
+        }
+
+        ByteBuffer buf = this.currentSlab.slice();
+        buf.limit(bytes);
+        this.currentSlab.position(this.currentSlab.position() + bytes);
+
+        return buf.order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    @Nullable
+    protected ByteBuffer createSlab(int size)
+    {
+        if (this.memoryMapped)
+        {
+            try
+            {
+                Path dir = LitematicaDirectories.getDataDirectory("tmp");
+                LitematicaDirectories.createDirectoriesIfMissingOrPrintError(dir);
+                deleteStaleFiles(dir);
+
+                Path file = Files.createTempFile(dir, FILE_PREFIX, FILE_SUFFIX);
+                file.toFile().deleteOnExit();
+
+                // The mapping stays valid after the channel is closed
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                            StandardOpenOption.DELETE_ON_CLOSE))
+                {
+                    return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                }
+            }
+            catch (IOException e)
+            {
+                Litematica.logger.warn("Failed to create a memory-mapped block storage file, using off-heap memory instead", e);
+            }
+        }
+
+        return this.createDirectSlab(size);
+    }
+
+    @Nullable
+    protected ByteBuffer createDirectSlab(int size)
+    {
+        long used = DIRECT_BUFFER_POOL != null ? DIRECT_BUFFER_POOL.getTotalCapacity() : 0L;
+
+        if (used + size <= (long) (MAX_DIRECT_MEMORY * DIRECT_MEMORY_USAGE_LIMIT))
+        {
+            try
+            {
+                return ByteBuffer.allocateDirect(size);
+            }
+            catch (OutOfMemoryError ignore)
+            {
+                // Some other direct buffers were allocated in the meantime
+            }
+        }
+
+        if (this.warnedAboutMemoryLimit == false)
+        {
+            Litematica.logger.warn("The off-heap memory limit has been reached ({} MB in use, the limit is {} MB), " +
+                                   "storing the schematic block data on the heap instead",
+                                   used >> 20, MAX_DIRECT_MEMORY >> 20);
+            this.warnedAboutMemoryLimit = true;
+        }
+
+        return null;
+    }
+
+    /**
+     * Deletes any block storage files left behind by previous runs
+     */
+    private static synchronized void deleteStaleFiles(Path dir)
+    {
+        if (staleFilesDeleted)
+        {
+            return;
+        }
+
+        staleFilesDeleted = true;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX))
+        {
+            for (Path file : stream)
+            {
+                try
+                {
+                    Files.deleteIfExists(file);
+                }
+                catch (IOException ignore)
+                {
+                    // Still mapped by another running game instance
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            Litematica.logger.warn("Failed to delete the old block storage files from '{}'", dir, e);
+        }
+    }
+
+    private static long getMaxDirectMemory()
+    {
+        try
+        {
+            Method method = Class.forName("sun.misc.VM").getMethod("maxDirectMemory");
+            return (Long) method.invoke(null);
+        }
+        catch (Exception ignore)
+        {
+            // Without the -XX:MaxDirectMemorySize option the limit is the same as the max heap size
+            return Runtime.getRuntime().maxMemory();
+        }
+    }
+
+    @Nullable
+    private static BufferPoolMXBean getDirectBufferPool()
+    {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+        {
+            if (pool.getName().equals("direct"))
+            {
+                return pool;
+            }
+        }
+
+        return null;
+    }
+}
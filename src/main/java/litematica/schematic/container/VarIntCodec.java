@@ -0,0 +1,219 @@
+package litematica.schematic.container;
+
+/**
+ * Converts between the VarInt encoded block data arrays of the Sponge schematic format
+ * and the packed long array layout of {@link LitematicaBitArray}.
+ * The conversions work directly on the arrays, without any intermediate buffers,
+ * and pack/unpack the entries one long at a time instead of per entry.
+ */
+public class VarIntCodec
+{
+    /**
+     * Decodes {@code volume} VarInt values from the given byte array into a packed long array
+     * with the given number of bits per entry. The values are also counted into {@code valueCounts}.
+     * @param valueCounts the array to count the values into, must have a length of at least {@code 1 << bits}
+     * @return the packed long array, or null if the data is truncated, malformed,
+     *         or has values that don't fit into the given number of bits
+     */
+    public static long[] decodeToPackedLongArray(byte[] data, int bits, int volume, long[] valueCounts)
+    {
+        long[] packed = new long[(int) (((long) volume * bits + 63L) >> 6)];
+        boolean success;
+
+        // When the data is exactly one byte per entry, then all the values must be single-byte VarInts
+        if (data.length == volume)
+        {
+            success = decodeSingleByteValues(data, bits, volume, packed, valueCounts);
+        }
+        else
+        {
+            success = decodeValues(data, bits, volume, packed, valueCounts);
+        }
+
+        return success ? packed : null;
+    }
+
+    private static boolean decodeSingleByteValues(byte[] data, int bits, int volume, long[] packed, long[] valueCounts)
+    {
+        final long maxValue = (1L << bits) - 1L;
+        int wordIndex = 0;
+        int bitPos = 0;
+        long word = 0L;
+
+        for (int i = 0; i < volume; ++i)
+        {
+            final long value = data[i];
+
+            // Negative means the continuation bit is set
+            if (value < 0 || value > maxValue)
+            {
+                return false;
+            }
+
+            ++valueCounts[(int) value];
+            word |= value << bitPos;
+            bitPos += bits;
+
+            if (bitPos >= 64)
+            {
+                packed[wordIndex++] = word;
+                bitPos -= 64;
+                // The high bits of an entry that straddles two longs go to the start of the next long
+                word = bitPos > 0 ? value >>> (bits - bitPos) : 0L;
+            }
+        }
+
+        if (bitPos > 0)
+        {
+            packed[wordIndex] = word;
+        }
+
+        return true;
+    }
+
+    private static boolean decodeValues(byte[] data, int bits, int volume, long[] packed, long[] valueCounts)
+    {
+        final long maxValue = (1L << bits) - 1L;
+        final int length = data.length;
+        int pos = 0;
+        int wordIndex = 0;
+        int bitPos = 0;
+        long word = 0L;
+
+        for (int i = 0; i < volume; ++i)
+        {
+            if (pos >= length)
+            {
+                return false;
+            }
+
+            long value = data[pos++];
+
+            if (value < 0)
+            {
+                value &= 0x7F;
+                int shift = 7;
+                int b;
+
+                do
+                {
+                    if (pos >= length || shift > 28)
+                    {
+                        return false;
+                    }
+
+                    b = data[pos++];
+                    value |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                }
+                while (b < 0);
+            }
+
+            if (value > maxValue)
+            {
+                return false;
+            }
+
+            ++valueCounts[(int) value];
+            word |= value << bitPos;
+            bitPos += bits;
+
+            if (bitPos >= 64)
+            {
+                packed[wordIndex++] = word;
+                bitPos -= 64;
+                word = bitPos > 0 ? value >>> (bits - bitPos) : 0L;
+            }
+        }
+
+        if (bitPos > 0)
+        {
+            packed[wordIndex] = word;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of bytes needed to encode values with the given counts,
+     *         where the array index is the value
+     */
+    public static long getEncodedLength(long[] valueCounts)
+    {
+        long length = 0L;
+
+        for (int value = 0; value < valueCounts.length; ++value)
+        {
+            length += valueCounts[value] * getVarIntSize(value);
+        }
+
+        return length;
+    }
+
+    public static int getVarIntSize(int value)
+    {
+        if ((value & 0xFFFFFF80) == 0) return 1;
+        if ((value & 0xFFFFC000) == 0) return 2;
+        if ((value & 0xFFE00000) == 0) return 3;
+        if ((value & 0xF0000000) == 0) return 4;
+        return 5;
+    }
+
+    /**
+     * Encodes all the entries of the given array as VarInts into the given byte array,
+     * which should be exactly large enough, see {@link #getEncodedLength(long[])}.
+     * @return the number of bytes written, which is less than the array length if it was too long,
+     *         or -1 if the array is too short for the data
+     */
+    public static int encodeFromBitArray(LitematicaBitArray storage, byte[] dest)
+    {
+        final int bits = storage.getBitsPerEntry();
+        final long mask = (1L << bits) - 1L;
+        final long volume = storage.size();
+        long wordIndex = 0;
+        long word = volume > 0 ? storage.getBackingLong(0) : 0L;
+        int bitPos = 0;
+        int pos = 0;
+
+        for (long i = 0; i < volume; ++i)
+        {
+            int value = (int) ((word >>> bitPos) & mask);
+            bitPos += bits;
+
+            if (bitPos >= 64)
+            {
+                bitPos -= 64;
+                // The last long may be complete without there being any more entries
+                word = i < volume - 1 || bitPos > 0 ? storage.getBackingLong(++wordIndex) : 0L;
+
+                if (bitPos > 0)
+                {
+                    value |= (int) ((word << (bits - bitPos)) & mask);
+                }
+            }
+
+            if (pos + getVarIntSize(value) > dest.length)
+            {
+                return -1;
+            }
+
+            if ((value & 0xFFFFFF80) == 0)
+            {
+                dest[pos++] = (byte) value;
+            }
+            else
+            {
+                do
+                {
+                    dest[pos++] = (byte) ((value & 0x7F) | 0x80);
+                    value >>>= 7;
+                }
+                while ((value & 0xFFFFFF80) != 0);
+
+                dest[pos++] = (byte) value;
+            }
+        }
+
+        return pos;
+    }
+}
@@ -0,0 +1,189 @@
+package litematica.schematic.placement;
+
+import java.util.HashMap;
+import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import net.minecraft.util.Mirror;
+import net.minecraft.util.Rotation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import malilib.util.data.EnabledCondition;
+import litematica.schematic.ISchematic;
+import litematica.selection.SelectionBox;
+
+/**
+ * The state of a placement that affects the blocks it places into the schematic world,
+ * per sub-region. Comparing the snapshots taken before and after a placement change
+ * gives the chunk sections that actually need to be re-built.
+ */
+class PlacementSectionSnapshot
+{
+    protected final SchematicPlacement placement;
+    protected final ISchematic schematic;
+    protected final boolean enabled;
+    protected final boolean ignoreEntities;
+    protected final Rotation rotation;
+    protected final Mirror mirror;
+    protected final Map<String, RegionState> regions = new HashMap<>();
+
+    PlacementSectionSnapshot(SchematicPlacement placement)
+    {
+        this.placement = placement;
+        this.schematic = placement.getSchematic();
+        this.enabled = placement.isEnabled();
+        this.ignoreEntities = placement.ignoreEntities();
+        this.rotation = placement.getRotation();
+        this.mirror = placement.getMirror();
+
+        // A disabled placement doesn't place anything
+        if (this.enabled)
+        {
+            for (Map.Entry<String, SelectionBox> entry : placement.getSubRegionBoxes(EnabledCondition.ENABLED).entrySet())
+            {
+                SubRegionPlacement subRegion = placement.getSubRegion(entry.getKey());
+
+                if (subRegion != null)
+                {
+                    this.regions.put(entry.getKey(), new RegionState(entry.getValue(), subRegion));
+                }
+            }
+        }
+    }
+
+    boolean isFor(SchematicPlacement placement)
+    {
+        return this.placement == placement;
+    }
+
+    /**
+     * Adds the sections touched by the sub-regions that differ between the two snapshots
+     * to the given map, as a bit mask of section Y coordinates per chunk.
+     * Both the old and the new position of each changed sub-region are added,
+     * as the old one needs to be cleared, and the new one needs to be placed.
+     * @param sameSchematicLayout if true, then a change of the schematic alone is not considered
+     *                            to change the sub-regions, as the caller handles the changed areas
+     *                            of the new version of the schematic separately
+     */
+    static void addChangedSections(PlacementSectionSnapshot pre, PlacementSectionSnapshot post,
+                                   Long2IntOpenHashMap sections, boolean sameSchematicLayout)
+    {
+        // Changes to the entire placement affect all of its sub-regions
+        boolean allChanged = (pre.schematic != post.schematic && sameSchematicLayout == false) ||
+                             pre.enabled != post.enabled ||
+                             pre.ignoreEntities != post.ignoreEntities ||
+                             pre.rotation != post.rotation ||
+                             pre.mirror != post.mirror;
+
+        for (Map.Entry<String, RegionState> entry : pre.regions.entrySet())
+        {
+            RegionState state = entry.getValue();
+
+            if (allChanged || state.equals(post.regions.get(entry.getKey())) == false)
+            {
+                state.addSections(sections);
+            }
+        }
+
+        for (Map.Entry<String, RegionState> entry : post.regions.entrySet())
+        {
+            RegionState state = entry.getValue();
+
+            if (allChanged || state.equals(pre.regions.get(entry.getKey())) == false)
+            {
+                state.addSections(sections);
+            }
+        }
+    }
+
+    /**
+     * Adds the sections touched by the given world box to the given map,
+     * as a bit mask of section Y coordinates per chunk
+     */
+    static void addSections(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Long2IntOpenHashMap sections)
+    {
+        final int minCY = Math.max(0, minY >> 4);
+        final int maxCY = Math.min(15, maxY >> 4);
+
+        // Entirely outside of the world height
+        if (minCY > maxCY)
+        {
+            return;
+        }
+
+        final int mask = (0xFFFF >>> (15 - maxCY)) & (0xFFFF << minCY);
+
+        for (int cz = minZ >> 4; cz <= (maxZ >> 4); ++cz)
+        {
+            for (int cx = minX >> 4; cx <= (maxX >> 4); ++cx)
+            {
+                long chunkPosLong = ChunkPos.asLong(cx, cz);
+                sections.put(chunkPosLong, sections.get(chunkPosLong) | mask);
+            }
+        }
+    }
+
+    protected static class RegionState
+    {
+        protected final int minX;
+        protected final int minY;
+        protected final int minZ;
+        protected final int maxX;
+        protected final int maxY;
+        protected final int maxZ;
+        protected final Rotation rotation;
+        protected final Mirror mirror;
+        protected final boolean ignoreEntities;
+
+        protected RegionState(SelectionBox box, SubRegionPlacement subRegion)
+        {
+            BlockPos pos1 = box.getCorner1();
+            BlockPos pos2 = box.getCorner2();
+
+            this.minX = Math.min(pos1.getX(), pos2.getX());
+            this.minY = Math.min(pos1.getY(), pos2.getY());
+            this.minZ = Math.min(pos1.getZ(), pos2.getZ());
+            this.maxX = Math.max(pos1.getX(), pos2.getX());
+            this.maxY = Math.max(pos1.getY(), pos2.getY());
+            this.maxZ = Math.max(pos1.getZ(), pos2.getZ());
+            this.rotation = subRegion.getRotation();
+            this.mirror = subRegion.getMirror();
+            this.ignoreEntities = subRegion.ignoreEntities();
+        }
+
+        protected void addSections(Long2IntOpenHashMap sections)
+        {
+            PlacementSectionSnapshot.addSections(this.minX, this.minY, this.minZ, this.maxX, this.maxY, this.maxZ, sections);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) { return true; }
+            if (o == null || this.getClass() != o.getClass()) { return false; }
+
+            RegionState other = (RegionState) o;
+
+            return this.minX == other.minX && this.minY == other.minY && this.minZ == other.minZ &&
+                   this.maxX == other.maxX && this.maxY == other.maxY && this.maxZ == other.maxZ &&
+                   this.rotation == other.rotation && this.mirror == other.mirror &&
+                   this.ignoreEntities == other.ignoreEntities;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = this.minX;
+            result = 31 * result + this.minY;
+            result = 31 * result + this.minZ;
+            result = 31 * result + this.maxX;
+            result = 31 * result + this.maxY;
+            result = 31 * result + this.maxZ;
+            result = 31 * result + this.rotation.hashCode();
+            result = 31 * result + this.mirror.hashCode();
+            result = 31 * result + (this.ignoreEntities ? 1 : 0);
+            return result;
+        }
+    }
+}
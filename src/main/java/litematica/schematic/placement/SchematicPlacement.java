@@ -50,6 +50,8 @@ public class SchematicPlacement extends BasePlacement
     @Nullable protected String selectedSubRegionName;
 
     @Nullable protected JsonObject materialListData;
+    // The important data in the placement save file, see wasModifiedSinceSaved()
+    @Nullable protected JsonObject savedState;
     @Nullable protected MaterialListBase materialList;
     @Nullable protected SchematicVerifier verifier;
 
@@ -285,6 +287,18 @@ public class SchematicPlacement extends BasePlacement
         return this.materialList;
     }
 
+    /**
+     * Invalidates the incrementally updated counts of the material list, if one has been created,
+     * after the placement was moved or otherwise changed
+     */
+    public void invalidateMaterialListCounts()
+    {
+        if (this.materialList instanceof MaterialListPlacement)
+        {
+            ((MaterialListPlacement) this.materialList).onPlacementChanged();
+        }
+    }
+
     @Nullable
     public SubRegionPlacement getSelectedSubRegionPlacement()
     {
@@ -631,27 +645,45 @@ public class SchematicPlacement extends BasePlacement
     {
         if (this.placementSaveFile != null)
         {
-            Path file = getSaveDirectory().resolve(this.placementSaveFile);
-            JsonElement el = JsonUtils.parseJsonFile(file);
-
-            if (el != null && el.isJsonObject())
+            // This gets called for every placement in the placement list on every frame,
+            // so the saved file is only read once and then the data is compared against that
+            if (this.savedState == null)
             {
-                JsonObject objOther = el.getAsJsonObject();
-                JsonObject objThis = this.toJson();
+                Path file = getSaveDirectory().resolve(this.placementSaveFile);
+                JsonElement el = JsonUtils.parseJsonFile(file);
 
-                // Ignore some stuff that doesn't matter
-                this.removeNonImportantPropsForModifiedSinceSavedCheck(objOther);
-                this.removeNonImportantPropsForModifiedSinceSavedCheck(objThis);
+                if (el == null || el.isJsonObject() == false)
+                {
+                    return true;
+                }
 
-                return objOther.equals(objThis) == false;
+                this.setSavedState(el.getAsJsonObject());
             }
 
-            return true;
+            JsonObject objThis = this.toJson();
+
+            return objThis == null || this.getComparableState(objThis).equals(this.savedState) == false;
         }
 
         return false;
     }
 
+    protected void setSavedState(JsonObject obj)
+    {
+        this.savedState = this.getComparableState(obj);
+    }
+
+    /**
+     * Note: This removes the non-important properties from the given object
+     * @return the given object
+     */
+    protected JsonObject getComparableState(JsonObject obj)
+    {
+        // Ignore some stuff that doesn't matter
+        this.removeNonImportantPropsForModifiedSinceSavedCheck(obj);
+        return obj;
+    }
+
     public JsonObject getSettingsShareJson()
     {
         JsonObject obj = this.toJson();
@@ -822,6 +854,7 @@ public class SchematicPlacement extends BasePlacement
         this.lastSaveTime = JsonUtils.getLongOrDefault(obj, "last_save_time", this.lastSaveTime);
         this.locked = JsonUtils.getBooleanOrDefault(obj, "locked", this.locked);
         this.placementSaveFile = JsonUtils.getStringOrDefault(obj, "storage_file", this.placementSaveFile);
+        this.savedState = null;
         this.renderEnclosingBox = JsonUtils.getBooleanOrDefault(obj, "render_enclosing_box", this.renderEnclosingBox);
         this.selectedSubRegionName = JsonUtils.getStringOrDefault(obj, "selected_region", this.selectedSubRegionName);
         this.subRegionCount = JsonUtils.getIntegerOrDefault(obj, "region_count", this.subRegionCount);
@@ -937,6 +970,7 @@ public class SchematicPlacement extends BasePlacement
         if (JsonUtils.writeJsonToFile(obj, file))
         {
             this.placementSaveFile = FileUtils.getRelativePath(getSaveDirectory(), file);
+            this.setSavedState(obj);
 
             MessageDispatcher.generic("litematica.gui.label.schematic_placement.saved_to_file",
                                       file.getFileName().toString());
@@ -1001,6 +1035,7 @@ public class SchematicPlacement extends BasePlacement
             if (placement != null)
             {
                 placement.placementSaveFile = FileUtils.getRelativePath(getSaveDirectory(), file);
+                placement.setSavedState(el.getAsJsonObject());
             }
 
             return placement;
@@ -3,10 +3,13 @@ package litematica.schematic.placement;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
@@ -14,10 +17,15 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 
 import net.minecraft.client.multiplayer.WorldClient;
 import net.minecraft.entity.Entity;
@@ -27,7 +35,9 @@ import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.RayTraceResult;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
 
 import malilib.config.value.LayerMode;
 import malilib.listener.EventListener;
@@ -39,40 +49,59 @@ import malilib.util.game.wrap.EntityWrap;
 import malilib.util.game.wrap.GameUtils;
 import malilib.util.position.ChunkSectionPos;
 import malilib.util.position.IntBoundingBox;
+import litematica.Litematica;
 import litematica.config.Configs;
 import litematica.config.Hotkeys;
+import litematica.data.AsyncJsonFileWriter;
 import litematica.data.DataManager;
 import litematica.data.SchematicHolder;
 import litematica.render.LitematicaRenderer;
 import litematica.render.OverlayRenderer;
 import litematica.render.infohud.StatusInfoRenderer;
 import litematica.schematic.ISchematic;
+import litematica.schematic.ISchematicRegion;
+import litematica.schematic.LitematicaSchematic;
 import litematica.schematic.util.SchematicPlacingUtils;
 import litematica.schematic.verifier.SchematicVerifierManager;
+import litematica.selection.SelectionBox;
+import litematica.util.BoxTree;
+import litematica.util.EasyPlaceUtils;
 import litematica.util.Nags;
 import litematica.util.PositionUtils;
 import litematica.util.RayTraceUtils;
 import litematica.util.RayTraceUtils.RayTraceWrapper;
 import litematica.util.RayTraceUtils.RayTraceWrapper.HitType;
 import litematica.util.value.ReplaceBehavior;
+import litematica.world.ChunkSchematic;
 import litematica.world.WorldSchematic;
 
 public class SchematicPlacementManager
 {
+    // The fraction of the maximum heap size in use, from which on unused schematic sub-regions are evicted
+    private static final double REGION_EVICTION_MEMORY_THRESHOLD = 0.8;
+
     protected final List<SchematicPlacement> schematicPlacements = new ArrayList<>();
     protected final Set<SchematicPlacement> allVisibleSchematicPlacements = new HashSet<>();
 
     protected final Long2ObjectOpenHashMap<List<SchematicPlacement>> placementsTouchingChunk = new Long2ObjectOpenHashMap<>();
     protected final ArrayListMultimap<ChunkSectionPos, PlacementPart> touchedVolumesInSubChunk = ArrayListMultimap.create();
+    protected final BoxTree<PlacementPart> placementBoxIndex = new BoxTree<>();
+    protected final Map<SchematicPlacement, IntArrayList> placementBoxIndexLeaves = new IdentityHashMap<>();
 
     protected final LongSet chunksToRebuild = new LongOpenHashSet();
     protected final LongSet chunksToUnload = new LongOpenHashSet();
     protected final LongSet chunksPreChange = new LongOpenHashSet();
+    protected final Long2IntOpenHashMap sectionsToRebuild = new Long2IntOpenHashMap();
+    @Nullable protected PlacementSectionSnapshot snapshotPreChange;
 
     protected final List<EventListener> rebuildListeners = new ArrayList<>();
     protected final GridPlacementManager gridManager;
     protected final Supplier<WorldSchematic> worldSupplier;
 
+    // The names of the files the placements are saved to, see savePlacementsToDirectory()
+    protected final Map<SchematicPlacement, String> placementStorageNames = new IdentityHashMap<>();
+    protected Set<String> writtenPlacementStorageNames = new HashSet<>();
+
     @Nullable protected SchematicPlacement selectedPlacement;
     protected int tickCounter;
 
@@ -90,21 +119,28 @@ public class SchematicPlacementManager
         this.schematicPlacements.clear();
         this.placementsTouchingChunk.clear();
         this.touchedVolumesInSubChunk.clear();
+        this.placementBoxIndex.clear();
+        this.placementBoxIndexLeaves.clear();
         this.chunksPreChange.clear();
         this.chunksToRebuild.clear();
         this.chunksToUnload.clear();
+        this.sectionsToRebuild.clear();
+        this.snapshotPreChange = null;
+        // The written file names are kept, so that the files of the removed placements get deleted on the next save
+        this.placementStorageNames.clear();
 
         SchematicHolder.getInstance().clearLoadedSchematics();
     }
 
     public boolean hasPendingRebuilds()
     {
-        return this.chunksToRebuild.isEmpty() == false;
+        return this.chunksToRebuild.isEmpty() == false || this.sectionsToRebuild.isEmpty() == false;
     }
 
     public boolean hasPendingRebuildForChunk(int chunkX, int chunkZ)
     {
-        return this.chunksToRebuild.contains(ChunkPos.asLong(chunkX, chunkZ));
+        long chunkPosLong = ChunkPos.asLong(chunkX, chunkZ);
+        return this.chunksToRebuild.contains(chunkPosLong) || this.sectionsToRebuild.containsKey(chunkPosLong);
     }
 
     public void addRebuildListener(EventListener listener)
@@ -120,6 +156,7 @@ public class SchematicPlacementManager
         if ((++this.tickCounter % 40) == 0)
         {
             this.gridManager.createOrRemoveGridPlacementsForLoadedArea();
+            this.evictUnusedSchematicRegionsIfLowOnMemory();
         }
 
         if (this.chunksToUnload.isEmpty() == false)
@@ -138,17 +175,22 @@ public class SchematicPlacementManager
         }
 
         //System.out.printf("processQueuedChunks, size: %d\n", this.chunksToRebuild.size());
-        if (this.chunksToRebuild.isEmpty() == false)
+        if (this.chunksToRebuild.isEmpty() == false || this.sectionsToRebuild.isEmpty() == false)
         {
             WorldClient clientWorld = GameUtils.getClientWorld();
 
             if (clientWorld == null)
             {
                 this.chunksToRebuild.clear();
+                this.sectionsToRebuild.clear();
                 return true;
             }
 
             WorldSchematic schematicWorld = this.worldSupplier.get();
+
+            // The section rebuilds may turn into full chunk rebuilds, so handle them first
+            this.processQueuedSections(schematicWorld);
+
             LongIterator it = this.chunksToRebuild.iterator();
 
             while (it.hasNext())
@@ -199,8 +241,8 @@ public class SchematicPlacementManager
                             }
                         }
 
-                        schematicWorld.markBlockRangeForRenderUpdate( chunkX << 4      ,   0,  chunkZ << 4,
-                                                                     (chunkX << 4) + 15, 256, (chunkZ << 4) + 15);
+                        this.onSchematicBlocksChanged(schematicWorld,  chunkX << 4      ,   0,  chunkZ << 4,
+                                                                      (chunkX << 4) + 15, 256, (chunkZ << 4) + 15);
                     }
 
                     it.remove();
@@ -209,12 +251,98 @@ public class SchematicPlacementManager
 
             LitematicaRenderer.getInstance().getWorldRenderer().markNeedsUpdate();
 
-            return this.chunksToRebuild.isEmpty();
+            return this.chunksToRebuild.isEmpty() && this.sectionsToRebuild.isEmpty();
         }
 
         return false;
     }
 
+    /**
+     * Re-builds the queued sections, by clearing just those sections
+     * and then re-placing all the placements within them
+     */
+    protected void processQueuedSections(WorldSchematic schematicWorld)
+    {
+        ObjectIterator<Long2IntMap.Entry> it = this.sectionsToRebuild.long2IntEntrySet().iterator();
+
+        while (it.hasNext())
+        {
+            if ((System.nanoTime() - DataManager.getClientTickStartTime()) >= 50000000L)
+            {
+                break;
+            }
+
+            Long2IntMap.Entry entry = it.next();
+            long chunkPosLong = entry.getLongKey();
+            int sectionMask = entry.getIntValue();
+            it.remove();
+
+            // A full re-build is already queued, or there is nothing left to place in the chunk
+            if (this.chunksToRebuild.contains(chunkPosLong) ||
+                this.placementsTouchingChunk.containsKey(chunkPosLong) == false)
+            {
+                continue;
+            }
+
+            int chunkX = malilib.util.position.PositionUtils.getChunkPosX(chunkPosLong);
+            int chunkZ = malilib.util.position.PositionUtils.getChunkPosZ(chunkPosLong);
+
+            // The chunk has not been loaded yet, so it needs to be fully built
+            if (schematicWorld.getChunkProvider().isChunkGeneratedAt(chunkX, chunkZ) == false)
+            {
+                this.chunksToRebuild.add(chunkPosLong);
+                continue;
+            }
+
+            this.rebuildSections(schematicWorld, chunkX, chunkZ, sectionMask);
+        }
+    }
+
+    protected void rebuildSections(WorldSchematic schematicWorld, int chunkX, int chunkZ, int sectionMask)
+    {
+        Chunk chunk = schematicWorld.getChunk(chunkX, chunkZ);
+        List<SchematicPlacement> placements = this.placementsTouchingChunk.get(ChunkPos.asLong(chunkX, chunkZ));
+        ChunkPos chunkPos = new ChunkPos(chunkX, chunkZ);
+        int cy = 0;
+
+        while (cy < 16)
+        {
+            if ((sectionMask & (1 << cy)) == 0)
+            {
+                ++cy;
+                continue;
+            }
+
+            // Clear and re-place each consecutive run of sections at once
+            final int startCY = cy;
+
+            while (cy < 16 && (sectionMask & (1 << cy)) != 0)
+            {
+                if (chunk instanceof ChunkSchematic)
+                {
+                    ((ChunkSchematic) chunk).clearSection(cy);
+                }
+
+                ++cy;
+            }
+
+            final int minY = startCY << 4;
+            final int maxY = (cy << 4) - 1;
+
+            for (SchematicPlacement placement : placements)
+            {
+                if (placement.isEnabled() && placement.isSchematicLoaded())
+                {
+                    SchematicPlacingUtils.placeToWorldWithinChunk(placement, chunkPos, schematicWorld,
+                                                                  ReplaceBehavior.ALL, false, minY, maxY);
+                }
+            }
+
+            this.onSchematicBlocksChanged(schematicWorld, (chunkX << 4) - 1 , minY - 1, (chunkZ << 4) - 1,
+                                                          (chunkX << 4) + 16, maxY + 1, (chunkZ << 4) + 16);
+        }
+    }
+
     public void onClientChunkUnload(int chunkX, int chunkZ)
     {
         if (Configs.Generic.LOAD_ENTIRE_SCHEMATICS.getBooleanValue() == false)
@@ -241,12 +369,22 @@ public class SchematicPlacementManager
         if (worldSchematic.getChunkProvider().isChunkGeneratedAt(chunkX, chunkZ))
         {
             //System.out.printf("unloading chunk at %d, %d\n", chunkX, chunkZ);
-            worldSchematic.markBlockRangeForRenderUpdate((chunkX << 4) - 1 ,   0, (chunkZ << 4) - 1,
-                                                         (chunkX << 4) + 16, 256, (chunkZ << 4) + 16);
+            this.onSchematicBlocksChanged(worldSchematic, (chunkX << 4) - 1 ,   0, (chunkZ << 4) - 1,
+                                                          (chunkX << 4) + 16, 256, (chunkZ << 4) + 16);
             worldSchematic.getChunkProvider().unloadChunk(chunkX, chunkZ);
         }
     }
 
+    /**
+     * Marks the given range of the schematic world for a render update,
+     * and for re-evaluation in the easy place plan
+     */
+    protected void onSchematicBlocksChanged(WorldSchematic schematicWorld, int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        schematicWorld.markBlockRangeForRenderUpdate(minX, minY, minZ, maxX, maxY, maxZ);
+        EasyPlaceUtils.onSchematicBlocksChanged(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
     public Set<SchematicPlacement> getVisibleSchematicPlacements()
     {
         return this.allVisibleSchematicPlacements;
@@ -257,6 +395,50 @@ public class SchematicPlacementManager
         return this.schematicPlacements;
     }
 
+    /**
+     * Drops the data of the lazily loaded schematic sub-regions that are not enabled
+     * in any enabled placement, when the heap is getting full.
+     * The evicted regions get read again from the schematic file when they are next needed.
+     */
+    protected void evictUnusedSchematicRegionsIfLowOnMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+
+        if (Configs.Generic.LAZY_REGION_LOADING.getBooleanValue() == false ||
+            usedMemory < (long) (runtime.maxMemory() * REGION_EVICTION_MEMORY_THRESHOLD))
+        {
+            return;
+        }
+
+        IdentityHashMap<ISchematic, Set<String>> usedRegions = new IdentityHashMap<>();
+
+        for (SchematicPlacement placement : this.schematicPlacements)
+        {
+            if (placement.isEnabled() && placement.getSchematic() != null)
+            {
+                Set<String> names = usedRegions.computeIfAbsent(placement.getSchematic(), s -> new HashSet<>());
+                placement.getEnabledSubRegions().forEach(r -> names.add(r.getName()));
+            }
+        }
+
+        int count = 0;
+
+        for (ISchematic schematic : SchematicHolder.getInstance().getAllSchematics())
+        {
+            if (schematic instanceof LitematicaSchematic)
+            {
+                Set<String> names = usedRegions.getOrDefault(schematic, Collections.emptySet());
+                count += ((LitematicaSchematic) schematic).evictRegions(name -> names.contains(name) == false);
+            }
+        }
+
+        if (count > 0)
+        {
+            Litematica.printDebug("Evicted %d unused schematic sub-regions from memory", count);
+        }
+    }
+
     public List<IntBoundingBox> getTouchedBoxesInSubChunk(ChunkSectionPos subChunk)
     {
         List<IntBoundingBox> list = new ArrayList<>();
@@ -269,6 +451,74 @@ public class SchematicPlacementManager
         return list;
     }
 
+    /**
+     * @return true if the given position is within the given distance of any enabled sub-region box
+     *         of any visible and enabled placement
+     */
+    public boolean isPositionWithinRangeOfPlacementBoxes(BlockPos pos, int range)
+    {
+        final int x = pos.getX();
+        final int y = pos.getY();
+        final int z = pos.getZ();
+
+        // The visitor stops the query at the first sub-region box found
+        return this.placementBoxIndex.query(x - range, y - range, z - range,
+                                            x + range, y + range, z + range, PlacementPart::isOrigin) == false;
+    }
+
+    /**
+     * Visits the enabled sub-region boxes and the origin positions of all the visible
+     * and enabled placements, which the line segment between the given points passes through
+     */
+    public void visitPlacementBoxesAlongRay(Vec3d start, Vec3d end, BoxTree.Visitor<PlacementPart> visitor)
+    {
+        this.placementBoxIndex.queryRay(start, end, visitor);
+    }
+
+    /**
+     * Updates the sub-region boxes of the given placement in the spatial index
+     */
+    protected void updatePlacementBoxIndex(SchematicPlacement placement)
+    {
+        this.removePlacementFromBoxIndex(placement);
+
+        if (placement.matchesRequirement(EnabledCondition.ENABLED) &&
+            this.allVisibleSchematicPlacements.contains(placement))
+        {
+            IntArrayList leaves = new IntArrayList();
+
+            for (Map.Entry<String, SelectionBox> entry : placement.getSubRegionBoxes(EnabledCondition.ENABLED).entrySet())
+            {
+                SelectionBox box = entry.getValue();
+                BlockPos pos1 = box.getCorner1();
+                BlockPos pos2 = box.getCorner2();
+                IntBoundingBox bb = IntBoundingBox.createProper(pos1.getX(), pos1.getY(), pos1.getZ(),
+                                                                pos2.getX(), pos2.getY(), pos2.getZ());
+                leaves.add(this.placementBoxIndex.insert(bb, new PlacementPart(placement, entry.getKey(), bb)));
+            }
+
+            BlockPos origin = placement.getPosition();
+            IntBoundingBox originBox = new IntBoundingBox(origin.getX(), origin.getY(), origin.getZ(),
+                                                          origin.getX(), origin.getY(), origin.getZ());
+            leaves.add(this.placementBoxIndex.insert(originBox, new PlacementPart(placement, null, originBox)));
+
+            this.placementBoxIndexLeaves.put(placement, leaves);
+        }
+    }
+
+    protected void removePlacementFromBoxIndex(SchematicPlacement placement)
+    {
+        IntArrayList leaves = this.placementBoxIndexLeaves.remove(placement);
+
+        if (leaves != null)
+        {
+            for (int i = 0; i < leaves.size(); ++i)
+            {
+                this.placementBoxIndex.remove(leaves.getInt(i));
+            }
+        }
+    }
+
     public List<PlacementPart> getAllPlacementsTouchingSubChunk(ChunkSectionPos pos)
     {
         return this.touchedVolumesInSubChunk.get(pos);
@@ -335,11 +585,13 @@ public class SchematicPlacementManager
     void addVisiblePlacement(SchematicPlacement placement)
     {
         this.allVisibleSchematicPlacements.add(placement);
+        this.updatePlacementBoxIndex(placement);
     }
 
     void removeVisiblePlacement(SchematicPlacement placement)
     {
         this.allVisibleSchematicPlacements.remove(placement);
+        this.removePlacementFromBoxIndex(placement);
     }
 
     public void addSchematicPlacement(SchematicPlacement placement, boolean printMessages)
@@ -426,6 +678,8 @@ public class SchematicPlacementManager
             this.selectedPlacement = null;
         }
 
+        this.placementStorageNames.remove(placement);
+
         if (placement.isValid())
         {
             SchematicVerifierManager.INSTANCE.onPlacementRemoved(placement);
@@ -608,12 +862,42 @@ public class SchematicPlacementManager
     {
         this.chunksPreChange.clear();
         this.chunksPreChange.addAll(placement.getTouchedChunks());
+        this.snapshotPreChange = new PlacementSectionSnapshot(placement);
     }
 
     protected void onPostPlacementChange(SchematicPlacement placement)
+    {
+        this.onPostPlacementChange(placement, null);
+    }
+
+    /**
+     * @param changedSchematicAreas if not null, then the placement's schematic was changed to another version
+     *                              of the same schematic, and only these areas of it have changed
+     */
+    protected void onPostPlacementChange(SchematicPlacement placement,
+                                         @Nullable Map<String, List<IntBoundingBox>> changedSchematicAreas)
     {
         LongSet chunksPost = placement.getTouchedChunks();
-        LongSet toRebuild = new LongOpenHashSet(chunksPost);
+        LongSet toRebuild = new LongOpenHashSet();
+        Long2IntOpenHashMap changedSections = new Long2IntOpenHashMap();
+        PlacementSectionSnapshot snapshotPre = this.snapshotPreChange;
+        // Without a snapshot from before the change, the changed parts are not known
+        boolean rebuildSections = snapshotPre != null && snapshotPre.isFor(placement);
+
+        if (rebuildSections)
+        {
+            PlacementSectionSnapshot.addChangedSections(snapshotPre, new PlacementSectionSnapshot(placement),
+                                                        changedSections, changedSchematicAreas != null);
+
+            if (changedSchematicAreas != null)
+            {
+                this.addChangedSchematicSections(placement, changedSchematicAreas, changedSections);
+            }
+        }
+
+        this.snapshotPreChange = null;
+        this.updatePlacementBoxIndex(placement);
+        placement.invalidateMaterialListCounts();
 
         //System.out.printf("chunkPre: %s - chunkPost: %s\n", this.chunksPreChange, chunksPost);
         this.chunksPreChange.removeAll(chunksPost);
@@ -629,6 +913,10 @@ public class SchematicPlacementManager
                 //System.out.printf("unloading: %s\n", pos);
                 this.chunksToUnload.add(chunkPosLong);
             }
+            else if (rebuildSections)
+            {
+                this.markSectionsForRebuild(chunkPosLong, changedSections.get(chunkPosLong));
+            }
             else
             {
                 //System.out.printf("rebuilding: %s\n", pos);
@@ -644,15 +932,82 @@ public class SchematicPlacementManager
             }
 
             this.updateTouchedBoxesInChunk(chunkPosLong);
+
+            if (rebuildSections)
+            {
+                this.markSectionsForRebuild(chunkPosLong, changedSections.get(chunkPosLong));
+            }
+            else
+            {
+                toRebuild.add(chunkPosLong);
+            }
         }
 
         this.markChunksForRebuild(toRebuild);
     }
 
+    /**
+     * Adds the world sections touched by the given areas of the placement's schematic to the given map,
+     * as a bit mask of section Y coordinates per chunk
+     * @param changedSchematicAreas the areas per sub-region, in the block coordinates of each sub-region's block container
+     */
+    protected void addChangedSchematicSections(SchematicPlacement placement,
+                                               Map<String, List<IntBoundingBox>> changedSchematicAreas,
+                                               Long2IntOpenHashMap sections)
+    {
+        ISchematic schematic = placement.getSchematic();
+
+        if (placement.isEnabled() == false || schematic == null)
+        {
+            return;
+        }
+
+        BlockPos origin = placement.getPosition();
+
+        for (SubRegionPlacement subRegion : placement.getEnabledSubRegions())
+        {
+            List<IntBoundingBox> areas = changedSchematicAreas.get(subRegion.getName());
+            ISchematicRegion region = schematic.getSchematicRegion(subRegion.getName());
+
+            if (areas == null || region == null)
+            {
+                continue;
+            }
+
+            // The same transforms as in SchematicPlacingUtils.placeBlocksToWorld()
+            BlockPos regionPos = subRegion.getPosition();
+            BlockPos posEndRel = new BlockPos(PositionUtils.getRelativeEndPositionFromAreaSize(region.getSize())).add(regionPos);
+            BlockPos posMinRel = malilib.util.position.PositionUtils.getMinCorner(regionPos, posEndRel);
+            BlockPos containerOffset = posMinRel.subtract(regionPos);
+            BlockPos regionOffset = PositionUtils.getTransformedBlockPos(regionPos, placement.getMirror(), placement.getRotation()).add(origin);
+
+            for (IntBoundingBox area : areas)
+            {
+                BlockPos pos1 = containerOffset.add(area.minX, area.minY, area.minZ);
+                BlockPos pos2 = containerOffset.add(area.maxX, area.maxY, area.maxZ);
+                pos1 = PositionUtils.getTransformedPlacementPosition(pos1, placement, subRegion).add(regionOffset);
+                pos2 = PositionUtils.getTransformedPlacementPosition(pos2, placement, subRegion).add(regionOffset);
+
+                PlacementSectionSnapshot.addSections(Math.min(pos1.getX(), pos2.getX()),
+                                                     Math.min(pos1.getY(), pos2.getY()),
+                                                     Math.min(pos1.getZ(), pos2.getZ()),
+                                                     Math.max(pos1.getX(), pos2.getX()),
+                                                     Math.max(pos1.getY(), pos2.getY()),
+                                                     Math.max(pos1.getZ(), pos2.getZ()), sections);
+            }
+        }
+    }
+
     protected void onPlacementModified(SchematicPlacement placement)
+    {
+        this.onPlacementModified(placement, null);
+    }
+
+    protected void onPlacementModified(SchematicPlacement placement,
+                                       @Nullable Map<String, List<IntBoundingBox>> changedSchematicAreas)
     {
         placement.resetEnclosingBox();
-        this.onPostPlacementChange(placement);
+        this.onPostPlacementChange(placement, changedSchematicAreas);
         this.gridManager.updateGridPlacementsFor(placement);
         OverlayRenderer.getInstance().updatePlacementCache();
     }
@@ -706,6 +1061,22 @@ public class SchematicPlacementManager
         this.onPlacementModified(placement);
     }
 
+    /**
+     * Changes the schematic of the placement to another version of the same schematic,
+     * which has the same sub-regions with the same positions and sizes.
+     * Only the world sections touched by the given changed areas get re-built,
+     * instead of all the chunks touched by the placement.
+     * @param changedAreas the areas that differ between the two versions, per sub-region,
+     *                     in the block coordinates of each sub-region's block container
+     */
+    public void changeSchematicVersionInPlacement(SchematicPlacement placement, ISchematic newSchematic,
+                                                  Map<String, List<IntBoundingBox>> changedAreas)
+    {
+        this.onPrePlacementChange(placement);
+        placement.setSchematic(newSchematic);
+        this.onPlacementModified(placement, changedAreas);
+    }
+
     public void setOrigin(SchematicPlacement placement, BlockPos origin)
     {
         if (placement.isLocked())
@@ -989,6 +1360,17 @@ public class SchematicPlacementManager
         }
     }
 
+    /**
+     * Marks the given sections (as a bit mask of the section y-coordinates) of the given chunk for re-building
+     */
+    protected void markSectionsForRebuild(long chunkPosLong, int sectionMask)
+    {
+        if (sectionMask != 0)
+        {
+            this.sectionsToRebuild.put(chunkPosLong, this.sectionsToRebuild.get(chunkPosLong) | sectionMask);
+        }
+    }
+
     public void markChunkForRebuild(long chunkPosLong)
     {
         this.chunksToRebuild.add(chunkPosLong);
@@ -1174,37 +1556,135 @@ public class SchematicPlacementManager
         this.setSelectedSchematicPlacement(placement);
     }
 
-    public JsonObject toJson()
+    protected void loadPlacementFromJson(JsonObject obj)
+    {
+        SchematicPlacement placement = SchematicPlacement.createFromJson(obj);
+
+        if (placement != null)
+        {
+            this.addSchematicPlacement(placement, false, true);
+        }
+    }
+
+    /**
+     * Queues each placement to be written into its own file in the given directory,
+     * if the placement has changed since it was last written. Also queues the files
+     * of the placements that have been removed since the last save to be deleted.
+     * @return the object for the main data file, which has the placement file names in order
+     */
+    public JsonObject savePlacementsToDirectory(Path dir)
     {
+        AsyncJsonFileWriter writer = AsyncJsonFileWriter.getInstance();
+        Set<String> writtenNames = new HashSet<>();
         JsonObject obj = new JsonObject();
+        JsonArray arr = new JsonArray();
+        String selectedName = null;
 
-        JsonArray arr = JsonUtils.toArray(this.schematicPlacements, SchematicPlacement::toJsonIfShouldSave);
-        int selectedIndex = this.selectedPlacement != null ? this.schematicPlacements.indexOf(this.selectedPlacement) : -1;
+        for (SchematicPlacement placement : this.schematicPlacements)
+        {
+            JsonObject placementObj = placement.toJsonIfShouldSave();
+
+            if (placementObj == null)
+            {
+                continue;
+            }
+
+            String name = this.placementStorageNames.computeIfAbsent(placement, p -> this.getUnusedPlacementStorageName());
+            writer.writeIfChanged(dir.resolve(name + ".json"), placementObj);
+            arr.add(new JsonPrimitive(name));
+            writtenNames.add(name);
+
+            if (placement == this.selectedPlacement)
+            {
+                selectedName = name;
+            }
+        }
+
+        for (String name : this.writtenPlacementStorageNames)
+        {
+            if (writtenNames.contains(name) == false)
+            {
+                writer.deleteFile(dir.resolve(name + ".json"));
+            }
+        }
+
+        this.writtenPlacementStorageNames = writtenNames;
 
         if (arr.size() > 0)
         {
-            obj.add("placements", arr);
-            JsonUtils.addIfNotEqual(obj, "selected", selectedIndex, -1);
+            obj.add("placement_files", arr);
+            JsonUtils.addStringIfNotNull(obj, "selected_file", selectedName);
         }
 
         return obj;
     }
 
-    protected void loadPlacementFromJson(JsonObject obj)
+    protected String getUnusedPlacementStorageName()
     {
-        SchematicPlacement placement = SchematicPlacement.createFromJson(obj);
-
-        if (placement != null)
+        while (true)
         {
-            this.addSchematicPlacement(placement, false, true);
+            String name = "placement_" + UUID.randomUUID().toString().substring(0, 8);
+
+            if (this.placementStorageNames.containsValue(name) == false &&
+                this.writtenPlacementStorageNames.contains(name) == false)
+            {
+                return name;
+            }
         }
     }
 
-    public void loadFromJson(JsonObject obj)
+    /**
+     * Loads the placements from the given object from the main data file.
+     * The placements are either in separate files in the given directory,
+     * or in older data files directly in the given object.
+     */
+    public void loadFromJson(JsonObject obj, Path dir)
     {
         this.clear();
+        this.writtenPlacementStorageNames = new HashSet<>();
 
-        if (JsonUtils.hasArray(obj, "placements"))
+        if (JsonUtils.hasArray(obj, "placement_files"))
+        {
+            AsyncJsonFileWriter writer = AsyncJsonFileWriter.getInstance();
+            String selectedName = JsonUtils.getStringOrDefault(obj, "selected_file", null);
+
+            for (JsonElement el : obj.get("placement_files").getAsJsonArray())
+            {
+                String name = el.getAsString();
+                Path file = dir.resolve(name + ".json");
+                JsonElement placementEl = JsonUtils.parseJsonFile(file);
+                SchematicPlacement placement = null;
+
+                if (placementEl != null && placementEl.isJsonObject())
+                {
+                    placement = SchematicPlacement.createFromJson(placementEl.getAsJsonObject());
+                }
+
+                if (placement == null)
+                {
+                    Litematica.logger.warn("Failed to load a schematic placement from file '{}'", file.toAbsolutePath().toString());
+                    continue;
+                }
+
+                this.addSchematicPlacement(placement, false, true);
+                this.placementStorageNames.put(placement, name);
+                this.writtenPlacementStorageNames.add(name);
+
+                // Don't write the placement again on the next save, if it doesn't get changed
+                JsonObject placementObj = placement.toJsonIfShouldSave();
+
+                if (placementObj != null)
+                {
+                    writer.markAsWritten(file, placementObj);
+                }
+
+                if (name.equals(selectedName))
+                {
+                    this.selectedPlacement = placement;
+                }
+            }
+        }
+        else if (JsonUtils.hasArray(obj, "placements"))
         {
             JsonUtils.getArrayElementsIfObjects(obj, "placements", this::loadPlacementFromJson);
             int index = JsonUtils.getIntegerOrDefault(obj, "selected", -1);
@@ -1226,10 +1706,14 @@ public class SchematicPlacementManager
     public static class PlacementPart
     {
         private final SchematicPlacement placement;
-        private final String subRegionName;
+        @Nullable private final String subRegionName;
         private final IntBoundingBox bb;
 
-        public PlacementPart(SchematicPlacement placement, String subRegionName, IntBoundingBox bb)
+        /**
+         * @param subRegionName the sub-region name, or null for the origin position of the placement
+         *                      (which only exist in the spatial index)
+         */
+        public PlacementPart(SchematicPlacement placement, @Nullable String subRegionName, IntBoundingBox bb)
         {
             this.placement = placement;
             this.subRegionName = subRegionName;
@@ -1246,6 +1730,11 @@ public class SchematicPlacementManager
             return this.subRegionName;
         }
 
+        public boolean isOrigin()
+        {
+            return this.subRegionName == null;
+        }
+
         public IntBoundingBox getBox()
         {
             return this.bb;
@@ -3,7 +3,12 @@ package litematica.schematic.projects;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import javax.annotation.Nullable;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonArray;
@@ -19,10 +24,14 @@ import malilib.overlay.message.MessageDispatcher;
 import malilib.util.FileUtils;
 import malilib.util.data.json.JsonUtils;
 import malilib.util.game.wrap.GameUtils;
+import malilib.util.position.IntBoundingBox;
 import litematica.data.DataManager;
 import litematica.scheduler.TaskScheduler;
+import litematica.schematic.EntityInfo;
 import litematica.schematic.ISchematic;
+import litematica.schematic.ISchematicRegion;
 import litematica.schematic.LitematicaSchematic;
+import litematica.schematic.container.LitematicaBlockStateContainerFull;
 import litematica.schematic.placement.SchematicPlacement;
 import litematica.schematic.util.SchematicCreationUtils;
 import litematica.schematic.util.SchematicPlacingUtils;
@@ -37,6 +46,7 @@ public class SchematicProject
 {
     private final List<SchematicVersion> versions = new ArrayList<>();
     private final Path directory;
+    private final SchematicVersionStore versionStore;
     private Path projectFile;
     private BlockPos origin = BlockPos.ORIGIN;
     private String projectName = "unnamed";
@@ -50,11 +60,17 @@ public class SchematicProject
     private boolean dirty;
     @Nullable
     private SchematicPlacement currentPlacement;
+    @Nullable
+    private SchematicVersionStore.VersionManifest checkedOutManifest;
+    /** Private copy-on-write copies of the block data of the checked out version, unaffected by any schematic edits */
+    @Nullable
+    private Map<String, LitematicaBlockStateContainerFull> checkedOutContainers;
 
     public SchematicProject(Path directory, Path projectFile)
     {
         this.directory = directory;
         this.projectFile = projectFile;
+        this.versionStore = new SchematicVersionStore(directory);
     }
 
     public Path getDirectory()
@@ -205,16 +221,20 @@ public class SchematicProject
         {
             if (this.currentVersionId != this.lastCheckedOutVersion)
             {
-                this.removeCurrentPlacement();
-
-                LitematicaSchematic schematic = LitematicaSchematic.createFromFile(this.directory, version.getFileName());
+                SchematicVersionStore.VersionManifest previousManifest = this.checkedOutManifest;
+                LitematicaSchematic schematic = this.loadVersionSchematic(version);
 
                 if (schematic != null)
                 {
                     BlockPos areaPosition = this.origin.add(version.getAreaOffset());
-                    this.currentPlacement = SchematicPlacement.create(schematic, areaPosition, version.getName(), true, false);
-                    this.currentPlacement.setShouldBeSaved(false);
-                    DataManager.getSchematicPlacementManager().addSchematicPlacement(this.currentPlacement, false);
+
+                    if (this.updateCurrentPlacementToVersion(schematic, previousManifest, areaPosition, version) == false)
+                    {
+                        this.removeCurrentPlacement();
+                        this.currentPlacement = SchematicPlacement.create(schematic, areaPosition, version.getName(), true, false);
+                        this.currentPlacement.setShouldBeSaved(false);
+                        DataManager.getSchematicPlacementManager().addSchematicPlacement(this.currentPlacement, false);
+                    }
 
                     long time = schematic.getMetadata().getTimeCreated();
 
@@ -228,6 +248,7 @@ public class SchematicProject
                 }
                 else
                 {
+                    this.removeCurrentPlacement();
                     MessageDispatcher.error().translate("litematica.error.schematic_projects.failed_to_load_schematic");
                 }
 
@@ -236,6 +257,207 @@ public class SchematicProject
         }
     }
 
+    /**
+     * Switches the schematic of the existing placement to the given newly checked out version,
+     * if both versions come from the version store and have the same region layout.
+     * Then only the world sections touched by the changed sections of the regions get re-built.
+     * @return true if the placement was updated, false if a new placement needs to be created instead
+     */
+    private boolean updateCurrentPlacementToVersion(LitematicaSchematic schematic,
+                                                    @Nullable SchematicVersionStore.VersionManifest previousManifest,
+                                                    BlockPos areaPosition, SchematicVersion version)
+    {
+        SchematicPlacement placement = this.currentPlacement;
+        SchematicVersionStore.VersionManifest manifest = this.checkedOutManifest;
+
+        if (placement == null || previousManifest == null || manifest == null ||
+            placement.isValid() == false || placement.isSchematicLoaded() == false ||
+            placement.getPosition().equals(areaPosition) == false)
+        {
+            return false;
+        }
+
+        ISchematic previousSchematic = placement.getSchematic();
+
+        // Edits to the previous schematic are not reflected in the section hashes of its manifest
+        if (previousSchematic.getMetadata().wasModifiedSinceSaved())
+        {
+            return false;
+        }
+
+        Map<String, List<IntBoundingBox>> changedAreas = getChangedAreas(previousSchematic, previousManifest, schematic, manifest);
+
+        if (changedAreas == null)
+        {
+            return false;
+        }
+
+        placement.setName(version.getName());
+        DataManager.getSchematicPlacementManager().changeSchematicVersionInPlacement(placement, schematic, changedAreas);
+
+        return true;
+    }
+
+    /**
+     * Returns the areas that differ between the two versions, per region, in the block coordinates
+     * of each region's block container. The block state changes come from the section hashes.
+     * Block entities and scheduled ticks are compared per position, and a change in the entities
+     * marks the entire region as changed, as they aren't tracked per section.
+     * @return the changed areas, or null if the versions have a different region layout
+     */
+    @Nullable
+    private static Map<String, List<IntBoundingBox>> getChangedAreas(ISchematic previousSchematic,
+                                                                     SchematicVersionStore.VersionManifest previousManifest,
+                                                                     ISchematic schematic,
+                                                                     SchematicVersionStore.VersionManifest manifest)
+    {
+        Map<String, ISchematicRegion> previousRegions = previousSchematic.getRegions();
+        Map<String, ISchematicRegion> regions = schematic.getRegions();
+        Map<String, List<IntBoundingBox>> changedAreas = new HashMap<>();
+
+        if (previousRegions.keySet().equals(regions.keySet()) == false)
+        {
+            return null;
+        }
+
+        for (Map.Entry<String, ISchematicRegion> entry : regions.entrySet())
+        {
+            String regionName = entry.getKey();
+            ISchematicRegion region = entry.getValue();
+            ISchematicRegion previousRegion = previousRegions.get(regionName);
+            String[] hashes = manifest.getSectionHashes(regionName);
+            String[] previousHashes = previousManifest.getSectionHashes(regionName);
+
+            if (region.getPosition().equals(previousRegion.getPosition()) == false ||
+                region.getSize().equals(previousRegion.getSize()) == false ||
+                hashes == null || previousHashes == null || hashes.length != previousHashes.length)
+            {
+                return null;
+            }
+
+            SchematicVersionStore.SectionGrid grid = new SchematicVersionStore.SectionGrid(region.getSize());
+            Vec3i size = grid.size;
+            List<IntBoundingBox> areas = new ArrayList<>();
+
+            if (areEntityListsEqual(previousRegion.getEntityList(), region.getEntityList()) == false)
+            {
+                areas.add(new IntBoundingBox(0, 0, 0, size.getX() - 1, size.getY() - 1, size.getZ() - 1));
+            }
+            else
+            {
+                for (int i = 0; i < grid.sectionCount; ++i)
+                {
+                    if (hashes[i].equals(previousHashes[i]) == false)
+                    {
+                        int minX = grid.getMinX(i);
+                        int minY = grid.getMinY(i);
+                        int minZ = grid.getMinZ(i);
+                        areas.add(new IntBoundingBox(minX, minY, minZ,
+                                                     Math.min(minX + 15, size.getX() - 1),
+                                                     Math.min(minY + 15, size.getY() - 1),
+                                                     Math.min(minZ + 15, size.getZ() - 1)));
+                    }
+                }
+
+                addChangedPositions(previousRegion.getBlockEntityMap(), region.getBlockEntityMap(), areas);
+                addChangedPositions(previousRegion.getBlockTickMap(), region.getBlockTickMap(), areas);
+            }
+
+            if (areas.isEmpty() == false)
+            {
+                changedAreas.put(regionName, areas);
+            }
+        }
+
+        return changedAreas;
+    }
+
+    private static <T> void addChangedPositions(@Nullable Map<BlockPos, T> previousMap, @Nullable Map<BlockPos, T> map,
+                                                List<IntBoundingBox> areas)
+    {
+        Set<BlockPos> positions = new HashSet<>();
+
+        if (previousMap != null)
+        {
+            positions.addAll(previousMap.keySet());
+        }
+
+        if (map != null)
+        {
+            positions.addAll(map.keySet());
+        }
+
+        for (BlockPos pos : positions)
+        {
+            T previousValue = previousMap != null ? previousMap.get(pos) : null;
+            T value = map != null ? map.get(pos) : null;
+
+            if (Objects.equals(previousValue, value) == false)
+            {
+                areas.add(new IntBoundingBox(pos.getX(), pos.getY(), pos.getZ(), pos.getX(), pos.getY(), pos.getZ()));
+            }
+        }
+    }
+
+    private static boolean areEntityListsEqual(@Nullable List<EntityInfo> list1, @Nullable List<EntityInfo> list2)
+    {
+        int size1 = list1 != null ? list1.size() : 0;
+        int size2 = list2 != null ? list2.size() : 0;
+
+        if (size1 != size2)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < size1; ++i)
+        {
+            EntityInfo info1 = list1.get(i);
+            EntityInfo info2 = list2.get(i);
+
+            if (info1.pos.equals(info2.pos) == false || info1.nbt.equals(info2.nbt) == false)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Nullable
+    private LitematicaSchematic loadVersionSchematic(SchematicVersion version)
+    {
+        Path manifestFile = SchematicVersionStore.getManifestFile(this.directory, version.getFileName());
+
+        // Versions saved before the version store was added are complete schematic files
+        if (Files.isRegularFile(manifestFile) == false)
+        {
+            this.checkedOutManifest = null;
+            this.releaseCheckedOutContainers();
+            return LitematicaSchematic.createFromFile(this.directory, version.getFileName());
+        }
+
+        SchematicVersionStore.VersionManifest manifest = this.versionStore.readManifest(manifestFile);
+
+        if (manifest == null)
+        {
+            return null;
+        }
+
+        // Only the sections that differ from the previously checked out version are read from the store.
+        // The schematic doesn't get a file, so that saving it can never overwrite the version manifest.
+        LitematicaSchematic schematic = this.versionStore.checkout(manifest, null, this.checkedOutManifest,
+                                                                   this.checkedOutContainers);
+
+        if (schematic != null)
+        {
+            this.checkedOutManifest = manifest;
+            this.releaseCheckedOutContainers();
+            this.checkedOutContainers = schematic.copyBlockContainers();
+        }
+
+        return schematic;
+    }
+
     public void pasteToWorld()
     {
         if (this.currentPlacement != null)
@@ -339,11 +561,14 @@ public class SchematicProject
         return false;
     }
 
-    protected void writeSchematicToFileAndAddVersion(ISchematic schematic, String fileName, String name, Vec3i areaOffset)
+    protected void writeSchematicToFileAndAddVersion(LitematicaSchematic schematic, String fileName, String name, Vec3i areaOffset)
     {
         SchematicCreationUtils.setSchematicMetadataOnCreation(schematic, name);
 
-        if (schematic.writeToFile(this.directory, fileName, false))
+        Path manifestFile = SchematicVersionStore.getManifestFile(this.directory, fileName);
+
+        // Only the sections that don't already exist in the project's version store get written
+        if (this.versionStore.writeVersion(schematic, manifestFile) != null)
         {
             int versionNumber = this.versions.size() + 1;
             SchematicVersion version = new SchematicVersion(this, name, fileName, areaOffset,
@@ -355,26 +580,34 @@ public class SchematicProject
 
             MessageDispatcher.success("litematica.message.schematic_projects.version_saved", version, name);
         }
+        else
+        {
+            this.saveInProgress = false;
+            MessageDispatcher.error("litematica.error.schematic_write_to_file_failed.exception",
+                                    manifestFile.toAbsolutePath().toString());
+        }
     }
 
     private String getNextFileName()
     {
         String nameBase = this.projectName + "_";
         int version = 1;
-        int failsafe = 10000;
-        // FIXME wtf is this shit
 
-        while (failsafe-- > 0)
+        for (SchematicVersion existing : this.versions)
+        {
+            version = Math.max(version, existing.getVersion() + 1);
+        }
+
+        // Normally the first name is free, this only skips over any leftover files from removed versions
+        for (int failsafe = 0; failsafe < 10000; ++failsafe, ++version)
         {
             String name = nameBase + String.format("%05d", version);
-            Path file = this.directory.resolve(name + LitematicaSchematic.FILE_NAME_EXTENSION);
 
-            if (Files.exists(file) == false)
+            if (Files.exists(SchematicVersionStore.getManifestFile(this.directory, name)) == false &&
+                Files.exists(this.directory.resolve(name + LitematicaSchematic.FILE_NAME_EXTENSION)) == false)
             {
                 return name;
             }
-
-            ++version;
         }
 
         return nameBase + "error";
@@ -390,6 +623,18 @@ public class SchematicProject
         this.lastCheckedOutVersion = -1;
         this.currentVersionId = -1;
         this.saveInProgress = false;
+        this.checkedOutManifest = null;
+        this.releaseCheckedOutContainers();
+    }
+
+    private void releaseCheckedOutContainers()
+    {
+        // Let the schematic that the containers were copied from write to its block data directly again
+        if (this.checkedOutContainers != null)
+        {
+            this.checkedOutContainers.values().forEach(LitematicaBlockStateContainerFull::release);
+            this.checkedOutContainers = null;
+        }
     }
 
     public boolean saveToFile()
@@ -0,0 +1,654 @@
+package litematica.schematic.projects;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagLongArray;
+import net.minecraft.nbt.NBTUtil;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3i;
+
+import malilib.mixin.access.NBTTagLongArrayMixin;
+import malilib.util.game.wrap.NbtWrap;
+import malilib.util.nbt.NbtUtils;
+import litematica.Litematica;
+import litematica.schematic.ISchematicRegion;
+import litematica.schematic.LitematicaSchematic;
+import litematica.schematic.SchematicType;
+import litematica.schematic.container.ILitematicaBlockStateContainer;
+import litematica.schematic.container.LitematicaBitArray;
+import litematica.schematic.container.LitematicaBlockStateContainerFull;
+import litematica.util.TempFileUtils;
+
+/**
+ * A content-addressed storage for the versions of schematic projects.
+ * The block data of each sub-region is split into 16x16x16 sections (relative to the region),
+ * and each section is stored once as a blob named by the hash of its contents.
+ * A version is then just a manifest that lists the section hashes of each region,
+ * along with the rest of the schematic data (metadata, block entities, entities and block ticks).
+ * This way unchanged sections are shared between all the versions of a project.
+ * <p>
+ * Sections that are entirely air are not stored at all, they have an empty hash in the manifest.
+ */
+public class SchematicVersionStore
+{
+    public static final String MANIFEST_FILE_NAME_EXTENSION = ".litematic_version";
+    public static final int SECTION_SIZE = 16;
+
+    private static final int SECTION_FORMAT_VERSION = 1;
+    /** The length of the SHA-1 digests used as the section hashes */
+    private static final int HASH_LENGTH_BYTES = 20;
+
+    protected final Path objectsDirectory;
+
+    public SchematicVersionStore(Path projectDirectory)
+    {
+        this.objectsDirectory = projectDirectory.resolve("objects");
+    }
+
+    public static Path getManifestFile(Path projectDirectory, String fileName)
+    {
+        return projectDirectory.resolve(fileName + MANIFEST_FILE_NAME_EXTENSION);
+    }
+
+    /**
+     * Writes the given schematic as a new version, by writing its manifest to the given file,
+     * and any section blobs that don't exist in the store yet.
+     * @return the manifest of the written version, or null on failure
+     */
+    @Nullable
+    public VersionManifest writeVersion(LitematicaSchematic schematic, Path manifestFile)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            Map<String, String[]> sectionHashes = new HashMap<>();
+            int writtenSections = 0;
+            int totalSections = 0;
+
+            for (Map.Entry<String, ISchematicRegion> entry : schematic.getRegions().entrySet())
+            {
+                ILitematicaBlockStateContainer container = entry.getValue().getBlockStateContainer();
+
+                if (container == null)
+                {
+                    Litematica.logger.warn("Failed to write the schematic version '{}', the data of the region '{}' is not available",
+                                           manifestFile.toAbsolutePath().toString(), entry.getKey());
+                    return null;
+                }
+
+                SectionGrid grid = new SectionGrid(container.getSize());
+                String[] hashes = new String[grid.sectionCount];
+
+                for (int i = 0; i < grid.sectionCount; ++i)
+                {
+                    NBTTagCompound tag = writeSectionToTag(container, grid, i);
+
+                    if (tag == null)
+                    {
+                        hashes[i] = "";
+                        continue;
+                    }
+
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    CompressedStreamTools.write(tag, new DataOutputStream(bytes));
+                    String hash = toHexString(digest.digest(bytes.toByteArray()));
+                    hashes[i] = hash;
+                    ++totalSections;
+
+                    if (this.writeBlobIfMissing(hash, tag))
+                    {
+                        ++writtenSections;
+                    }
+                }
+
+                sectionHashes.put(entry.getKey(), hashes);
+            }
+
+            VersionManifest manifest = new VersionManifest(schematic.toTagWithoutBlockData(), sectionHashes);
+            NBTTagCompound manifestTag = manifest.toTag();
+
+            writeAtomically(manifestFile, out -> CompressedStreamTools.writeCompressed(manifestTag, out));
+
+            Litematica.printDebug("Wrote the schematic version '%s': %d of %d non-empty sections were new",
+                                  manifestFile.getFileName().toString(), writtenSections, totalSections);
+
+            return manifest;
+        }
+        catch (IOException | NoSuchAlgorithmException e)
+        {
+            Litematica.logger.warn("Failed to write the schematic version '{}'", manifestFile.toAbsolutePath().toString(), e);
+        }
+
+        return null;
+    }
+
+    @Nullable
+    public VersionManifest readManifest(Path manifestFile)
+    {
+        NBTTagCompound tag = NbtUtils.readNbtFromFile(manifestFile);
+        return tag != null ? VersionManifest.fromTag(tag) : null;
+    }
+
+    /**
+     * Creates the schematic of the given version. If the previous version and its block containers are given,
+     * then the block data of all the regions that have the same name and size in both versions
+     * is copied from the previous containers, and only the sections that differ are read from the store.
+     * The given previous containers are not modified.
+     * @param file the file for the created schematic, which must not be the manifest file, or null for none
+     */
+    @Nullable
+    public LitematicaSchematic checkout(VersionManifest manifest, @Nullable Path file,
+                                        @Nullable VersionManifest previousManifest,
+                                        @Nullable Map<String, LitematicaBlockStateContainerFull> previousContainers)
+    {
+        Map<String, LitematicaBlockStateContainerFull> containers = new HashMap<>();
+        Map<String, SectionData> sectionCache = new HashMap<>();
+        String currentHash = "";
+        int readSections = 0;
+
+        if (previousManifest == null)
+        {
+            previousContainers = null;
+        }
+
+        try
+        {
+            for (Map.Entry<String, String[]> entry : manifest.sectionHashes.entrySet())
+            {
+                String regionName = entry.getKey();
+                Vec3i size = manifest.getRegionSize(regionName);
+
+                if (size == null)
+                {
+                    return null;
+                }
+
+                SectionGrid grid = new SectionGrid(size);
+                String[] hashes = entry.getValue();
+                String[] previousHashes = null;
+                LitematicaBlockStateContainerFull container = null;
+
+                if (hashes.length != grid.sectionCount)
+                {
+                    return null;
+                }
+
+                if (previousContainers != null && previousContainers.containsKey(regionName))
+                {
+                    container = previousContainers.get(regionName);
+                    previousHashes = previousManifest.sectionHashes.get(regionName);
+
+                    // Only the same region layout can be updated section by section
+                    if (previousHashes == null || container.getSize().equals(grid.size) == false)
+                    {
+                        container = null;
+                        previousHashes = null;
+                    }
+                    else
+                    {
+                        container = container.copy();
+                    }
+                }
+
+                if (container == null)
+                {
+                    container = new LitematicaBlockStateContainerFull(grid.size);
+                }
+
+                for (int i = 0; i < grid.sectionCount; ++i)
+                {
+                    String hash = hashes[i];
+                    currentHash = hash;
+
+                    // A new container is all air already
+                    if (previousHashes != null ? hash.equals(previousHashes[i]) : hash.isEmpty())
+                    {
+                        continue;
+                    }
+
+                    SectionData section = null;
+
+                    if (hash.isEmpty() == false)
+                    {
+                        section = sectionCache.get(hash);
+
+                        if (section == null)
+                        {
+                            section = this.readBlob(hash);
+
+                            if (section == null)
+                            {
+                                Litematica.logger.warn("Missing or invalid section blob '{}' in the schematic version store", hash);
+                                return null;
+                            }
+
+                            sectionCache.put(hash, section);
+                            ++readSections;
+                        }
+                    }
+
+                    applySection(container, grid, i, section);
+                }
+
+                containers.put(regionName, container);
+            }
+        }
+        // A corrupt or truncated blob can also fail to decode with various runtime exceptions
+        catch (IOException | RuntimeException e)
+        {
+            Litematica.logger.warn("Failed to read a schematic version from the store, at the section blob '{}'", currentHash, e);
+            return null;
+        }
+
+        LitematicaSchematic schematic = SchematicType.LITEMATICA.createSchematic(file);
+
+        // Reading the tag modifies the block entity tags, and the manifest may get checked out again later
+        if (schematic.fromTagAndDecodedContainers(manifest.schematicTag.copy(), containers))
+        {
+            Litematica.printDebug("Checked out a schematic version, read %d section blobs", readSections);
+            return schematic;
+        }
+
+        return null;
+    }
+
+    protected Path getBlobFile(String hash)
+    {
+        return this.objectsDirectory.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    /**
+     * @return true if the blob was written, false if it already existed
+     */
+    protected boolean writeBlobIfMissing(String hash, NBTTagCompound tag) throws IOException
+    {
+        Path file = this.getBlobFile(hash);
+
+        if (Files.exists(file))
+        {
+            return false;
+        }
+
+        Files.createDirectories(file.getParent());
+        writeAtomically(file, out -> CompressedStreamTools.writeCompressed(tag, out));
+
+        return true;
+    }
+
+    @Nullable
+    protected SectionData readBlob(String hash) throws IOException
+    {
+        Path file = this.getBlobFile(hash);
+
+        if (Files.isRegularFile(file) == false)
+        {
+            return null;
+        }
+
+        try (InputStream in = Files.newInputStream(file))
+        {
+            return SectionData.fromTag(CompressedStreamTools.readCompressed(in));
+        }
+    }
+
+    /**
+     * @return the section as a tag, or null if the section is entirely air
+     */
+    @Nullable
+    protected static NBTTagCompound writeSectionToTag(ILitematicaBlockStateContainer container, SectionGrid grid, int sectionIndex)
+    {
+        final int minX = grid.getMinX(sectionIndex);
+        final int minY = grid.getMinY(sectionIndex);
+        final int minZ = grid.getMinZ(sectionIndex);
+        final int sizeX = Math.min(SECTION_SIZE, grid.size.getX() - minX);
+        final int sizeY = Math.min(SECTION_SIZE, grid.size.getY() - minY);
+        final int sizeZ = Math.min(SECTION_SIZE, grid.size.getZ() - minZ);
+        final int volume = sizeX * sizeY * sizeZ;
+        Object2IntOpenHashMap<IBlockState> ids = new Object2IntOpenHashMap<>();
+        List<IBlockState> palette = new ArrayList<>();
+        int[] values = new int[volume];
+        int index = 0;
+
+        ids.defaultReturnValue(-1);
+
+        // The local palette is in the order of first occurrence, so that equal sections always produce equal data
+        for (int y = 0; y < sizeY; ++y)
+        {
+            for (int z = 0; z < sizeZ; ++z)
+            {
+                for (int x = 0; x < sizeX; ++x)
+                {
+                    IBlockState state = container.getBlockState(minX + x, minY + y, minZ + z);
+                    int id = ids.getInt(state);
+
+                    if (id == -1)
+                    {
+                        id = palette.size();
+                        ids.put(state, id);
+                        palette.add(state);
+                    }
+
+                    values[index++] = id;
+                }
+            }
+        }
+
+        if (palette.size() == 1 && palette.get(0) == Blocks.AIR.getDefaultState())
+        {
+            return null;
+        }
+
+        final int bits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(palette.size() - 1));
+        LitematicaBitArray array = new LitematicaBitArray(bits, volume);
+        NBTTagList paletteTag = new NBTTagList();
+        NBTTagCompound tag = new NBTTagCompound();
+
+        for (int i = 0; i < volume; ++i)
+        {
+            array.setAt(i, values[i]);
+        }
+
+        for (IBlockState state : palette)
+        {
+            NbtWrap.addTag(paletteTag, NBTUtil.writeBlockState(new NBTTagCompound(), state));
+        }
+
+        NbtWrap.putInt(tag, "Version", SECTION_FORMAT_VERSION);
+        NbtUtils.putVec3i(tag, new Vec3i(sizeX, sizeY, sizeZ));
+        NbtWrap.putTag(tag, "Palette", paletteTag);
+        NbtWrap.putTag(tag, "BlockStates", new NBTTagLongArray(array.getBackingLongArray()));
+
+        return tag;
+    }
+
+    /**
+     * Writes the given section into the container, or clears the section to air if the section is null
+     */
+    protected static void applySection(LitematicaBlockStateContainerFull container, SectionGrid grid,
+                                       int sectionIndex, @Nullable SectionData section)
+    {
+        final int minX = grid.getMinX(sectionIndex);
+        final int minY = grid.getMinY(sectionIndex);
+        final int minZ = grid.getMinZ(sectionIndex);
+        final int sizeX = Math.min(SECTION_SIZE, grid.size.getX() - minX);
+        final int sizeY = Math.min(SECTION_SIZE, grid.size.getY() - minY);
+        final int sizeZ = Math.min(SECTION_SIZE, grid.size.getZ() - minZ);
+        final IBlockState air = Blocks.AIR.getDefaultState();
+        int index = 0;
+
+        if (section != null && (section.sizeX != sizeX || section.sizeY != sizeY || section.sizeZ != sizeZ))
+        {
+            throw new IllegalArgumentException("Section size mismatch");
+        }
+
+        for (int y = 0; y < sizeY; ++y)
+        {
+            for (int z = 0; z < sizeZ; ++z)
+            {
+                for (int x = 0; x < sizeX; ++x)
+                {
+                    IBlockState state = section != null ? section.getBlockState(index++) : air;
+                    container.setBlockState(minX + x, minY + y, minZ + z, state);
+                }
+            }
+        }
+    }
+
+    protected static void writeAtomically(Path file, StreamWriter writer) throws IOException
+    {
+        Path tmpFile = TempFileUtils.createTempFileFor(file);
+
+        try
+        {
+            try (OutputStream out = Files.newOutputStream(tmpFile))
+            {
+                writer.write(out);
+            }
+
+            TempFileUtils.moveOver(tmpFile, file);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+    }
+
+    protected static boolean isAllZeroes(byte[] bytes)
+    {
+        for (byte b : bytes)
+        {
+            if (b != 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected static String toHexString(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return sb.toString();
+    }
+
+    protected interface StreamWriter
+    {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * The layout of the 16x16x16 sections within a region of the given size.
+     * The sections are indexed in the same y/z/x order as the blocks within a container.
+     */
+    public static class SectionGrid
+    {
+        public final Vec3i size;
+        public final int countX;
+        public final int countY;
+        public final int countZ;
+        public final int sectionCount;
+
+        public SectionGrid(Vec3i size)
+        {
+            this.size = new Vec3i(Math.abs(size.getX()), Math.abs(size.getY()), Math.abs(size.getZ()));
+            this.countX = (this.size.getX() + SECTION_SIZE - 1) / SECTION_SIZE;
+            this.countY = (this.size.getY() + SECTION_SIZE - 1) / SECTION_SIZE;
+            this.countZ = (this.size.getZ() + SECTION_SIZE - 1) / SECTION_SIZE;
+            this.sectionCount = this.countX * this.countY * this.countZ;
+        }
+
+        public int getMinX(int sectionIndex)
+        {
+            return (sectionIndex % this.countX) * SECTION_SIZE;
+        }
+
+        public int getMinY(int sectionIndex)
+        {
+            return (sectionIndex / (this.countX * this.countZ)) * SECTION_SIZE;
+        }
+
+        public int getMinZ(int sectionIndex)
+        {
+            return ((sectionIndex / this.countX) % this.countZ) * SECTION_SIZE;
+        }
+    }
+
+    public static class VersionManifest
+    {
+        protected final NBTTagCompound schematicTag;
+        protected final Map<String, String[]> sectionHashes;
+
+        protected VersionManifest(NBTTagCompound schematicTag, Map<String, String[]> sectionHashes)
+        {
+            this.schematicTag = schematicTag;
+            this.sectionHashes = sectionHashes;
+        }
+
+        @Nullable
+        public Vec3i getRegionSize(String regionName)
+        {
+            NBTTagCompound regionTag = NbtWrap.getCompound(NbtWrap.getCompound(this.schematicTag, "Regions"), regionName);
+            BlockPos size = NbtUtils.readBlockPos(NbtWrap.getCompound(regionTag, "Size"));
+            return size != null ? new Vec3i(Math.abs(size.getX()), Math.abs(size.getY()), Math.abs(size.getZ())) : null;
+        }
+
+        /**
+         * @return the section hashes of the given region, in the order of {@link SectionGrid}
+         */
+        @Nullable
+        public String[] getSectionHashes(String regionName)
+        {
+            return this.sectionHashes.get(regionName);
+        }
+
+        public NBTTagCompound toTag()
+        {
+            NBTTagCompound tag = new NBTTagCompound();
+            NBTTagCompound sectionsTag = new NBTTagCompound();
+
+            // The hashes are stored as the raw digest bytes, with all zeroes for the empty sections
+            for (Map.Entry<String, String[]> entry : this.sectionHashes.entrySet())
+            {
+                String[] hashes = entry.getValue();
+                byte[] arr = new byte[hashes.length * HASH_LENGTH_BYTES];
+
+                for (int i = 0; i < hashes.length; ++i)
+                {
+                    String hash = hashes[i];
+                    currentHash = hash;
+
+                    for (int b = 0; b < hash.length() / 2; ++b)
+                    {
+                        arr[i * HASH_LENGTH_BYTES + b] = (byte) Integer.parseInt(hash.substring(b * 2, b * 2 + 2), 16);
+                    }
+                }
+
+                NbtWrap.putByteArray(sectionsTag, entry.getKey(), arr);
+            }
+
+            NbtWrap.putTag(tag, "Schematic", this.schematicTag);
+            NbtWrap.putTag(tag, "Sections", sectionsTag);
+
+            return tag;
+        }
+
+        @Nullable
+        public static VersionManifest fromTag(NBTTagCompound tag)
+        {
+            if (NbtWrap.containsCompound(tag, "Schematic") == false ||
+                NbtWrap.containsCompound(tag, "Sections") == false)
+            {
+                return null;
+            }
+
+            NBTTagCompound sectionsTag = NbtWrap.getCompound(tag, "Sections");
+            Map<String, String[]> sectionHashes = new HashMap<>();
+
+            for (String regionName : NbtWrap.getKeys(sectionsTag))
+            {
+                byte[] arr = NbtWrap.getByteArray(sectionsTag, regionName);
+                String[] hashes = new String[arr.length / HASH_LENGTH_BYTES];
+                byte[] digest = new byte[HASH_LENGTH_BYTES];
+
+                for (int i = 0; i < hashes.length; ++i)
+                {
+                    System.arraycopy(arr, i * HASH_LENGTH_BYTES, digest, 0, HASH_LENGTH_BYTES);
+                    hashes[i] = isAllZeroes(digest) ? "" : toHexString(digest);
+                }
+
+                sectionHashes.put(regionName, hashes);
+            }
+
+            return new VersionManifest(NbtWrap.getCompound(tag, "Schematic"), sectionHashes);
+        }
+    }
+
+    protected static class SectionData
+    {
+        protected final int sizeX;
+        protected final int sizeY;
+        protected final int sizeZ;
+        protected final IBlockState[] palette;
+        protected final LitematicaBitArray data;
+
+        protected SectionData(int sizeX, int sizeY, int sizeZ, IBlockState[] palette, LitematicaBitArray data)
+        {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.sizeZ = sizeZ;
+            this.palette = palette;
+            this.data = data;
+        }
+
+        protected IBlockState getBlockState(int index)
+        {
+            return this.palette[this.data.getAt(index)];
+        }
+
+        @Nullable
+        protected static SectionData fromTag(NBTTagCompound tag)
+        {
+            BlockPos size = NbtUtils.readBlockPos(tag);
+            NBTTagList paletteTag = NbtWrap.getListOfCompounds(tag, "Palette");
+            final int paletteSize = NbtWrap.getListSize(paletteTag);
+
+            if (NbtWrap.getInt(tag, "Version") != SECTION_FORMAT_VERSION ||
+                size == null || paletteSize == 0 ||
+                NbtWrap.containsLongArray(tag, "BlockStates") == false)
+            {
+                return null;
+            }
+
+            IBlockState[] palette = new IBlockState[paletteSize];
+
+            for (int i = 0; i < paletteSize; ++i)
+            {
+                palette[i] = NBTUtil.readBlockState(NbtWrap.getCompoundAt(paletteTag, i));
+            }
+
+            final int bits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
+            final int volume = size.getX() * size.getY() * size.getZ();
+            long[] arr = ((NBTTagLongArrayMixin) NbtWrap.getTag(tag, "BlockStates")).getArray();
+            LitematicaBitArray data = new LitematicaBitArray(bits, volume, arr);
+
+            // Guard against palette IDs beyond the palette, in case of a corrupted blob
+            for (int i = 0; i < volume; ++i)
+            {
+                if (data.getAt(i) >= paletteSize)
+                {
+                    return null;
+                }
+            }
+
+            return new SectionData(size.getX(), size.getY(), size.getZ(), palette, data);
+        }
+    }
+}
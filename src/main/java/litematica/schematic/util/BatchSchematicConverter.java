@@ -0,0 +1,558 @@
+package litematica.schematic.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.minecraft.init.Bootstrap;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3i;
+
+import malilib.util.FileNameUtils;
+import malilib.util.data.Constants;
+import malilib.util.game.wrap.NbtWrap;
+import malilib.util.nbt.NbtUtils;
+import litematica.Litematica;
+import litematica.schematic.ISchematic;
+import litematica.schematic.ISchematicRegion;
+import litematica.schematic.SchematicType;
+import litematica.util.NbtStreamReader;
+import litematica.util.ThreadMessages;
+
+/**
+ * Converts all the schematic files in a directory tree into another schematic format,
+ * keeping the directory structure under the output directory.
+ * The conversions run concurrently on a fixed size thread pool owned by the converter.
+ * New conversions are not started while the total volume of the schematics being converted
+ * is at or over the given limit, but a schematic larger than the limit still gets converted on its own.
+ * <p>
+ * This class doesn't use the client or the world, so it can also be run headlessly,
+ * for example from a test harness, via {@link #runHeadless} or {@link #main(String[])}.
+ */
+public class BatchSchematicConverter
+{
+    private static final ThreadFactory THREAD_FACTORY = (new ThreadFactoryBuilder()).setNameFormat("Litematica Batch Convert %d").setDaemon(true).build();
+
+    protected final Path sourceDirectory;
+    protected final Path outputDirectory;
+    protected final SchematicType<?> outputType;
+    protected final int threads;
+    protected final long maxInFlightVolume;
+    protected final boolean overwrite;
+    protected final AtomicInteger convertedFiles = new AtomicInteger();
+    protected final AtomicInteger skippedFiles = new AtomicInteger();
+    protected final AtomicInteger failedFiles = new AtomicInteger();
+    protected final AtomicLong convertedVolume = new AtomicLong();
+    protected final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+    protected final Object volumeLock = new Object();
+    protected long inFlightVolume;
+    protected volatile int totalFiles = -1;
+    protected volatile long startTime = -1L;
+    protected volatile long endTime = -1L;
+    protected volatile boolean cancelled;
+
+    /**
+     * @param threads the maximum number of concurrent conversions
+     * @param maxInFlightVolume the soft limit for the total volume in blocks of the schematics being converted at once
+     * @param overwrite whether existing files in the output directory should be overwritten, or the source file skipped
+     */
+    public BatchSchematicConverter(Path sourceDirectory, Path outputDirectory, SchematicType<?> outputType,
+                                   int threads, long maxInFlightVolume, boolean overwrite)
+    {
+        this.sourceDirectory = sourceDirectory;
+        this.outputDirectory = outputDirectory;
+        this.outputType = outputType;
+        this.threads = Math.max(1, threads);
+        this.maxInFlightVolume = Math.max(1L, maxInFlightVolume);
+        this.overwrite = overwrite;
+    }
+
+    /**
+     * @return the number of schematic files found, or -1 while the source directory is still being scanned
+     */
+    public int getTotalFiles()
+    {
+        return this.totalFiles;
+    }
+
+    public int getConvertedFiles()
+    {
+        return this.convertedFiles.get();
+    }
+
+    /**
+     * @return the number of files that were already in the output format,
+     *         or whose output file already existed and overwriting was not enabled
+     */
+    public int getSkippedFiles()
+    {
+        return this.skippedFiles.get();
+    }
+
+    public int getFailedFiles()
+    {
+        return this.failedFiles.get();
+    }
+
+    public int getProcessedFiles()
+    {
+        return this.getConvertedFiles() + this.getSkippedFiles() + this.getFailedFiles();
+    }
+
+    /**
+     * @return the total volume in blocks of all the schematics converted so far
+     */
+    public long getConvertedVolume()
+    {
+        return this.convertedVolume.get();
+    }
+
+    public long getInFlightVolume()
+    {
+        synchronized (this.volumeLock)
+        {
+            return this.inFlightVolume;
+        }
+    }
+
+    public long getElapsedTimeMillis()
+    {
+        long start = this.startTime;
+
+        if (start < 0)
+        {
+            return 0L;
+        }
+
+        long end = this.endTime;
+        return (end >= 0 ? end : System.currentTimeMillis()) - start;
+    }
+
+    public List<Failure> getFailures()
+    {
+        return new ArrayList<>(this.failures);
+    }
+
+    public boolean isFinished()
+    {
+        return this.endTime >= 0;
+    }
+
+    /**
+     * Stops starting new conversions. The conversions already running are finished normally.
+     */
+    public void cancel()
+    {
+        this.cancelled = true;
+    }
+
+    /**
+     * Bootstraps the game's registries if needed, and then converts all the files on the calling thread.
+     * This doesn't need a client, so it can be used from a test harness or from the command line.
+     * @return the converter, for checking the results
+     */
+    public static BatchSchematicConverter runHeadless(Path sourceDirectory, Path outputDirectory, SchematicType<?> outputType,
+                                                      int threads, long maxInFlightVolume, boolean overwrite)
+    {
+        Bootstrap.register();
+
+        BatchSchematicConverter converter = new BatchSchematicConverter(sourceDirectory, outputDirectory, outputType,
+                                                                        threads, maxInFlightVolume, overwrite);
+        converter.convertAll();
+
+        return converter;
+    }
+
+    /**
+     * Arguments: source directory, output directory, output file name extension (for example ".litematic"),
+     * and optionally the number of threads, the maximum in-flight volume and whether to overwrite existing files.
+     * Exits with the status 1 if any of the conversions failed.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: BatchSchematicConverter <source dir> <output dir> <output extension> [threads] [max volume] [overwrite]");
+            System.exit(2);
+        }
+
+        List<SchematicType<?>> types = SchematicType.getPossibleTypesFromFileName("x" + args[2]);
+
+        if (types.isEmpty())
+        {
+            System.err.println("Unknown schematic file name extension: " + args[2]);
+            System.exit(2);
+        }
+
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long maxVolume = args.length > 4 ? Long.parseLong(args[4]) : 256L * 256L * 256L;
+        boolean overwrite = args.length > 5 && Boolean.parseBoolean(args[5]);
+
+        BatchSchematicConverter converter = runHeadless(Paths.get(args[0]), Paths.get(args[1]), types.get(0),
+                                                        threads, maxVolume, overwrite);
+
+        for (Failure failure : converter.getFailures())
+        {
+            System.err.println("Failed: " + failure.file + ": " + failure.reason);
+        }
+
+        System.out.printf("Converted %d, skipped %d, failed %d of %d files (%d blocks) in %d ms%n",
+                          converter.getConvertedFiles(), converter.getSkippedFiles(), converter.getFailedFiles(),
+                          converter.getTotalFiles(), converter.getConvertedVolume(), converter.getElapsedTimeMillis());
+
+        System.exit(converter.getFailedFiles() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Runs {@link #convertAll()} on a new thread
+     * @return a future that completes once all the conversions have finished
+     */
+    public CompletableFuture<Void> start()
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        THREAD_FACTORY.newThread(() -> {
+            try
+            {
+                this.convertAll();
+                future.complete(null);
+            }
+            catch (Throwable t)
+            {
+                future.completeExceptionally(t);
+            }
+        }).start();
+
+        return future;
+    }
+
+    /**
+     * Converts all the schematic files, and returns once all the conversions have finished.
+     * The calling thread only finds the files and starts the conversions.
+     */
+    public void convertAll()
+    {
+        this.startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads, THREAD_FACTORY);
+        Semaphore slots = new Semaphore(this.threads);
+
+        try
+        {
+            List<Path> files = this.findSourceFiles();
+            this.totalFiles = files.size();
+
+            for (Path file : files)
+            {
+                if (this.cancelled)
+                {
+                    break;
+                }
+
+                slots.acquire();
+                this.waitForVolumeBelowLimit();
+
+                executor.execute(() -> {
+                    try
+                    {
+                        this.convertFile(file);
+                    }
+                    finally
+                    {
+                        slots.release();
+                    }
+                });
+            }
+
+            // Wait for the running conversions to finish
+            slots.acquire(this.threads);
+        }
+        catch (IOException e)
+        {
+            this.totalFiles = 0;
+            this.addFailure(this.sourceDirectory, e);
+        }
+        catch (InterruptedException e)
+        {
+            this.cancelled = true;
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            executor.shutdown();
+            this.endTime = System.currentTimeMillis();
+        }
+    }
+
+    protected List<Path> findSourceFiles() throws IOException
+    {
+        try (Stream<Path> stream = Files.walk(this.sourceDirectory))
+        {
+            // The output directory may be inside the source directory
+            return stream.filter(SchematicType.SCHEMATIC_FILE_FILTER)
+                         .filter(p -> p.startsWith(this.outputDirectory) == false)
+                         .sorted()
+                         .collect(Collectors.toList());
+        }
+    }
+
+    protected Path getOutputFile(Path sourceFile)
+    {
+        Path relativeDir = this.sourceDirectory.relativize(sourceFile).getParent();
+        Path dir = relativeDir != null ? this.outputDirectory.resolve(relativeDir) : this.outputDirectory;
+        String name = FileNameUtils.getFileNameWithoutExtension(sourceFile.getFileName().toString());
+        return dir.resolve(name + this.outputType.getFileNameExtension());
+    }
+
+    protected void convertFile(Path file)
+    {
+        // The schematic reading code reports problems via the message overlay,
+        // which can't be used from the worker threads, so collect the messages into the failure reason
+        List<String> messages = new ArrayList<>();
+        ThreadMessages.setCollector(messages);
+
+        try
+        {
+            String failure = this.tryConvertFile(file);
+
+            if (failure != null)
+            {
+                this.addFailure(file, failure, messages);
+            }
+            else
+            {
+                for (String msg : messages)
+                {
+                    Litematica.logger.warn("Batch conversion of '{}': {}", file.toAbsolutePath().toString(), msg);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Batch conversion failed for '{}'", file.toAbsolutePath().toString(), e);
+            this.addFailure(file, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), messages);
+        }
+        finally
+        {
+            ThreadMessages.setCollector(null);
+        }
+    }
+
+    /**
+     * @return the reason if the conversion failed, or null if the file was converted or skipped
+     */
+    @Nullable
+    protected String tryConvertFile(Path file) throws Exception
+    {
+        Path outputFile = this.getOutputFile(file);
+        List<SchematicType<?>> possibleTypes = SchematicType.getPossibleTypesFromFileName(file);
+
+        // Don't read the files that are already in the output format
+        if ((possibleTypes.size() == 1 && possibleTypes.get(0) == this.outputType) ||
+            (this.overwrite == false && Files.exists(outputFile)))
+        {
+            this.skippedFiles.incrementAndGet();
+            return null;
+        }
+
+        // Reserve the volume from the size entries of the file before reading the full tag into memory
+        long volume = readVolumeFromFile(file);
+        this.reserveVolume(volume);
+
+        try
+        {
+            NBTTagCompound tag = NbtUtils.readNbtFromFile(file);
+            SchematicType<?> type = tag != null ? SchematicType.getType(file, tag) : null;
+
+            if (type == null)
+            {
+                return "Unrecognized schematic data";
+            }
+
+            if (type == this.outputType)
+            {
+                this.skippedFiles.incrementAndGet();
+                return null;
+            }
+
+            ISchematic schematic = type.createSchematicAndReadFromTag(file, tag);
+
+            if (schematic == null)
+            {
+                return "Failed to read the schematic";
+            }
+
+            if (volume <= 0)
+            {
+                volume = getVolume(schematic);
+                this.addInFlightVolume(volume);
+            }
+
+            ISchematic convertedSchematic = this.outputType.createSchematic(null);
+            convertedSchematic.readFrom(schematic);
+
+            Files.createDirectories(outputFile.getParent());
+            convertedSchematic.createWriter().writeToFile(outputFile);
+
+            this.convertedFiles.incrementAndGet();
+            this.convertedVolume.addAndGet(volume);
+
+            return null;
+        }
+        finally
+        {
+            if (volume > 0)
+            {
+                this.addInFlightVolume(-volume);
+            }
+        }
+    }
+
+    protected void addFailure(Path file, Exception e)
+    {
+        Litematica.logger.warn("Batch conversion failed for '{}'", file.toAbsolutePath().toString(), e);
+        this.addFailure(file, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+    }
+
+    protected void addFailure(Path file, String reason, List<String> messages)
+    {
+        this.addFailure(file, messages.isEmpty() ? reason : reason + ": " + String.join("; ", messages));
+    }
+
+    protected void addFailure(Path file, String reason)
+    {
+        this.failedFiles.incrementAndGet();
+        this.failures.add(new Failure(file, reason));
+    }
+
+    protected void addInFlightVolume(long amount)
+    {
+        synchronized (this.volumeLock)
+        {
+            this.inFlightVolume += amount;
+            this.volumeLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the given volume fits under the limit, and then adds it to the in-flight volume.
+     * A volume larger than the limit is allowed once nothing else is being converted.
+     */
+    protected void reserveVolume(long volume) throws InterruptedException
+    {
+        if (volume <= 0)
+        {
+            return;
+        }
+
+        synchronized (this.volumeLock)
+        {
+            while (this.inFlightVolume > 0 &&
+                   this.inFlightVolume + volume > this.maxInFlightVolume &&
+                   this.cancelled == false)
+            {
+                this.volumeLock.wait(1000L);
+            }
+
+            this.inFlightVolume += volume;
+        }
+    }
+
+    protected void waitForVolumeBelowLimit() throws InterruptedException
+    {
+        synchronized (this.volumeLock)
+        {
+            while (this.inFlightVolume >= this.maxInFlightVolume && this.cancelled == false)
+            {
+                this.volumeLock.wait(1000L);
+            }
+        }
+    }
+
+    /**
+     * Reads the volume of the schematic from only the size entries of the file,
+     * so that it can be accounted for before the whole file is read into memory.
+     * @return the volume in blocks, or 0 if it's not available
+     */
+    protected static long readVolumeFromFile(Path file)
+    {
+        NBTTagCompound tag = NbtStreamReader.readRootEntriesFromFile(file, "Metadata", "size", "Width", "Height", "Length");
+
+        if (tag == null)
+        {
+            return 0L;
+        }
+
+        // Litematica
+        if (NbtWrap.containsCompound(tag, "Metadata"))
+        {
+            NBTTagCompound metaTag = NbtWrap.getCompound(tag, "Metadata");
+            long volume = NbtWrap.getLong(metaTag, "TotalVolume");
+
+            if (volume <= 0 && NbtWrap.containsCompound(metaTag, "EnclosingSize"))
+            {
+                BlockPos size = NbtUtils.readBlockPos(NbtWrap.getCompound(metaTag, "EnclosingSize"));
+                volume = size != null ? Math.abs((long) size.getX() * size.getY() * size.getZ()) : 0L;
+            }
+
+            return Math.max(0L, volume);
+        }
+        // Vanilla structure
+        else if (NbtWrap.containsList(tag, "size"))
+        {
+            BlockPos size = NbtUtils.readBlockPosFromListTag(tag, "size");
+            return size != null ? Math.abs((long) size.getX() * size.getY() * size.getZ()) : 0L;
+        }
+        else if (NbtWrap.contains(tag, "Width", Constants.NBT.TAG_ANY_NUMERIC))
+        {
+            // Both the Schematica and the Sponge formats store the dimensions as unsigned shorts
+            return (long) (NbtWrap.getInt(tag, "Width") & 0xFFFF) *
+                          (NbtWrap.getInt(tag, "Height") & 0xFFFF) *
+                          (NbtWrap.getInt(tag, "Length") & 0xFFFF);
+        }
+
+        return 0L;
+    }
+
+    protected static long getVolume(ISchematic schematic)
+    {
+        long volume = 0;
+
+        for (ISchematicRegion region : schematic.getRegions().values())
+        {
+            Vec3i size = region.getSize();
+            volume += Math.abs((long) size.getX() * size.getY() * size.getZ());
+        }
+
+        return volume;
+    }
+
+    public static class Failure
+    {
+        public final Path file;
+        public final String reason;
+
+        public Failure(Path file, String reason)
+        {
+            this.file = file;
+            this.reason = reason;
+        }
+    }
+}
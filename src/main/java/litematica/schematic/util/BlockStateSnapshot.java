@@ -0,0 +1,192 @@
+package litematica.schematic.util;
+
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Biomes;
+import net.minecraft.init.Blocks;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.Biome;
+
+import malilib.util.position.IntBoundingBox;
+
+/**
+ * A read-only copy of the raw block states within a box, plus a one block
+ * border around it, so that the actual states of the blocks inside the box
+ * can be resolved on another thread without touching the live world.
+ */
+public class BlockStateSnapshot implements IBlockAccess
+{
+    protected final IBlockState[] states;
+    protected final Long2ObjectOpenHashMap<IBlockState> actualStateOverrides = new Long2ObjectOpenHashMap<>();
+    protected final IntBoundingBox box;
+    protected final WorldType worldType;
+    protected final int minX;
+    protected final int minY;
+    protected final int minZ;
+    protected final int sizeX;
+    protected final int sizeY;
+    protected final int sizeZ;
+
+    protected BlockStateSnapshot(IntBoundingBox box, WorldType worldType)
+    {
+        this.box = box;
+        this.worldType = worldType;
+        this.minX = box.minX - 1;
+        this.minY = Math.max(0, box.minY - 1);
+        this.minZ = box.minZ - 1;
+        this.sizeX = box.maxX - this.minX + 2;
+        this.sizeY = Math.min(255, box.maxY + 1) - this.minY + 1;
+        this.sizeZ = box.maxZ - this.minZ + 2;
+        this.states = new IBlockState[this.sizeX * this.sizeY * this.sizeZ];
+    }
+
+    /**
+     * Takes a snapshot of the raw block states within the given box and its one block border.
+     * Must be called on the thread that owns the world.
+     */
+    public static BlockStateSnapshot create(World world, IntBoundingBox box)
+    {
+        BlockStateSnapshot snapshot = new BlockStateSnapshot(box, world.getWorldType());
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+        int index = 0;
+
+        for (int y = 0; y < snapshot.sizeY; ++y)
+        {
+            for (int z = 0; z < snapshot.sizeZ; ++z)
+            {
+                for (int x = 0; x < snapshot.sizeX; ++x)
+                {
+                    posMutable.setPos(x + snapshot.minX, y + snapshot.minY, z + snapshot.minZ);
+                    snapshot.states[index++] = world.getBlockState(posMutable);
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Takes a snapshot of the given box like {@link #create(World, IntBoundingBox)}, and also
+     * resolves the actual states of the blocks that have a BlockEntity within the box.
+     * Must be called on the thread that owns the world.
+     */
+    public static BlockStateSnapshot createWithBlockEntityStates(World world, IntBoundingBox box)
+    {
+        BlockStateSnapshot snapshot = create(world, box);
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+        for (int y = box.minY; y <= box.maxY; ++y)
+        {
+            for (int z = box.minZ; z <= box.maxZ; ++z)
+            {
+                for (int x = box.minX; x <= box.maxX; ++x)
+                {
+                    posMutable.setPos(x, y, z);
+                    IBlockState state = snapshot.getBlockState(posMutable);
+
+                    if (state.getBlock().hasTileEntity())
+                    {
+                        snapshot.setActualState(posMutable, state.getActualState(world, posMutable));
+                    }
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    public IntBoundingBox getBox()
+    {
+        return this.box;
+    }
+
+    /**
+     * Sets the already resolved actual state for the given position. This is used for the blocks
+     * whose actual state depends on the BlockEntity data, which the snapshot doesn't have.
+     */
+    public void setActualState(BlockPos pos, IBlockState state)
+    {
+        this.actualStateOverrides.put(pos.toLong(), state);
+    }
+
+    /**
+     * Resolves the actual state at the given position against the snapshot.
+     * This is safe to call from any thread once the snapshot has been created.
+     */
+    public IBlockState getActualState(BlockPos pos)
+    {
+        IBlockState state = this.actualStateOverrides.get(pos.toLong());
+
+        if (state != null)
+        {
+            return state;
+        }
+
+        return this.getBlockState(pos).getActualState(this, pos);
+    }
+
+    protected int getIndex(int x, int y, int z)
+    {
+        x -= this.minX;
+        y -= this.minY;
+        z -= this.minZ;
+
+        if (x < 0 || y < 0 || z < 0 || x >= this.sizeX || y >= this.sizeY || z >= this.sizeZ)
+        {
+            return -1;
+        }
+
+        return (y * this.sizeZ + z) * this.sizeX + x;
+    }
+
+    @Override
+    public IBlockState getBlockState(BlockPos pos)
+    {
+        int index = this.getIndex(pos.getX(), pos.getY(), pos.getZ());
+        return index >= 0 ? this.states[index] : Blocks.AIR.getDefaultState();
+    }
+
+    @Override
+    public boolean isAirBlock(BlockPos pos)
+    {
+        return this.getBlockState(pos).getBlock() == Blocks.AIR;
+    }
+
+    @Override
+    @Nullable
+    public TileEntity getTileEntity(BlockPos pos)
+    {
+        return null;
+    }
+
+    @Override
+    public int getCombinedLight(BlockPos pos, int lightValue)
+    {
+        return 15 << 20 | lightValue << 4;
+    }
+
+    @Override
+    public Biome getBiome(BlockPos pos)
+    {
+        return Biomes.PLAINS;
+    }
+
+    @Override
+    public int getStrongPower(BlockPos pos, EnumFacing direction)
+    {
+        return this.getBlockState(pos).getStrongPower(this, pos, direction);
+    }
+
+    @Override
+    public WorldType getWorldType()
+    {
+        return this.worldType;
+    }
+}
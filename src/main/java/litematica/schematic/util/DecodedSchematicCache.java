@@ -0,0 +1,545 @@
+package litematica.schematic.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.Vec3i;
+
+import malilib.util.MathUtils;
+import litematica.Litematica;
+import litematica.config.Configs;
+import litematica.materials.MaterialCache;
+import litematica.scheduler.WorkerPool;
+import litematica.schematic.LitematicaSchematic;
+import litematica.schematic.SchematicType;
+import litematica.schematic.container.ILitematicaBlockStatePalette;
+import litematica.schematic.container.LitematicaBitArray;
+import litematica.schematic.container.LitematicaBlockStateContainerFull;
+import litematica.util.LitematicaDirectories;
+
+/**
+ * An on-disk cache of the decoded regions of .litematic files, so that re-opening
+ * the same unchanged file doesn't need to decompress and parse the NBT data again.
+ * <p>
+ * Each entry holds the packed block state arrays in a raw layout, which gets memory-mapped
+ * directly as the container storage on a cache hit, followed by a directory with the palettes
+ * (as block state IDs), the block counts, and the rest of the schematic data
+ * (metadata, block entities, entities, block ticks) as uncompressed NBT.
+ * <p>
+ * The entries are validated against the size, modification time and the file key (inode) of the source file,
+ * and against a fingerprint of the block and item registries, as the palettes use the registry IDs.
+ * The content of the source file is only hashed on file systems that don't provide a file key.
+ * The block counts in the entries are not trusted for re-using palette IDs, see {@link LitematicaBlockStateContainerFull}.
+ * The total size of the cache is bounded, and the least recently used entries get removed first.
+ */
+public class DecodedSchematicCache
+{
+    private static final DecodedSchematicCache INSTANCE = new DecodedSchematicCache();
+
+    private static final int FILE_MAGIC = 0x4C44534B; // "LDSK"
+    private static final int FILE_FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    /** Small schematics decode fast enough, caching them would just fill the cache with tiny entries */
+    private static final long MIN_CACHED_VOLUME = 64L * 64L * 64L;
+    /** The maximum size of a single mapping. This is a multiple of the page size for any bit width. */
+    private static final long MAX_MAPPING_SIZE = 1L << 30;
+
+    private long registryFingerprint;
+    private boolean hasRegistryFingerprint;
+
+    public static DecodedSchematicCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    protected Path getCacheDir()
+    {
+        return LitematicaDirectories.getDataDirectory("decoded_schematic_cache");
+    }
+
+    protected Path getCacheFile(Path sourceFile)
+    {
+        String path = sourceFile.toAbsolutePath().normalize().toString();
+        return this.getCacheDir().resolve(UUID.nameUUIDFromBytes(path.getBytes(StandardCharsets.UTF_8)) + ".bin");
+    }
+
+    /**
+     * The registries don't change after the game has started,
+     * so the fingerprint only needs to be calculated once
+     */
+    protected synchronized long getRegistryFingerprint()
+    {
+        if (this.hasRegistryFingerprint == false)
+        {
+            this.registryFingerprint = MaterialCache.getRegistryFingerprint();
+            this.hasRegistryFingerprint = true;
+        }
+
+        return this.registryFingerprint;
+    }
+
+    /**
+     * Tries to load the given .litematic file from the cache.
+     * @return the schematic, or null if the cache is disabled, or if there is no valid entry for the file
+     */
+    @Nullable
+    public LitematicaSchematic tryLoad(Path file)
+    {
+        if (Configs.Generic.DECODED_SCHEMATIC_CACHE.getBooleanValue() == false)
+        {
+            return null;
+        }
+
+        Path cacheFile = this.getCacheFile(file);
+
+        if (Files.isRegularFile(cacheFile) == false)
+        {
+            return null;
+        }
+
+        long startTime = System.nanoTime();
+
+        try
+        {
+            LitematicaSchematic schematic = this.readEntry(file, cacheFile);
+
+            if (schematic != null)
+            {
+                // The modification time works as the last access time for the LRU eviction
+                Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+
+                Litematica.printDebug("Loaded schematic '%s' from the decoded schematic cache in %d ms",
+                                      file.getFileName().toString(), (System.nanoTime() - startTime) / 1000000L);
+                return schematic;
+            }
+
+            // The source file or the registries have changed since, the entry will get re-created
+            Files.deleteIfExists(cacheFile);
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to read the decoded schematic cache entry '{}'",
+                                   cacheFile.toAbsolutePath().toString(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes the decoded data of the given schematic, which was just loaded from the given file,
+     * into the cache on a worker thread. The data is snapshotted on the calling thread.
+     */
+    public void storeAsync(LitematicaSchematic schematic, Path file)
+    {
+        if (Configs.Generic.DECODED_SCHEMATIC_CACHE.getBooleanValue() == false ||
+            schematic.getMetadata().getTotalVolume() < MIN_CACHED_VOLUME)
+        {
+            return;
+        }
+
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            final long sourceSize = attributes.size();
+            final long sourceMtime = attributes.lastModifiedTime().toMillis();
+            final long sourceFileKey = getFileKeyHash(attributes);
+            final long fingerprint = this.getRegistryFingerprint();
+            NBTTagCompound tag = schematic.toTagWithoutBlockData();
+            // The regions that haven't been loaded yet get decoded on the worker thread
+            Map<String, Supplier<LitematicaBlockStateContainerFull>> containerSuppliers = schematic.getBlockContainerSuppliers();
+
+            CompletableFuture.runAsync(() -> {
+                Map<String, LitematicaBlockStateContainerFull> containers = new HashMap<>();
+
+                try
+                {
+                    for (Map.Entry<String, Supplier<LitematicaBlockStateContainerFull>> entry : containerSuppliers.entrySet())
+                    {
+                        LitematicaBlockStateContainerFull container = entry.getValue().get();
+
+                        if (container == null)
+                        {
+                            return;
+                        }
+
+                        containers.put(entry.getKey(), container);
+                    }
+
+                    this.writeEntry(file, sourceSize, sourceMtime, sourceFileKey, fingerprint, tag, containers);
+                }
+                finally
+                {
+                    // Let the schematic write to its block data directly again
+                    containers.values().forEach(LitematicaBlockStateContainerFull::release);
+                }
+            }, WorkerPool.getPool());
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            Litematica.logger.warn("Failed to cache the decoded schematic '{}'", file.toAbsolutePath().toString(), e);
+        }
+    }
+
+    @Nullable
+    protected LitematicaSchematic readEntry(Path file, Path cacheFile) throws IOException
+    {
+        // A private mapping requires a channel opened for writing, even though nothing is ever written
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long fileKey = getFileKeyHash(attributes);
+
+            if (header.getInt() != FILE_MAGIC ||
+                header.getInt() != FILE_FORMAT_VERSION ||
+                header.getLong() != this.getRegistryFingerprint() ||
+                header.getLong() != attributes.size() ||
+                header.getLong() != attributes.lastModifiedTime().toMillis() ||
+                header.getLong() != fileKey)
+            {
+                return null;
+            }
+
+            long sourceHash = header.getLong();
+            long directoryOffset = header.getLong();
+
+            // Without a file key only the size and the modification time were checked so far,
+            // so the content needs to be verified. This happens only when those already matched.
+            if (fileKey == 0L && sourceHash != hashFile(file))
+            {
+                return null;
+            }
+
+            long directoryLength = channel.size() - directoryOffset;
+
+            if (directoryOffset < HEADER_SIZE || directoryLength <= 0 || directoryLength > Integer.MAX_VALUE)
+            {
+                return null;
+            }
+
+            ByteBuffer directory = ByteBuffer.allocate((int) directoryLength);
+            readFully(channel, directory, directoryOffset);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(directory.array()));
+            NBTTagCompound tag = CompressedStreamTools.read(in);
+            Map<String, LitematicaBlockStateContainerFull> containers = new HashMap<>();
+            final int regionCount = in.readInt();
+
+            for (int i = 0; i < regionCount; ++i)
+            {
+                String regionName = in.readUTF();
+                Vec3i size = new Vec3i(in.readInt(), in.readInt(), in.readInt());
+                final int paletteSize = in.readInt();
+                List<IBlockState> palette = new ArrayList<>(paletteSize);
+                long[] blockCounts = new long[paletteSize];
+
+                for (int id = 0; id < paletteSize; ++id)
+                {
+                    IBlockState state = Block.getStateById(in.readInt());
+
+                    if (state == null)
+                    {
+                        return null;
+                    }
+
+                    palette.add(state);
+                }
+
+                for (int id = 0; id < paletteSize; ++id)
+                {
+                    blockCounts[id] = in.readLong();
+                }
+
+                final int bits = in.readInt();
+                final long dataOffset = in.readLong();
+                final long volume = (long) size.getX() * (long) size.getY() * (long) size.getZ();
+                LitematicaBitArray storage = mapStorage(channel, dataOffset, bits, volume);
+
+                if (storage == null)
+                {
+                    return null;
+                }
+
+                LitematicaBlockStateContainerFull container = LitematicaBlockStateContainerFull.createContainer(palette, storage, blockCounts, false, size);
+
+                if (container == null)
+                {
+                    return null;
+                }
+
+                containers.put(regionName, container);
+            }
+
+            LitematicaSchematic schematic = SchematicType.LITEMATICA.createSchematic(file);
+
+            return schematic.fromTagAndDecodedContainers(tag, containers) ? schematic : null;
+        }
+    }
+
+    protected synchronized void writeEntry(Path file, long sourceSize, long sourceMtime, long sourceFileKey, long fingerprint,
+                                           NBTTagCompound tag, Map<String, LitematicaBlockStateContainerFull> containers)
+    {
+        Path dir = this.getCacheDir();
+        Path cacheFile = this.getCacheFile(file);
+        Path tmpFile = cacheFile.resolveSibling(cacheFile.getFileName().toString() + ".tmp");
+
+        try
+        {
+            LitematicaDirectories.createDirectoriesIfMissingOrPrintError(dir);
+
+            // The content hash is only needed for the file systems without file keys
+            final long sourceHash = sourceFileKey == 0L ? hashFile(file) : 0L;
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+            // The file was changed after it was loaded or while it was being hashed, don't cache mismatching data
+            if (attributes.size() != sourceSize ||
+                attributes.lastModifiedTime().toMillis() != sourceMtime ||
+                getFileKeyHash(attributes) != sourceFileKey)
+            {
+                return;
+            }
+
+            List<String> regionNames = new ArrayList<>(containers.keySet());
+            ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+            DataOutputStream directory = new DataOutputStream(directoryBytes);
+            long dataOffset = HEADER_SIZE;
+
+            CompressedStreamTools.write(tag, directory);
+            directory.writeInt(regionNames.size());
+
+            for (String regionName : regionNames)
+            {
+                LitematicaBlockStateContainerFull container = containers.get(regionName);
+                ILitematicaBlockStatePalette palette = container.getPalette();
+                final int paletteSize = palette.getPaletteSize();
+                long[] counts = container.getBlockCounts();
+                Vec3i size = container.getSize();
+
+                directory.writeUTF(regionName);
+                directory.writeInt(size.getX());
+                directory.writeInt(size.getY());
+                directory.writeInt(size.getZ());
+                directory.writeInt(paletteSize);
+
+                for (int id = 0; id < paletteSize; ++id)
+                {
+                    directory.writeInt(Block.getStateId(palette.getBlockState(id)));
+                }
+
+                for (int id = 0; id < paletteSize; ++id)
+                {
+                    directory.writeLong(id < counts.length ? counts[id] : 0L);
+                }
+
+                directory.writeInt(container.getBitsPerEntry());
+                directory.writeLong(dataOffset);
+
+                dataOffset += (long) container.getBackingLongArrayLength() * 8L;
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), 1024 * 1024)))
+            {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeLong(fingerprint);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceMtime);
+                out.writeLong(sourceFileKey);
+                out.writeLong(sourceHash);
+                out.writeLong(dataOffset); // the directory follows the block data
+                out.write(new byte[HEADER_SIZE - 56]);
+
+                // The block data is written in the same big-endian byte order that it's mapped with
+                for (String regionName : regionNames)
+                {
+                    containers.get(regionName).writeBackingLongArray(out);
+                }
+
+                directoryBytes.writeTo(out);
+            }
+
+            try
+            {
+                Files.move(tmpFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            this.evictLeastRecentlyUsed(dir);
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to write the decoded schematic cache entry '{}'",
+                                   cacheFile.toAbsolutePath().toString(), e);
+
+            try
+            {
+                Files.deleteIfExists(tmpFile);
+            }
+            catch (IOException ignore) {}
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits within the configured size
+     */
+    protected void evictLeastRecentlyUsed(Path dir) throws IOException
+    {
+        long maxBytes = (long) Configs.Generic.DECODED_SCHEMATIC_CACHE_SIZE.getIntegerValue() * 1024L * 1024L;
+        List<Path> files;
+
+        try (Stream<Path> stream = Files.list(dir))
+        {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(".bin")).collect(Collectors.toList());
+        }
+
+        Map<Path, Long> sizes = new HashMap<>();
+        Map<Path, Long> accessTimes = new HashMap<>();
+        long totalSize = 0;
+
+        for (Path file : files)
+        {
+            long size = Files.size(file);
+            sizes.put(file, size);
+            accessTimes.put(file, Files.getLastModifiedTime(file).toMillis());
+            totalSize += size;
+        }
+
+        files.sort(Comparator.comparingLong(accessTimes::get));
+
+        for (Path file : files)
+        {
+            if (totalSize <= maxBytes)
+            {
+                break;
+            }
+
+            try
+            {
+                Files.delete(file);
+                totalSize -= sizes.get(file);
+            }
+            catch (IOException e)
+            {
+                // Most likely still mapped by a loaded schematic on Windows, try again later
+                Litematica.printDebug("Could not evict the decoded schematic cache entry '%s'", file.getFileName().toString());
+            }
+        }
+    }
+
+    /**
+     * Maps the packed block data at the given offset as the storage for a new bit array.
+     * Private mappings are copy-on-write, so modifying the loaded schematic never changes the cache file.
+     */
+    @Nullable
+    protected static LitematicaBitArray mapStorage(FileChannel channel, long offset, int bits, long volume) throws IOException
+    {
+        final long totalBytes = MathUtils.roundUp(volume * (long) bits, 64L) / 8L;
+        final long pageBytes = (long) LitematicaBitArray.PAGE_ENTRIES * (long) bits / 8L;
+        final long mappingSize = Math.max(1L, MAX_MAPPING_SIZE / pageBytes) * pageBytes;
+        List<LongBuffer> buffers = new ArrayList<>();
+
+        if (bits < 1 || bits > 32 || offset < HEADER_SIZE || offset + totalBytes > channel.size())
+        {
+            return null;
+        }
+
+        for (long pos = 0; pos < totalBytes; pos += mappingSize)
+        {
+            long length = Math.min(mappingSize, totalBytes - pos);
+            ByteBuffer buf = channel.map(FileChannel.MapMode.PRIVATE, offset + pos, length);
+            buffers.add(buf.order(ByteOrder.BIG_ENDIAN).asLongBuffer());
+        }
+
+        return LitematicaBitArray.wrapBuffers(bits, volume, buffers);
+    }
+
+    /**
+     * @return a hash of the file key (for example the device and inode numbers) of the file,
+     *         or 0 if the file system doesn't provide file keys
+     */
+    protected static long getFileKeyHash(BasicFileAttributes attributes)
+    {
+        Object key = attributes.fileKey();
+
+        if (key == null)
+        {
+            return 0L;
+        }
+
+        long hash = UUID.nameUUIDFromBytes(key.toString().getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+
+        // 0 is reserved for the missing key
+        return hash != 0L ? hash : 1L;
+    }
+
+    protected static long hashFile(Path file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 1024);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            while (channel.read(buf) >= 0)
+            {
+                buf.flip();
+                crc.update(buf);
+                buf.clear();
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    protected static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException
+    {
+        while (buf.hasRemaining())
+        {
+            int count = channel.read(buf, position);
+
+            if (count < 0)
+            {
+                throw new IOException("Unexpected end of file");
+            }
+
+            position += count;
+        }
+    }
+}
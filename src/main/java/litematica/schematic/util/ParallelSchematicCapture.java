@@ -0,0 +1,181 @@
+package litematica.schematic.util;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.common.collect.ImmutableMap;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import malilib.util.position.IntBoundingBox;
+import litematica.Litematica;
+import litematica.scheduler.WorkerPool;
+import litematica.schematic.ISchematic;
+import litematica.schematic.ISchematicRegion;
+import litematica.schematic.container.ContainerSlice;
+import litematica.schematic.container.ILitematicaBlockStateContainer;
+import litematica.schematic.container.LitematicaBlockStateContainerFull;
+import litematica.selection.SelectionBox;
+
+/**
+ * Captures the blocks of an area into a schematic using a worker pool.
+ * The raw block states are snapshotted per chunk section on the thread that owns the world,
+ * and the actual states are then resolved into container slices on the worker pool.
+ * The finished slices are stitched into the region containers when {@link #stitchCompletedSlices()}
+ * is called, which must happen on a single thread (normally the same thread that takes the snapshots).
+ */
+public class ParallelSchematicCapture
+{
+    protected final ISchematic schematic;
+    protected final ImmutableMap<String, SelectionBox> subRegions;
+    protected final Queue<CompletedSlice> completedSlices = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger pendingSlices = new AtomicInteger();
+    protected final AtomicInteger failedSlices = new AtomicInteger();
+    protected volatile boolean cancelled;
+    protected int stitchedSlices;
+
+    public ParallelSchematicCapture(ISchematic schematic, ImmutableMap<String, SelectionBox> subRegions)
+    {
+        this.schematic = schematic;
+        this.subRegions = subRegions;
+    }
+
+    /**
+     * Snapshots the given per-region volumes within one chunk, and submits
+     * the conversion of those snapshots to the worker pool.
+     * Must be called on the thread that owns the world.
+     */
+    public void captureChunk(World world, ImmutableMap<String, IntBoundingBox> volumes)
+    {
+        SchematicCreationUtils.takeSnapshotsFromWorldWithinChunk(this.schematic, world, volumes,
+                                                                 this.subRegions, this::submitSnapshot);
+    }
+
+    protected void submitSnapshot(String regionName, BlockStateSnapshot snapshot)
+    {
+        SelectionBox box = this.subRegions.get(regionName);
+
+        if (box == null)
+        {
+            return;
+        }
+
+        BlockPos minCorner = malilib.util.position.PositionUtils.getMinCorner(box.getCorner1(), box.getCorner2());
+        this.pendingSlices.incrementAndGet();
+
+        CompletableFuture.runAsync(() -> this.convertSnapshot(regionName, snapshot, minCorner), WorkerPool.getPool())
+            .whenComplete((v, e) -> {
+                if (e != null)
+                {
+                    this.failedSlices.incrementAndGet();
+                    Litematica.logger.error("Failed to convert a block state snapshot for sub-region '{}'", regionName, e);
+                }
+
+                this.pendingSlices.decrementAndGet();
+            });
+    }
+
+    protected void convertSnapshot(String regionName, BlockStateSnapshot snapshot, BlockPos minCorner)
+    {
+        if (this.cancelled)
+        {
+            return;
+        }
+
+        IntBoundingBox bb = snapshot.getBox();
+        ContainerSlice slice = new ContainerSlice(bb.minX - minCorner.getX(),
+                                                  bb.minY - minCorner.getY(),
+                                                  bb.minZ - minCorner.getZ(),
+                                                  bb.maxX - bb.minX + 1,
+                                                  bb.maxY - bb.minY + 1,
+                                                  bb.maxZ - bb.minZ + 1);
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
+
+        for (int y = bb.minY; y <= bb.maxY; ++y)
+        {
+            for (int z = bb.minZ; z <= bb.maxZ; ++z)
+            {
+                for (int x = bb.minX; x <= bb.maxX; ++x)
+                {
+                    posMutable.setPos(x, y, z);
+                    slice.setBlockState(x - bb.minX, y - bb.minY, z - bb.minZ, snapshot.getActualState(posMutable));
+                }
+            }
+        }
+
+        this.completedSlices.add(new CompletedSlice(regionName, slice));
+    }
+
+    /**
+     * Writes all the slices that have been completed so far into the region containers
+     * @return the number of slices stitched
+     */
+    public int stitchCompletedSlices()
+    {
+        long totalBlocks = this.schematic.getMetadata().getTotalBlocks();
+        int count = 0;
+        CompletedSlice completed;
+
+        while ((completed = this.completedSlices.poll()) != null)
+        {
+            ISchematicRegion region = this.schematic.getSchematicRegion(completed.regionName);
+            ILitematicaBlockStateContainer container = region != null ? region.getBlockStateContainer() : null;
+
+            if (container instanceof LitematicaBlockStateContainerFull)
+            {
+                ((LitematicaBlockStateContainerFull) container).setBlockStates(completed.slice);
+                totalBlocks += completed.slice.getNonAirCount();
+                ++count;
+            }
+            else
+            {
+                Litematica.logger.error("No suitable block state container for sub-region '{}' while trying to save chunk-wise schematic", completed.regionName);
+            }
+        }
+
+        this.schematic.getMetadata().setTotalBlocks(totalBlocks);
+        this.stitchedSlices += count;
+
+        return count;
+    }
+
+    public boolean isDone()
+    {
+        return this.pendingSlices.get() == 0 && this.completedSlices.isEmpty();
+    }
+
+    public int getPendingSliceCount()
+    {
+        return this.pendingSlices.get() + this.completedSlices.size();
+    }
+
+    public int getStitchedSliceCount()
+    {
+        return this.stitchedSlices;
+    }
+
+    public int getFailedSliceCount()
+    {
+        return this.failedSlices.get();
+    }
+
+    public void cancel()
+    {
+        this.cancelled = true;
+        this.completedSlices.clear();
+    }
+
+    protected static class CompletedSlice
+    {
+        protected final String regionName;
+        protected final ContainerSlice slice;
+
+        protected CompletedSlice(String regionName, ContainerSlice slice)
+        {
+            this.regionName = regionName;
+            this.slice = slice;
+        }
+    }
+}
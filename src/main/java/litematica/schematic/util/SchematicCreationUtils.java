@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
@@ -364,33 +365,7 @@ public class SchematicCreationUtils
                 IntBoundingBox structureBB = IntBoundingBox.createProper(
                         startX,         startY,         startZ,
                         startX + sizeX, startY + sizeY, startZ + sizeZ);
-                List<NextTickListEntry> pendingTicks = world.getPendingBlockUpdates(structureBB.toVanillaBox(), false);
-
-                if (pendingTicks != null)
-                {
-                    final int listSize = pendingTicks.size();
-                    final long currentTime = world.getTotalWorldTime();
-
-                    // The getPendingBlockUpdates() method doesn't check the y-coordinate... :-<
-                    for (int i = 0; i < listSize; ++i)
-                    {
-                        NextTickListEntry entry = pendingTicks.get(i);
-
-                        if (entry.position.getY() >= startY && entry.position.getY() < structureBB.maxY)
-                        {
-                            // Store the delay, ie. relative time
-                            BlockPos posRelative = new BlockPos(
-                                    entry.position.getX() - minCorner.getX(),
-                                    entry.position.getY() - minCorner.getY(),
-                                    entry.position.getZ() - minCorner.getZ());
-                            NextTickListEntry newEntry = new NextTickListEntry(posRelative, entry.getBlock());
-                            newEntry.setPriority(entry.priority);
-                            newEntry.setScheduledTime(entry.scheduledTime - currentTime);
-
-                            tickMap.put(posRelative, newEntry);
-                        }
-                    }
-                }
+                takeScheduledTicksWithinBox(world, structureBB, startY, minCorner, tickMap);
             }
         }
 
@@ -481,36 +456,132 @@ public class SchematicCreationUtils
                 IntBoundingBox structureBB = IntBoundingBox.createProper(
                         offsetX + startX  , offsetY + startY  , offsetZ + startZ  ,
                         offsetX + endX + 1, offsetY + endY + 1, offsetZ + endZ + 1);
-                List<NextTickListEntry> pendingTicks = world.getPendingBlockUpdates(structureBB.toVanillaBox(), false);
+                takeScheduledTicksWithinBox(world, structureBB, offsetY, minCorner, tickMap);
+            }
+        }
 
-                if (pendingTicks != null)
-                {
-                    final int listSize = pendingTicks.size();
-                    final long currentTime = world.getTotalWorldTime();
+        schematic.getMetadata().setTotalBlocks(totalBlocks);
+    }
 
-                    // The getPendingBlockUpdates() method doesn't check the y-coordinate... :-<
-                    for (int i = 0; i < listSize; ++i)
-                    {
-                        NextTickListEntry entry = pendingTicks.get(i);
+    /**
+     * Takes the BlockEntities and the scheduled block ticks within the given chunk
+     * into the schematic, and creates the block state snapshots of the same volumes.
+     * The block states are then resolved from the snapshots separately,
+     * see {@link ParallelSchematicCapture}.
+     * This must be called on the thread that owns the world.
+     */
+    public static void takeSnapshotsFromWorldWithinChunk(ISchematic schematic,
+                                                         World world,
+                                                         ImmutableMap<String, IntBoundingBox> volumes,
+                                                         ImmutableMap<String, SelectionBox> boxes,
+                                                         BiConsumer<String, BlockStateSnapshot> snapshotConsumer)
+    {
+        BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos(0, 0, 0);
+
+        for (Map.Entry<String, IntBoundingBox> volumeEntry : volumes.entrySet())
+        {
+            String regionName = volumeEntry.getKey();
+            ISchematicRegion region = schematic.getSchematicRegion(regionName);
+            IntBoundingBox bb = volumeEntry.getValue();
+            CornerDefinedBox box = boxes.get(regionName);
+
+            if (box == null || region == null)
+            {
+                Litematica.logger.error("null Box for sub-region '{}' while trying to save chunk-wise schematic", regionName);
+                continue;
+            }
+
+            Map<BlockPos, NBTTagCompound> blockEntityMap = region.getBlockEntityMap();
+            Map<BlockPos, NextTickListEntry> tickMap = region.getBlockTickMap();
+
+            if (blockEntityMap == null || tickMap == null)
+            {
+                MessageDispatcher.error().translate("litematica.message.error.schematic_save.missing_container", regionName);
+                Litematica.logger.error("null map(s) for sub-region '{}' while trying to save chunk-wise schematic", regionName);
+                continue;
+            }
+
+            final BlockPos minCorner = malilib.util.position.PositionUtils.getMinCorner(box.getCorner1(), box.getCorner2());
 
-                        if (entry.position.getY() >= offsetY && entry.position.getY() < structureBB.maxY)
+            // One snapshot per chunk section, so that the worker jobs stay small and even-sized
+            for (int sectionMinY = bb.minY; sectionMinY <= bb.maxY; sectionMinY = (sectionMinY & ~0xF) + 16)
+            {
+                int sectionMaxY = Math.min(bb.maxY, sectionMinY | 0xF);
+                IntBoundingBox sectionBox = new IntBoundingBox(bb.minX, sectionMinY, bb.minZ, bb.maxX, sectionMaxY, bb.maxZ);
+                BlockStateSnapshot snapshot = BlockStateSnapshot.create(world, sectionBox);
+
+                for (int y = sectionMinY; y <= sectionMaxY; ++y)
+                {
+                    for (int z = bb.minZ; z <= bb.maxZ; ++z)
+                    {
+                        for (int x = bb.minX; x <= bb.maxX; ++x)
                         {
-                            // Store the delay, ie. relative time
-                            BlockPos posRelative = new BlockPos(
-                                    entry.position.getX() - minCorner.getX(),
-                                    entry.position.getY() - minCorner.getY(),
-                                    entry.position.getZ() - minCorner.getZ());
-                            NextTickListEntry newEntry = new NextTickListEntry(posRelative, entry.getBlock());
-                            newEntry.setPriority(entry.priority);
-                            newEntry.setScheduledTime(entry.scheduledTime - currentTime);
-
-                            tickMap.put(posRelative, newEntry);
+                            posMutable.setPos(x, y, z);
+                            IBlockState state = snapshot.getBlockState(posMutable);
+
+                            if (state.getBlock().hasTileEntity())
+                            {
+                                // The actual state of these may depend on the BlockEntity, so resolve them here
+                                snapshot.setActualState(posMutable, state.getActualState(world, posMutable));
+                                TileEntity te = world.getTileEntity(posMutable);
+
+                                if (te != null)
+                                {
+                                    BlockPos pos = new BlockPos(x - minCorner.getX(), y - minCorner.getY(), z - minCorner.getZ());
+                                    NBTTagCompound tag = te.writeToNBT(new NBTTagCompound());
+                                    NbtUtils.putVec3i(tag, pos);
+                                    blockEntityMap.put(pos, tag);
+                                }
+                            }
                         }
                     }
                 }
+
+                snapshotConsumer.accept(regionName, snapshot);
+            }
+
+            if (world instanceof WorldServer)
+            {
+                IntBoundingBox structureBB = IntBoundingBox.createProper(
+                        bb.minX    , bb.minY    , bb.minZ    ,
+                        bb.maxX + 1, bb.maxY + 1, bb.maxZ + 1);
+                takeScheduledTicksWithinBox(world, structureBB, minCorner.getY(), minCorner, tickMap);
             }
         }
+    }
 
-        schematic.getMetadata().setTotalBlocks(totalBlocks);
+    private static void takeScheduledTicksWithinBox(World world,
+                                                    IntBoundingBox structureBB,
+                                                    int minY,
+                                                    BlockPos minCorner,
+                                                    Map<BlockPos, NextTickListEntry> tickMap)
+    {
+        List<NextTickListEntry> pendingTicks = world.getPendingBlockUpdates(structureBB.toVanillaBox(), false);
+
+        if (pendingTicks != null)
+        {
+            final int listSize = pendingTicks.size();
+            final long currentTime = world.getTotalWorldTime();
+
+            // The getPendingBlockUpdates() method doesn't check the y-coordinate... :-<
+            for (int i = 0; i < listSize; ++i)
+            {
+                NextTickListEntry entry = pendingTicks.get(i);
+
+                if (entry.position.getY() >= minY && entry.position.getY() < structureBB.maxY)
+                {
+                    // Store the delay, ie. relative time
+                    BlockPos posRelative = new BlockPos(
+                            entry.position.getX() - minCorner.getX(),
+                            entry.position.getY() - minCorner.getY(),
+                            entry.position.getZ() - minCorner.getZ());
+                    NextTickListEntry newEntry = new NextTickListEntry(posRelative, entry.getBlock());
+                    newEntry.setPriority(entry.priority);
+                    newEntry.setScheduledTime(entry.scheduledTime - currentTime);
+
+                    tickMap.put(posRelative, newEntry);
+                }
+            }
+        }
     }
 }
@@ -20,6 +20,7 @@ import net.minecraft.util.Mirror;
 import net.minecraft.util.Rotation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.world.NextTickListEntry;
@@ -398,6 +399,15 @@ public class SchematicPlacingUtils
     }
 
     public static boolean placeToWorldWithinChunk(SchematicPlacement schematicPlacement, ChunkPos chunkPos, World world, ReplaceBehavior replace, boolean notifyNeighbors)
+    {
+        return placeToWorldWithinChunk(schematicPlacement, chunkPos, world, replace, notifyNeighbors, 0, 255);
+    }
+
+    /**
+     * Places the parts of the placement that are within the given chunk and the given y-range
+     */
+    public static boolean placeToWorldWithinChunk(SchematicPlacement schematicPlacement, ChunkPos chunkPos, World world,
+                                                  ReplaceBehavior replace, boolean notifyNeighbors, int minY, int maxY)
     {
         ISchematic schematic = schematicPlacement.getSchematic();
         Set<String> regionsTouchingChunk = PositionUtils.getSubRegionNamesTouchingChunk(chunkPos.x, chunkPos.z, schematicPlacement.getSubRegionBoxes(EnabledCondition.ENABLED));
@@ -424,7 +434,7 @@ public class SchematicPlacingUtils
 
                 if (placement.isEnabled())
                 {
-                    if (placeBlocksWithinChunk(world, chunkPos, regionName, region, origin, schematicPlacement, placement, replace, notifyNeighbors) == false)
+                    if (placeBlocksWithinChunk(world, chunkPos, regionName, region, origin, schematicPlacement, placement, replace, notifyNeighbors, minY, maxY) == false)
                     {
                         allSuccess = false;
                         Litematica.logger.warn("Invalid/missing schematic data in schematic '{}' for sub-region '{}'", schematic.getMetadata().getName(), regionName);
@@ -432,7 +442,7 @@ public class SchematicPlacingUtils
 
                     if (schematicPlacement.ignoreEntities() == false && placement.ignoreEntities() == false)
                     {
-                        placeEntitiesToWorldWithinChunk(world, chunkPos, region, origin, schematicPlacement, placement);
+                        placeEntitiesToWorldWithinChunk(world, chunkPos, region, origin, schematicPlacement, placement, minY, maxY);
                     }
                 }
             }
@@ -447,6 +457,13 @@ public class SchematicPlacingUtils
 
     public static boolean placeBlocksWithinChunk(World world, ChunkPos chunkPos, String regionName, ISchematicRegion region,
                                                  BlockPos origin, SchematicPlacement schematicPlacement, SubRegionPlacement placement, ReplaceBehavior replace, boolean notifyNeighbors)
+    {
+        return placeBlocksWithinChunk(world, chunkPos, regionName, region, origin, schematicPlacement, placement, replace, notifyNeighbors, 0, 255);
+    }
+
+    public static boolean placeBlocksWithinChunk(World world, ChunkPos chunkPos, String regionName, ISchematicRegion region,
+                                                 BlockPos origin, SchematicPlacement schematicPlacement, SubRegionPlacement placement,
+                                                 ReplaceBehavior replace, boolean notifyNeighbors, int minY, int maxY)
     {
         CornerDefinedBox box = schematicPlacement.getSubRegionBox(regionName, EnabledCondition.ENABLED);
         IntBoundingBox bounds = box != null ? PositionUtils.getBoundsWithinChunkForBox(box, chunkPos.x, chunkPos.z) : null;
@@ -491,10 +508,18 @@ public class SchematicPlacingUtils
         final int endX = posMax.getX();
         final int endZ = posMax.getZ();
 
-        final int startY = 0;
-        final int endY = Math.abs(regionSize.getY()) - 1;
+        // The rotations and mirrors are horizontal, so the world y-coordinate is simply offset from the container y-coordinate
+        final int worldYOffset = origin.getY() + posMinRel.getY();
+        final int startY = Math.max(0, minY - worldYOffset);
+        final int endY = Math.min(Math.abs(regionSize.getY()) - 1, maxY - worldYOffset);
         BlockPos.MutableBlockPos posMutable = new BlockPos.MutableBlockPos();
 
+        // Nothing within the requested y-range
+        if (startY > endY)
+        {
+            return true;
+        }
+
         //System.out.printf("sx: %d, sy: %d, sz: %d => ex: %d, ey: %d, ez: %d\n", startX, startY, startZ, endX, endY, endZ);
 
         if (startX < 0 || startZ < 0 || endX >= container.getSize().getX() || endZ >= container.getSize().getZ())
@@ -613,6 +638,17 @@ public class SchematicPlacingUtils
 
     public static void placeEntitiesToWorldWithinChunk(World world, ChunkPos chunkPos, ISchematicRegion region,
                                                        BlockPos origin, SchematicPlacement schematicPlacement, SubRegionPlacement placement)
+    {
+        placeEntitiesToWorldWithinChunk(world, chunkPos, region, origin, schematicPlacement, placement, 0, 255);
+    }
+
+    /**
+     * Places the entities within the given chunk and the given y-range. The entities outside
+     * of the world height are counted to be in the bottom or top section, like in the chunk entity lists.
+     */
+    public static void placeEntitiesToWorldWithinChunk(World world, ChunkPos chunkPos, ISchematicRegion region,
+                                                       BlockPos origin, SchematicPlacement schematicPlacement,
+                                                       SubRegionPlacement placement, int minY, int maxY)
     {
         BlockPos regionPos = placement.getPosition();
         List<EntityInfo> entityList = region.getEntityList();
@@ -655,7 +691,9 @@ public class SchematicPlacingUtils
                 double y = pos.y + offY;
                 double z = pos.z + offZ;
 
-                if (x >= minX && x < maxX && z >= minZ && z < maxZ)
+                int blockY = MathHelper.clamp(MathHelper.floor(y), 0, 255);
+
+                if (x >= minX && x < maxX && z >= minZ && z < maxZ && blockY >= minY && blockY <= maxY)
                 {
                     rotateEntity(entity, x, y, z, rotationCombined, mirrorMain, mirrorSub);
                     //System.out.printf("post: %.1f - rot: %s, mm: %s, ms: %s\n", rotationYaw, rotationCombined, mirrorMain, mirrorSub);
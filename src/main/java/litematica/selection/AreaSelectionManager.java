@@ -28,6 +28,7 @@ import malilib.util.game.wrap.GameUtils;
 import malilib.util.position.PositionUtils;
 import litematica.Litematica;
 import litematica.config.Configs;
+import litematica.data.AsyncJsonFileWriter;
 import litematica.data.DataManager;
 import litematica.gui.MultiRegionModeAreaEditorScreen;
 import litematica.gui.SimpleModeAreaEditorScreen;
@@ -188,7 +189,12 @@ public class AreaSelectionManager
 
         if (el != null && el.isJsonObject())
         {
-            return AreaSelection.fromJson(el.getAsJsonObject());
+            AreaSelection selection = AreaSelection.fromJson(el.getAsJsonObject());
+
+            // Don't write the selection back to the file when saving, if it doesn't get changed
+            AsyncJsonFileWriter.getInstance().markAsWritten(file, selection.toJson());
+
+            return selection;
         }
 
         return null;
@@ -203,12 +209,8 @@ public class AreaSelectionManager
                 this.currentSelectionId = null;
             }
 
-            Path file = Paths.get(selectionId);
-
-            if (Files.exists(file))
-            {
-                FileUtils.delete(file);
-            }
+            // This also cancels any still pending write of the selection
+            AsyncJsonFileWriter.getInstance().deleteFile(Paths.get(selectionId));
 
             return true;
         }
@@ -233,6 +235,9 @@ public class AreaSelectionManager
     {
         Path file = Paths.get(selectionId);
 
+        // The file is moved or copied directly below, so it must have the current data first
+        this.flushSelectionFile(selectionId);
+
         if (Files.isRegularFile(file))
         {
             String newFileName = FileNameUtils.generateSafeFileName(newName);
@@ -335,11 +340,29 @@ public class AreaSelectionManager
         this.selections.put(selectionId, selection);
         this.currentSelectionId = selectionId;
 
-        JsonUtils.writeJsonToFile(selection.toJson(), file);
+        // Written via the writer, so that it's ordered after any pending delete of a previous file with the same name
+        AsyncJsonFileWriter.getInstance().writeIfChanged(file, selection.toJson());
 
         return this.currentSelectionId;
     }
 
+    /**
+     * Queues the write of any unsaved changes of the given selection, and then waits until
+     * all the queued writes and deletes have been done, so that the file can be accessed directly.
+     */
+    protected void flushSelectionFile(String selectionId)
+    {
+        AsyncJsonFileWriter writer = AsyncJsonFileWriter.getInstance();
+        AreaSelection selection = this.selections.get(selectionId);
+
+        if (selection != null)
+        {
+            writer.writeIfChanged(Paths.get(selectionId), selection.toJson());
+        }
+
+        writer.waitForPendingWrites(10000L);
+    }
+
     public boolean createNewSubRegion(boolean printMessage)
     {
         AreaSelection selection = this.getCurrentSelection();
@@ -402,6 +425,10 @@ public class AreaSelectionManager
 
         Path file = dir.resolve(safeName + ".json");
         String selectionId = file.toAbsolutePath().toString();
+
+        // Don't find a file here that is still pending to be deleted
+        this.flushSelectionFile(selectionId);
+
         AreaSelection selection = this.getOrLoadSelectionReadOnly(selectionId);
 
         if (selection == null)
@@ -413,7 +440,7 @@ public class AreaSelectionManager
             this.selections.put(selectionId, selection);
             this.currentSelectionId = selectionId;
 
-            JsonUtils.writeJsonToFile(selection.toJson(), file);
+            AsyncJsonFileWriter.getInstance().writeIfChanged(file, selection.toJson());
 
             return true;
         }
@@ -712,9 +739,11 @@ public class AreaSelectionManager
 
         try
         {
+            AsyncJsonFileWriter writer = AsyncJsonFileWriter.getInstance();
+
             for (Map.Entry<String, AreaSelection> entry : this.selections.entrySet())
             {
-                JsonUtils.writeJsonToFile(entry.getValue().toJson(), Paths.get(entry.getKey()));
+                writer.writeIfChanged(Paths.get(entry.getKey()), entry.getValue().toJson());
             }
         }
         catch (Exception e)
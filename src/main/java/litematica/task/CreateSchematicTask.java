@@ -3,6 +3,7 @@ package litematica.task;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
+import javax.annotation.Nullable;
 import com.google.common.collect.ImmutableMap;
 
 import net.minecraft.util.math.BlockPos;
@@ -10,10 +11,13 @@ import net.minecraft.util.math.ChunkPos;
 
 import malilib.listener.TaskCompletionListener;
 import malilib.overlay.message.MessageDispatcher;
+import malilib.util.StringUtils;
 import malilib.util.position.IntBoundingBox;
+import litematica.config.Configs;
 import litematica.render.infohud.InfoHud;
 import litematica.scheduler.tasks.TaskProcessChunkBase;
 import litematica.schematic.ISchematic;
+import litematica.schematic.util.ParallelSchematicCapture;
 import litematica.schematic.util.SchematicCreationUtils;
 import litematica.selection.AreaSelection;
 import litematica.selection.SelectionBox;
@@ -26,6 +30,7 @@ public class CreateSchematicTask extends TaskProcessChunkBase
     protected final ISchematic schematic;
     protected final BlockPos origin;
     protected final boolean ignoreEntities;
+    @Nullable protected final ParallelSchematicCapture parallelCapture;
 
     public CreateSchematicTask(ISchematic schematic,
                                AreaSelection area,
@@ -40,10 +45,52 @@ public class CreateSchematicTask extends TaskProcessChunkBase
         this.subRegions = area.getAllSelectionBoxesMap();
         this.setCompletionListener(listener);
 
+        // The parallel mode relies on the world not changing while the snapshots are taken,
+        // which is only guaranteed when running on the integrated server's thread
+        if (Configs.Generic.PARALLEL_SCHEMATIC_SAVE.getBooleanValue() && this.isClientWorld == false)
+        {
+            this.parallelCapture = new ParallelSchematicCapture(schematic, this.subRegions);
+        }
+        else
+        {
+            this.parallelCapture = null;
+        }
+
         this.addPerChunkBoxes(area.getAllSelectionBoxes());
         this.updateInfoHudLinesMissingChunks(this.requiredChunks);
     }
 
+    @Override
+    public boolean execute()
+    {
+        boolean allChunksProcessed = super.execute();
+
+        if (this.parallelCapture != null)
+        {
+            if (this.parallelCapture.stitchCompletedSlices() > 0 || allChunksProcessed)
+            {
+                this.updateInfoHudLinesParallel();
+            }
+
+            this.finished = allChunksProcessed && this.parallelCapture.isDone();
+        }
+
+        return this.finished;
+    }
+
+    protected void updateInfoHudLinesParallel()
+    {
+        this.updateInfoHudLinesMissingChunks(this.requiredChunks);
+
+        int pending = this.parallelCapture.getPendingSliceCount();
+
+        if (pending > 0)
+        {
+            this.infoHudLines.add(StringUtils.translate("litematica.hud.save_schematic.parallel_slices", this.name,
+                                                        pending, this.parallelCapture.getStitchedSliceCount()));
+        }
+    }
+
     @Override
     protected boolean canProcessChunk(ChunkPos pos)
     {
@@ -54,7 +101,15 @@ public class CreateSchematicTask extends TaskProcessChunkBase
     protected boolean processChunk(ChunkPos pos)
     {
         ImmutableMap<String, IntBoundingBox> volumes = PositionUtils.getBoxesWithinChunk(pos.x, pos.z, this.subRegions);
-        SchematicCreationUtils.takeBlocksFromWorldWithinChunk(this.schematic, this.world, volumes, this.subRegions);
+
+        if (this.parallelCapture != null)
+        {
+            this.parallelCapture.captureChunk(this.world, volumes);
+        }
+        else
+        {
+            SchematicCreationUtils.takeBlocksFromWorldWithinChunk(this.schematic, this.world, volumes, this.subRegions);
+        }
 
         if (this.ignoreEntities == false)
         {
@@ -70,8 +125,18 @@ public class CreateSchematicTask extends TaskProcessChunkBase
     {
         if (this.finished == false)
         {
+            if (this.parallelCapture != null)
+            {
+                this.parallelCapture.cancel();
+            }
+
             MessageDispatcher.warning().translate("litematica.message.error.schematic_save_interrupted");
         }
+        else if (this.parallelCapture != null && this.parallelCapture.getFailedSliceCount() > 0)
+        {
+            MessageDispatcher.warning().translate("litematica.message.warn.schematic_save.parallel_failed_slices",
+                                                  this.parallelCapture.getFailedSliceCount());
+        }
 
         InfoHud.getInstance().removeInfoHudRenderer(this, false);
 
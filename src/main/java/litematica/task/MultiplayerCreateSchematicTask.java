@@ -6,11 +6,15 @@ import java.util.List;
 import java.util.UUID;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 
 import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTUtil;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
@@ -31,6 +35,8 @@ import litematica.schematic.LitematicaSchematic;
 import litematica.schematic.SchematicBase;
 import litematica.schematic.SchematicMetadata;
 import litematica.schematic.SchematicType;
+import litematica.schematic.container.ILitematicaBlockStateContainer;
+import litematica.schematic.container.LitematicaBitArray;
 import litematica.schematic.container.LitematicaBlockStateContainerFull;
 import litematica.schematic.util.SchematicCreationUtils;
 import litematica.selection.AreaSelection;
@@ -39,14 +45,31 @@ import litematica.util.PositionUtils;
 
 public class MultiplayerCreateSchematicTask extends TaskBase
 {
+    protected static final long PIECE_TIMEOUT_MS = 5000L;
+    protected static final int MAX_MISSING_PIECES_PER_REQUEST = 256;
+
     protected final UUID taskId;
     protected final Consumer<ISchematic> schematicConsumer;
     protected final LitematicaSchematic schematic;
     protected final String selectionName;
+    protected final boolean perChunk;
+    protected final IntOpenHashSet receivedPieces = new IntOpenHashSet();
+    protected int contiguousReceivedPieces;
+    protected int highestReceivedPiece = -1;
+    protected int totalPieces = -1;
+    protected long lastProgressTime;
+    protected boolean hasUnacknowledgedPieces;
 
     public MultiplayerCreateSchematicTask(AreaSelection selection, UUID taskId, Consumer<ISchematic> schematicConsumer)
+    {
+        this(selection, taskId, false, schematicConsumer);
+    }
+
+    public MultiplayerCreateSchematicTask(AreaSelection selection, UUID taskId, boolean perChunk, Consumer<ISchematic> schematicConsumer)
     {
         this.taskId = taskId;
+        this.perChunk = perChunk;
+        this.lastProgressTime = System.currentTimeMillis();
         this.schematicConsumer = schematicConsumer;
         this.schematic = SchematicType.LITEMATICA.createSchematic(null);
         this.selectionName = selection.getName();
@@ -67,6 +90,28 @@ public class MultiplayerCreateSchematicTask extends TaskBase
 
     @Override
     public boolean execute()
+    {
+        if (this.perChunk && this.finished == false)
+        {
+            long currentTime = System.currentTimeMillis();
+            boolean stalled = currentTime - this.lastProgressTime > PIECE_TIMEOUT_MS;
+
+            if (this.hasUnacknowledgedPieces || stalled)
+            {
+                this.sendAcknowledgement(stalled);
+                this.hasUnacknowledgedPieces = false;
+
+                if (stalled)
+                {
+                    this.lastProgressTime = currentTime;
+                }
+            }
+        }
+
+        return this.finished;
+    }
+
+    public boolean isFinished()
     {
         return this.finished;
     }
@@ -102,6 +147,15 @@ public class MultiplayerCreateSchematicTask extends TaskBase
             this.onSchematicComplete();
         }
         else if (saveMethod.equals("PerChunk"))
+        {
+            this.readPerChunkPiece(tag, regionsTag);
+        }
+    }
+
+    protected void readPerChunkPiece(NBTTagCompound tag, NBTTagCompound regionsTag)
+    {
+        // Un-numbered pieces, there is no way to detect dropped or re-sent pieces
+        if (NbtWrap.containsInt(tag, "Piece") == false)
         {
             this.readRegions(regionsTag, this::readPerChunkPieceOfRegion);
 
@@ -109,9 +163,107 @@ public class MultiplayerCreateSchematicTask extends TaskBase
             {
                 this.onSchematicComplete();
             }
+
+            return;
+        }
+
+        int piece = NbtWrap.getInt(tag, "Piece");
+
+        if (NbtWrap.containsInt(tag, "TotalPieces"))
+        {
+            this.totalPieces = NbtWrap.getInt(tag, "TotalPieces");
+        }
+
+        // A re-sent piece that was already received earlier
+        if (piece < 0 || this.receivedPieces.add(piece) == false)
+        {
+            return;
+        }
+
+        this.readRegions(regionsTag, this::readPerChunkPieceOfRegion);
+
+        this.highestReceivedPiece = Math.max(this.highestReceivedPiece, piece);
+        this.lastProgressTime = System.currentTimeMillis();
+        this.hasUnacknowledgedPieces = true;
+
+        while (this.receivedPieces.contains(this.contiguousReceivedPieces))
+        {
+            ++this.contiguousReceivedPieces;
+        }
+
+        this.updatePerChunkInfoHudLines();
+
+        if (this.totalPieces >= 0 && this.contiguousReceivedPieces >= this.totalPieces)
+        {
+            this.sendAcknowledgement(false);
+            this.onPerChunkSchematicComplete();
         }
     }
 
+    protected void sendAcknowledgement(boolean requestMissingPieces)
+    {
+        IntArrayList missingPieces = new IntArrayList();
+
+        if (requestMissingPieces)
+        {
+            int lastPiece = this.totalPieces >= 0 ? this.totalPieces - 1 : this.highestReceivedPiece;
+
+            for (int piece = this.contiguousReceivedPieces;
+                 piece <= lastPiece && missingPieces.size() < MAX_MISSING_PIECES_PER_REQUEST; ++piece)
+            {
+                if (this.receivedPieces.contains(piece) == false)
+                {
+                    missingPieces.add(piece);
+                }
+            }
+        }
+
+        SchematicSavePacketHandler.INSTANCE.sendPerChunkAcknowledgement(this.taskId, this.contiguousReceivedPieces,
+                                                                        SchematicSavePacketHandler.PER_CHUNK_WINDOW,
+                                                                        missingPieces);
+    }
+
+    protected void onPerChunkSchematicComplete()
+    {
+        long totalBlocks = 0;
+
+        for (String regionName : this.schematic.getRegionNames())
+        {
+            LitematicaSchematic.LitematicaSubRegion region = this.schematic.getSchematicRegion(regionName);
+
+            if (region == null)
+            {
+                continue;
+            }
+
+            ILitematicaBlockStateContainer container = region.getBlockStateContainer();
+
+            // No block data was received for this region at all
+            if (container == null)
+            {
+                Vec3i size = region.getSize();
+                size = new Vec3i(Math.abs(size.getX()), Math.abs(size.getY()), Math.abs(size.getZ()));
+                region.setBlockStateContainer(new LitematicaBlockStateContainerFull(size));
+            }
+            else
+            {
+                totalBlocks += container.getTotalBlockCount();
+            }
+        }
+
+        this.schematic.getMetadata().setTotalBlocks(totalBlocks);
+        this.onSchematicComplete();
+    }
+
+    protected void updatePerChunkInfoHudLines()
+    {
+        List<String> lines = new ArrayList<>();
+        String total = this.totalPieces >= 0 ? String.valueOf(this.totalPieces) : "?";
+        lines.add(StringUtils.translate("litematica.hud.save_schematic.server_side.pieces",
+                                        this.receivedPieces.size(), total));
+        this.infoHudLines = lines;
+    }
+
     protected void onSchematicComplete()
     {
         SchematicCreationUtils.setSchematicMetadataOnCreation(this.schematic, this.selectionName);
@@ -150,8 +302,7 @@ public class MultiplayerCreateSchematicTask extends TaskBase
 
         if (region != null)
         {
-            // TODO blocks
-            //this.readBlocks(regionTag, region::setBlockStateContainer);
+            this.readBlocksPiece(regionTag, region);
             this.readBlockEntities(regionTag, map -> region.getBlockEntityMap().putAll(map));
             this.readEntities(regionTag, list -> region.getEntityList().addAll(list));
             this.readScheduledTicks(regionTag, "BlockTicks", map -> region.getBlockTickMap().putAll(map));
@@ -215,6 +366,115 @@ public class MultiplayerCreateSchematicTask extends TaskBase
         MessageDispatcher.error("litematica.message.error.schematic_save.server_side.missing_tags_in_block_data");
     }
 
+    /**
+     * Decodes one chunk slice of block data straight into the region's container
+     */
+    protected void readBlocksPiece(NBTTagCompound regionTag, LitematicaSchematic.LitematicaSubRegion region)
+    {
+        if (NbtWrap.containsCompound(regionTag, "Blocks") == false)
+        {
+            return;
+        }
+
+        NBTTagCompound blocksTag = NbtWrap.getCompound(regionTag, "Blocks");
+
+        if (NbtWrap.containsList(blocksTag, "BlockStatePalette") == false ||
+            NbtWrap.containsLongArray(blocksTag, "BlockStates") == false ||
+            NbtWrap.containsInt(blocksTag, "sizeX") == false ||
+            NbtWrap.containsInt(blocksTag, "sizeY") == false ||
+            NbtWrap.containsInt(blocksTag, "sizeZ") == false)
+        {
+            MessageDispatcher.error("litematica.message.error.schematic_save.server_side.missing_tags_in_block_data");
+            return;
+        }
+
+        Vec3i regionSize = region.getSize();
+        Vec3i containerSize = new Vec3i(Math.abs(regionSize.getX()), Math.abs(regionSize.getY()), Math.abs(regionSize.getZ()));
+        Vec3i size = new Vec3i(NbtWrap.getInt(blocksTag, "sizeX"),
+                               NbtWrap.getInt(blocksTag, "sizeY"),
+                               NbtWrap.getInt(blocksTag, "sizeZ"));
+        int x = NbtWrap.getInt(blocksTag, "x");
+        int y = NbtWrap.getInt(blocksTag, "y");
+        int z = NbtWrap.getInt(blocksTag, "z");
+
+        if (size.getX() <= 0 || size.getY() <= 0 || size.getZ() <= 0 ||
+            x < 0 || y < 0 || z < 0 ||
+            x + size.getX() > containerSize.getX() ||
+            y + size.getY() > containerSize.getY() ||
+            z + size.getZ() > containerSize.getZ())
+        {
+            MessageDispatcher.error("litematica.message.error.schematic_save.server_side.invalid_region_size", size);
+            return;
+        }
+
+        ILitematicaBlockStateContainer container = region.getBlockStateContainer();
+
+        if ((container instanceof LitematicaBlockStateContainerFull) == false)
+        {
+            container = new LitematicaBlockStateContainerFull(containerSize);
+            region.setBlockStateContainer((LitematicaBlockStateContainerFull) container);
+        }
+
+        NBTTagList paletteTag = NbtWrap.getListOfCompounds(blocksTag, "BlockStatePalette");
+        final int paletteSize = NbtWrap.getListSize(paletteTag);
+
+        if (paletteSize == 0)
+        {
+            MessageDispatcher.error("litematica.message.error.schematic_save.server_side.invalid_data");
+            return;
+        }
+
+        List<IBlockState> palette = new ArrayList<>(paletteSize);
+
+        for (int i = 0; i < paletteSize; ++i)
+        {
+            palette.add(NBTUtil.readBlockState(NbtWrap.getCompoundAt(paletteTag, i)));
+        }
+
+        NBTBase nbtBase = NbtWrap.getTag(blocksTag, "BlockStates");
+        long[] blockStateArr = ((NBTTagLongArrayMixin) nbtBase).getArray();
+        int bits = Math.max(2, Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1));
+        long volume = (long) size.getX() * (long) size.getY() * (long) size.getZ();
+
+        if ((long) blockStateArr.length * 64L < volume * bits)
+        {
+            MessageDispatcher.error("litematica.message.error.schematic_save.server_side.invalid_data");
+            return;
+        }
+
+        LitematicaBitArray data = new LitematicaBitArray(bits, volume, blockStateArr);
+
+        if (areAllIdsInPalette(data, volume, paletteSize) == false)
+        {
+            MessageDispatcher.error("litematica.message.error.schematic_save.server_side.invalid_data");
+            return;
+        }
+
+        ((LitematicaBlockStateContainerFull) container).setBlockStates(x, y, z, size, palette, data);
+    }
+
+    /**
+     * @return true if all the packed IDs in the data refer to an entry in the palette
+     */
+    protected static boolean areAllIdsInPalette(LitematicaBitArray data, long volume, int paletteSize)
+    {
+        // All the values that fit in the bits are valid IDs
+        if (paletteSize >= (1 << data.getBitsPerEntry()))
+        {
+            return true;
+        }
+
+        for (long i = 0; i < volume; ++i)
+        {
+            if (data.getAt(i) >= paletteSize)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     protected void readBlockEntities(NBTTagCompound regionTag, Consumer<HashMap<BlockPos, NBTTagCompound>> consumer)
     {
         if (NbtWrap.containsList(regionTag, "BlockEntities"))
@@ -0,0 +1,544 @@
+package litematica.util;
+
+import java.util.Arrays;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import net.minecraft.util.math.Vec3d;
+
+import malilib.util.position.IntBoundingBox;
+
+/**
+ * A dynamic bounding volume hierarchy of integer block boxes, with incremental
+ * insertion and removal. The tree is kept balanced with AVL style rotations,
+ * and new leaves are inserted where they grow the tree's surface area the least.
+ * The nodes are stored in parallel arrays, and freed nodes are reused.
+ * This is not thread safe, and the queries are not re-entrant.
+ * @param <T> the type of the values stored with the boxes
+ */
+public class BoxTree<T>
+{
+    private static final int NULL = -1;
+
+    private int[] minX = new int[16];
+    private int[] minY = new int[16];
+    private int[] minZ = new int[16];
+    private int[] maxX = new int[16];
+    private int[] maxY = new int[16];
+    private int[] maxZ = new int[16];
+    private int[] parent = new int[16];
+    private int[] child1 = new int[16];
+    private int[] child2 = new int[16];
+    private int[] height = new int[16];
+    private Object[] values = new Object[16];
+    private final IntArrayList stack = new IntArrayList();
+    private int root = NULL;
+    private int freeList = NULL;
+    private int nodeCount;
+    private int leafCount;
+
+    public BoxTree()
+    {
+        this.clear();
+    }
+
+    public int size()
+    {
+        return this.leafCount;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.leafCount == 0;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.values, null);
+        this.root = NULL;
+        this.nodeCount = 0;
+        this.leafCount = 0;
+        this.freeList = NULL;
+    }
+
+    /**
+     * Adds the given box to the tree
+     * @return the id of the leaf node, which is needed for removing the box
+     */
+    public int insert(IntBoundingBox box, T value)
+    {
+        int leaf = this.allocateNode();
+
+        this.minX[leaf] = box.minX;
+        this.minY[leaf] = box.minY;
+        this.minZ[leaf] = box.minZ;
+        this.maxX[leaf] = box.maxX;
+        this.maxY[leaf] = box.maxY;
+        this.maxZ[leaf] = box.maxZ;
+        this.values[leaf] = value;
+        this.height[leaf] = 0;
+
+        this.insertLeaf(leaf);
+        ++this.leafCount;
+
+        return leaf;
+    }
+
+    public void remove(int leaf)
+    {
+        if (leaf < 0 || leaf >= this.nodeCount || this.height[leaf] != 0 || this.values[leaf] == null)
+        {
+            return;
+        }
+
+        this.removeLeaf(leaf);
+        this.freeNode(leaf);
+        --this.leafCount;
+    }
+
+    /**
+     * Visits all the stored boxes that intersect the given box. The given bounds are inclusive.
+     * @return false if the visitor stopped the query early
+     */
+    public boolean query(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Visitor<T> visitor)
+    {
+        IntArrayList stack = this.stack;
+        stack.clear();
+
+        if (this.root != NULL)
+        {
+            stack.push(this.root);
+        }
+
+        while (stack.isEmpty() == false)
+        {
+            int node = stack.popInt();
+
+            if (this.maxX[node] < minX || this.minX[node] > maxX ||
+                this.maxY[node] < minY || this.minY[node] > maxY ||
+                this.maxZ[node] < minZ || this.minZ[node] > maxZ)
+            {
+                continue;
+            }
+
+            if (this.height[node] == 0)
+            {
+                if (visitor.visit(this.getValue(node)) == false)
+                {
+                    return false;
+                }
+            }
+            else
+            {
+                stack.push(this.child1[node]);
+                stack.push(this.child2[node]);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Visits all the stored boxes that the line segment from start to end passes through.
+     * The boxes are treated as covering their whole blocks, ie. from min to max + 1.
+     * The boxes are not visited in any particular order.
+     * @return false if the visitor stopped the query early
+     */
+    public boolean queryRay(Vec3d start, Vec3d end, Visitor<T> visitor)
+    {
+        IntArrayList stack = this.stack;
+        stack.clear();
+
+        if (this.root != NULL)
+        {
+            stack.push(this.root);
+        }
+
+        final double dx = end.x - start.x;
+        final double dy = end.y - start.y;
+        final double dz = end.z - start.z;
+
+        while (stack.isEmpty() == false)
+        {
+            int node = stack.popInt();
+
+            if (segmentIntersects(start.x, start.y, start.z, dx, dy, dz,
+                                  this.minX[node], this.minY[node], this.minZ[node],
+                                  this.maxX[node] + 1, this.maxY[node] + 1, this.maxZ[node] + 1) == false)
+            {
+                continue;
+            }
+
+            if (this.height[node] == 0)
+            {
+                if (visitor.visit(this.getValue(node)) == false)
+                {
+                    return false;
+                }
+            }
+            else
+            {
+                stack.push(this.child1[node]);
+                stack.push(this.child2[node]);
+            }
+        }
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getValue(int node)
+    {
+        return (T) this.values[node];
+    }
+
+    /**
+     * Slab test of the segment start + t * delta, t in [0, 1], against the given box
+     */
+    private static boolean segmentIntersects(double sx, double sy, double sz, double dx, double dy, double dz,
+                                             double minX, double minY, double minZ,
+                                             double maxX, double maxY, double maxZ)
+    {
+        double tMin = 0.0;
+        double tMax = 1.0;
+
+        for (int axis = 0; axis < 3; ++axis)
+        {
+            double s = axis == 0 ? sx : (axis == 1 ? sy : sz);
+            double d = axis == 0 ? dx : (axis == 1 ? dy : dz);
+            double min = axis == 0 ? minX : (axis == 1 ? minY : minZ);
+            double max = axis == 0 ? maxX : (axis == 1 ? maxY : maxZ);
+
+            if (Math.abs(d) < 1.0E-9)
+            {
+                if (s < min || s > max)
+                {
+                    return false;
+                }
+            }
+            else
+            {
+                double t1 = (min - s) / d;
+                double t2 = (max - s) / d;
+
+                if (t1 > t2)
+                {
+                    double tmp = t1;
+                    t1 = t2;
+                    t2 = tmp;
+                }
+
+                tMin = Math.max(tMin, t1);
+                tMax = Math.min(tMax, t2);
+
+                if (tMin > tMax)
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private int allocateNode()
+    {
+        if (this.freeList != NULL)
+        {
+            int node = this.freeList;
+            this.freeList = this.parent[node];
+            this.parent[node] = NULL;
+            this.child1[node] = NULL;
+            this.child2[node] = NULL;
+            return node;
+        }
+
+        if (this.nodeCount == this.parent.length)
+        {
+            int newLength = this.parent.length * 2;
+            this.minX = Arrays.copyOf(this.minX, newLength);
+            this.minY = Arrays.copyOf(this.minY, newLength);
+            this.minZ = Arrays.copyOf(this.minZ, newLength);
+            this.maxX = Arrays.copyOf(this.maxX, newLength);
+            this.maxY = Arrays.copyOf(this.maxY, newLength);
+            this.maxZ = Arrays.copyOf(this.maxZ, newLength);
+            this.parent = Arrays.copyOf(this.parent, newLength);
+            this.child1 = Arrays.copyOf(this.child1, newLength);
+            this.child2 = Arrays.copyOf(this.child2, newLength);
+            this.height = Arrays.copyOf(this.height, newLength);
+            this.values = Arrays.copyOf(this.values, newLength);
+        }
+
+        int node = this.nodeCount++;
+        this.parent[node] = NULL;
+        this.child1[node] = NULL;
+        this.child2[node] = NULL;
+
+        return node;
+    }
+
+    private void freeNode(int node)
+    {
+        this.values[node] = null;
+        this.height[node] = -1;
+        this.parent[node] = this.freeList;
+        this.freeList = node;
+    }
+
+    private static long surfaceArea(long sizeX, long sizeY, long sizeZ)
+    {
+        return 2L * (sizeX * sizeY + sizeY * sizeZ + sizeZ * sizeX);
+    }
+
+    private long area(int node)
+    {
+        return surfaceArea((long) this.maxX[node] - this.minX[node] + 1,
+                           (long) this.maxY[node] - this.minY[node] + 1,
+                           (long) this.maxZ[node] - this.minZ[node] + 1);
+    }
+
+    private long combinedArea(int node1, int node2)
+    {
+        return surfaceArea((long) Math.max(this.maxX[node1], this.maxX[node2]) - Math.min(this.minX[node1], this.minX[node2]) + 1,
+                           (long) Math.max(this.maxY[node1], this.maxY[node2]) - Math.min(this.minY[node1], this.minY[node2]) + 1,
+                           (long) Math.max(this.maxZ[node1], this.maxZ[node2]) - Math.min(this.minZ[node1], this.minZ[node2]) + 1);
+    }
+
+    private void setCombinedBox(int node, int node1, int node2)
+    {
+        this.minX[node] = Math.min(this.minX[node1], this.minX[node2]);
+        this.minY[node] = Math.min(this.minY[node1], this.minY[node2]);
+        this.minZ[node] = Math.min(this.minZ[node1], this.minZ[node2]);
+        this.maxX[node] = Math.max(this.maxX[node1], this.maxX[node2]);
+        this.maxY[node] = Math.max(this.maxY[node1], this.maxY[node2]);
+        this.maxZ[node] = Math.max(this.maxZ[node1], this.maxZ[node2]);
+    }
+
+    private void insertLeaf(int leaf)
+    {
+        if (this.root == NULL)
+        {
+            this.root = leaf;
+            this.parent[leaf] = NULL;
+            return;
+        }
+
+        // Find the best sibling, by descending to the child with the lowest cost increase
+        int index = this.root;
+
+        while (this.height[index] != 0)
+        {
+            int c1 = this.child1[index];
+            int c2 = this.child2[index];
+            long area = this.area(index);
+            long combinedArea = this.combinedArea(index, leaf);
+
+            // Cost of creating a new parent for this node and the new leaf
+            long cost = 2L * combinedArea;
+
+            // Minimum cost of pushing the leaf further down the tree
+            long inheritanceCost = 2L * (combinedArea - area);
+
+            long cost1 = this.getDescendCost(c1, leaf, inheritanceCost);
+            long cost2 = this.getDescendCost(c2, leaf, inheritanceCost);
+
+            if (cost < cost1 && cost < cost2)
+            {
+                break;
+            }
+
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = this.parent[sibling];
+        int newParent = this.allocateNode();
+
+        this.parent[newParent] = oldParent;
+        this.values[newParent] = null;
+        this.height[newParent] = this.height[sibling] + 1;
+        this.setCombinedBox(newParent, sibling, leaf);
+
+        if (oldParent != NULL)
+        {
+            if (this.child1[oldParent] == sibling)
+            {
+                this.child1[oldParent] = newParent;
+            }
+            else
+            {
+                this.child2[oldParent] = newParent;
+            }
+        }
+        else
+        {
+            this.root = newParent;
+        }
+
+        this.child1[newParent] = sibling;
+        this.child2[newParent] = leaf;
+        this.parent[sibling] = newParent;
+        this.parent[leaf] = newParent;
+
+        this.refitAncestors(this.parent[leaf]);
+    }
+
+    private long getDescendCost(int child, int leaf, long inheritanceCost)
+    {
+        long combined = this.combinedArea(child, leaf);
+
+        if (this.height[child] == 0)
+        {
+            return combined + inheritanceCost;
+        }
+
+        return combined - this.area(child) + inheritanceCost;
+    }
+
+    private void removeLeaf(int leaf)
+    {
+        if (leaf == this.root)
+        {
+            this.root = NULL;
+            return;
+        }
+
+        int parent = this.parent[leaf];
+        int grandParent = this.parent[parent];
+        int sibling = this.child1[parent] == leaf ? this.child2[parent] : this.child1[parent];
+
+        if (grandParent != NULL)
+        {
+            // Destroy the parent and connect the sibling to the grandparent
+            if (this.child1[grandParent] == parent)
+            {
+                this.child1[grandParent] = sibling;
+            }
+            else
+            {
+                this.child2[grandParent] = sibling;
+            }
+
+            this.parent[sibling] = grandParent;
+            this.freeNode(parent);
+            this.refitAncestors(grandParent);
+        }
+        else
+        {
+            this.root = sibling;
+            this.parent[sibling] = NULL;
+            this.freeNode(parent);
+        }
+    }
+
+    private void refitAncestors(int index)
+    {
+        while (index != NULL)
+        {
+            index = this.balance(index);
+
+            int c1 = this.child1[index];
+            int c2 = this.child2[index];
+
+            this.height[index] = 1 + Math.max(this.height[c1], this.height[c2]);
+            this.setCombinedBox(index, c1, c2);
+
+            index = this.parent[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if the node is imbalanced
+     * @return the new root of the sub-tree
+     */
+    private int balance(int a)
+    {
+        if (this.height[a] < 2)
+        {
+            return a;
+        }
+
+        int b = this.child1[a];
+        int c = this.child2[a];
+        int balance = this.height[c] - this.height[b];
+
+        if (balance > 1)
+        {
+            return this.rotate(a, c, b, true);
+        }
+
+        if (balance < -1)
+        {
+            return this.rotate(a, b, c, false);
+        }
+
+        return a;
+    }
+
+    /**
+     * Rotates the taller child "up" to replace the node a
+     * @param up the taller child of a
+     * @param other the other child of a
+     * @param upIsChild2 whether the up node is the child2 of a
+     */
+    private int rotate(int a, int up, int other, boolean upIsChild2)
+    {
+        int f = this.child1[up];
+        int g = this.child2[up];
+
+        // Swap a and up
+        this.child1[up] = a;
+        this.parent[up] = this.parent[a];
+        this.parent[a] = up;
+
+        // a's old parent should point to up
+        int upParent = this.parent[up];
+
+        if (upParent != NULL)
+        {
+            if (this.child1[upParent] == a)
+            {
+                this.child1[upParent] = up;
+            }
+            else
+            {
+                this.child2[upParent] = up;
+            }
+        }
+        else
+        {
+            this.root = up;
+        }
+
+        // Keep the taller grandchild under up, and move the shorter one under a
+        int keep = this.height[f] > this.height[g] ? f : g;
+        int move = keep == f ? g : f;
+
+        this.child2[up] = keep;
+
+        if (upIsChild2)
+        {
+            this.child2[a] = move;
+        }
+        else
+        {
+            this.child1[a] = move;
+        }
+
+        this.parent[move] = a;
+        this.setCombinedBox(a, other, move);
+        this.height[a] = 1 + Math.max(this.height[other], this.height[move]);
+
+        this.setCombinedBox(up, a, keep);
+        this.height[up] = 1 + Math.max(this.height[a], this.height[keep]);
+
+        return up;
+    }
+
+    public interface Visitor<T>
+    {
+        /**
+         * @return true to continue the query, false to stop it
+         */
+        boolean visit(T value);
+    }
+}
@@ -0,0 +1,421 @@
+package litematica.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import net.minecraft.block.BlockSlab;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.IBlockAccess;
+
+import malilib.util.position.HitPosition;
+
+/**
+ * A plan of the pending block placements within an area around the player.
+ * For each schematic position that is still missing its block in the client world,
+ * the required item and an adjacent click position (support block) are precomputed,
+ * so that the click time handling only needs a hash lookup.
+ * The plan is kept up to date incrementally, by re-evaluating only the positions
+ * that have been marked as changed by the block change events, or that have newly entered the area.
+ * This class only accesses the worlds given to {@link #update(IBlockAccess, IBlockAccess, BlockPos, int, int)},
+ * so it can be used with any world implementation.
+ */
+public class EasyPlacePlan
+{
+    private static final EnumFacing[] ALL_DIRECTIONS = malilib.util.position.PositionUtils.ALL_DIRECTIONS;
+
+    protected final Long2ObjectOpenHashMap<Action> actions = new Long2ObjectOpenHashMap<>();
+    protected final LongLinkedOpenHashSet dirtyPositions = new LongLinkedOpenHashSet();
+    protected final Function<IBlockState, ItemStack> requiredItemFunction;
+    protected final List<Action> orderedActions = new ArrayList<>();
+    @Nullable protected IBlockAccess worldSchematic;
+    @Nullable protected IBlockAccess worldClient;
+    @Nullable protected BlockPos center;
+    protected int radius;
+    protected boolean orderDirty;
+
+    /**
+     * @param requiredItemFunction the function that returns the item required to place the given state
+     */
+    public EasyPlacePlan(Function<IBlockState, ItemStack> requiredItemFunction)
+    {
+        this.requiredItemFunction = requiredItemFunction;
+    }
+
+    /**
+     * Updates the plan for the given area. If the worlds are different from the previous call,
+     * then the entire plan is re-built. Otherwise only the positions that were marked as changed
+     * or that have entered the area are re-evaluated.
+     * @param maxPositions the maximum number of positions to re-evaluate during this call
+     */
+    public void update(IBlockAccess worldSchematic, IBlockAccess worldClient, BlockPos center, int radius, int maxPositions)
+    {
+        if (worldSchematic != this.worldSchematic || worldClient != this.worldClient)
+        {
+            this.clear();
+            this.worldSchematic = worldSchematic;
+            this.worldClient = worldClient;
+        }
+
+        if (center.equals(this.center) == false || radius != this.radius)
+        {
+            this.moveArea(center, radius);
+        }
+
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        // Updating a position may mark its neighbors as dirty, so don't use an iterator here
+        for (int count = 0; count < maxPositions && this.dirtyPositions.isEmpty() == false; ++count)
+        {
+            long posLong = this.dirtyPositions.removeFirstLong();
+
+            PositionUtils.unpackPos(posLong, pos);
+
+            // The area may have moved since the position was marked
+            if (this.isWithinArea(pos))
+            {
+                this.updatePosition(pos, posLong);
+            }
+        }
+    }
+
+    /**
+     * Marks the given position and its neighbors for re-evaluation,
+     * as the change may also add or remove a support block for the neighbors
+     */
+    public void onBlockChanged(BlockPos pos)
+    {
+        this.markDirty(pos.getX(), pos.getY(), pos.getZ());
+
+        for (EnumFacing side : PositionUtils.FACING_ALL)
+        {
+            this.markDirty(pos.getX() + side.getXOffset(), pos.getY() + side.getYOffset(), pos.getZ() + side.getZOffset());
+        }
+    }
+
+    /**
+     * Marks all the positions within the given box for re-evaluation.
+     * This is used when the schematic world changes, for example when a placement
+     * is moved or the schematic is edited, as those don't cause client block updates.
+     */
+    public void onAreaChanged(int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        BlockPos center = this.center;
+
+        if (center == null)
+        {
+            return;
+        }
+
+        minX = Math.max(minX, center.getX() - this.radius);
+        minY = Math.max(minY, Math.max(0, center.getY() - this.radius));
+        minZ = Math.max(minZ, center.getZ() - this.radius);
+        maxX = Math.min(maxX, center.getX() + this.radius);
+        maxY = Math.min(maxY, Math.min(255, center.getY() + this.radius));
+        maxZ = Math.min(maxZ, center.getZ() + this.radius);
+
+        for (int y = minY; y <= maxY; ++y)
+        {
+            for (int z = minZ; z <= maxZ; ++z)
+            {
+                for (int x = minX; x <= maxX; ++x)
+                {
+                    this.dirtyPositions.add(PositionUtils.packPos(x, y, z));
+                }
+            }
+        }
+    }
+
+    @Nullable
+    public Action getAction(BlockPos pos)
+    {
+        return this.actions.get(pos.toLong());
+    }
+
+    /**
+     * @return the planned action for the given position, if the schematic and client states
+     *         still match the ones the action was planned for
+     */
+    @Nullable
+    public Action getAction(BlockPos pos, IBlockState stateSchematic, IBlockState stateClient)
+    {
+        Action action = this.actions.get(pos.toLong());
+
+        if (action != null && action.stateSchematic == stateSchematic && action.stateClient == stateClient)
+        {
+            return action;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return all the planned actions, with the ones that can be placed right away first,
+     *         ordered from the bottom up and then by the distance from the center of the area
+     */
+    public List<Action> getOrderedActions()
+    {
+        if (this.orderDirty)
+        {
+            BlockPos center = this.center != null ? this.center : BlockPos.ORIGIN;
+
+            this.orderedActions.clear();
+            this.orderedActions.addAll(this.actions.values());
+            this.orderedActions.sort(Comparator.comparing((Action a) -> a.supportPending)
+                                               .thenComparingInt(a -> a.pos.getY())
+                                               .thenComparingDouble(a -> a.pos.distanceSq(center)));
+            this.orderDirty = false;
+        }
+
+        return this.orderedActions;
+    }
+
+    public int getActionCount()
+    {
+        return this.actions.size();
+    }
+
+    public boolean hasPendingUpdates()
+    {
+        return this.dirtyPositions.isEmpty() == false;
+    }
+
+    public void clear()
+    {
+        this.actions.clear();
+        this.dirtyPositions.clear();
+        this.orderedActions.clear();
+        this.worldSchematic = null;
+        this.worldClient = null;
+        this.center = null;
+        this.orderDirty = false;
+    }
+
+    protected void moveArea(BlockPos center, int radius)
+    {
+        BlockPos oldCenter = this.center;
+        int oldRadius = this.radius;
+
+        this.center = center.toImmutable();
+        this.radius = radius;
+
+        ObjectIterator<Long2ObjectMap.Entry<Action>> iter = this.actions.long2ObjectEntrySet().iterator();
+
+        // Drop the actions that are now outside the area
+        while (iter.hasNext())
+        {
+            if (this.isWithinArea(iter.next().getValue().pos) == false)
+            {
+                iter.remove();
+                this.orderDirty = true;
+            }
+        }
+
+        final int minX = center.getX() - radius;
+        final int minY = Math.max(0, center.getY() - radius);
+        final int minZ = center.getZ() - radius;
+        final int maxX = center.getX() + radius;
+        final int maxY = Math.min(255, center.getY() + radius);
+        final int maxZ = center.getZ() + radius;
+
+        // Only the positions that were not within the old area need to be evaluated
+        for (int y = minY; y <= maxY; ++y)
+        {
+            for (int z = minZ; z <= maxZ; ++z)
+            {
+                for (int x = minX; x <= maxX; ++x)
+                {
+                    if (oldCenter == null ||
+                        Math.abs(x - oldCenter.getX()) > oldRadius ||
+                        Math.abs(y - oldCenter.getY()) > oldRadius ||
+                        Math.abs(z - oldCenter.getZ()) > oldRadius)
+                    {
+                        this.dirtyPositions.add(PositionUtils.packPos(x, y, z));
+                    }
+                }
+            }
+        }
+    }
+
+    protected boolean isWithinArea(BlockPos pos)
+    {
+        return this.isWithinArea(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    protected boolean isWithinArea(int x, int y, int z)
+    {
+        return this.center != null &&
+               Math.abs(x - this.center.getX()) <= this.radius &&
+               Math.abs(y - this.center.getY()) <= this.radius &&
+               Math.abs(z - this.center.getZ()) <= this.radius;
+    }
+
+    protected void markDirty(int x, int y, int z)
+    {
+        if (this.isWithinArea(x, y, z))
+        {
+            this.dirtyPositions.add(PositionUtils.packPos(x, y, z));
+        }
+    }
+
+    protected void updatePosition(BlockPos.MutableBlockPos pos, long posLong)
+    {
+        Action action = this.createAction(pos);
+        Action old = action != null ? this.actions.put(posLong, action) : this.actions.remove(posLong);
+
+        if (old != null || action != null)
+        {
+            this.orderDirty = true;
+        }
+
+        // The support state of the neighbors may depend on whether this position is still pending
+        if ((old == null) != (action == null))
+        {
+            for (EnumFacing side : PositionUtils.FACING_ALL)
+            {
+                long posSide = PositionUtils.packPos(pos.getX() + side.getXOffset(),
+                                                     pos.getY() + side.getYOffset(),
+                                                     pos.getZ() + side.getZOffset());
+                Action adjacent = this.actions.get(posSide);
+
+                if (adjacent != null && adjacent.supportPending)
+                {
+                    this.dirtyPositions.add(posSide);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    protected Action createAction(BlockPos.MutableBlockPos pos)
+    {
+        IBlockAccess worldSchematic = this.worldSchematic;
+        IBlockAccess worldClient = this.worldClient;
+        IBlockState stateSchematic = worldSchematic.getBlockState(pos);
+
+        // Nothing to place, or the block is correct already.
+        // Slabs are left for the click time handling, as their click position depends on the existing half.
+        if (stateSchematic.getBlock() == Blocks.AIR ||
+            stateSchematic.getBlock() instanceof BlockSlab)
+        {
+            return null;
+        }
+
+        IBlockState stateClient = worldClient.getBlockState(pos).getActualState(worldClient, pos);
+
+        if (stateClient == stateSchematic || isReplaceable(worldClient, pos) == false)
+        {
+            return null;
+        }
+
+        ItemStack requiredStack = this.requiredItemFunction.apply(stateSchematic);
+
+        if (requiredStack.isEmpty())
+        {
+            return null;
+        }
+
+        BlockPos immutablePos = pos.toImmutable();
+        HitPosition clickPosition = getAdjacentClickPosition(worldClient, immutablePos);
+
+        if (clickPosition != null)
+        {
+            return new Action(immutablePos, stateSchematic, stateClient, requiredStack, clickPosition, clickPosition.getBlockPos(), false);
+        }
+
+        // No existing block to click on, this needs to wait for one of the adjacent placements first
+        for (EnumFacing side : ALL_DIRECTIONS)
+        {
+            BlockPos posSide = immutablePos.offset(side);
+
+            if (this.actions.containsKey(posSide.toLong()))
+            {
+                return new Action(immutablePos, stateSchematic, stateClient, requiredStack, null, posSide, true);
+            }
+        }
+
+        return new Action(immutablePos, stateSchematic, stateClient, requiredStack, null, null, true);
+    }
+
+    /**
+     * @return the click position on the first adjacent existing block of the given position,
+     *         or null if there are no adjacent blocks to click on.
+     *         This is also used by the click time handling, so that the plan picks the same side as the click would.
+     */
+    @Nullable
+    public static HitPosition getAdjacentClickPosition(IBlockAccess world, BlockPos pos)
+    {
+        for (EnumFacing side : ALL_DIRECTIONS)
+        {
+            BlockPos posSide = pos.offset(side);
+
+            if (isReplaceable(world, posSide) == false)
+            {
+                return HitPosition.of(posSide, getHitPositionForSidePosition(posSide, side), side.getOpposite());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The same check as {@code PlacementUtils.isReplaceable(world, pos, false)} used elsewhere
+     * in the easy place code, but this works with any world implementation.
+     */
+    public static boolean isReplaceable(IBlockAccess world, BlockPos pos)
+    {
+        return world.getBlockState(pos).getBlock().isReplaceable(world, pos);
+    }
+
+    public static Vec3d getHitPositionForSidePosition(BlockPos posSide, EnumFacing sideFromTarget)
+    {
+        EnumFacing.Axis axis = sideFromTarget.getAxis();
+        double x = posSide.getX() + 0.5 - sideFromTarget.getXOffset() * 0.5;
+        double y = posSide.getY() + (axis == EnumFacing.Axis.Y ? (sideFromTarget == EnumFacing.DOWN ? 1.0 : 0.0) : 0.0);
+        double z = posSide.getZ() + 0.5 - sideFromTarget.getZOffset() * 0.5;
+
+        return new Vec3d(x, y, z);
+    }
+
+    public static class Action
+    {
+        public final BlockPos pos;
+        public final IBlockState stateSchematic;
+        public final IBlockState stateClient;
+        public final ItemStack requiredStack;
+        @Nullable public final HitPosition clickPosition;
+        @Nullable public final BlockPos supportPos;
+        public final boolean supportPending;
+
+        protected Action(BlockPos pos, IBlockState stateSchematic, IBlockState stateClient, ItemStack requiredStack,
+                         @Nullable HitPosition clickPosition, @Nullable BlockPos supportPos, boolean supportPending)
+        {
+            this.pos = pos;
+            this.stateSchematic = stateSchematic;
+            this.stateClient = stateClient;
+            this.requiredStack = requiredStack;
+            this.clickPosition = clickPosition;
+            this.supportPos = supportPos;
+            this.supportPending = supportPending;
+        }
+
+        /**
+         * @return true if there is an existing adjacent block to click on
+         */
+        public boolean canPlace()
+        {
+            return this.supportPending == false;
+        }
+    }
+}
@@ -1,10 +1,8 @@
 package litematica.util;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Optional;
 import javax.annotation.Nullable;
 
@@ -26,6 +24,7 @@ import net.minecraft.util.EnumActionResult;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.EnumHand;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.RayTraceResult;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
@@ -40,9 +39,7 @@ import malilib.util.game.RayTraceUtils.RayTraceFluidHandling;
 import malilib.util.game.wrap.EntityWrap;
 import malilib.util.game.wrap.GameUtils;
 import malilib.util.game.wrap.ItemWrap;
-import malilib.util.position.ChunkSectionPos;
 import malilib.util.position.HitPosition;
-import malilib.util.position.IntBoundingBox;
 import malilib.util.position.LayerRange;
 import malilib.util.position.PositionUtils;
 import litematica.Litematica;
@@ -50,14 +47,14 @@ import litematica.config.Configs;
 import litematica.config.Hotkeys;
 import litematica.data.DataManager;
 import litematica.materials.MaterialCache;
-import litematica.schematic.placement.SchematicPlacementManager;
 import litematica.tool.ToolMode;
 import litematica.util.RayTraceUtils.RayTraceWrapper;
 import litematica.world.SchematicWorldHandler;
 
 public class EasyPlaceUtils
 {
-    private static final List<PositionCache> EASY_PLACE_POSITIONS = new ArrayList<>();
+    private static final ExpiringPositionCache EASY_PLACE_POSITIONS = new ExpiringPositionCache(2000L, 20);
+    private static final EasyPlacePlan PLACEMENT_PLAN = new EasyPlacePlan((state) -> MaterialCache.getInstance().getRequiredBuildItemForState(state));
     private static final HashMap<Block, Boolean> HAS_USE_ACTION_CACHE = new HashMap<>();
 
     private static boolean isHandling;
@@ -120,6 +117,56 @@ public class EasyPlaceUtils
                Hotkeys.EASY_PLACE_ACTIVATION.getKeyBind().isKeyBindHeld();
     }
 
+    /**
+     * Updates the placement plan for the area within reach of the player.
+     * This is only called when handling a click, and it only re-evaluates the positions
+     * that the block change events have marked as changed since the previous click,
+     * or that have entered the area as the player moved. So nothing is done
+     * while not placing, and while placing it's mostly the few positions around the previous placement.
+     */
+    private static void updatePlacementPlan(World schematicWorld, World clientWorld, Entity entity)
+    {
+        double reach = Math.max(6, GameUtils.getInteractionManager().getBlockReachDistance());
+        BlockPos center = new BlockPos(entity.getPositionEyes(1f));
+
+        PLACEMENT_PLAN.update(schematicWorld, clientWorld, center, MathHelper.ceil(reach), Integer.MAX_VALUE);
+    }
+
+    public static void clearPlacementPlan()
+    {
+        PLACEMENT_PLAN.clear();
+    }
+
+    public static void onClientBlockChanged(BlockPos pos)
+    {
+        PLACEMENT_PLAN.onBlockChanged(pos);
+    }
+
+    /**
+     * Called when the blocks in the given range of the schematic world have been changed,
+     * ie. when a placement or a schematic has been changed
+     */
+    public static void onSchematicBlocksChanged(int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+    {
+        PLACEMENT_PLAN.onAreaChanged(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * @return the required build item for the given schematic state in the given position,
+     *         using the placement plan if the position has been planned
+     */
+    private static ItemStack getRequiredBuildItem(BlockPos pos, IBlockState stateSchematic)
+    {
+        EasyPlacePlan.Action action = PLACEMENT_PLAN.getAction(pos);
+
+        if (action != null && action.stateSchematic == stateSchematic)
+        {
+            return action.requiredStack;
+        }
+
+        return MaterialCache.getInstance().getRequiredBuildItemForState(stateSchematic);
+    }
+
     public static void easyPlaceOnUseTick()
     {
         if (isHandling == false &&
@@ -204,7 +251,7 @@ public class EasyPlaceUtils
     }
 
     @Nullable
-    private static HitPosition getAdjacentClickPosition(final BlockPos targetPos)
+    private static HitPosition getAdjacentClickPosition(final BlockPos targetPos, @Nullable EasyPlacePlan.Action plannedAction)
     {
         World world = GameUtils.getClientWorld();
         double reach = Math.max(6, GameUtils.getInteractionManager().getBlockReachDistance());
@@ -224,34 +271,34 @@ public class EasyPlaceUtils
             }
         }
 
-        for (EnumFacing side : PositionUtils.ALL_DIRECTIONS)
+        // The support block has already been found when planning the placement.
+        // The plan may be a few ticks behind the world though, so make sure the support block is still there.
+        if (plannedAction != null && plannedAction.clickPosition != null &&
+            isValidAdjacentClickPosition(world, targetPos, plannedAction.clickPosition))
         {
-            BlockPos posSide = targetPos.offset(side);
-
-            if (PlacementUtils.isReplaceable(world, posSide, false) == false)
-            {
-                Vec3d hitPos = getHitPositionForSidePosition(posSide, side);
-                return HitPosition.of(posSide, hitPos, side.getOpposite());
-            }
+            return plannedAction.clickPosition;
         }
 
-        return null;
+        return EasyPlacePlan.getAdjacentClickPosition(world, targetPos);
     }
 
-    private static Vec3d getHitPositionForSidePosition(BlockPos posSide, EnumFacing sideFromTarget)
+    /**
+     * @return true if the given click position is on the face of an existing, non-replaceable
+     *         block that faces the given target position
+     */
+    private static boolean isValidAdjacentClickPosition(World world, BlockPos targetPos, HitPosition clickPosition)
     {
-        EnumFacing.Axis axis = sideFromTarget.getAxis();
-        double x = posSide.getX() + 0.5 - sideFromTarget.getXOffset() * 0.5;
-        double y = posSide.getY() + (axis == EnumFacing.Axis.Y ? (sideFromTarget == EnumFacing.DOWN ? 1.0 : 0.0) : 0.0);
-        double z = posSide.getZ() + 0.5 - sideFromTarget.getZOffset() * 0.5;
+        BlockPos supportPos = clickPosition.getBlockPos();
 
-        return new Vec3d(x, y, z);
+        return targetPos.equals(supportPos.offset(clickPosition.getSide())) &&
+               EasyPlacePlan.isReplaceable(world, supportPos) == false;
     }
 
     @Nullable
     private static HitPosition getClickPosition(HitPosition targetPosition,
                                                 IBlockState stateSchematic,
-                                                IBlockState stateClient)
+                                                IBlockState stateClient,
+                                                @Nullable EasyPlacePlan.Action plannedAction)
     {
         boolean isSlab = stateSchematic.getBlock() instanceof BlockSlab;
 
@@ -263,7 +310,7 @@ public class EasyPlaceUtils
         BlockPos targetBlockPos = targetPosition.getBlockPos();
         boolean requireAdjacent = Configs.Generic.EASY_PLACE_CLICK_ADJACENT.getBooleanValue();
 
-        return requireAdjacent ? getAdjacentClickPosition(targetBlockPos) : targetPosition;
+        return requireAdjacent ? getAdjacentClickPosition(targetBlockPos, plannedAction) : targetPosition;
     }
 
     @Nullable
@@ -353,7 +400,7 @@ public class EasyPlaceUtils
         // Can click on the existing block above or below
         if (canClickOnAdjacentBlockToPlaceSingleSlabAt(targetBlockPos, stateSchematic, clickSideOpposite, worldClient))
         {
-            return HitPosition.of(posSide, getHitPositionForSidePosition(posSide, clickSideOpposite), clickSide);
+            return HitPosition.of(posSide, EasyPlacePlan.getHitPositionForSidePosition(posSide, clickSideOpposite), clickSide);
         }
         // Try the sides
         else
@@ -363,7 +410,7 @@ public class EasyPlaceUtils
                 if (canClickOnAdjacentBlockToPlaceSingleSlabAt(targetBlockPos, stateSchematic, side, worldClient))
                 {
                     posSide = targetBlockPos.offset(side);
-                    Vec3d hitPos = getHitPositionForSidePosition(posSide, side);
+                    Vec3d hitPos = EasyPlacePlan.getHitPositionForSidePosition(posSide, side);
                     double y = isTop ? 0.9 : 0.1;
                     return HitPosition.of(posSide, new Vec3d(hitPos.x, posSide.getY() + y, hitPos.z), side.getOpposite());
                 }
@@ -405,9 +452,11 @@ public class EasyPlaceUtils
 
         final BlockPos targetBlockPos = targetPosition.getBlockPos();
         World schematicWorld = SchematicWorldHandler.getSchematicWorld();
+        updatePlacementPlan(schematicWorld, world, entity);
         IBlockState stateSchematic = schematicWorld.getBlockState(targetBlockPos);
         IBlockState stateClient = world.getBlockState(targetBlockPos).getActualState(world, targetBlockPos);
-        ItemStack requiredStack = MaterialCache.getInstance().getRequiredBuildItemForState(stateSchematic);
+        EasyPlacePlan.Action plannedAction = PLACEMENT_PLAN.getAction(targetBlockPos, stateSchematic, stateClient);
+        ItemStack requiredStack = getRequiredBuildItem(targetBlockPos, stateSchematic);
 
         // The block is correct already, or it was recently placed, or some of the checks failed
         if (stateSchematic == stateClient || ItemWrap.isEmpty(requiredStack) ||
@@ -417,7 +466,7 @@ public class EasyPlaceUtils
             return EnumActionResult.FAIL;
         }
 
-        HitPosition clickPosition = getClickPosition(targetPosition, stateSchematic, stateClient);
+        HitPosition clickPosition = getClickPosition(targetPosition, stateSchematic, stateClient, plannedAction);
         EnumHand hand = PickBlockUtils.doPickBlockForStack(requiredStack);
 
         // Didn't find a valid or safe click position, or was unable to pick block
@@ -636,7 +685,7 @@ public class EasyPlaceUtils
             }
 
             IBlockState stateSchematic = worldSchematic.getBlockState(pos);
-            ItemStack stack = MaterialCache.getInstance().getRequiredBuildItemForState(stateSchematic);
+            ItemStack stack = getRequiredBuildItem(pos, stateSchematic);
 
             // The player is holding the wrong item for the targeted position
             return ItemWrap.isEmpty(stack) || EntityWrap.getUsedHandForItem(GameUtils.getClientPlayer(), stack, true) == null;
@@ -647,97 +696,16 @@ public class EasyPlaceUtils
 
     private static boolean isPositionWithinRangeOfSchematicRegions(BlockPos pos, int range)
     {
-        SchematicPlacementManager manager = DataManager.getSchematicPlacementManager();
-        final int minCX = (pos.getX() - range) >> 4;
-        final int minCY = (pos.getY() - range) >> 4;
-        final int minCZ = (pos.getZ() - range) >> 4;
-        final int maxCX = (pos.getX() + range) >> 4;
-        final int maxCY = (pos.getY() + range) >> 4;
-        final int maxCZ = (pos.getZ() + range) >> 4;
-        final int x = pos.getX();
-        final int y = pos.getY();
-        final int z = pos.getZ();
-
-        for (int cy = minCY; cy <= maxCY; ++cy)
-        {
-            for (int cz = minCZ; cz <= maxCZ; ++cz)
-            {
-                for (int cx = minCX; cx <= maxCX; ++cx)
-                {
-                    List<IntBoundingBox> boxes = manager.getTouchedBoxesInSubChunk(new ChunkSectionPos(cx, cy, cz));
-
-                    for (IntBoundingBox box : boxes)
-                    {
-                        if (x >= box.minX - range && x <= box.maxX + range &&
-                            y >= box.minY - range && y <= box.maxY + range &&
-                            z >= box.minZ - range && z <= box.maxZ + range)
-                        {
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-
-        return false;
+        return DataManager.getSchematicPlacementManager().isPositionWithinRangeOfPlacementBoxes(pos, range);
     }
 
     private static boolean easyPlaceIsPositionCached(BlockPos pos)
     {
-        long currentTime = System.nanoTime();
-        boolean cached = false;
-
-        for (int i = 0; i < EASY_PLACE_POSITIONS.size(); ++i)
-        {
-            PositionCache val = EASY_PLACE_POSITIONS.get(i);
-            boolean expired = val.hasExpired(currentTime);
-
-            if (expired)
-            {
-                EASY_PLACE_POSITIONS.remove(i);
-                --i;
-            }
-            else if (val.getPos().equals(pos))
-            {
-                cached = true;
-
-                // Keep checking and removing old entries if there are a fair amount
-                if (EASY_PLACE_POSITIONS.size() < 16)
-                {
-                    break;
-                }
-            }
-        }
-
-        return cached;
+        return EASY_PLACE_POSITIONS.contains(pos.toLong(), System.nanoTime());
     }
 
     private static void cacheEasyPlacePosition(BlockPos pos)
     {
-        EASY_PLACE_POSITIONS.add(new PositionCache(pos, System.nanoTime(), 2000000000));
-    }
-
-    public static class PositionCache
-    {
-        private final BlockPos pos;
-        private final long time;
-        private final long timeout;
-
-        private PositionCache(BlockPos pos, long time, long timeout)
-        {
-            this.pos = pos;
-            this.time = time;
-            this.timeout = timeout;
-        }
-
-        public BlockPos getPos()
-        {
-            return this.pos;
-        }
-
-        public boolean hasExpired(long currentTime)
-        {
-            return currentTime - this.time > this.timeout;
-        }
+        EASY_PLACE_POSITIONS.add(pos.toLong(), System.nanoTime());
     }
 }
@@ -0,0 +1,129 @@
+package litematica.util;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * A set of block positions (as packed longs) where each entry expires after a fixed timeout.
+ * The lookups are hash based, and the expired entries are removed via a time wheel,
+ * where each slot holds the positions added during one slot interval. Advancing the
+ * wheel only touches the slots that have passed, so the cost per operation stays constant
+ * no matter how many positions are cached.
+ */
+public class ExpiringPositionCache
+{
+    private final Long2LongOpenHashMap expiryTimes = new Long2LongOpenHashMap();
+    private final LongArrayList[] wheel;
+    private final long slotDurationNanos;
+    private final long timeoutNanos;
+    private long currentSlotIndex = Long.MIN_VALUE;
+
+    /**
+     * @param timeoutMs the time after which the cached positions expire
+     * @param slotCount the number of slots in the time wheel
+     */
+    public ExpiringPositionCache(long timeoutMs, int slotCount)
+    {
+        this.timeoutNanos = timeoutMs * 1000000L;
+        this.slotDurationNanos = Math.max(1L, this.timeoutNanos / slotCount);
+        // One extra slot, so that the slot being filled is never the one being expired
+        this.wheel = new LongArrayList[slotCount + 1];
+
+        for (int i = 0; i < this.wheel.length; ++i)
+        {
+            this.wheel[i] = new LongArrayList();
+        }
+    }
+
+    public void add(long posLong, long currentTimeNanos)
+    {
+        this.advance(currentTimeNanos);
+        this.expiryTimes.put(posLong, currentTimeNanos + this.timeoutNanos);
+        this.getSlot(currentTimeNanos / this.slotDurationNanos).add(posLong);
+    }
+
+    public boolean contains(long posLong, long currentTimeNanos)
+    {
+        this.advance(currentTimeNanos);
+
+        if (this.expiryTimes.containsKey(posLong))
+        {
+            return currentTimeNanos - this.expiryTimes.get(posLong) < 0;
+        }
+
+        return false;
+    }
+
+    public int size()
+    {
+        return this.expiryTimes.size();
+    }
+
+    public void clear()
+    {
+        this.expiryTimes.clear();
+
+        for (LongArrayList slot : this.wheel)
+        {
+            slot.clear();
+        }
+    }
+
+    private LongArrayList getSlot(long slotIndex)
+    {
+        return this.wheel[(int) Math.floorMod(slotIndex, (long) this.wheel.length)];
+    }
+
+    /**
+     * Expires the entries from all the slots that have fully passed their timeout
+     */
+    private void advance(long currentTimeNanos)
+    {
+        long slotIndex = currentTimeNanos / this.slotDurationNanos;
+
+        if (this.currentSlotIndex == Long.MIN_VALUE)
+        {
+            this.currentSlotIndex = slotIndex;
+            return;
+        }
+
+        long steps = slotIndex - this.currentSlotIndex;
+
+        if (steps <= 0)
+        {
+            return;
+        }
+
+        // Everything is old after a full revolution
+        if (steps >= this.wheel.length)
+        {
+            this.clear();
+            this.currentSlotIndex = slotIndex;
+            return;
+        }
+
+        for (long i = 1; i <= steps; ++i)
+        {
+            // The slot that is about to be reused held the positions added one full revolution ago
+            this.expireSlot(this.getSlot(this.currentSlotIndex + i), currentTimeNanos);
+        }
+
+        this.currentSlotIndex = slotIndex;
+    }
+
+    private void expireSlot(LongArrayList slot, long currentTimeNanos)
+    {
+        for (int i = 0; i < slot.size(); ++i)
+        {
+            long posLong = slot.getLong(i);
+
+            // The position may have been re-added since, in which case it's also in a newer slot
+            if (this.expiryTimes.containsKey(posLong) && currentTimeNanos - this.expiryTimes.get(posLong) >= 0)
+            {
+                this.expiryTimes.remove(posLong);
+            }
+        }
+
+        slot.clear();
+    }
+}
@@ -0,0 +1,359 @@
+package litematica.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagByte;
+import net.minecraft.nbt.NBTTagByteArray;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagDouble;
+import net.minecraft.nbt.NBTTagFloat;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagLong;
+import net.minecraft.nbt.NBTTagLongArray;
+import net.minecraft.nbt.NBTTagShort;
+import net.minecraft.nbt.NBTTagString;
+
+import malilib.util.data.Constants;
+import litematica.Litematica;
+
+/**
+ * Reads NBT data directly from a stream in the vanilla binary format.
+ * This allows reading only some of the entries of the root compound tag,
+ * while skipping over the others without building them into tags,
+ * so that for example the metadata of a schematic can be read without
+ * allocating its block data. The counterpart of {@link NbtStreamWriter}.
+ */
+public class NbtStreamReader
+{
+    private static final int MAX_DEPTH = 512;
+
+    protected final DataInput input;
+
+    public NbtStreamReader(DataInput input)
+    {
+        this.input = input;
+    }
+
+    /**
+     * Reads the entry by the given name from the root compound tag of the given GZIP compressed NBT file.
+     * The data before the entry is skipped, and the data after it is not read at all.
+     * @return the entry, or null if the file could not be read or the entry does not exist
+     */
+    @Nullable
+    public static NBTBase readRootEntryFromFile(Path file, String name)
+    {
+        return readEntryFromFile(file, name);
+    }
+
+    /**
+     * Reads the entry at the given path of nested compound tag names from the given GZIP compressed NBT file.
+     * The first name is an entry in the root compound tag.
+     * The data before the entry is skipped, and the data after it is not read at all.
+     * @return the entry, or null if the file could not be read or the entry does not exist
+     */
+    @Nullable
+    public static NBTBase readEntryFromFile(Path file, String... path)
+    {
+        try (InputStream is = Files.newInputStream(file);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(is, 8192), 8192)))
+        {
+            NbtStreamReader reader = new NbtStreamReader(input);
+
+            if (reader.beginRootCompound() == false)
+            {
+                return null;
+            }
+
+            for (int i = 0; i < path.length - 1; ++i)
+            {
+                if (reader.seekEntry(path[i]) != Constants.NBT.TAG_COMPOUND)
+                {
+                    return null;
+                }
+            }
+
+            return reader.readEntry(path[path.length - 1]);
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to read the NBT entry '{}' from file '{}'", String.join("/", path), file.toAbsolutePath().toString(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the entries by the given names from the root compound tag of the given GZIP compressed NBT file,
+     * in one pass. The other entries are skipped, and the data after the last found entry is not read at all.
+     * @return a compound tag with the entries that were found, or null if the file could not be read
+     */
+    @Nullable
+    public static NBTTagCompound readRootEntriesFromFile(Path file, String... names)
+    {
+        try (InputStream is = Files.newInputStream(file);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(is, 8192), 8192)))
+        {
+            NbtStreamReader reader = new NbtStreamReader(input);
+            NBTTagCompound tag = new NBTTagCompound();
+            List<String> wanted = Arrays.asList(names);
+
+            if (reader.beginRootCompound() == false)
+            {
+                return null;
+            }
+
+            while (tag.getSize() < names.length)
+            {
+                int type = input.readByte();
+
+                if (type == Constants.NBT.TAG_END)
+                {
+                    break;
+                }
+
+                String name = input.readUTF();
+
+                if (wanted.contains(name))
+                {
+                    tag.setTag(name, reader.readPayload(type, 0));
+                }
+                else
+                {
+                    reader.skipPayload(type, 0);
+                }
+            }
+
+            return tag;
+        }
+        catch (Exception e)
+        {
+            Litematica.logger.warn("Failed to read the NBT entries from file '{}'", file.toAbsolutePath().toString(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the header of the root tag
+     * @return true if the root tag is a compound tag
+     */
+    public boolean beginRootCompound() throws IOException
+    {
+        if (this.input.readByte() != Constants.NBT.TAG_COMPOUND)
+        {
+            return false;
+        }
+
+        this.input.readUTF();
+        return true;
+    }
+
+    /**
+     * Skips the entries of the current compound tag until the one by the given name is found.
+     * @return the type of the entry, with the stream positioned at the start of its payload,
+     *         or TAG_END if the end of the compound was reached first
+     */
+    public int seekEntry(String name) throws IOException
+    {
+        while (true)
+        {
+            int type = this.input.readByte();
+
+            if (type == Constants.NBT.TAG_END)
+            {
+                return type;
+            }
+
+            String entryName = this.input.readUTF();
+
+            if (entryName.equals(name))
+            {
+                return type;
+            }
+
+            this.skipPayload(type, 0);
+        }
+    }
+
+    /**
+     * Reads the entries of the current compound tag until the one by the given name is found.
+     * The entries before it are skipped.
+     * @return the entry, or null if the end of the compound was reached first
+     */
+    @Nullable
+    public NBTBase readEntry(String name) throws IOException
+    {
+        int type = this.seekEntry(name);
+        return type != Constants.NBT.TAG_END ? this.readPayload(type, 0) : null;
+    }
+
+    public NBTBase readPayload(int type, int depth) throws IOException
+    {
+        DataInput in = this.input;
+
+        switch (type)
+        {
+            case Constants.NBT.TAG_BYTE:    return new NBTTagByte(in.readByte());
+            case Constants.NBT.TAG_SHORT:   return new NBTTagShort(in.readShort());
+            case Constants.NBT.TAG_INT:     return new NBTTagInt(in.readInt());
+            case Constants.NBT.TAG_LONG:    return new NBTTagLong(in.readLong());
+            case Constants.NBT.TAG_FLOAT:   return new NBTTagFloat(in.readFloat());
+            case Constants.NBT.TAG_DOUBLE:  return new NBTTagDouble(in.readDouble());
+            case Constants.NBT.TAG_STRING:  return new NBTTagString(in.readUTF());
+
+            case Constants.NBT.TAG_BYTE_ARRAY:
+            {
+                byte[] arr = new byte[this.readLength()];
+                in.readFully(arr);
+                return new NBTTagByteArray(arr);
+            }
+
+            case Constants.NBT.TAG_INT_ARRAY:
+            {
+                int[] arr = new int[this.readLength()];
+                for (int i = 0; i < arr.length; ++i) { arr[i] = in.readInt(); }
+                return new NBTTagIntArray(arr);
+            }
+
+            case Constants.NBT.TAG_LONG_ARRAY:
+            {
+                long[] arr = new long[this.readLength()];
+                for (int i = 0; i < arr.length; ++i) { arr[i] = in.readLong(); }
+                return new NBTTagLongArray(arr);
+            }
+
+            case Constants.NBT.TAG_LIST:
+            {
+                checkDepth(depth);
+                int elementType = in.readByte();
+                int count = this.readLength();
+                NBTTagList list = new NBTTagList();
+
+                for (int i = 0; i < count; ++i)
+                {
+                    list.appendTag(this.readPayload(elementType, depth + 1));
+                }
+
+                return list;
+            }
+
+            case Constants.NBT.TAG_COMPOUND:
+            {
+                checkDepth(depth);
+                NBTTagCompound tag = new NBTTagCompound();
+                int entryType;
+
+                while ((entryType = in.readByte()) != Constants.NBT.TAG_END)
+                {
+                    String name = in.readUTF();
+                    tag.setTag(name, this.readPayload(entryType, depth + 1));
+                }
+
+                return tag;
+            }
+
+            default:
+                throw new IOException("Invalid NBT tag type " + type);
+        }
+    }
+
+    public void skipPayload(int type, int depth) throws IOException
+    {
+        DataInput in = this.input;
+
+        switch (type)
+        {
+            case Constants.NBT.TAG_BYTE:        this.skip(1); break;
+            case Constants.NBT.TAG_SHORT:       this.skip(2); break;
+            case Constants.NBT.TAG_INT:         this.skip(4); break;
+            case Constants.NBT.TAG_LONG:        this.skip(8); break;
+            case Constants.NBT.TAG_FLOAT:       this.skip(4); break;
+            case Constants.NBT.TAG_DOUBLE:      this.skip(8); break;
+            case Constants.NBT.TAG_STRING:      this.skip(in.readUnsignedShort()); break;
+            case Constants.NBT.TAG_BYTE_ARRAY:  this.skip(this.readLength()); break;
+            case Constants.NBT.TAG_INT_ARRAY:   this.skip(this.readLength() * 4L); break;
+            case Constants.NBT.TAG_LONG_ARRAY:  this.skip(this.readLength() * 8L); break;
+
+            case Constants.NBT.TAG_LIST:
+            {
+                checkDepth(depth);
+                int elementType = in.readByte();
+                int count = this.readLength();
+
+                for (int i = 0; i < count; ++i)
+                {
+                    this.skipPayload(elementType, depth + 1);
+                }
+
+                break;
+            }
+
+            case Constants.NBT.TAG_COMPOUND:
+            {
+                checkDepth(depth);
+                int entryType;
+
+                while ((entryType = in.readByte()) != Constants.NBT.TAG_END)
+                {
+                    this.skip(in.readUnsignedShort());
+                    this.skipPayload(entryType, depth + 1);
+                }
+
+                break;
+            }
+
+            default:
+                throw new IOException("Invalid NBT tag type " + type);
+        }
+    }
+
+    protected int readLength() throws IOException
+    {
+        int length = this.input.readInt();
+
+        if (length < 0)
+        {
+            throw new IOException("Invalid NBT array or list length " + length);
+        }
+
+        return length;
+    }
+
+    protected void skip(long count) throws IOException
+    {
+        while (count > 0)
+        {
+            int skipped = this.input.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+
+            // skipBytes() may skip less than requested, but it only skips nothing at the end of the stream
+            if (skipped <= 0)
+            {
+                this.input.readByte();
+                skipped = 1;
+            }
+
+            count -= skipped;
+        }
+    }
+
+    private static void checkDepth(int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IOException("NBT data nested too deeply");
+        }
+    }
+}
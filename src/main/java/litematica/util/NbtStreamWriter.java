@@ -0,0 +1,160 @@
+package litematica.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagByte;
+import net.minecraft.nbt.NBTTagByteArray;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagDouble;
+import net.minecraft.nbt.NBTTagFloat;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagLong;
+import net.minecraft.nbt.NBTTagShort;
+import net.minecraft.nbt.NBTTagString;
+
+import malilib.mixin.access.NBTTagLongArrayMixin;
+import malilib.util.data.Constants;
+
+/**
+ * Writes NBT data directly to a stream in the vanilla binary format.
+ * This allows writing the structure of a compound tag piece by piece,
+ * so that the big parts of the data (like the block state arrays) don't need
+ * to be first built into a tag tree in memory.
+ * The caller is responsible for closing each started compound, and for writing
+ * the exact number of values announced via {@link #beginLongArray(String, int)}.
+ */
+public class NbtStreamWriter
+{
+    protected final DataOutput output;
+
+    public NbtStreamWriter(DataOutput output)
+    {
+        this.output = output;
+    }
+
+    public DataOutput getOutput()
+    {
+        return this.output;
+    }
+
+    /**
+     * Starts a new named compound tag. For the root tag the name is normally an empty string.
+     */
+    public void beginCompound(String name) throws IOException
+    {
+        this.writeHeader(Constants.NBT.TAG_COMPOUND, name);
+    }
+
+    public void endCompound() throws IOException
+    {
+        this.output.writeByte(Constants.NBT.TAG_END);
+    }
+
+    /**
+     * Starts a long array tag, the values must be written directly
+     * to the output returned by {@link #getOutput()} after this call.
+     */
+    public void beginLongArray(String name, int length) throws IOException
+    {
+        this.writeHeader(Constants.NBT.TAG_LONG_ARRAY, name);
+        this.output.writeInt(length);
+    }
+
+    public void writeInt(String name, int value) throws IOException
+    {
+        this.writeHeader(Constants.NBT.TAG_INT, name);
+        this.output.writeInt(value);
+    }
+
+    public void writeTag(String name, NBTBase tag) throws IOException
+    {
+        this.writeHeader(tag.getId(), name);
+        this.writePayload(tag);
+    }
+
+    /**
+     * Writes all the entries of the given compound tag into the currently open compound
+     */
+    public void writeCompoundEntries(NBTTagCompound tag) throws IOException
+    {
+        for (String key : tag.getKeySet())
+        {
+            this.writeTag(key, tag.getTag(key));
+        }
+    }
+
+    protected void writeHeader(int type, String name) throws IOException
+    {
+        this.output.writeByte(type);
+        this.output.writeUTF(name);
+    }
+
+    protected void writePayload(NBTBase tag) throws IOException
+    {
+        DataOutput out = this.output;
+
+        switch (tag.getId())
+        {
+            case Constants.NBT.TAG_BYTE:    out.writeByte(((NBTTagByte) tag).getByte()); break;
+            case Constants.NBT.TAG_SHORT:   out.writeShort(((NBTTagShort) tag).getShort()); break;
+            case Constants.NBT.TAG_INT:     out.writeInt(((NBTTagInt) tag).getInt()); break;
+            case Constants.NBT.TAG_LONG:    out.writeLong(((NBTTagLong) tag).getLong()); break;
+            case Constants.NBT.TAG_FLOAT:   out.writeFloat(((NBTTagFloat) tag).getFloat()); break;
+            case Constants.NBT.TAG_DOUBLE:  out.writeDouble(((NBTTagDouble) tag).getDouble()); break;
+            case Constants.NBT.TAG_STRING:  out.writeUTF(((NBTTagString) tag).getString()); break;
+
+            case Constants.NBT.TAG_BYTE_ARRAY:
+            {
+                byte[] arr = ((NBTTagByteArray) tag).getByteArray();
+                out.writeInt(arr.length);
+                out.write(arr);
+                break;
+            }
+
+            case Constants.NBT.TAG_INT_ARRAY:
+            {
+                int[] arr = ((NBTTagIntArray) tag).getIntArray();
+                out.writeInt(arr.length);
+                for (int value : arr) { out.writeInt(value); }
+                break;
+            }
+
+            case Constants.NBT.TAG_LONG_ARRAY:
+            {
+                long[] arr = ((NBTTagLongArrayMixin) tag).getArray();
+                out.writeInt(arr.length);
+                for (long value : arr) { out.writeLong(value); }
+                break;
+            }
+
+            case Constants.NBT.TAG_LIST:
+            {
+                NBTTagList list = (NBTTagList) tag;
+                final int count = list.tagCount();
+
+                // An empty list has the element type TAG_End in vanilla
+                out.writeByte(count > 0 ? list.getTagType() : Constants.NBT.TAG_END);
+                out.writeInt(count);
+
+                for (int i = 0; i < count; ++i)
+                {
+                    this.writePayload(list.get(i));
+                }
+
+                break;
+            }
+
+            case Constants.NBT.TAG_COMPOUND:
+                this.writeCompoundEntries((NBTTagCompound) tag);
+                this.endCompound();
+                break;
+
+            default:
+                throw new IOException("Unsupported NBT tag type " + tag.getId());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package litematica.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
+
+/**
+ * A GZIP output stream that compresses the data in independent blocks on an executor,
+ * in the same way as pigz does. Each block is deflated with its own Deflater,
+ * primed with the last 32 KiB of the previous block as the dictionary to retain the compression ratio.
+ * All but the last block end in a sync flush, so the compressed blocks can be simply concatenated
+ * into one regular deflate stream, which is then wrapped in a single standard GZIP header and trailer.
+ * The output can be read with any GZIP reader, including {@link java.util.zip.GZIPInputStream}.
+ * <p>
+ * This class itself is not thread safe, it's meant to be written to from one thread.
+ */
+public class ParallelGzipOutputStream extends OutputStream
+{
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] GZIP_HEADER = new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final OutputStream out;
+    private final Executor executor;
+    private final ArrayDeque<CompletableFuture<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final int level;
+    @Nullable private byte[] previousBlock;
+    private byte[] block;
+    private int blockLength;
+    private long totalLength;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out, Executor executor) throws IOException
+    {
+        this(out, executor, DEFAULT_BLOCK_SIZE, Math.max(2, Runtime.getRuntime().availableProcessors() * 2), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param blockSize the uncompressed size of each independently compressed block, at least 32 KiB
+     * @param maxPendingBlocks the maximum number of blocks being compressed at once,
+     *                         which also caps the memory use to roughly twice this many blocks
+     */
+    public ParallelGzipOutputStream(OutputStream out, Executor executor, int blockSize, int maxPendingBlocks, int level) throws IOException
+    {
+        if (blockSize < DICTIONARY_SIZE)
+        {
+            throw new IllegalArgumentException("Block size " + blockSize + " is smaller than the dictionary size " + DICTIONARY_SIZE);
+        }
+
+        this.out = out;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+        this.level = level;
+        this.block = new byte[blockSize];
+
+        this.out.write(GZIP_HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        this.ensureOpen();
+
+        this.block[this.blockLength++] = (byte) b;
+        this.crc.update(b);
+        ++this.totalLength;
+
+        if (this.blockLength == this.blockSize)
+        {
+            this.submitBlock(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        this.ensureOpen();
+
+        if (off < 0 || len < 0 || off + len > b.length)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.crc.update(b, off, len);
+        this.totalLength += len;
+
+        while (len > 0)
+        {
+            int count = Math.min(len, this.blockSize - this.blockLength);
+            System.arraycopy(b, off, this.block, this.blockLength, count);
+            this.blockLength += count;
+            off += count;
+            len -= count;
+
+            if (this.blockLength == this.blockSize)
+            {
+                this.submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Writes out the blocks that have been compressed so far, in order.
+     * The data that doesn't fill a complete block yet is not flushed,
+     * as that would needlessly split the deflate stream.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        this.ensureOpen();
+        this.writeCompletedBlocks(false);
+        this.out.flush();
+    }
+
+    /**
+     * Compresses the remaining data as the last block, waits for all the blocks
+     * to get compressed and written, writes the GZIP trailer and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+
+        this.closed = true;
+
+        try
+        {
+            this.submitBlock(true);
+            this.writeCompletedBlocks(true);
+            this.writeIntLE((int) this.crc.getValue());
+            this.writeIntLE((int) this.totalLength);
+            this.out.flush();
+        }
+        finally
+        {
+            this.out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException
+    {
+        final byte[] data = this.block;
+        final int length = this.blockLength;
+        final byte[] dictionary = this.previousBlock;
+        final int level = this.level;
+
+        this.pendingBlocks.add(CompletableFuture.supplyAsync(() -> compressBlock(data, length, dictionary, level, last), this.executor));
+        this.previousBlock = data;
+
+        if (last == false)
+        {
+            // The submitted array is now owned by the compression task, and is used as the next block's dictionary
+            this.block = new byte[this.blockSize];
+            this.blockLength = 0;
+
+            // Don't let the writer get too far ahead of the compression
+            while (this.pendingBlocks.size() >= this.maxPendingBlocks)
+            {
+                this.writeBlock(this.pendingBlocks.poll());
+            }
+
+            this.writeCompletedBlocks(false);
+        }
+    }
+
+    private void writeCompletedBlocks(boolean waitForAll) throws IOException
+    {
+        while (this.pendingBlocks.isEmpty() == false && (waitForAll || this.pendingBlocks.peek().isDone()))
+        {
+            this.writeBlock(this.pendingBlocks.poll());
+        }
+    }
+
+    private void writeBlock(CompletableFuture<byte[]> future) throws IOException
+    {
+        try
+        {
+            this.out.write(future.join());
+        }
+        catch (CompletionException e)
+        {
+            throw new IOException("Failed to compress a block", e.getCause());
+        }
+    }
+
+    private void writeIntLE(int value) throws IOException
+    {
+        this.out.write(value & 0xFF);
+        this.out.write((value >>> 8) & 0xFF);
+        this.out.write((value >>> 16) & 0xFF);
+        this.out.write((value >>> 24) & 0xFF);
+    }
+
+    private static byte[] compressBlock(byte[] data, int length, @Nullable byte[] dictionary, int level, boolean last)
+    {
+        Deflater deflater = new Deflater(level, true);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, length / 2));
+        byte[] buf = new byte[64 * 1024];
+
+        try
+        {
+            if (dictionary != null)
+            {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+
+            deflater.setInput(data, 0, length);
+
+            if (last)
+            {
+                deflater.finish();
+
+                while (deflater.finished() == false)
+                {
+                    int count = deflater.deflate(buf);
+                    bos.write(buf, 0, count);
+                }
+            }
+            else
+            {
+                int count;
+
+                // A sync flush ends the block on a byte boundary without marking it as the final block.
+                // A completely filled output buffer means that there may be more output pending.
+                do
+                {
+                    count = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    bos.write(buf, 0, count);
+                }
+                while (count == buf.length);
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        return bos.toByteArray();
+    }
+}
@@ -630,6 +630,23 @@ public class PositionUtils
         return createAABBForPosition(pos.getX(), pos.getY(), pos.getZ());
     }
 
+    /**
+     * Packs the given coordinates into a long, in the same format as {@link BlockPos#toLong()},
+     * without creating a BlockPos instance
+     */
+    public static long packPos(int x, int y, int z)
+    {
+        return (((long) x & 0x3FFFFFFL) << 38) | (((long) y & 0xFFFL) << 26) | ((long) z & 0x3FFFFFFL);
+    }
+
+    /**
+     * Sets the given mutable position to the position packed by {@link #packPos(int, int, int)}
+     */
+    public static BlockPos.MutableBlockPos unpackPos(long posLong, BlockPos.MutableBlockPos pos)
+    {
+        return pos.setPos((int) (posLong >> 38), (int) ((posLong << 26) >> 52), (int) ((posLong << 38) >> 38));
+    }
+
     /**
      * Creates an AABB for the given position
      */
@@ -2,11 +2,9 @@ package litematica.util;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 
 import net.minecraft.block.material.Material;
 import net.minecraft.entity.Entity;
@@ -17,14 +15,15 @@ import net.minecraft.util.math.RayTraceResult.Type;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
-import malilib.util.data.EnabledCondition;
 import malilib.util.game.RayTraceUtils.RayTraceCalculationData;
 import malilib.util.game.RayTraceUtils.RayTraceFluidHandling;
+import malilib.util.position.IntBoundingBox;
 import malilib.util.position.LayerRange;
 import litematica.config.Configs;
 import litematica.config.Hotkeys;
 import litematica.data.DataManager;
 import litematica.schematic.placement.SchematicPlacement;
+import litematica.schematic.placement.SchematicPlacementManager.PlacementPart;
 import litematica.schematic.verifier.BlockPairTypePosition;
 import litematica.selection.AreaSelection;
 import litematica.selection.BoxCorner;
@@ -104,14 +103,20 @@ public class RayTraceUtils
 
         if (DataManager.getToolMode().getUsesSchematic())
         {
-            for (SchematicPlacement placement : DataManager.getSchematicPlacementManager().getVisibleSchematicPlacements())
+            DataManager.getSchematicPlacementManager().visitPlacementBoxesAlongRay(eyesPos, lookEndPos, (part) ->
             {
-                if (placement.isEnabled())
+                if (part.isOrigin())
                 {
-                    traceToPlacementBox(placement, eyesPos, lookEndPos);
+                    SchematicPlacement placement = part.getPlacement();
                     traceToPosition(placement.getPosition(), eyesPos, lookEndPos, HitType.PLACEMENT_ORIGIN, placement);
                 }
-            }
+                else
+                {
+                    traceToPlacementBox(part, eyesPos, lookEndPos);
+                }
+
+                return true;
+            });
         }
 
         double closestDistance = closestVanilla;
@@ -211,33 +216,25 @@ public class RayTraceUtils
         return false;
     }
 
-    private static boolean traceToPlacementBox(SchematicPlacement placement, Vec3d start, Vec3d end)
+    private static boolean traceToPlacementBox(PlacementPart part, Vec3d start, Vec3d end)
     {
-        ImmutableMap<String, SelectionBox> boxes = placement.getSubRegionBoxes(EnabledCondition.ENABLED);
-        boolean hitSomething = false;
+        IntBoundingBox box = part.getBox();
+        AxisAlignedBB bb = new AxisAlignedBB(box.minX, box.minY, box.minZ, box.maxX + 1, box.maxY + 1, box.maxZ + 1);
+        RayTraceResult trace = bb.calculateIntercept(start, end);
 
-        for (Map.Entry<String, SelectionBox> entry : boxes.entrySet())
+        if (trace != null)
         {
-            String boxName = entry.getKey();
-            SelectionBox box = entry.getValue();
-
-            AxisAlignedBB bb = PositionUtils.createEnclosingAABB(box.getCorner1(), box.getCorner2());
-            RayTraceResult trace = bb.calculateIntercept(start, end);
+            double dist = trace.hitVec.distanceTo(start);
 
-            if (trace != null)
+            if (closestBoxDistance < 0 || dist < closestBoxDistance)
             {
-                double dist = trace.hitVec.distanceTo(start);
-
-                if (closestBoxDistance < 0 || dist < closestBoxDistance)
-                {
-                    closestBoxDistance = dist;
-                    closestBox = new RayTraceWrapper(placement, trace.hitVec, boxName);
-                    hitSomething = true;
-                }
+                closestBoxDistance = dist;
+                closestBox = new RayTraceWrapper(part.getPlacement(), trace.hitVec, part.getSubRegionName());
+                return true;
             }
         }
 
-        return hitSomething;
+        return false;
     }
 
     private static boolean traceToPosition(BlockPos pos, Vec3d start, Vec3d end, HitType type, @Nullable SchematicPlacement placement)
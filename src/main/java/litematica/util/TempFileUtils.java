@@ -0,0 +1,57 @@
+package litematica.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Helpers for writing files via a temporary file that is then moved over the target file,
+ * so that a failed or interrupted write never leaves behind a partially written file.
+ */
+public class TempFileUtils
+{
+    /**
+     * Creates a new empty temporary file with a unique name next to the given file.
+     * Unlike {@link Files#createTempFile}, the file is created with the default permissions,
+     * so the file keeps the normal permissions after it's moved over the target file.
+     */
+    public static Path createTempFileFor(Path file) throws IOException
+    {
+        Path dir = file.toAbsolutePath().getParent();
+        String name = file.getFileName().toString();
+
+        while (true)
+        {
+            Path tmpFile = dir.resolve(name + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+
+            try (OutputStream ignore = Files.newOutputStream(tmpFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+            {
+                return tmpFile;
+            }
+            catch (FileAlreadyExistsException ignore)
+            {
+            }
+        }
+    }
+
+    /**
+     * Moves the temporary file over the target file, atomically if the file system supports it
+     */
+    public static void moveOver(Path tmpFile, Path file) throws IOException
+    {
+        try
+        {
+            Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package litematica.util;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+import net.minecraft.client.Minecraft;
+
+import malilib.overlay.message.MessageDispatcher;
+import malilib.util.StringUtils;
+import malilib.util.game.wrap.GameUtils;
+import litematica.Litematica;
+
+/**
+ * Sends the messages from code that may also be run on worker threads, such as the schematic
+ * reading and writing code, as the message overlay may only be accessed from the game thread.
+ * On the game thread the messages are sent normally. On other threads they are added to the list
+ * set via {@link #setCollector(List)}, so that the caller can report them from the game thread.
+ * If there is no list set for the thread, then the messages are scheduled to be sent on the game thread.
+ */
+public class ThreadMessages
+{
+    private static final ThreadLocal<List<String>> COLLECTOR = new ThreadLocal<>();
+
+    public static void error(String translationKey, Object... args)
+    {
+        send(() -> MessageDispatcher.error().translate(translationKey, args), translationKey, args);
+    }
+
+    public static void warning(String translationKey, Object... args)
+    {
+        send(() -> MessageDispatcher.warning().translate(translationKey, args), translationKey, args);
+    }
+
+    /**
+     * Sets the list where the messages sent from the current (non-game) thread are added to,
+     * as translated strings, or null to stop collecting them.
+     */
+    public static void setCollector(@Nullable List<String> list)
+    {
+        if (list != null)
+        {
+            COLLECTOR.set(list);
+        }
+        else
+        {
+            COLLECTOR.remove();
+        }
+    }
+
+    protected static void send(Runnable sender, String translationKey, Object... args)
+    {
+        Minecraft mc = GameUtils.getClient();
+
+        if (mc != null && mc.isCallingFromMinecraftThread())
+        {
+            sender.run();
+            return;
+        }
+
+        List<String> collector = COLLECTOR.get();
+
+        if (collector != null)
+        {
+            collector.add(StringUtils.translate(translationKey, args));
+        }
+        else if (mc != null)
+        {
+            mc.addScheduledTask(sender);
+        }
+        else
+        {
+            Litematica.logger.warn(StringUtils.translate(translationKey, args));
+        }
+    }
+}
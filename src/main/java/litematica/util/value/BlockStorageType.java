@@ -0,0 +1,29 @@
+package litematica.util.value;
+
+import com.google.common.collect.ImmutableList;
+
+import malilib.config.value.BaseOptionListConfigValue;
+import litematica.config.Configs;
+
+public class BlockStorageType extends BaseOptionListConfigValue
+{
+    public static final BlockStorageType HEAP           = new BlockStorageType("heap",          "litematica.gui.label.block_storage_type.heap");
+    public static final BlockStorageType OFF_HEAP       = new BlockStorageType("off_heap",      "litematica.gui.label.block_storage_type.off_heap");
+    public static final BlockStorageType MEMORY_MAPPED  = new BlockStorageType("memory_mapped", "litematica.gui.label.block_storage_type.memory_mapped");
+
+    public static final ImmutableList<BlockStorageType> VALUES = ImmutableList.of(HEAP, OFF_HEAP, MEMORY_MAPPED);
+
+    public BlockStorageType(String name, String translationKey)
+    {
+        super(name, translationKey);
+    }
+
+    /**
+     * @return the storage type to use for a block state container of the given volume
+     */
+    public static BlockStorageType getForVolume(long volume)
+    {
+        long threshold = (long) Configs.Generic.HUGE_SCHEMATIC_THRESHOLD.getIntegerValue() * 1000000L;
+        return volume >= threshold ? Configs.Generic.HUGE_SCHEMATIC_STORAGE.getValue() : HEAP;
+    }
+}
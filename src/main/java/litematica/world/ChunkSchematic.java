@@ -1,8 +1,11 @@
 package litematica.world;
 
+import java.util.ArrayList;
+
 import net.minecraft.block.Block;
 import net.minecraft.block.ITileEntityProvider;
 import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
 import net.minecraft.init.Blocks;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.math.BlockPos;
@@ -103,6 +106,34 @@ public class ChunkSchematic extends Chunk
         }
     }
 
+    /**
+     * Removes all the blocks, tile entities and entities from the given section,
+     * so that the section can be re-placed without wiping the entire chunk
+     */
+    public void clearSection(int sectionY)
+    {
+        World world = this.getWorld();
+        final int minY = sectionY << 4;
+        final int maxY = minY + 15;
+
+        // Copy the positions first, as removing the tile entities modifies the map
+        for (BlockPos pos : new ArrayList<>(this.getTileEntityMap().keySet()))
+        {
+            if (pos.getY() >= minY && pos.getY() <= maxY)
+            {
+                world.removeTileEntity(pos);
+            }
+        }
+
+        for (Entity entity : new ArrayList<>(this.getEntityLists()[sectionY]))
+        {
+            world.removeEntityDangerously(entity);
+        }
+
+        this.getBlockStorageArray()[sectionY] = NULL_BLOCK_STORAGE;
+        this.markDirty();
+    }
+
     @Override
     public int getLightFor(EnumSkyBlock type, BlockPos pos)
     {